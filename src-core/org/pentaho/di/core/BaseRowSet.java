@@ -40,6 +40,9 @@ abstract class BaseRowSet implements Comparable<RowSet>, RowSet
     
     protected String                  remoteSlaveServerName;
     
+    /** The "data available" signal of the step copy that reads from this row set */
+    protected volatile RowSetSignal   signal;
+    
     /**
      * Create new non-blocking-queue with maxSize capacity.
      * @param maxSize
@@ -79,6 +82,23 @@ abstract class BaseRowSet implements Comparable<RowSet>, RowSet
 	 */
     public abstract boolean putRowWait(RowMetaInterface rowMeta, Object[] rowData, long time, TimeUnit tu);
     
+    /**
+     * Adds the rows of the block one by one: waits for room for the first row, the others are only added if there is room right away.  
+     * Row set variants that can hand over a block under a single lock should override this.
+     * 
+     * @see org.pentaho.di.core.RowSet#putRows(org.pentaho.di.core.row.RowMetaInterface, java.lang.Object[][], int, int)
+     */
+    public int putRows(RowMetaInterface rowMeta, Object[][] rows, int offset, int nrRows) {
+    	if (nrRows<=0) return 0;
+    	if (!putRow(rowMeta, rows[offset])) return 0;
+    	
+    	int nr=1;
+    	while (nr<nrRows && putRowWait(rowMeta, rows[offset+nr], 0, TimeUnit.MILLISECONDS)) {
+    		nr++;
+    	}
+    	return nr;
+    }
+    
     // default getRow with wait time = 100ms
     //
     /* (non-Javadoc)
@@ -97,11 +117,38 @@ abstract class BaseRowSet implements Comparable<RowSet>, RowSet
 	 */
     public abstract Object[] getRowWait(long timeout, TimeUnit tu);
     
+    /* (non-Javadoc)
+	 * @see org.pentaho.di.core.RowSet#getRows(java.lang.Object[][], int)
+	 */
+    public int getRows(Object[][] rows, int maxRows) {
+    	return getRowsWait(rows, maxRows, Const.TIMEOUT_GET_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes the rows one by one: waits for the first row, the others are only taken if they are available right away.
+     * Row set variants that can hand over a block under a single lock should override this.
+     * 
+     * @see org.pentaho.di.core.RowSet#getRowsWait(java.lang.Object[][], int, long, java.util.concurrent.TimeUnit)
+     */
+    public int getRowsWait(Object[][] rows, int maxRows, long timeout, TimeUnit tu) {
+    	if (maxRows<=0) return 0;
+    	Object[] row = getRowWait(timeout, tu);
+    	if (row==null) return 0;
+    	
+    	rows[0] = row;
+    	int nr=1;
+    	while (nr<maxRows && (row=getRowImmediate())!=null) {
+    		rows[nr++] = row;
+    	}
+    	return nr;
+    }
+    
     /* (non-Javadoc)
 	 * @see org.pentaho.di.core.RowSetInterface#setDone()
 	 */
     public void setDone() {
     	done.set(true);
+    	signalReader();
     }
     
     /* (non-Javadoc)
@@ -250,4 +297,21 @@ abstract class BaseRowSet implements Comparable<RowSet>, RowSet
       return false;
     }
 
+	/* (non-Javadoc)
+	 * @see org.pentaho.di.core.RowSet#setSignal(org.pentaho.di.core.RowSetSignal)
+	 */
+    public void setSignal(RowSetSignal signal) {
+      this.signal = signal;
+    }
+
+    /**
+     * Raises the signal of the reading step copy, if any.  To be called after rows were added to the row set.
+     */
+    protected void signalReader() {
+      RowSetSignal readerSignal = signal;
+      if (readerSignal!=null) {
+        readerSignal.signal();
+      }
+    }
+
 }
\ No newline at end of file
@@ -13,9 +13,9 @@
 
 package org.pentaho.di.core;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.pentaho.di.core.row.RowMetaInterface;
 
@@ -24,13 +24,29 @@ import org.pentaho.di.core.row.RowMetaInterface;
 /**
  * Contains a buffer of rows.  Getting rows from the buffer or putting rows in the buffer is synchronized to allow concurrent use of multiple Threads.
  * 
+ * The rows are kept in a fixed size ring buffer guarded by a single lock. 
+ * Blocks of rows can be handed over with putRows() and getRows() so that only one lock acquisition is needed for the whole block.
+ * 
  * @author Matt
  * @since 04-04-2003
  *
  */
 public class BlockingRowSet extends BaseRowSet implements Comparable<RowSet>, RowSet
 {
-    private BlockingQueue<Object[]> queArray;
+    private final Object[][] buffer;
+    
+    /** The index of the next row to take */
+    private int takeIndex;
+    
+    /** The index of the next row to put */
+    private int putIndex;
+    
+    /** The number of rows in the buffer, written under the lock, can be read without it */
+    private volatile int count;
+    
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
     
     /**
      * Create new non-blocking-queue with maxSize capacity.
@@ -40,8 +56,15 @@ public class BlockingRowSet extends BaseRowSet implements Comparable<RowSet>, Ro
     {
     	super();
 
+    	if (maxSize<=0) {
+    		throw new IllegalArgumentException("The size of a row set needs to be larger than 0");
+    	}
+    	
     	// create an empty queue 
-        queArray = new ArrayBlockingQueue<Object[]>(maxSize, false);
+    	buffer = new Object[maxSize][];
+    	lock = new ReentrantLock(false);
+    	notEmpty = lock.newCondition();
+    	notFull = lock.newCondition();
     }
     
     /* (non-Javadoc)
@@ -56,20 +79,71 @@ public class BlockingRowSet extends BaseRowSet implements Comparable<RowSet>, Ro
 	 * @see org.pentaho.di.core.RowSetInterface#putRowWait(org.pentaho.di.core.row.RowMetaInterface, java.lang.Object[], long, java.util.concurrent.TimeUnit)
 	 */
     public boolean putRowWait(RowMetaInterface rowMeta, Object[] rowData, long time, TimeUnit tu) {
+    	if (rowData==null) {
+    		return false;
+    	}
     	this.rowMeta = rowMeta;
-    	try{
-    		
-    		return queArray.offer(rowData, time, tu);
+    	
+    	lock.lock();
+    	try {
+    		if (!waitForRoom(tu.toNanos(time))) {
+    			return false;
+    		}
+    		buffer[putIndex] = rowData;
+    		putIndex = increment(putIndex);
+    		count++;
+    		notEmpty.signal();
     	}
     	catch (InterruptedException e)
 	    {
     		return false;
 	    }
-    	catch (NullPointerException e)
-	    {
-    		return false;
-	    }    	
+    	finally {
+    		lock.unlock();
+    	}
+    	signalReader();
+    	return true;
+    }
+    
+    /**
+     * Adds as many rows of the block as there is room for under a single lock.
+     * 
+     * @see org.pentaho.di.core.BaseRowSet#putRows(org.pentaho.di.core.row.RowMetaInterface, java.lang.Object[][], int, int)
+     */
+    public int putRows(RowMetaInterface rowMeta, Object[][] rows, int offset, int nrRows) {
+    	if (nrRows<=0) {
+    		return 0;
+    	}
+    	this.rowMeta = rowMeta;
     	
+    	int nr;
+    	lock.lock();
+    	try {
+    		if (!waitForRoom(TimeUnit.MILLISECONDS.toNanos(Const.TIMEOUT_PUT_MILLIS))) {
+    			return 0;
+    		}
+    		nr = Math.min(nrRows, buffer.length-count);
+    		for (int i=0;i<nr;i++) {
+    			Object[] rowData = rows[offset+i];
+    			if (rowData==null) {
+    				nr=i;
+    				break;
+    			}
+    			buffer[putIndex] = rowData;
+    			putIndex = increment(putIndex);
+    		}
+    		count+=nr;
+    		if (nr>0) notEmpty.signal();
+    	}
+    	catch (InterruptedException e)
+	    {
+    		return 0;
+	    }
+    	finally {
+    		lock.unlock();
+    	}
+    	if (nr>0) signalReader();
+    	return nr;
     }
     
     // default getRow with wait time = 100ms
@@ -86,8 +160,16 @@ public class BlockingRowSet extends BaseRowSet implements Comparable<RowSet>, Ro
 	 * @see org.pentaho.di.core.RowSetInterface#getRowImmediate()
 	 */       
     public Object[] getRowImmediate(){
-
-    	return queArray.poll();	    	
+    	if (count==0) {
+    		return null;
+    	}
+    	lock.lock();
+    	try {
+    		return count==0 ? null : take();
+    	}
+    	finally {
+    		lock.unlock();
+    	}
     }
     
     /* (non-Javadoc)
@@ -95,15 +177,120 @@ public class BlockingRowSet extends BaseRowSet implements Comparable<RowSet>, Ro
 	 */
     public Object[] getRowWait(long timeout, TimeUnit tu){
 
-    	try{
-    		return queArray.poll(timeout, tu);
+    	lock.lock();
+    	try {
+    		if (!waitForRows(tu.toNanos(timeout))) {
+    			return null;
+    		}
+    		return take();
     	}
     	catch(InterruptedException e){
     		return null;
     	}
+    	finally {
+    		lock.unlock();
+    	}
+    }
+    
+    /**
+     * Takes all the available rows, up to maxRows, under a single lock.
+     * 
+     * @see org.pentaho.di.core.BaseRowSet#getRowsWait(java.lang.Object[][], int, long, java.util.concurrent.TimeUnit)
+     */
+    public int getRowsWait(Object[][] rows, int maxRows, long timeout, TimeUnit tu) {
+    	if (maxRows<=0) {
+    		return 0;
+    	}
+    	
+    	lock.lock();
+    	try {
+    		if (!waitForRows(tu.toNanos(timeout))) {
+    			return 0;
+    		}
+    		int nr = Math.min(maxRows, count);
+    		for (int i=0;i<nr;i++) {
+    			rows[i] = buffer[takeIndex];
+    			buffer[takeIndex] = null;
+    			takeIndex = increment(takeIndex);
+    		}
+    		count-=nr;
+    		if (nr>1) {
+    			notFull.signalAll(); // there can be room for more than one writer
+    		} else {
+    			notFull.signal();
+    		}
+    		return nr;
+    	}
+    	catch(InterruptedException e){
+    		return 0;
+    	}
+    	finally {
+    		lock.unlock();
+    	}
     }
     
     public int size() {
-    	return queArray.size();
+    	return count;
+    }
+    
+    /**
+     * Also wakes up a reader that is waiting for rows so it sees the end of the line right away.
+     */
+    public void setDone() {
+    	super.setDone();
+    	lock.lock();
+    	try {
+    		notEmpty.signalAll();
+    	}
+    	finally {
+    		lock.unlock();
+    	}
+    }
+    
+    /**
+     * Waits until there is room in the buffer, the lock needs to be held.
+     * @return true if there is room, false if the buffer is still full after the given time.
+     */
+    private boolean waitForRoom(long nanos) throws InterruptedException {
+		while (count==buffer.length) {
+			if (nanos<=0) {
+				return false;
+			}
+			nanos = notFull.awaitNanos(nanos);
+		}
+		return true;
+    }
+
+    /**
+     * Waits until there are rows in the buffer, the lock needs to be held.
+     * @return true if there are rows, false if the buffer is still empty after the given time or once the row set is done.
+     */
+    private boolean waitForRows(long nanos) throws InterruptedException {
+    	while (count==0) {
+    		if (isDone()) {
+    			return false; // woken up by setDone(), there won't be any more rows
+    		}
+    		if (nanos<=0) {
+    			return false;
+    		}
+    		nanos = notEmpty.awaitNanos(nanos);
+    	}
+    	return true;
+    }
+    
+    /**
+     * Takes a single row from the buffer, the lock needs to be held and the buffer can't be empty.
+     */
+    private Object[] take() {
+    	Object[] rowData = buffer[takeIndex];
+    	buffer[takeIndex] = null;
+    	takeIndex = increment(takeIndex);
+    	count--;
+    	notFull.signal();
+    	return rowData;
+    }
+    
+    private int increment(int index) {
+    	return ++index==buffer.length ? 0 : index;
     }
 }
\ No newline at end of file
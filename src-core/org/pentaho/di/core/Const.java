@@ -620,6 +620,65 @@ public class Const
      * This overwrites values that you set transformation settings.
      */
     public static final String KETTLE_TRANS_ROWSET_SIZE = "KETTLE_TRANS_ROWSET_SIZE";
+
+    /**
+     * Name of the environment variable that contains the number of rows that steps hand over to or take from a rowset in one go.
+     * Set to 1 (default) to pass rows one by one.
+     */
+    public static final String KETTLE_TRANS_ROWSET_BLOCK_SIZE = "KETTLE_TRANS_ROWSET_BLOCK_SIZE";
+
+    /**
+     * Name of the environment variable that switches the lock-free rowsets for 1:1 and N:N hops on (Y, default) or off (N).
+     */
+    public static final String KETTLE_TRANS_ROWSET_LOCK_FREE = "KETTLE_TRANS_ROWSET_LOCK_FREE";
+
+    /**
+     * Name of the environment variable that contains the number of times a step spins on a full or empty lock-free rowset before it parks its thread.
+     */
+    public static final String KETTLE_TRANS_ROWSET_SPIN_COUNT = "KETTLE_TRANS_ROWSET_SPIN_COUNT";
+
+    /**
+     * Name of the environment variable that contains the number of worker threads the steps of a transformation are scheduled on.
+     * The pool of workers is shared by all the transformations in the JVM.  Set to 0 (default) to start a thread for every step copy.
+     */
+    public static final String KETTLE_TRANS_WORKER_POOL_SIZE = "KETTLE_TRANS_WORKER_POOL_SIZE";
+
+    /**
+     * Name of the environment variable that runs the step threads and step initialisation threads on virtual threads (Y) or on platform threads (N, default).
+     * Virtual threads are only used if the JVM supports them.
+     */
+    public static final String KETTLE_TRANS_USE_VIRTUAL_THREADS = "KETTLE_TRANS_USE_VIRTUAL_THREADS";
+
+    /**
+     * Name of the environment variable that overrides the type of engine the transformations run in: Normal, SingleThreaded or SerialSingleThreaded.
+     * Leave empty (default) to use the type the transformation was designed with.
+     */
+    public static final String KETTLE_TRANS_TYPE = "KETTLE_TRANS_TYPE";
+
+    /**
+     * Name of the environment variable that contains the number of threads the Sort Rows step uses to sort a block of rows in memory.
+     * Defaults to the number of processors.
+     */
+    public static final String KETTLE_SORT_ROWS_THREADS = "KETTLE_SORT_ROWS_THREADS";
+
+    /**
+     * Name of the environment variable that contains the maximum number of temporary files the Sort Rows step merges at once (default 250).
+     * If there are more, they are merged into larger files first.
+     */
+    public static final String KETTLE_SORT_ROWS_MAX_OPEN_FILES = "KETTLE_SORT_ROWS_MAX_OPEN_FILES";
+
+    /**
+     * Name of the environment variable that contains the memory the steps of a transformation can use to keep rows around (sorting, grouping, lookups, ...).
+     * Either a number of megabytes or a percentage of the maximum heap size, for example 25%.  
+     * Leave empty (default) to let the steps decide based on the free memory.
+     */
+    public static final String KETTLE_TRANS_MEMORY_BUDGET = "KETTLE_TRANS_MEMORY_BUDGET";
+
+    /**
+     * Name of the environment variable that contains the directory where Stream Lookup keeps its off-heap lookup data in memory-mapped files.
+     * Leave empty (default) to use direct memory, limited by -XX:MaxDirectMemorySize.
+     */
+    public static final String KETTLE_STREAM_LOOKUP_OFF_HEAP_DIRECTORY = "KETTLE_STREAM_LOOKUP_OFF_HEAP_DIRECTORY";
 	
 	
 	/**
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * A ring buffer of rows without any locking for a hop between exactly one step copy that writes and one step copy that reads.<br>
+ * <br>
+ * <b>Only a single thread is allowed to put rows and only a single thread is allowed to get rows.</b><br>
+ * <br>
+ * The writer only ever moves the tail sequence and the reader only ever moves the head sequence.
+ * Both sequences are kept far apart in an array so that the two threads don't invalidate each others cache line.
+ * A thread that finds the buffer full (or empty) first spins for a number of times before it parks.
+ * The other side wakes it up as soon as it moved its sequence.
+ *
+ * @author matt
+ */
+public class LockFreeRowSet extends BaseRowSet implements Comparable<RowSet>, RowSet {
+
+	/** The default number of times to spin on a full or empty buffer before parking the thread */
+	public static final int DEFAULT_SPIN_COUNT = 100;
+
+	/** The maximum time a thread parks before it checks the buffer again, just in case a wake-up call was missed */
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/** 128 bytes apart: both on a cache line of their own */
+	private static final int HEAD = 15;
+	private static final int TAIL = 31;
+
+	private final Object[][] buffer;
+	private final int mask;
+	private final int capacity;
+	private final int spinCount;
+
+	/** The head (next row to get) and tail (next row to put) sequences, padded */
+	private final AtomicLongArray sequences;
+
+	/** The tail as last seen by the reader, only used by the reader */
+	private long cachedTail;
+
+	/** The head as last seen by the writer, only used by the writer */
+	private long cachedHead;
+
+	private volatile Thread waitingReader;
+	private volatile Thread waitingWriter;
+
+	/**
+	 * Create a new lock-free row set with maxSize capacity.
+	 * @param maxSize the maximum number of rows in the row set
+	 */
+	public LockFreeRowSet(int maxSize) {
+		this(maxSize, DEFAULT_SPIN_COUNT);
+	}
+
+	/**
+	 * Create a new lock-free row set with maxSize capacity.
+	 * @param maxSize the maximum number of rows in the row set
+	 * @param spinCount the number of times to spin on a full or empty buffer before the thread is parked, 0 to park right away.
+	 */
+	public LockFreeRowSet(int maxSize, int spinCount) {
+		super();
+
+		if (maxSize<=0) {
+			throw new IllegalArgumentException("The size of a row set needs to be larger than 0");
+		}
+
+		int size = 1;
+		while (size<maxSize) {
+			size <<= 1;
+		}
+		buffer = new Object[size][];
+		mask = size-1;
+		capacity = maxSize;
+		this.spinCount = Math.max(0, spinCount);
+		sequences = new AtomicLongArray(TAIL+16);
+	}
+
+	public boolean putRow(RowMetaInterface rowMeta, Object[] rowData) {
+		return putRowWait(rowMeta, rowData, Const.TIMEOUT_PUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	public boolean putRowWait(RowMetaInterface rowMeta, Object[] rowData, long time, TimeUnit tu) {
+		if (rowData==null) {
+			return false;
+		}
+		this.rowMeta = rowMeta;
+
+		long tail = sequences.get(TAIL);
+		if (!waitForRoom(tail, 1, tu.toNanos(time))) {
+			return false;
+		}
+		buffer[(int)tail & mask] = rowData;
+		publishTail(tail+1);
+		return true;
+	}
+
+	/**
+	 * Adds as many rows of the block as there is room for, the tail is only moved once.
+	 *
+	 * @see org.pentaho.di.core.BaseRowSet#putRows(org.pentaho.di.core.row.RowMetaInterface, java.lang.Object[][], int, int)
+	 */
+	public int putRows(RowMetaInterface rowMeta, Object[][] rows, int offset, int nrRows) {
+		if (nrRows<=0) {
+			return 0;
+		}
+		this.rowMeta = rowMeta;
+
+		long tail = sequences.get(TAIL);
+		if (!waitForRoom(tail, 1, TimeUnit.MILLISECONDS.toNanos(Const.TIMEOUT_PUT_MILLIS))) {
+			return 0;
+		}
+		cachedHead = sequences.get(HEAD); // take all the room there is, not just what we saw last time
+		int nr = (int)Math.min(nrRows, capacity-(tail-cachedHead));
+		for (int i=0;i<nr;i++) {
+			Object[] rowData = rows[offset+i];
+			if (rowData==null) {
+				nr=i;
+				break;
+			}
+			buffer[(int)(tail+i) & mask] = rowData;
+		}
+		if (nr>0) {
+			publishTail(tail+nr);
+		}
+		return nr;
+	}
+
+	public Object[] getRow() {
+		return getRowWait(Const.TIMEOUT_GET_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	public Object[] getRowImmediate() {
+		return getRowWait(0, TimeUnit.NANOSECONDS);
+	}
+
+	public Object[] getRowWait(long timeout, TimeUnit tu) {
+		long head = sequences.get(HEAD);
+		if (!waitForRows(head, tu.toNanos(timeout))) {
+			return null;
+		}
+		int index = (int)head & mask;
+		Object[] rowData = buffer[index];
+		buffer[index] = null;
+		publishHead(head+1);
+		return rowData;
+	}
+
+	/**
+	 * Takes all the available rows, up to maxRows, the head is only moved once.
+	 *
+	 * @see org.pentaho.di.core.BaseRowSet#getRowsWait(java.lang.Object[][], int, long, java.util.concurrent.TimeUnit)
+	 */
+	public int getRowsWait(Object[][] rows, int maxRows, long timeout, TimeUnit tu) {
+		if (maxRows<=0) {
+			return 0;
+		}
+		long head = sequences.get(HEAD);
+		if (!waitForRows(head, tu.toNanos(timeout))) {
+			return 0;
+		}
+		cachedTail = sequences.get(TAIL); // take all the rows there are, not just what we saw last time
+		int nr = (int)Math.min(maxRows, cachedTail-head);
+		for (int i=0;i<nr;i++) {
+			int index = (int)(head+i) & mask;
+			rows[i] = buffer[index];
+			buffer[index] = null;
+		}
+		publishHead(head+nr);
+		return nr;
+	}
+
+	public int size() {
+		// Read the head first: the tail can only grow in the meantime, never the other way around.
+		//
+		long head = sequences.get(HEAD);
+		long tail = sequences.get(TAIL);
+		return (int)(tail-head);
+	}
+
+	/**
+	 * Also wakes up a reader that is waiting for rows so it sees the end of the line right away.
+	 */
+	public void setDone() {
+		super.setDone();
+		Thread reader = waitingReader;
+		if (reader!=null) {
+			LockSupport.unpark(reader);
+		}
+	}
+
+	/**
+	 * Waits until there is room for the given number of rows.  Only to be called by the writer.
+	 * @return true if there is room, false if the buffer stayed full for the given time.
+	 */
+	private boolean waitForRoom(long tail, int nrRows, long nanos) {
+		if (tail+nrRows-cachedHead<=capacity) {
+			return true;
+		}
+		cachedHead = sequences.get(HEAD);
+		if (tail+nrRows-cachedHead<=capacity) {
+			return true;
+		}
+		if (nanos<=0) {
+			return false;
+		}
+
+		long start = 0L;
+		int spins = spinCount;
+		while (true) {
+			if (spins>0) {
+				spins--;
+			} else {
+				if (start==0L) {
+					start = System.nanoTime();
+				}
+				long left = nanos-(System.nanoTime()-start);
+				if (left<=0) {
+					return false;
+				}
+				waitingWriter = Thread.currentThread();
+				// Check again after we announced ourselves, the reader might have moved on in the meantime
+				//
+				cachedHead = sequences.get(HEAD);
+				if (tail+nrRows-cachedHead>capacity) {
+					LockSupport.parkNanos(this, Math.min(left, MAX_PARK_NANOS));
+				}
+				waitingWriter = null;
+				if (Thread.currentThread().isInterrupted()) {
+					return false;
+				}
+			}
+			cachedHead = sequences.get(HEAD);
+			if (tail+nrRows-cachedHead<=capacity) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Waits until there is at least one row to get.  Only to be called by the reader.
+	 * @return true if there are rows, false if the buffer stayed empty for the given time.
+	 */
+	private boolean waitForRows(long head, long nanos) {
+		if (cachedTail>head) {
+			return true;
+		}
+		cachedTail = sequences.get(TAIL);
+		if (cachedTail>head) {
+			return true;
+		}
+		if (nanos<=0) {
+			return false;
+		}
+
+		long start = 0L;
+		int spins = spinCount;
+		while (true) {
+			if (spins>0 && !isDone()) {
+				spins--;
+			} else {
+				if (start==0L) {
+					start = System.nanoTime();
+				}
+				long left = nanos-(System.nanoTime()-start);
+				if (left<=0) {
+					return false;
+				}
+				waitingReader = Thread.currentThread();
+				// Check again after we announced ourselves, the writer might have moved on in the meantime
+				//
+				cachedTail = sequences.get(TAIL);
+				if (cachedTail<=head && !isDone()) {
+					LockSupport.parkNanos(this, Math.min(left, MAX_PARK_NANOS));
+				}
+				waitingReader = null;
+				if (Thread.currentThread().isInterrupted()) {
+					return false;
+				}
+			}
+			cachedTail = sequences.get(TAIL);
+			if (cachedTail>head) {
+				return true;
+			}
+			if (isDone()) {
+				return false;
+			}
+		}
+	}
+
+	private void publishTail(long tail) {
+		sequences.set(TAIL, tail);
+		Thread reader = waitingReader;
+		if (reader!=null) {
+			LockSupport.unpark(reader);
+		}
+		signalReader();
+	}
+
+	private void publishHead(long head) {
+		sequences.set(HEAD, head);
+		Thread writer = waitingWriter;
+		if (writer!=null) {
+			LockSupport.unpark(writer);
+		}
+	}
+}
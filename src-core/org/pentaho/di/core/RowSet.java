@@ -40,6 +40,19 @@ public interface RowSet {
 	 */
 	public abstract boolean putRowWait(RowMetaInterface rowMeta, Object[] rowData, long time, TimeUnit tu);
 
+	/**
+	 * Offer a block of rows to this rowset providing for the description (metadata) of the rows.
+	 * If the buffer is full, wait (block) for a small period of time.
+	 * As many rows as there is room for are added in one go, in the order of the block.
+	 * 
+	 * @param rowMeta The description of the row data
+	 * @param rows the block of rows
+	 * @param offset the index of the first row of the block to add
+	 * @param nrRows the number of rows to add, starting at offset
+	 * @return the number of rows that were added to the rowset, 0 if this buffer stayed full.
+	 */
+	public abstract int putRows(RowMetaInterface rowMeta, Object[][] rows, int offset, int nrRows);
+
 	/**
 	 * Get a row from the input buffer, it blocks for a short period until a new row becomes available.
 	 * Otherwise, it returns null.
@@ -60,6 +73,27 @@ public interface RowSet {
 	 */
 	public abstract Object[] getRowWait(long timeout, TimeUnit tu);
 
+	/**
+	 * Get a block of rows from the input buffer in one go, it blocks for a short period until a row becomes available.
+	 * 
+	 * @param rows the block to store the rows in, starting at index 0
+	 * @param maxRows the maximum number of rows to take
+	 * @return the number of rows stored in the block, 0 if no row is available.
+	 */
+	public abstract int getRows(Object[][] rows, int maxRows);
+
+	/**
+	 * Get a block of rows from the input buffer in one go
+	 * if rows are available or wait until timeout for the first row to arrive.
+	 * 
+	 * @param rows the block to store the rows in, starting at index 0
+	 * @param maxRows the maximum number of rows to take
+	 * @param timeout The number of units of time
+	 * @param tu The unit of time to use
+	 * @return the number of rows stored in the block, 0 if no row is available.
+	 */
+	public abstract int getRowsWait(Object[][] rows, int maxRows, long timeout, TimeUnit tu);
+
 	/**
 	 * @return Set indication that there is no more input
 	 */
@@ -130,4 +164,9 @@ public interface RowSet {
      * @return true if this row set is blocking.
      */
     public abstract boolean isBlocking();
+
+    /**
+     * @param signal the signal to raise when rows are added to this row set or when it is marked as done, null to raise none.
+     */
+    public abstract void setSignal(RowSetSignal signal);
 }
\ No newline at end of file
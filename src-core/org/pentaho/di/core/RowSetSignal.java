@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A "data available" signal shared by all the input row sets of a step copy.<br>
+ * <br>
+ * The row sets raise the signal when rows are put in them and when they are marked as done.
+ * That way a step that reads from several row sets can block once until any of them has something to offer,
+ * instead of polling the row sets one after the other.<br>
+ * <br>
+ * Only the thread of the step copy that reads from the row sets can wait for the signal.
+ *
+ * @author matt
+ */
+public class RowSetSignal {
+
+	private volatile Thread waitingReader;
+
+	/**
+	 * Wakes up the reader if it is waiting for input.  Called by the row sets after rows were added or after they were marked as done.
+	 */
+	public void signal() {
+		Thread reader = waitingReader;
+		if (reader!=null) {
+			LockSupport.unpark(reader);
+		}
+	}
+
+	/**
+	 * Waits until one of the row sets has rows or is done, until the signal is raised or until the given time has passed.
+	 * The row sets are attached to this signal first so that row sets that were added to the list later on are covered as well.
+	 *
+	 * @param rowSets the input row sets of the step copy
+	 * @param timeout the maximum number of units of time to wait
+	 * @param tu the unit of time to use
+	 * @return true if one of the row sets has rows or is done
+	 */
+	public boolean waitForInput(List<RowSet> rowSets, long timeout, TimeUnit tu) {
+		waitingReader = Thread.currentThread();
+		try {
+			// Check after we announced ourselves, a row that arrives in the meantime will wake us up.
+			//
+			for (int i=0;i<rowSets.size();i++) {
+				rowSets.get(i).setSignal(this);
+			}
+			if (hasInput(rowSets)) {
+				return true;
+			}
+			LockSupport.parkNanos(this, tu.toNanos(timeout));
+			return hasInput(rowSets);
+		} finally {
+			waitingReader = null;
+		}
+	}
+
+	/**
+	 * @param rowSets the row sets to check
+	 * @return true if one of the row sets has rows or is done
+	 */
+	public static boolean hasInput(List<RowSet> rowSets) {
+		for (int i=0;i<rowSets.size();i++) {
+			RowSet rowSet = rowSets.get(i);
+			if (rowSet.size()>0 || rowSet.isDone()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
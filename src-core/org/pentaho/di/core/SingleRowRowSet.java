@@ -50,6 +50,17 @@ public class SingleRowRowSet extends BaseRowSet implements Comparable<RowSet>, R
 		return putRow(rowMeta, rowData);
 	}
 
+	/**
+	 * This row set only ever holds a single row so at most the first row of the block is taken, and only once the previous row was read.
+	 * The caller keeps the other rows and hands them over one at a time.
+	 */
+	@Override
+	public int putRows(RowMetaInterface rowMeta, Object[][] rows, int offset, int nrRows) {
+		if (nrRows<=0 || row!=null) return 0;
+		putRow(rowMeta, rows[offset]);
+		return 1;
+	}
+
 	@Override
 	public int size() {
 		return row==null ? 0 : 1;
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core.hash;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hash index of serialized keys and values (byte arrays) that keeps the data off the Java heap.<br>
+ * <br>
+ * The keys and values are appended to large slabs: direct byte buffers or memory-mapped temporary files.
+ * The index itself is an open addressing table (linear probing) of 2 primitive arrays: the hash codes and the addresses of the entries.
+ * That way millions of entries are only a handful of objects for the garbage collector to look at.<br>
+ * <br>
+ * Entries are never removed.  When a value is replaced by one of a different length, the new entry is appended and the old one is left unused.
+ * This class is not thread safe.
+ *
+ * @author matt
+ */
+public class OffHeapHashIndex {
+
+	public static final int DEFAULT_SLAB_SIZE = 64*1024*1024;
+
+	private static final int   STANDARD_INDEX_SIZE  = 1024;
+	private static final float STANDARD_LOAD_FACTOR = 0.7f;
+	private static final int   MAX_INDEX_SIZE       = 1<<30;
+
+	private int slabSize;
+	private File directory;
+
+	private List<ByteBuffer> slabs;
+	private List<File> files;
+	private ByteBuffer current;
+	private int writeOffset;
+	private long dataSize;
+
+	private int[] hashCodes;
+	/** The slab number (plus one) in the high int, the offset in the slab in the low int. 0 is an empty spot. */
+	private long[] addresses;
+	private int count;
+	private int resizeThresHold;
+
+	/**
+	 * Create an index that keeps its data in direct memory.
+	 */
+	public OffHeapHashIndex() {
+		this(DEFAULT_SLAB_SIZE, null);
+	}
+
+	/**
+	 * @param slabSize the size of the blocks of memory that are allocated to store the keys and values
+	 * @param directory the directory of the memory-mapped files to store the keys and values in or null to use direct memory
+	 */
+	public OffHeapHashIndex(int slabSize, File directory) {
+		this.slabSize = slabSize;
+		this.directory = directory;
+
+		slabs = new ArrayList<ByteBuffer>();
+		files = new ArrayList<File>();
+
+		hashCodes = new int[STANDARD_INDEX_SIZE];
+		addresses = new long[STANDARD_INDEX_SIZE];
+		resizeThresHold = (int)(STANDARD_INDEX_SIZE*STANDARD_LOAD_FACTOR);
+	}
+
+	/**
+	 * @return the number of keys in the index
+	 */
+	public int size() {
+		return count;
+	}
+
+	public boolean isEmpty() {
+		return count==0;
+	}
+
+	/**
+	 * @return the number of bytes allocated outside of the heap to store the keys and values
+	 */
+	public long getDataSize() {
+		return dataSize;
+	}
+
+	/**
+	 * @param key the serialized key
+	 * @return a copy of the serialized value or null if the key is not in the index
+	 */
+	public byte[] get(byte[] key) {
+		int hashCode = generateHashCode(key);
+		int mask = addresses.length-1;
+		int indexPointer = hashCode & mask;
+
+		while (addresses[indexPointer]!=0L) {
+			if (hashCodes[indexPointer]==hashCode && equalsKey(addresses[indexPointer], key)) {
+				return readValue(addresses[indexPointer]);
+			}
+			indexPointer = (indexPointer+1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Add a key with its value, an existing value of the key is replaced.
+	 *
+	 * @param key the serialized key
+	 * @param value the serialized value
+	 * @throws IOException in case a memory-mapped file can't be created
+	 */
+	public void put(byte[] key, byte[] value) throws IOException {
+		int hashCode = generateHashCode(key);
+		int mask = addresses.length-1;
+		int indexPointer = hashCode & mask;
+
+		while (addresses[indexPointer]!=0L) {
+			long address = addresses[indexPointer];
+			if (hashCodes[indexPointer]==hashCode && equalsKey(address, key)) {
+				ByteBuffer slab = getSlab(address);
+				int offset = getOffset(address);
+				if (slab.getInt(offset+4)==value.length) {
+					// Same size, overwrite the value in place
+					//
+					slab.position(offset+8+key.length);
+					slab.put(value);
+				} else {
+					addresses[indexPointer] = append(key, value);
+				}
+				return;
+			}
+			indexPointer = (indexPointer+1) & mask;
+		}
+
+		hashCodes[indexPointer] = hashCode;
+		addresses[indexPointer] = append(key, value);
+		count++;
+
+		if (count>=resizeThresHold) {
+			resize();
+		}
+	}
+
+	/**
+	 * Release the memory and remove the memory-mapped files.  The index is empty afterwards.
+	 */
+	public void close() {
+		slabs.clear();
+		current = null;
+		dataSize = 0L;
+		for (File file : files) {
+			// A mapped file can only be removed once the mapping is garbage collected on some platforms
+			//
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+		files.clear();
+
+		hashCodes = new int[STANDARD_INDEX_SIZE];
+		addresses = new long[STANDARD_INDEX_SIZE];
+		resizeThresHold = (int)(STANDARD_INDEX_SIZE*STANDARD_LOAD_FACTOR);
+		count = 0;
+	}
+
+	/**
+	 * Write the entry at the end of the current slab: the key length, the value length, the key and the value.
+	 *
+	 * @return the address of the entry
+	 */
+	private long append(byte[] key, byte[] value) throws IOException {
+		int length = 8+key.length+value.length;
+		if (current==null || writeOffset+length>current.capacity()) {
+			current = allocateSlab(Math.max(slabSize, length));
+			slabs.add(current);
+			writeOffset = 0;
+		}
+		int offset = writeOffset;
+		current.position(offset);
+		current.putInt(key.length);
+		current.putInt(value.length);
+		current.put(key);
+		current.put(value);
+		writeOffset+=length;
+
+		return ((long)slabs.size()<<32) | offset;
+	}
+
+	private ByteBuffer allocateSlab(int size) throws IOException {
+		dataSize+=size;
+		if (directory==null) {
+			return ByteBuffer.allocateDirect(size);
+		}
+
+		File file = File.createTempFile("offheap", ".tmp", directory);
+		files.add(file);
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			randomAccessFile.setLength(size);
+			return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} finally {
+			randomAccessFile.close(); // the mapping stays valid
+		}
+	}
+
+	private ByteBuffer getSlab(long address) {
+		return slabs.get((int)(address>>>32)-1);
+	}
+
+	private static int getOffset(long address) {
+		return (int)address;
+	}
+
+	private boolean equalsKey(long address, byte[] key) {
+		ByteBuffer slab = getSlab(address);
+		int offset = getOffset(address);
+		if (slab.getInt(offset)!=key.length) {
+			return false;
+		}
+		offset+=8;
+		for (int i=0;i<key.length;i++) {
+			if (slab.get(offset+i)!=key[i]) return false;
+		}
+		return true;
+	}
+
+	private byte[] readValue(long address) {
+		ByteBuffer slab = getSlab(address);
+		int offset = getOffset(address);
+		int keyLength = slab.getInt(offset);
+		byte[] value = new byte[slab.getInt(offset+4)];
+		slab.position(offset+8+keyLength);
+		slab.get(value);
+		return value;
+	}
+
+	/**
+	 * Double the size of the index.  The hash codes are kept so the keys don't need to be read again.
+	 */
+	private void resize() {
+		if (addresses.length>=MAX_INDEX_SIZE) {
+			resizeThresHold = Integer.MAX_VALUE; // keep on filling up, it gets slower
+			return;
+		}
+		int[] oldHashCodes = hashCodes;
+		long[] oldAddresses = addresses;
+
+		int newSize = 2*oldAddresses.length;
+		int mask = newSize-1;
+		hashCodes = new int[newSize];
+		addresses = new long[newSize];
+
+		for (int i=0;i<oldAddresses.length;i++) {
+			if (oldAddresses[i]!=0L) {
+				int indexPointer = oldHashCodes[i] & mask;
+				while (addresses[indexPointer]!=0L) {
+					indexPointer = (indexPointer+1) & mask;
+				}
+				hashCodes[indexPointer] = oldHashCodes[i];
+				addresses[indexPointer] = oldAddresses[i];
+			}
+		}
+		resizeThresHold = (int)(newSize*STANDARD_LOAD_FACTOR);
+	}
+
+	/**
+	 * A hash code of all the bytes of the key, the bits are mixed well for the power of 2 index size.
+	 */
+	public static int generateHashCode(byte[] key) {
+		int hash = 0x811C9DC5;
+		for (int i=0;i<key.length;i++) {
+			hash = (hash ^ key[i]) * 0x01000193;
+		}
+		hash ^= hash>>>16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash>>>13;
+		hash *= 0xC2B2AE35;
+		hash ^= hash>>>16;
+		return hash;
+	}
+}
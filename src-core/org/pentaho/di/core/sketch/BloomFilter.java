@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core.sketch;
+
+/**
+ * Remembers which keys were seen in a fixed amount of memory: a Bloom filter.<br>
+ * <br>
+ * A key that was added is always found again.  A key that wasn't added is reported as "probably seen" with a small probability,
+ * the false positive rate the filter was sized for.  The keys are given as 2 independent 64-bit hash codes,
+ * the bit positions are derived from those with double hashing.
+ *
+ * @author matt
+ */
+public class BloomFilter {
+
+	private long[] bits;
+	private long nrBits;
+	private int nrHashFunctions;
+
+	/**
+	 * @param expectedKeys the number of distinct keys that will be added
+	 * @param falsePositiveRate the probability that a new key is reported as seen once all the keys are added, for example 0.01
+	 */
+	public BloomFilter(long expectedKeys, double falsePositiveRate) {
+		if (expectedKeys<1) {
+			throw new IllegalArgumentException("The expected number of keys of a Bloom filter needs to be positive: "+expectedKeys);
+		}
+		if (falsePositiveRate<=0.0 || falsePositiveRate>=1.0) {
+			throw new IllegalArgumentException("The false positive rate of a Bloom filter needs to be between 0 and 1: "+falsePositiveRate);
+		}
+		long size = (long)Math.ceil(-expectedKeys*Math.log(falsePositiveRate)/(Math.log(2)*Math.log(2)));
+		int nrLongs = (int)Math.min(Integer.MAX_VALUE-8, Math.max(1L, (size+63)/64));
+		bits = new long[nrLongs];
+		nrBits = 64L*nrLongs;
+		nrHashFunctions = (int)Math.max(1L, Math.round((double)nrBits/expectedKeys*Math.log(2)));
+	}
+
+	/**
+	 * Add a key.
+	 *
+	 * @param hash1 the first hash code of the key
+	 * @param hash2 the second hash code of the key
+	 * @return true if the key wasn't seen before, false if it was probably seen before
+	 */
+	public boolean put(long hash1, long hash2) {
+		boolean added = false;
+		long combined = hash1;
+		for (int i=0;i<nrHashFunctions;i++) {
+			long bit = (combined & Long.MAX_VALUE) % nrBits;
+			int index = (int)(bit>>>6);
+			long mask = 1L<<(bit & 63);
+			if ((bits[index] & mask)==0L) {
+				bits[index]|=mask;
+				added = true;
+			}
+			combined+=hash2;
+		}
+		return added;
+	}
+
+	/**
+	 * @param hash1 the first hash code of the key
+	 * @param hash2 the second hash code of the key
+	 * @return true if the key was probably added before, false if it certainly wasn't
+	 */
+	public boolean mightContain(long hash1, long hash2) {
+		long combined = hash1;
+		for (int i=0;i<nrHashFunctions;i++) {
+			long bit = (combined & Long.MAX_VALUE) % nrBits;
+			if ((bits[(int)(bit>>>6)] & (1L<<(bit & 63)))==0L) {
+				return false;
+			}
+			combined+=hash2;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of bytes of the bit set
+	 */
+	public long getMemorySize() {
+		return 8L*bits.length;
+	}
+
+	public int getNrHashFunctions() {
+		return nrHashFunctions;
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core.sketch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Estimates the number of distinct values in a fixed amount of memory: a HyperLogLog sketch.<br>
+ * <br>
+ * As long as there are only a few distinct values, their 64-bit hash codes are kept in a small hash set and the count is (nearly) exact.
+ * After that the sketch switches to 2^precision registers of one byte, the standard error is then 1.04/sqrt(2^precision), 0.8% for the default precision of 14.<br>
+ * <br>
+ * Sketches with the same precision can be merged and serialized, for example to combine the partial results of step copies or slave servers.
+ *
+ * @author matt
+ */
+public class HyperLogLog {
+
+	public static final int DEFAULT_PRECISION = 14;
+
+	private static final byte[] MAGIC = { 'H', 'L', 'L', 1 };
+
+	private int precision;
+	private int nrRegisters;
+
+	/** The registers, null as long as the sketch is sparse */
+	private byte[] registers;
+
+	/** The hash codes of the sparse sketch, 0 is an empty spot */
+	private long[] hashes;
+	private int nrHashes;
+
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * @param precision the number of bits of the hash code that select a register: 4 to 18
+	 */
+	public HyperLogLog(int precision) {
+		if (precision<4 || precision>18) {
+			throw new IllegalArgumentException("The precision of a HyperLogLog sketch needs to be between 4 and 18: "+precision);
+		}
+		this.precision = precision;
+		this.nrRegisters = 1<<precision;
+		this.hashes = new long[16];
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Add a value to the sketch.  A binary value that holds a serialized sketch is merged into this one.
+	 *
+	 * @param valueMeta the metadata of the value
+	 * @param object the value data, null values are ignored
+	 * @throws KettleValueException in case the value can't be converted
+	 */
+	public void addValue(ValueMetaInterface valueMeta, Object object) throws KettleValueException {
+		if (valueMeta.isNull(object)) {
+			return;
+		}
+		Object value = valueMeta.convertToNormalStorageType(object);
+		if (value instanceof byte[] && isSketch((byte[])value)) {
+			merge(fromByteArray((byte[])value));
+		} else {
+			addHash(hash(value));
+		}
+	}
+
+	/**
+	 * Add the hash code of a value.
+	 *
+	 * @param hash a well mixed 64-bit hash code, see hash()
+	 */
+	public void addHash(long hash) {
+		if (registers==null) {
+			addSparse(hash==0L ? 1L : hash);
+			if (nrHashes>nrRegisters/16) {
+				toDense();
+			}
+		} else {
+			addRegister(hash);
+		}
+	}
+
+	/**
+	 * @return the estimated number of distinct values
+	 */
+	public long cardinality() {
+		if (registers==null) {
+			return nrHashes;
+		}
+
+		double sum = 0.0;
+		int zeros = 0;
+		for (int i=0;i<nrRegisters;i++) {
+			sum+=1.0/(1L<<registers[i]);
+			if (registers[i]==0) zeros++;
+		}
+		double alpha = 0.7213/(1.0+1.079/nrRegisters);
+		double estimate = alpha*nrRegisters*nrRegisters/sum;
+
+		// Small cardinalities are estimated better by the number of empty registers (linear counting)
+		//
+		if (estimate<=2.5*nrRegisters && zeros>0) {
+			estimate = nrRegisters*Math.log((double)nrRegisters/zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Merge the values of another sketch into this one.
+	 *
+	 * @param other the sketch to merge, it has to have the same precision
+	 */
+	public void merge(HyperLogLog other) {
+		if (other.precision!=precision) {
+			throw new IllegalArgumentException("Unable to merge HyperLogLog sketches with a different precision: "+precision+" and "+other.precision);
+		}
+		if (other.registers==null) {
+			for (int i=0;i<other.hashes.length;i++) {
+				if (other.hashes[i]!=0L) addHash(other.hashes[i]);
+			}
+			return;
+		}
+		if (registers==null) {
+			toDense();
+		}
+		for (int i=0;i<nrRegisters;i++) {
+			if (other.registers[i]>registers[i]) registers[i] = other.registers[i];
+		}
+	}
+
+	/**
+	 * @return the serialized sketch
+	 */
+	public byte[] toByteArray() {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(registers==null ? 10+8*nrHashes : 6+nrRegisters);
+			DataOutputStream dos = new DataOutputStream(bytes);
+			dos.write(MAGIC);
+			dos.writeByte(precision);
+			if (registers==null) {
+				dos.writeByte(0);
+				dos.writeInt(nrHashes);
+				for (int i=0;i<hashes.length;i++) {
+					if (hashes[i]!=0L) dos.writeLong(hashes[i]);
+				}
+			} else {
+				dos.writeByte(1);
+				dos.write(registers);
+			}
+			dos.close();
+			return bytes.toByteArray();
+		} catch(IOException e) {
+			throw new RuntimeException(e); // can't happen in memory
+		}
+	}
+
+	/**
+	 * @param bytes a sketch serialized with toByteArray()
+	 * @return the sketch
+	 * @throws KettleValueException in case the bytes are not a valid sketch
+	 */
+	public static HyperLogLog fromByteArray(byte[] bytes) throws KettleValueException {
+		if (!isSketch(bytes)) {
+			throw new KettleValueException("The binary value is not a HyperLogLog sketch");
+		}
+		try {
+			DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes, MAGIC.length, bytes.length-MAGIC.length));
+			HyperLogLog sketch = new HyperLogLog(dis.readByte());
+			if (dis.readByte()==0) {
+				int nrHashes = dis.readInt();
+				for (int i=0;i<nrHashes;i++) {
+					sketch.addHash(dis.readLong());
+				}
+			} else {
+				sketch.registers = new byte[sketch.nrRegisters];
+				dis.readFully(sketch.registers);
+				sketch.hashes = null;
+			}
+			return sketch;
+		} catch(Exception e) {
+			throw new KettleValueException("Unable to read a HyperLogLog sketch", e);
+		}
+	}
+
+	/**
+	 * @return true if the bytes start like a serialized sketch
+	 */
+	public static boolean isSketch(byte[] bytes) {
+		if (bytes.length<MAGIC.length+2) return false;
+		for (int i=0;i<MAGIC.length;i++) {
+			if (bytes[i]!=MAGIC[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * A 64-bit hash code of a value in normal storage, equal values of the same data type get the same hash code.
+	 */
+	public static long hash(Object value) {
+		if (value instanceof Long || value instanceof Integer) {
+			return mix(((Number)value).longValue());
+		}
+		if (value instanceof Double) {
+			return mix(Double.doubleToLongBits(((Double)value).doubleValue()));
+		}
+		if (value instanceof Date) {
+			return mix(((Date)value).getTime());
+		}
+		if (value instanceof Boolean) {
+			return mix(((Boolean)value).booleanValue() ? 1L : 0L);
+		}
+		if (value instanceof byte[]) {
+			byte[] bytes = (byte[])value;
+			long hash = 0xCBF29CE484222325L;
+			for (int i=0;i<bytes.length;i++) {
+				hash = (hash ^ (bytes[i] & 0xFF)) * 0x100000001B3L;
+			}
+			return mix(hash);
+		}
+		String string;
+		if (value instanceof BigDecimal) {
+			string = ((BigDecimal)value).stripTrailingZeros().toString(); // 1.0 and 1.00 are the same
+		} else {
+			string = value.toString();
+		}
+		long hash = 0xCBF29CE484222325L;
+		for (int i=0;i<string.length();i++) {
+			hash = (hash ^ string.charAt(i)) * 0x100000001B3L;
+		}
+		return mix(hash);
+	}
+
+	/**
+	 * The finalizer of MurmurHash3: every bit of the input affects all the bits of the output.
+	 */
+	private static long mix(long hash) {
+		hash ^= hash>>>33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash>>>33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash>>>33;
+		return hash;
+	}
+
+	private void addSparse(long hash) {
+		int mask = hashes.length-1;
+		int index = (int)hash & mask;
+		while (hashes[index]!=0L) {
+			if (hashes[index]==hash) return;
+			index = (index+1) & mask;
+		}
+		hashes[index] = hash;
+		nrHashes++;
+
+		if (nrHashes*2>hashes.length) {
+			long[] old = hashes;
+			hashes = new long[old.length*2];
+			nrHashes = 0;
+			for (int i=0;i<old.length;i++) {
+				if (old[i]!=0L) addSparse(old[i]);
+			}
+		}
+	}
+
+	private void toDense() {
+		registers = new byte[nrRegisters];
+		long[] sparse = hashes;
+		hashes = null;
+		nrHashes = 0;
+		for (int i=0;i<sparse.length;i++) {
+			if (sparse[i]!=0L) addRegister(sparse[i]);
+		}
+	}
+
+	private void addRegister(long hash) {
+		int index = (int)(hash>>>(64-precision));
+		// The position of the first 1 bit in the remaining bits, a stop bit keeps it in range
+		//
+		long rest = (hash<<precision) | (1L<<(precision-1));
+		byte rank = (byte)(Long.numberOfLeadingZeros(rest)+1);
+		if (rank>registers[index]) {
+			registers[index] = rank;
+		}
+	}
+}
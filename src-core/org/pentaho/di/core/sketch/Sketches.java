@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core.sketch;
+
+/**
+ * Helps the aggregating steps keep their approximate aggregates: one HyperLogLog sketch or t-digest per subject field,
+ * created on first use in an array of sketches.
+ *
+ * @author matt
+ */
+public class Sketches {
+
+	private Sketches() {
+	}
+
+	/**
+	 * @param sketches the sketches of the subjects
+	 * @param i the index of the subject
+	 * @return the HyperLogLog sketch of the subject, created if there is none yet
+	 */
+	public static HyperLogLog getDistinctSketch(Object[] sketches, int i) {
+		if (sketches[i]==null) sketches[i] = new HyperLogLog();
+		return (HyperLogLog) sketches[i];
+	}
+
+	/**
+	 * @param sketches the sketches of the subjects
+	 * @param i the index of the subject
+	 * @return the t-digest of the subject, created if there is none yet
+	 */
+	public static TDigest getPercentileSketch(Object[] sketches, int i) {
+		if (sketches[i]==null) sketches[i] = new TDigest();
+		return (TDigest) sketches[i];
+	}
+
+	/**
+	 * @param digest the t-digest to estimate the percentile with
+	 * @param fraction the percentile as a fraction between 0 and 1, 0.5 for the median
+	 * @return the estimated percentile or null if no values were added to the digest
+	 */
+	public static Double getPercentile(TDigest digest, double fraction) {
+		double percentile = digest.quantile(fraction);
+		return Double.isNaN(percentile) ? null : Double.valueOf(percentile);
+	}
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core.sketch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Estimates percentiles (the median, the 95th percentile, ...) of numbers in a fixed amount of memory: a (merging) t-digest.<br>
+ * <br>
+ * The numbers are summarized in centroids: a mean and a weight (number of values).  The centroids near the extremes are kept small,
+ * so the high and low percentiles are the most accurate.  The compression limits the number of centroids to about compression/2.
+ * New values are collected in a buffer first and merged into the centroids when the buffer is full.<br>
+ * <br>
+ * Digests can be merged and serialized, for example to combine the partial results of step copies or slave servers.
+ *
+ * @author matt
+ */
+public class TDigest {
+
+	public static final double DEFAULT_COMPRESSION = 100.0;
+
+	private static final byte[] MAGIC = { 'T', 'D', 'G', 1 };
+
+	private double compression;
+
+	private double[] means;
+	private double[] weights;
+	private int nrCentroids;
+
+	private double[] bufferMeans;
+	private double[] bufferWeights;
+	private int bufferSize;
+	private int maxBufferSize;
+
+	private double totalWeight;
+	private double min;
+	private double max;
+
+	public TDigest() {
+		this(DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param compression the accuracy of the digest: a larger compression keeps more centroids
+	 */
+	public TDigest(double compression) {
+		if (compression<10.0) {
+			compression = 10.0;
+		}
+		this.compression = compression;
+		// Start small, a digest is kept for every group
+		//
+		means = new double[8];
+		weights = new double[8];
+		bufferMeans = new double[8];
+		bufferWeights = new double[8];
+		maxBufferSize = 5*((int)Math.ceil(compression)+10);
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Add a value to the digest.  A binary value that holds a serialized digest is merged into this one.
+	 *
+	 * @param valueMeta the metadata of the value
+	 * @param object the value data, null values are ignored
+	 * @throws KettleValueException in case the value can't be converted to a number
+	 */
+	public void addValue(ValueMetaInterface valueMeta, Object object) throws KettleValueException {
+		if (valueMeta.isNull(object)) {
+			return;
+		}
+		if (valueMeta.isBinary()) {
+			merge(fromByteArray(valueMeta.getBinary(object)));
+		} else {
+			add(valueMeta.getNumber(object).doubleValue());
+		}
+	}
+
+	public void add(double value) {
+		add(value, 1.0);
+	}
+
+	/**
+	 * @param value the value to add, NaN is ignored
+	 * @param weight the number of times the value occurs
+	 */
+	public void add(double value, double weight) {
+		if (Double.isNaN(value) || weight<=0.0) {
+			return;
+		}
+		if (bufferSize==bufferMeans.length) {
+			if (bufferSize<maxBufferSize) {
+				bufferMeans = grow(bufferMeans, Math.min(maxBufferSize, 2*bufferSize));
+				bufferWeights = grow(bufferWeights, bufferMeans.length);
+			} else {
+				compress();
+			}
+		}
+		bufferMeans[bufferSize] = value;
+		bufferWeights[bufferSize] = weight;
+		bufferSize++;
+		totalWeight+=weight;
+		if (value<min) min = value;
+		if (value>max) max = value;
+	}
+
+	/**
+	 * Merge the values of another digest into this one.
+	 */
+	public void merge(TDigest other) {
+		other.compress();
+		for (int i=0;i<other.nrCentroids;i++) {
+			add(other.means[i], other.weights[i]);
+		}
+		if (other.min<min) min = other.min;
+		if (other.max>max) max = other.max;
+	}
+
+	/**
+	 * @return the number of values in the digest
+	 */
+	public long size() {
+		return Math.round(totalWeight);
+	}
+
+	/**
+	 * @param fraction the percentile as a fraction: 0.5 for the median, 0.95 for the 95th percentile
+	 * @return the estimated percentile or NaN if the digest is empty
+	 */
+	public double quantile(double fraction) {
+		if (fraction<0.0 || fraction>1.0) {
+			throw new IllegalArgumentException("A percentile needs to be between 0 and 100: "+(fraction*100));
+		}
+		compress();
+		if (nrCentroids==0) {
+			return Double.NaN;
+		}
+		if (nrCentroids==1) {
+			return means[0];
+		}
+
+		// The values of a centroid are spread around its mean, interpolate between the centers of the centroids
+		//
+		double index = fraction*totalWeight;
+		if (index<weights[0]/2) {
+			return min + (means[0]-min)*index/(weights[0]/2);
+		}
+		double center = weights[0]/2;
+		for (int i=0;i<nrCentroids-1;i++) {
+			double next = center + (weights[i]+weights[i+1])/2;
+			if (index<=next) {
+				return means[i] + (means[i+1]-means[i])*(index-center)/(next-center);
+			}
+			center = next;
+		}
+		double last = weights[nrCentroids-1]/2;
+		return max - (max-means[nrCentroids-1])*Math.max(0.0, totalWeight-index)/last;
+	}
+
+	/**
+	 * @return the serialized digest
+	 */
+	public byte[] toByteArray() {
+		compress();
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(32+16*nrCentroids);
+			DataOutputStream dos = new DataOutputStream(bytes);
+			dos.write(MAGIC);
+			dos.writeDouble(compression);
+			dos.writeDouble(min);
+			dos.writeDouble(max);
+			dos.writeInt(nrCentroids);
+			for (int i=0;i<nrCentroids;i++) {
+				dos.writeDouble(means[i]);
+				dos.writeDouble(weights[i]);
+			}
+			dos.close();
+			return bytes.toByteArray();
+		} catch(IOException e) {
+			throw new RuntimeException(e); // can't happen in memory
+		}
+	}
+
+	/**
+	 * @param bytes a digest serialized with toByteArray()
+	 * @return the digest
+	 * @throws KettleValueException in case the bytes are not a valid digest
+	 */
+	public static TDigest fromByteArray(byte[] bytes) throws KettleValueException {
+		if (!isDigest(bytes)) {
+			throw new KettleValueException("The binary value is not a t-digest");
+		}
+		try {
+			DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes, MAGIC.length, bytes.length-MAGIC.length));
+			TDigest digest = new TDigest(dis.readDouble());
+			double min = dis.readDouble();
+			double max = dis.readDouble();
+			int nrCentroids = dis.readInt();
+			for (int i=0;i<nrCentroids;i++) {
+				digest.add(dis.readDouble(), dis.readDouble());
+			}
+			digest.min = min;
+			digest.max = max;
+			return digest;
+		} catch(IOException e) {
+			throw new KettleValueException("Unable to read a t-digest", e);
+		}
+	}
+
+	/**
+	 * @return true if the bytes start like a serialized digest
+	 */
+	public static boolean isDigest(byte[] bytes) {
+		if (bytes.length<MAGIC.length+28) return false;
+		for (int i=0;i<MAGIC.length;i++) {
+			if (bytes[i]!=MAGIC[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Merge the buffer into the centroids: sort everything on the mean and combine neighbours as long as the scale function allows it.
+	 */
+	private void compress() {
+		if (bufferSize==0) {
+			return;
+		}
+
+		int size = nrCentroids+bufferSize;
+		double[] sortedMeans = new double[size];
+		double[] sortedWeights = new double[size];
+		System.arraycopy(means, 0, sortedMeans, 0, nrCentroids);
+		System.arraycopy(weights, 0, sortedWeights, 0, nrCentroids);
+		System.arraycopy(bufferMeans, 0, sortedMeans, nrCentroids, bufferSize);
+		System.arraycopy(bufferWeights, 0, sortedWeights, nrCentroids, bufferSize);
+		sort(sortedMeans, sortedWeights, 0, size-1);
+		bufferSize = 0;
+
+		if (means.length<size) {
+			means = grow(means, size);
+			weights = grow(weights, means.length);
+		}
+		int n = 0;
+		means[0] = sortedMeans[0];
+		weights[0] = sortedWeights[0];
+		double weightSoFar = 0.0;
+		double kLeft = scale(0.0);
+		for (int i=1;i<size;i++) {
+			double proposed = weights[n]+sortedWeights[i];
+			if (scale((weightSoFar+proposed)/totalWeight)-kLeft<=1.0) {
+				weights[n] = proposed;
+				means[n]+= (sortedMeans[i]-means[n])*sortedWeights[i]/proposed;
+			} else {
+				weightSoFar+=weights[n];
+				kLeft = scale(weightSoFar/totalWeight);
+				n++;
+				means[n] = sortedMeans[i];
+				weights[n] = sortedWeights[i];
+			}
+		}
+		nrCentroids = n+1;
+	}
+
+	/**
+	 * The k1 scale function of the t-digest: the centroids get smaller towards both ends.
+	 */
+	private double scale(double q) {
+		q = Math.min(1.0, Math.max(0.0, q));
+		return compression/(2*Math.PI)*Math.asin(2*q-1);
+	}
+
+	private static double[] grow(double[] array, int size) {
+		double[] larger = new double[size];
+		System.arraycopy(array, 0, larger, 0, array.length);
+		return larger;
+	}
+
+	/**
+	 * Quick sort of the means, the weights move along.
+	 */
+	private static void sort(double[] keys, double[] values, int low, int high) {
+		while (low<high) {
+			if (high-low<16) {
+				for (int i=low+1;i<=high;i++) {
+					double key = keys[i];
+					double value = values[i];
+					int j = i-1;
+					while (j>=low && keys[j]>key) {
+						keys[j+1] = keys[j];
+						values[j+1] = values[j];
+						j--;
+					}
+					keys[j+1] = key;
+					values[j+1] = value;
+				}
+				return;
+			}
+			double pivot = keys[(low+high)>>>1];
+			int i = low;
+			int j = high;
+			while (i<=j) {
+				while (keys[i]<pivot) i++;
+				while (keys[j]>pivot) j--;
+				if (i<=j) {
+					double key = keys[i]; keys[i] = keys[j]; keys[j] = key;
+					double value = values[i]; values[i] = values[j]; values[j] = value;
+					i++;
+					j--;
+				}
+			}
+			// Recurse into the smaller part, loop over the larger one
+			//
+			if (j-low<high-i) {
+				sort(keys, values, low, j);
+				low = i;
+			} else {
+				sort(keys, values, i, high);
+				high = j;
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core.util;
+
+import java.lang.reflect.Method;
+
+/**
+ * Creates the threads that run steps and the like.<br>
+ * <br>
+ * On a JVM that supports virtual threads (Java 21 and up) these can be used instead of platform threads.
+ * A virtual thread that blocks on I/O or on a lock releases its carrier thread, so a lot more of them can be waiting at the same time.
+ * The virtual threads are created through reflection since the code needs to run on older JVMs as well.
+ *
+ * @author matt
+ */
+public class ThreadUtil {
+
+	private static Method ofVirtualMethod;
+	private static Method unstartedMethod;
+
+	static {
+		try {
+			ofVirtualMethod = Thread.class.getMethod("ofVirtual");
+			unstartedMethod = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+		} catch(Exception e) {
+			// Not supported by this JVM
+			//
+			ofVirtualMethod = null;
+			unstartedMethod = null;
+		}
+	}
+
+	/**
+	 * @return true if this JVM can create virtual threads
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return ofVirtualMethod!=null;
+	}
+
+	/**
+	 * Creates a new thread, it still needs to be started.
+	 *
+	 * @param runnable the code to run in the thread
+	 * @param virtual true to create a virtual thread if the JVM supports it, false for a platform thread
+	 * @return the new, unstarted thread
+	 */
+	public static Thread newThread(Runnable runnable, boolean virtual) {
+		if (virtual && isVirtualThreadSupported()) {
+			try {
+				return (Thread) unstartedMethod.invoke(ofVirtualMethod.invoke(null), runnable);
+			} catch(Exception e) {
+				// Fall back to a platform thread, it does the same thing
+			}
+		}
+		return new Thread(runnable);
+	}
+}
@@ -119,6 +119,11 @@ public abstract class BaseDatabaseMeta implements Cloneable
      * A flag to determine if we should use result streaming on MySQL
      */
     public static final String ATTRIBUTE_USE_RESULT_STREAMING = "STREAM_RESULTS";
+    
+    /**
+     * The number of rows to fetch in one round trip
+     */
+    public static final String ATTRIBUTE_FETCH_SIZE = "FETCH_SIZE";
 
     /**
      * A flag to determine if we should use a double decimal separator to specify schema/table combinations on MS-SQL server
@@ -718,6 +723,22 @@ public abstract class BaseDatabaseMeta implements Cloneable
 		return DatabaseMeta.CLOB_LENGTH;
 	}
 
+	/**
+	 * @return the maximum number of values in a single IN ( ... ) list, 0 if there is no known limit
+	 */
+	public int getMaxInListSize()
+	{
+		return 0;
+	}
+
+	/**
+	 * @return the maximum number of parameters (?) in a single statement, 0 if there is no known limit
+	 */
+	public int getMaxStatementParameters()
+	{
+		return 0;
+	}
+
 	
 	/**
 	 * @return true if the database supports transactions.
@@ -1263,6 +1284,31 @@ public abstract class BaseDatabaseMeta implements Cloneable
     {
         attributes.setProperty(ATTRIBUTE_USE_RESULT_STREAMING, useStreaming?"Y":"N");
     }
+    
+    /**
+     * @return the number of rows to fetch in one round trip by default for this type of database, 0 to leave it to the driver
+     */
+    public int getDefaultFetchSize()
+    {
+        return 0;
+    }
+    
+    /**
+     * @return the number of rows to fetch in one round trip for this connection, the default of the database type if it's not set
+     */
+    public int getFetchSize()
+    {
+        int fetchSize = Const.toInt(attributes.getProperty(ATTRIBUTE_FETCH_SIZE), 0);
+        return fetchSize>0 ? fetchSize : getDefaultFetchSize();
+    }
+    
+    /**
+     * @param fetchSize the number of rows to fetch in one round trip for this connection, 0 to use the default of the database type
+     */
+    public void setFetchSize(int fetchSize)
+    {
+        attributes.setProperty(ATTRIBUTE_FETCH_SIZE, Integer.toString(fetchSize));
+    }
 
     /**
      * @return true if all fields should always be quoted in db
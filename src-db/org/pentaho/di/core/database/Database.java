@@ -28,7 +28,6 @@
 
 package org.pentaho.di.core.database;
 
-import java.io.StringReader;
 import java.sql.BatchUpdateException;
 import java.sql.Blob;
 import java.sql.CallableStatement;
@@ -52,6 +51,7 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.sql.DataSource;
 
@@ -77,7 +77,6 @@ import org.pentaho.di.core.logging.LogTableField;
 import org.pentaho.di.core.logging.LogTableInterface;
 import org.pentaho.di.core.logging.LoggingObjectInterface;
 import org.pentaho.di.core.logging.LoggingObjectType;
-import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMeta;
@@ -106,6 +105,7 @@ public class Database implements VariableSpace, LoggingObjectInterface
 	
 	private int    rowlimit;
 	private int    commitsize;
+	private int    fetchSize;
 
 	private Connection connection;
 		
@@ -121,6 +121,7 @@ public class Database implements VariableSpace, LoggingObjectInterface
 	private DatabaseMetaData  dbmd;
 	
 	private RowMetaInterface rowMeta; 
+	private ResultSetReader  resultSetReader;
 	
 	private int written;
 	
@@ -147,6 +148,12 @@ public class Database implements VariableSpace, LoggingObjectInterface
     
     private String containerObjectId;
     
+    /**
+     * Guards opening, closing and cancelling the connection.
+     * A lock rather than synchronized methods so that a step running on a virtual thread doesn't pin its carrier thread while it waits for the database.
+     */
+    private final ReentrantLock connectionLock = new ReentrantLock();
+    
 	/**
 	 * Construct a new Database Connection
 	 * @param databaseMeta The Database Connection Info to construct the connection with.
@@ -238,6 +245,23 @@ public class Database implements VariableSpace, LoggingObjectInterface
 		rowlimit = rows;
 	}
 	
+	/**
+	 * Set the number of rows to fetch from the database in one round trip, for the queries opened with this connection.
+	 * @param fetchSize the fetch size or 0 to use the fetch size of the database connection
+	 */
+	public void setFetchSize(int fetchSize)
+	{
+		this.fetchSize = fetchSize;
+	}
+	
+	/**
+	 * @return the number of rows fetched in one round trip: the one set on this object, otherwise the one of the database connection, 0 to leave it to the driver
+	 */
+	public int getFetchSize()
+	{
+		return fetchSize>0 ? fetchSize : databaseMeta.getFetchSize();
+	}
+	
 	/**
      * @return Returns the prepStatementInsert.
      */
@@ -281,42 +305,50 @@ public class Database implements VariableSpace, LoggingObjectInterface
         connect(null, partitionId);
     }
 
-    public synchronized void connect(String group, String partitionId) throws KettleDatabaseException
+    public void connect(String group, String partitionId) throws KettleDatabaseException
     {
-        // Before anything else, let's see if we already have a connection defined for this group/partition!
-        // The group is called after the thread-name of the transformation or job that is running
-        // The name of that threadname is expected to be unique (it is in Kettle)
-        // So the deal is that if there is another thread using that, we go for it. 
-        // 
-        if (!Const.isEmpty(group))
+        connectionLock.lock();
+        try
         {
-            this.connectionGroup = group;
-            this.partitionId = partitionId;
+            // Before anything else, let's see if we already have a connection defined for this group/partition!
+            // The group is called after the thread-name of the transformation or job that is running
+            // The name of that threadname is expected to be unique (it is in Kettle)
+            // So the deal is that if there is another thread using that, we go for it. 
+            // 
+            if (!Const.isEmpty(group))
+            {
+                this.connectionGroup = group;
+                this.partitionId = partitionId;
             
-            DatabaseConnectionMap map = DatabaseConnectionMap.getInstance();
+                DatabaseConnectionMap map = DatabaseConnectionMap.getInstance();
             
-            // Try to find the connection for the group
-            Database lookup = map.getDatabase(group, partitionId, this);
-            if (lookup==null) // We already opened this connection for the partition & database in this group
-            {
-                // Do a normal connect and then store this database object for later re-use.
-                normalConnect(partitionId);
-                opened++;
-                copy = opened;
+                // Try to find the connection for the group
+                Database lookup = map.getDatabase(group, partitionId, this);
+                if (lookup==null) // We already opened this connection for the partition & database in this group
+                {
+                    // Do a normal connect and then store this database object for later re-use.
+                    normalConnect(partitionId);
+                    opened++;
+                    copy = opened;
                 
-                map.storeDatabase(group, partitionId, this);
+                    map.storeDatabase(group, partitionId, this);
+                }
+                else
+                {
+                    connection = lookup.getConnection();
+                    lookup.setOpened(lookup.getOpened()+1); // if this counter hits 0 again, close the connection.
+                    copy = lookup.getOpened();
+                }
             }
             else
             {
-                connection = lookup.getConnection();
-                lookup.setOpened(lookup.getOpened()+1); // if this counter hits 0 again, close the connection.
-                copy = lookup.getOpened();
+                // Proceed with a normal connect
+                normalConnect(partitionId);
             }
         }
-        else
+        finally
         {
-            // Proceed with a normal connect
-            normalConnect(partitionId);
+            connectionLock.unlock();
         }
     }
     
@@ -501,71 +533,79 @@ public class Database implements VariableSpace, LoggingObjectInterface
 	/**
 	 * Disconnect from the database and close all open prepared statements.
 	 */
-	public synchronized void disconnect()
+	public void disconnect()
 	{	
+		connectionLock.lock();
 		try
 		{
-			if (connection==null)
-            {
-                return ; // Nothing to do...
-            }
-			if (connection.isClosed())
-            {
-                return ; // Nothing to do...
-            }
+			try
+			{
+				if (connection==null)
+                {
+                    return ; // Nothing to do...
+                }
+				if (connection.isClosed())
+                {
+                    return ; // Nothing to do...
+                }
 
-			if (pstmt    !=null) 
-            { 
-                pstmt.close(); 
-                pstmt=null; 
-            } 
-			if (prepStatementLookup!=null) 
-            { 
-                prepStatementLookup.close(); 
-                prepStatementLookup=null; 
-            } 
-			if (prepStatementInsert!=null) 
-			{ 
-                prepStatementInsert.close(); 
-                prepStatementInsert=null; 
-            } 
-			if (prepStatementUpdate!=null) 
-            { 
-                prepStatementUpdate.close(); 
-                prepStatementUpdate=null; 
-            } 
-			if (pstmt_seq!=null) 
-            { 
-                pstmt_seq.close(); 
-                pstmt_seq=null; 
-            } 
+				if (pstmt    !=null) 
+                { 
+                    pstmt.close(); 
+                    pstmt=null; 
+                } 
+				if (prepStatementLookup!=null) 
+                { 
+                    prepStatementLookup.close(); 
+                    prepStatementLookup=null; 
+                } 
+				if (prepStatementInsert!=null) 
+				{ 
+                    prepStatementInsert.close(); 
+                    prepStatementInsert=null; 
+                } 
+				if (prepStatementUpdate!=null) 
+                { 
+                    prepStatementUpdate.close(); 
+                    prepStatementUpdate=null; 
+                } 
+				if (pstmt_seq!=null) 
+                { 
+                    pstmt_seq.close(); 
+                    pstmt_seq=null; 
+                } 
             
-            // See if there are other steps using this connection in a connection group.
-            // If so, we will hold commit & connection close until then.
-            // 
-            if (!Const.isEmpty(connectionGroup))
-            {
-                return;
-            }
-            else
-            {
-                if (!isAutoCommit()) // Do we really still need this commit??
+                // See if there are other steps using this connection in a connection group.
+                // If so, we will hold commit & connection close until then.
+                // 
+                if (!Const.isEmpty(connectionGroup))
                 {
-                    commit();
+                    return;
+                }
+                else
+                {
+                    if (!isAutoCommit()) // Do we really still need this commit??
+                    {
+                        commit();
+                    }
                 }
-            }
 
-            closeConnectionOnly();
-		}
-		catch(SQLException ex) 
-		{
-			log.logError("Error disconnecting from database:"+Const.CR+ex.getMessage());
-            log.logError(Const.getStackTracker(ex));
+                closeConnectionOnly();
+			}
+			catch(SQLException ex) 
+			{
+				log.logError("Error disconnecting from database:"+Const.CR+ex.getMessage());
+                log.logError(Const.getStackTracker(ex));
+			}
+			catch(KettleDatabaseException dbe)
+			{
+				log.logError("Error disconnecting from database:"+Const.CR+dbe.getMessage());
+                log.logError(Const.getStackTracker(dbe));
+			}
 		}
-		catch(KettleDatabaseException dbe)
+		finally
 		{
-			log.logError("Error disconnecting from database:"+Const.CR+dbe.getMessage());
-            log.logError(Const.getStackTracker(dbe));
+			connectionLock.unlock();
 		}
 	}
 	
@@ -573,22 +613,31 @@ public class Database implements VariableSpace, LoggingObjectInterface
 	 * Only for unique connections usage, typically you use disconnect() to disconnect() from the database.
 	 * @throws KettleDatabaseException in case there is an error during connection close. 
 	 */
-	public synchronized void closeConnectionOnly() throws KettleDatabaseException {
+	public void closeConnectionOnly() throws KettleDatabaseException
+	{
+		connectionLock.lock();
 		try
 		{
-			if (connection!=null) 
-			{ 
-				connection.close(); 
-				if (!databaseMeta.isUsingConnectionPool()) 
-				{
-					connection=null; 
-				}
-			} 
+			try
+			{
+				if (connection!=null) 
+				{ 
+					connection.close(); 
+					if (!databaseMeta.isUsingConnectionPool()) 
+					{
+						connection=null; 
+					}
+				} 
 			
-			if(log.isDetailed()) log.logDetailed("Connection to database closed!");
+				if(log.isDetailed()) log.logDetailed("Connection to database closed!");
+			}
+			catch(SQLException e) {
+				throw new KettleDatabaseException("Error disconnecting from database '"+toString()+"'", e);
+			}
 		}
-		catch(SQLException e) {
-			throw new KettleDatabaseException("Error disconnecting from database '"+toString()+"'", e);
+		finally
+		{
+			connectionLock.unlock();
 		}
 	}
 	
@@ -609,17 +658,25 @@ public class Database implements VariableSpace, LoggingObjectInterface
      */
     public void cancelStatement(Statement statement) throws KettleDatabaseException
     {
+        connectionLock.lock();
         try
         {
-            if (statement!=null) 
-            { 
-                statement.cancel(); 
-            } 
-            if(log.isDebug()) log.logDebug("Statement canceled!");
+            try
+            {
+                if (statement!=null) 
+                { 
+                    statement.cancel(); 
+                } 
+                if(log.isDebug()) log.logDebug("Statement canceled!");
+            }
+            catch(SQLException ex) 
+            {
+                throw new KettleDatabaseException("Error cancelling statement", ex);
+            }
         }
-        catch(SQLException ex) 
+        finally
         {
-            throw new KettleDatabaseException("Error cancelling statement", ex);
+            connectionLock.unlock();
         }
     }
 
@@ -905,195 +962,39 @@ public class Database implements VariableSpace, LoggingObjectInterface
 
 	public void setValue(PreparedStatement ps, ValueMetaInterface v, Object object, int pos) throws KettleDatabaseException
 	{
-		String debug = "";
-
-		try
-		{
-			switch(v.getType())
-			{
-			case ValueMetaInterface.TYPE_NUMBER :
-                if (!v.isNull(object)) 
-                {
-                    debug="Number, not null, getting number from value";
-                    double num = v.getNumber(object).doubleValue();
-                    if (databaseMeta.supportsFloatRoundingOnUpdate() && v.getPrecision()>=0)
-                    {
-                        debug="Number, rounding to precision ["+v.getPrecision()+"]";
-                        num = Const.round(num, v.getPrecision());
-                    }
-                    debug="Number, setting ["+num+"] on position #"+pos+" of the prepared statement";
-                    ps.setDouble(pos, num);
-                }
-				else 
-                {
-                    ps.setNull(pos, java.sql.Types.DOUBLE);   
-                }
-				break;
-			case ValueMetaInterface.TYPE_INTEGER:
-				debug="Integer";
-				if (!v.isNull(object)) 
-				{
-					if (databaseMeta.supportsSetLong())
-					{
-                        ps.setLong(pos, v.getInteger(object).longValue() );
-					}
-					else
-					{
-                        double d = v.getNumber(object).doubleValue();
-					    if (databaseMeta.supportsFloatRoundingOnUpdate() && v.getPrecision()>=0)
-                        {
-                            ps.setDouble(pos, d );
-                        }
-                        else
-                        {
-                            ps.setDouble(pos, Const.round( d, v.getPrecision() ) );
-                        }
-					}
-				}
-				else 
-                {
-                    ps.setNull(pos, java.sql.Types.INTEGER);   
-                }
-				break;
-			case ValueMetaInterface.TYPE_STRING : 
-				debug="String";
-				if (v.getLength()<DatabaseMeta.CLOB_LENGTH)
-				{
-					if (!v.isNull(object)) 
-					{
-						ps.setString(pos, v.getString(object));
-					}
-					else 
-					{
-						ps.setNull(pos, java.sql.Types.VARCHAR);
-					}
-				}
-				else
-				{
-					if (!v.isNull(object))
-					{
-                        String string = v.getString(object);
-                        
-						int maxlen = databaseMeta.getMaxTextFieldLength();
-						int len    = string.length();
-						
-						// Take the last maxlen characters of the string...
-						int begin  = len - maxlen;
-						if (begin<0) begin=0;
-						
-						// Get the substring!
-						String logging = string.substring(begin);
-	
-						if (databaseMeta.supportsSetCharacterStream())
-						{
-                            StringReader sr = new StringReader(logging);
-							ps.setCharacterStream(pos, sr, logging.length());
-						}
-						else
-						{
-							ps.setString(pos, logging);
-						}
-					}
-					else
-					{
-						ps.setNull(pos, java.sql.Types.VARCHAR);
-					}
-				}
-				break;
-			case ValueMetaInterface.TYPE_DATE   : 
-				debug="Date";
-				if (!v.isNull(object)) 
-				{
-					long dat = v.getInteger(object).longValue(); // converts using Date.getTime()
-                    
-					if(v.getPrecision()==1 || !databaseMeta.supportsTimeStampToDateConversion())
-                    {
-                        // Convert to DATE!
-					    java.sql.Date ddate = new java.sql.Date(dat);
-                        ps.setDate(pos, ddate);
-                    }
-                    else
-					{
-                        java.sql.Timestamp sdate = new java.sql.Timestamp(dat);
-					    ps.setTimestamp(pos, sdate);
-					}
-				}
-				else
-                {
-                    if(v.getPrecision()==1 || !databaseMeta.supportsTimeStampToDateConversion())
-                    {
-                        ps.setNull(pos, java.sql.Types.DATE);
-                    }
-                    else
-                    {
-                        ps.setNull(pos, java.sql.Types.TIMESTAMP);
-                    }
-                }
-				break;
-			case ValueMetaInterface.TYPE_BOOLEAN:
-				debug="Boolean";
-                if (databaseMeta.supportsBooleanDataType())
-                {
-                    if (!v.isNull(object))
-                    {
-                        ps.setBoolean(pos, v.getBoolean(object).booleanValue());
-                    }
-                    else 
-                    {
-                        ps.setNull(pos, java.sql.Types.BOOLEAN);
-                    }
-                }
-                else
-                {
-    				if (!v.isNull(object))
-                    {
-                        ps.setString(pos, v.getBoolean(object).booleanValue()?"Y":"N");
-                    }
-    				else 
-                    {
-                        ps.setNull(pos, java.sql.Types.CHAR);
-                    }
-                }
-				break;
-            case ValueMetaInterface.TYPE_BIGNUMBER:
-                debug="BigNumber";
-                if (!v.isNull(object)) 
-                {
-                    ps.setBigDecimal(pos, v.getBigNumber(object));
-                }
-                else 
-                {
-                    ps.setNull(pos, java.sql.Types.DECIMAL);   
-                }
-                break;
-			case ValueMetaInterface.TYPE_BINARY:
-				debug="Binary";
-				if (!v.isNull(object)) 
-				{
-                    ps.setBytes(pos, v.getBinary(object));
-				}
-				else
-				{
-                    ps.setNull(pos, java.sql.Types.BINARY);   
-                }
-				break;                
-			default:
-				debug="default";
-            // placeholder
-                ps.setNull(pos, java.sql.Types.VARCHAR);
- 				break;
-			}
-		}
-		catch(SQLException ex) 
-		{
-			throw new KettleDatabaseException("Error setting value #"+pos+" ["+v.toString()+"] on prepared statement ("+debug+")"+Const.CR+ex.toString(), ex);
-		}
-		catch(Exception e)
+		if (v==null)
 		{
-			throw new KettleDatabaseException("Error setting value #"+pos+" ["+(v==null?"NULL":v.toString())+"] on prepared statement ("+debug+")"+Const.CR+e.toString(), e);
+			throw new KettleDatabaseException("Error setting value #"+pos+" [NULL] on prepared statement");
 		}
+		StatementBinder.createValueBinder(databaseMeta, v).setValue(ps, object, pos);
 	}
     
+    /**
+     * Work out once how to set the values of rows on a prepared statement, to set many rows faster.
+     * 
+     * @param rowMeta the metadata of the rows
+     * @return the binder to pass to setValues()
+     */
+    public StatementBinder createStatementBinder(RowMetaInterface rowMeta)
+    {
+        return new StatementBinder(databaseMeta, rowMeta);
+    }
+    
+    public void setValues(StatementBinder binder, Object[] data, PreparedStatement ps) throws KettleDatabaseException
+    {
+        binder.setValues(ps, data);
+    }
+    
+    public void setValuesInsert(StatementBinder binder, Object[] data) throws KettleDatabaseException
+    {
+        binder.setValues(prepStatementInsert, data);
+    }
+    
+    public void setValuesLookup(StatementBinder binder, Object[] data) throws KettleDatabaseException
+    {
+        binder.setValues(prepStatementLookup, data);
+    }
+    
     public void setValues(RowMetaAndData row, PreparedStatement ps) throws KettleDatabaseException
     {
         setValues(row.getRowMeta(), row.getData(), ps);
@@ -1101,21 +1002,9 @@ public class Database implements VariableSpace, LoggingObjectInterface
     
     public void setValues(RowMetaInterface rowMeta, Object[] data, PreparedStatement ps) throws KettleDatabaseException
     {
-        // now set the values in the row!
-        for (int i=0;i<rowMeta.size();i++)
-        {
-            ValueMetaInterface v = rowMeta.getValueMeta(i);
-            Object object = data[i];
-            
-            try
-            {
-                setValue(ps, v, object, i+1);
-            }
-            catch(KettleDatabaseException e)
-            {
-                throw new KettleDatabaseException("offending row : "+rowMeta, e);
-            }
-        }
+        // To set many rows, create the binder once with createStatementBinder()
+        //
+        createStatementBinder(rowMeta).setValues(ps, data);
     }	
 
     /**
@@ -1125,26 +1014,7 @@ public class Database implements VariableSpace, LoggingObjectInterface
      */
     public void setValues(RowMetaInterface rowMeta, Object[] data, PreparedStatement ps, int ignoreThisValueIndex) throws KettleDatabaseException
 	{
-		// now set the values in the row!
-        int index=0;
-		for (int i=0;i<rowMeta.size();i++)
-		{
-            if (i!=ignoreThisValueIndex)
-            {
-                ValueMetaInterface v = rowMeta.getValueMeta(i);
-                Object object = data[i];
-                
-                try
-    			{
-    				setValue(ps, v, object, index+1);
-                    index++;
-    			}
-    			catch(KettleDatabaseException e)
-    			{
-    				throw new KettleDatabaseException("offending row : "+rowMeta, e);
-    			}
-            }
-		}
+		createStatementBinder(rowMeta).setValues(ps, data, ignoreThisValueIndex);
 	}
 
 	/** 
@@ -1810,13 +1680,7 @@ public class Database implements VariableSpace, LoggingObjectInterface
 				if (canWeSetFetchSize(pstmt) )  
 				{
 					debug = "P Set fetchsize";
-                    int fs = Const.FETCH_SIZE<=pstmt.getMaxRows()?pstmt.getMaxRows():Const.FETCH_SIZE;
-                    
-                    if (databaseMeta.isMySQLVariant() && databaseMeta.isStreamingResults()) {
-                        pstmt.setFetchSize(Integer.MIN_VALUE);
-                    } else { 
-                        pstmt.setFetchSize(fs); 
-                    }
+                    pstmt.setFetchSize(getStatementFetchSize(pstmt)); 
 
 					debug = "P Set fetch direction";
 					pstmt.setFetchDirection(fetch_mode);
@@ -1833,15 +1697,7 @@ public class Database implements VariableSpace, LoggingObjectInterface
                 if (canWeSetFetchSize(sel_stmt)) 
 				{
 					debug = "Set fetchsize";
-                    int fs = Const.FETCH_SIZE<=sel_stmt.getMaxRows()?sel_stmt.getMaxRows():Const.FETCH_SIZE;
-                    if (databaseMeta.getDatabaseInterface() instanceof MySQLDatabaseMeta && databaseMeta.isStreamingResults())
-                    {
-                        sel_stmt.setFetchSize(Integer.MIN_VALUE);
-                    }
-                    else
-                    {
-                        sel_stmt.setFetchSize(fs);
-                    }
+                    sel_stmt.setFetchSize(getStatementFetchSize(sel_stmt));
 					debug = "Set fetch direction";
 					sel_stmt.setFetchDirection(fetch_mode);
 				} 
@@ -1878,13 +1734,32 @@ public class Database implements VariableSpace, LoggingObjectInterface
 	private boolean canWeSetFetchSize(Statement statement) throws SQLException
     {
         return databaseMeta.isFetchSizeSupported() && 
-            ( statement.getMaxRows()>0 || 
+            ( getFetchSize()>0 ||
+              statement.getMaxRows()>0 || 
               databaseMeta.getDatabaseInterface() instanceof PostgreSQLDatabaseMeta || 
               ( databaseMeta.getDatabaseInterface() instanceof MySQLDatabaseMeta && databaseMeta.isStreamingResults() ) 
             );     
     }
     
+    private int getStatementFetchSize(Statement statement) throws SQLException
+    {
+        if (databaseMeta.isMySQLVariant() && databaseMeta.isStreamingResults())
+        {
+            return Integer.MIN_VALUE; // stream the rows one by one
+        }
+        int fs = getFetchSize()>0 ? getFetchSize() : Const.FETCH_SIZE;
+        return fs<=statement.getMaxRows() ? statement.getMaxRows() : fs;
+    }
+    
     public ResultSet openQuery(PreparedStatement ps, RowMetaInterface params, Object[] data) throws KettleDatabaseException
+	{
+		return openQuery(ps, createStatementBinder(params), data);
+	}
+	
+    /**
+     * Execute a prepared query, the parameters are set with a binder that was created beforehand.
+     */
+    public ResultSet openQuery(PreparedStatement ps, StatementBinder binder, Object[] data) throws KettleDatabaseException
 	{
 		ResultSet res;
 		String debug = "Start";
@@ -1893,20 +1768,12 @@ public class Database implements VariableSpace, LoggingObjectInterface
 		try
 		{
 			debug = "OQ Set values";
-			setValues(params, data, ps); // set the parameters!
+			binder.setValues(ps, data); // set the parameters!
 			
 			if (canWeSetFetchSize(ps)) 
 			{
 				debug = "OQ Set fetchsize";
-                int fs = Const.FETCH_SIZE<=ps.getMaxRows()?ps.getMaxRows():Const.FETCH_SIZE;
-                if (databaseMeta.getDatabaseInterface() instanceof MySQLDatabaseMeta && databaseMeta.isStreamingResults())
-                {
-                    ps.setFetchSize(Integer.MIN_VALUE);
-                }
-                else
-                {
-                    ps.setFetchSize(fs);
-                }
+                ps.setFetchSize(getStatementFetchSize(ps));
 				
 				debug = "OQ Set fetch direction";
 				ps.setFetchDirection(ResultSet.FETCH_FORWARD);
@@ -2716,6 +2583,17 @@ public class Database implements VariableSpace, LoggingObjectInterface
 		return getRow(rs, null, rowMeta);
 	}
 
+	/**
+	 * Work out once how to read the rows of a result set, to read many rows faster.
+	 * 
+	 * @param rowMeta the metadata of the rows in the result set
+	 * @return the reader of the rows
+	 */
+	public ResultSetReader createResultSetReader(RowMetaInterface rowMeta)
+	{
+		return new ResultSetReader(databaseMeta, rowMeta);
+	}
+
 	/**
 	 * Get a row from the resultset.
 	 * @param rs The resultset to get the row from
@@ -2723,83 +2601,13 @@ public class Database implements VariableSpace, LoggingObjectInterface
 	 */
 	public Object[] getRow(ResultSet rs, ResultSetMetaData dummy, RowMetaInterface rowInfo) throws KettleDatabaseException
 	{
-		try
-		{
-			int nrcols=rowInfo.size();
-			Object[] data = RowDataUtil.allocateRowData(nrcols);
-            
-			if (rs.next())
-			{
-				for (int i=0;i<nrcols;i++)
-				{
-                    ValueMetaInterface val = rowInfo.getValueMeta(i);
-                    
-					switch(val.getType())
-					{
-					case ValueMetaInterface.TYPE_BOOLEAN   : data[i] = Boolean.valueOf( rs.getBoolean(i+1) ); break;
-					case ValueMetaInterface.TYPE_NUMBER    : data[i] = new Double( rs.getDouble(i+1) ); break;
-                    case ValueMetaInterface.TYPE_BIGNUMBER : data[i] = rs.getBigDecimal(i+1); break;
-					case ValueMetaInterface.TYPE_INTEGER   : data[i] = Long.valueOf( rs.getLong(i+1) ); break;
-					case ValueMetaInterface.TYPE_STRING    : 
-						{
-							if (val.isStorageBinaryString()) {
-								data[i] = rs.getBytes(i+1);
-							}
-							else {
-								data[i] = rs.getString(i+1);
-							}
-						}
-						break;
-					case ValueMetaInterface.TYPE_BINARY    : 
-                        {
-                            if (databaseMeta.supportsGetBlob())
-                            {
-                                Blob blob = rs.getBlob(i+1);
-                                if (blob!=null)
-                                {
-                                    data[i] = blob.getBytes(1L, (int)blob.length());
-                                }
-                                else
-                                {
-                                    data[i] = null;
-                                }
-                            }
-                            else
-                            {
-                                data[i] = rs.getBytes(i+1);
-                            }
-                        }
-                        break;
-					case ValueMetaInterface.TYPE_DATE      :
-						if (databaseMeta.getDatabaseInterface() instanceof NeoviewDatabaseMeta && val.getOriginalColumnType()==java.sql.Types.TIME)
-						{
-							// Neoview can not handle getDate / getTimestamp for a Time column
-							data[i] = rs.getTime(i+1); break;  // Time is a subclass of java.util.Date, the default date will be 1970-01-01
-						}
-						else if (val.getPrecision()!=1 && databaseMeta.supportsTimeStampToDateConversion())
-                        {
-                            data[i] = rs.getTimestamp(i+1); break; // Timestamp extends java.util.Date
-                        }
-                        else 
-                        {
-                            data[i] = rs.getDate(i+1); break;
-                        }
-					default: break;
-					}
-					if (rs.wasNull()) data[i] = null; // null value, it's the default but we want it just to make sure we handle this case too.
-				}
-			}
-			else
-			{
-                data=null;
-			}
-			
-			return data;
-		}
-		catch(SQLException ex)
+		// The reader of the last row metadata is kept, it's worked out again for other metadata
+		//
+		if (resultSetReader==null || resultSetReader.getRowMeta()!=rowInfo || resultSetReader.getColumnCount()!=rowInfo.size())
 		{
-			throw new KettleDatabaseException("Couldn't get row from result set", ex);
+			resultSetReader = createResultSetReader(rowInfo);
 		}
+		return resultSetReader.getRow(rs);
 	}
 
 	public void printSQLException(SQLException ex)
@@ -3715,58 +3523,66 @@ public class Database implements VariableSpace, LoggingObjectInterface
     
 
 
-    public synchronized Long getNextValue(Hashtable<String,Counter> counters, String tableName, String val_key) throws KettleDatabaseException
+    public Long getNextValue(Hashtable<String,Counter> counters, String tableName, String val_key) throws KettleDatabaseException
     {
         return getNextValue(counters, null, tableName, val_key);
     }
     
-	public synchronized Long getNextValue(Hashtable<String,Counter> counters, String schemaName, String tableName, String val_key) throws KettleDatabaseException
+	public Long getNextValue(Hashtable<String,Counter> counters, String schemaName, String tableName, String val_key) throws KettleDatabaseException
 	{
-        Long nextValue = null;
+		connectionLock.lock();
+		try
+		{
+            Long nextValue = null;
         
-        String schemaTable = databaseMeta.getQuotedSchemaTableCombination(schemaName, tableName);
+            String schemaTable = databaseMeta.getQuotedSchemaTableCombination(schemaName, tableName);
     
-		String lookup = schemaTable+"."+databaseMeta.quoteField(val_key);
+			String lookup = schemaTable+"."+databaseMeta.quoteField(val_key);
 		
-		// Try to find the previous sequence value...
-		Counter counter = null;
-        if (counters!=null) counter=counters.get(lookup);
+			// Try to find the previous sequence value...
+			Counter counter = null;
+            if (counters!=null) counter=counters.get(lookup);
         
-		if (counter==null)
-		{
-			RowMetaAndData rmad = getOneRow("SELECT MAX("+databaseMeta.quoteField(val_key)+") FROM "+schemaTable);
-			if (rmad!=null)
+			if (counter==null)
 			{
-                long previous;
-                try
-                {
-                	Long tmp = rmad.getRowMeta().getInteger(rmad.getData(), 0);
+				RowMetaAndData rmad = getOneRow("SELECT MAX("+databaseMeta.quoteField(val_key)+") FROM "+schemaTable);
+				if (rmad!=null)
+				{
+                    long previous;
+                    try
+                    {
+                    	Long tmp = rmad.getRowMeta().getInteger(rmad.getData(), 0);
                 	
-                	// A "select max(x)" on a table with no matching rows will return null.
-                	if ( tmp != null )
-                		previous = tmp.longValue();
-                	else
-                		previous = 0L;
-                }
-                catch (KettleValueException e)
-                {
-                    throw new KettleDatabaseException("Error getting the first long value from the max value returned from table : "+schemaTable);
-                }
-				counter = new Counter(previous+1, 1);
-				nextValue = Long.valueOf( counter.next() );
-				if (counters!=null) counters.put(lookup, counter);
+                    	// A "select max(x)" on a table with no matching rows will return null.
+                    	if ( tmp != null )
+                    		previous = tmp.longValue();
+                    	else
+                    		previous = 0L;
+                    }
+                    catch (KettleValueException e)
+                    {
+                        throw new KettleDatabaseException("Error getting the first long value from the max value returned from table : "+schemaTable);
+                    }
+					counter = new Counter(previous+1, 1);
+					nextValue = Long.valueOf( counter.next() );
+					if (counters!=null) counters.put(lookup, counter);
+				}
+				else
+				{
+					throw new KettleDatabaseException("Couldn't find maximum key value from table "+schemaTable);
+				}
 			}
 			else
 			{
-				throw new KettleDatabaseException("Couldn't find maximum key value from table "+schemaTable);
+				nextValue = Long.valueOf( counter.next() );
 			}
+        
+            return nextValue;
 		}
-		else
+		finally
 		{
-			nextValue = Long.valueOf( counter.next() );
+			connectionLock.unlock();
 		}
-        
-        return nextValue;
 	}
 			
 	public String toString()
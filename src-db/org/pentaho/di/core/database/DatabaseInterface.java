@@ -370,6 +370,16 @@ public interface DatabaseInterface extends Cloneable
 	 */
 	public int getMaxVARCHARLength();
 
+	/**
+	 * @return the maximum number of values in a single IN ( ... ) list, 0 if there is no known limit
+	 */
+	public int getMaxInListSize();
+
+	/**
+	 * @return the maximum number of parameters (?) in a single statement, 0 if there is no known limit
+	 */
+	public int getMaxStatementParameters();
+
 	/**
 	 * Generates the SQL statement to add a column to the specified table
 	 * @param tablename The table to add
@@ -680,6 +690,21 @@ public interface DatabaseInterface extends Cloneable
      */
     public void setStreamingResults(boolean useStreaming);
 
+    /**
+     * @return the number of rows to fetch in one round trip by default for this type of database, 0 to leave it to the driver
+     */
+    public int getDefaultFetchSize();
+
+    /**
+     * @return the number of rows to fetch in one round trip for this connection, the default of the database type if it's not set
+     */
+    public int getFetchSize();
+
+    /**
+     * @param fetchSize the number of rows to fetch in one round trip for this connection, 0 to use the default of the database type
+     */
+    public void setFetchSize(int fetchSize);
+
     /**
      * @return true if all fields should always be quoted in db
      */
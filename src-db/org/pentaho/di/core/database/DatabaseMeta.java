@@ -1187,6 +1187,22 @@ public class DatabaseMeta
 	{
 		return databaseInterface.getMaxTextFieldLength();
 	}
+
+	/**
+	 * @return the maximum number of values in a single IN ( ... ) list, 0 if there is no known limit
+	 */
+	public int getMaxInListSize()
+	{
+		return databaseInterface.getMaxInListSize();
+	}
+
+	/**
+	 * @return the maximum number of parameters (?) in a single statement, 0 if there is no known limit
+	 */
+	public int getMaxStatementParameters()
+	{
+		return databaseInterface.getMaxStatementParameters();
+	}
 	
 
     /*
@@ -2231,6 +2247,22 @@ public class DatabaseMeta
     {
         databaseInterface.setStreamingResults(useStreaming);
     }
+    
+    /**
+     * @return the number of rows to fetch in one round trip, the default of the database type if it's not set, 0 to leave it to the driver
+     */
+    public int getFetchSize()
+    {
+        return databaseInterface.getFetchSize();
+    }
+    
+    /**
+     * @param fetchSize the number of rows to fetch in one round trip, 0 to use the default of the database type
+     */
+    public void setFetchSize(int fetchSize)
+    {
+        databaseInterface.setFetchSize(fetchSize);
+    }
 
     /**
      * @return true if all fields should always be quoted in db
@@ -477,5 +477,13 @@ public class MSSQLServerDatabaseMeta extends BaseDatabaseMeta implements Databas
     }
     return rtn;
   }
+
+  /**
+   * @return 2000, a request can have at most 2100 parameters and the driver can use a few of them
+   */
+  @Override
+  public int getMaxStatementParameters() {
+    return 2000;
+  }
   
 }
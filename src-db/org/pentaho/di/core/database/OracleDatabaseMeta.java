@@ -214,6 +214,17 @@ public class OracleDatabaseMeta extends BaseDatabaseMeta implements DatabaseInte
 		return true;
 	}
 
+	/**
+	 * The driver fetches 10 rows per round trip by default, far too few to read large tables.
+	 * The driver allocates the buffers for the maximum size of all the rows in a fetch, so it's kept lower than for other databases.
+	 * 
+	 * @return the number of rows to fetch in one round trip by default
+	 */
+	public int getDefaultFetchSize()
+	{
+		return 1000;
+	}
+
 	/**
 	 * Generates the SQL statement to add a column to the specified table
 	 * @param tablename The table to add
@@ -540,4 +551,12 @@ public class OracleDatabaseMeta extends BaseDatabaseMeta implements DatabaseInte
         return "";
      }
   }
+
+  /**
+   * @return 1000, more values in an IN list gives ORA-01795
+   */
+  @Override
+  public int getMaxInListSize() {
+    return 1000;
+  }
 }
@@ -85,6 +85,16 @@ public class PostgreSQLDatabaseMeta extends BaseDatabaseMeta implements Database
 		return true;
 	}
 
+	/**
+	 * Without a fetch size the driver reads the complete result in memory.
+	 * 
+	 * @return the number of rows to fetch in one round trip by default
+	 */
+	public int getDefaultFetchSize()
+	{
+		return Const.FETCH_SIZE;
+	}
+
 	/**
 	 * @return true if the database supports bitmap indexes
 	 */
@@ -506,4 +516,12 @@ public class PostgreSQLDatabaseMeta extends BaseDatabaseMeta implements Database
   public boolean supportsGetBlob() {
 	  return false;
   }
+
+  /**
+   * @return 32767, the number of parameters is sent as a 2 byte integer
+   */
+  @Override
+  public int getMaxStatementParameters() {
+    return 32767;
+  }
 }
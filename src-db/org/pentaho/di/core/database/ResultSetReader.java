@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core.database;
+
+import java.sql.Blob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Reads the rows of a result set.<br>
+ * <br>
+ * The way to get a value depends on the data type, the storage type and the database, but not on the row.
+ * It's worked out once per column when the reader is created, after that every row is read without looking at the metadata again.
+ * Only the primitive getters need to ask the result set if the value was null.
+ * Create a new reader when the row metadata changes.
+ *
+ * @author matt
+ */
+public class ResultSetReader
+{
+	private RowMetaInterface rowMeta;
+	private ColumnGetter[]   getters;
+
+	/**
+	 * @param databaseMeta the database the result set comes from
+	 * @param rowMeta the metadata of the rows in the result set
+	 */
+	public ResultSetReader(DatabaseMeta databaseMeta, RowMetaInterface rowMeta)
+	{
+		this.rowMeta = rowMeta;
+
+		getters = new ColumnGetter[rowMeta.size()];
+		for (int i=0;i<getters.length;i++)
+		{
+			getters[i] = createColumnGetter(databaseMeta, rowMeta.getValueMeta(i));
+		}
+	}
+
+	/**
+	 * @return the metadata of the rows in the result set
+	 */
+	public RowMetaInterface getRowMeta()
+	{
+		return rowMeta;
+	}
+
+	/**
+	 * @return the number of columns the reader was worked out for
+	 */
+	public int getColumnCount()
+	{
+		return getters.length;
+	}
+
+	/**
+	 * Move to the next row of the result set and read it.
+	 *
+	 * @param rs the result set
+	 * @return the row or null if there are no more rows
+	 */
+	public Object[] getRow(ResultSet rs) throws KettleDatabaseException
+	{
+		try
+		{
+			if (!rs.next())
+			{
+				return null;
+			}
+			return readRow(rs);
+		}
+		catch(SQLException ex)
+		{
+			throw new KettleDatabaseException("Couldn't get row from result set", ex);
+		}
+	}
+
+	/**
+	 * Read a number of rows from the result set in one go.
+	 *
+	 * @param rs the result set
+	 * @param maxRows the maximum number of rows to read
+	 * @return the rows, less than maxRows if the end of the result set was reached
+	 */
+	public List<Object[]> getRows(ResultSet rs, int maxRows) throws KettleDatabaseException
+	{
+		List<Object[]> rows = new ArrayList<Object[]>(maxRows);
+		try
+		{
+			while (rows.size()<maxRows && rs.next())
+			{
+				rows.add(readRow(rs));
+			}
+			return rows;
+		}
+		catch(SQLException ex)
+		{
+			throw new KettleDatabaseException("Couldn't get row from result set", ex);
+		}
+	}
+
+	private Object[] readRow(ResultSet rs) throws SQLException
+	{
+		Object[] data = RowDataUtil.allocateRowData(getters.length);
+		for (int i=0;i<getters.length;i++)
+		{
+			data[i] = getters[i].getValue(rs, i+1);
+		}
+		return data;
+	}
+
+	/**
+	 * Work out how to get the values of a column from a result set.
+	 *
+	 * @param databaseMeta the database the result set comes from
+	 * @param v the metadata of the values
+	 * @return the getter of the values
+	 */
+	public static ColumnGetter createColumnGetter(DatabaseMeta databaseMeta, ValueMetaInterface v)
+	{
+		switch(v.getType())
+		{
+		case ValueMetaInterface.TYPE_BOOLEAN    : return new BooleanGetter();
+		case ValueMetaInterface.TYPE_NUMBER     : return new NumberGetter();
+		case ValueMetaInterface.TYPE_BIGNUMBER  : return new BigNumberGetter();
+		case ValueMetaInterface.TYPE_INTEGER    : return new IntegerGetter();
+		case ValueMetaInterface.TYPE_STRING     : return v.isStorageBinaryString() ? new BytesGetter() : new StringGetter();
+		case ValueMetaInterface.TYPE_BINARY     : return databaseMeta.supportsGetBlob() ? new BlobGetter() : new BytesGetter();
+		case ValueMetaInterface.TYPE_DATE       :
+			if (databaseMeta.getDatabaseInterface() instanceof NeoviewDatabaseMeta && v.getOriginalColumnType()==java.sql.Types.TIME)
+			{
+				// Neoview can not handle getDate / getTimestamp for a Time column
+				return new TimeGetter();
+			}
+			else if (v.getPrecision()!=1 && databaseMeta.supportsTimeStampToDateConversion())
+			{
+				return new TimestampGetter();
+			}
+			else
+			{
+				return new DateGetter();
+			}
+		default                                 : return new NullGetter();
+		}
+	}
+
+	/**
+	 * Gets the values of one column from a result set.
+	 */
+	public abstract static class ColumnGetter
+	{
+		/**
+		 * @param rs the result set, positioned on a row
+		 * @param pos the position of the column, starting at 1
+		 * @return the value of the column or null
+		 */
+		public abstract Object getValue(ResultSet rs, int pos) throws SQLException;
+	}
+
+	private static class BooleanGetter extends ColumnGetter
+	{
+		public Object getValue(ResultSet rs, int pos) throws SQLException
+		{
+			boolean value = rs.getBoolean(pos);
+			return rs.wasNull() ? null : Boolean.valueOf(value);
+		}
+	}
+
+	private static class NumberGetter extends ColumnGetter
+	{
+		public Object getValue(ResultSet rs, int pos) throws SQLException
+		{
+			double value = rs.getDouble(pos);
+			return rs.wasNull() ? null : new Double(value);
+		}
+	}
+
+	private static class IntegerGetter extends ColumnGetter
+	{
+		public Object getValue(ResultSet rs, int pos) throws SQLException
+		{
+			long value = rs.getLong(pos);
+			return rs.wasNull() ? null : Long.valueOf(value);
+		}
+	}
+
+	private static class BigNumberGetter extends ColumnGetter
+	{
+		public Object getValue(ResultSet rs, int pos) throws SQLException
+		{
+			return rs.getBigDecimal(pos);
+		}
+	}
+
+	private static class StringGetter extends ColumnGetter
+	{
+		public Object getValue(ResultSet rs, int pos) throws SQLException
+		{
+			return rs.getString(pos);
+		}
+	}
+
+	private static class BytesGetter extends ColumnGetter
+	{
+		public Object getValue(ResultSet rs, int pos) throws SQLException
+		{
+			return rs.getBytes(pos);
+		}
+	}
+
+	private static class BlobGetter extends ColumnGetter
+	{
+		public Object getValue(ResultSet rs, int pos) throws SQLException
+		{
+			Blob blob = rs.getBlob(pos);
+			if (blob==null)
+			{
+				return null;
+			}
+			return blob.getBytes(1L, (int)blob.length());
+		}
+	}
+
+	private static class TimeGetter extends ColumnGetter
+	{
+		public Object getValue(ResultSet rs, int pos) throws SQLException
+		{
+			return rs.getTime(pos); // Time is a subclass of java.util.Date, the default date will be 1970-01-01
+		}
+	}
+
+	private static class TimestampGetter extends ColumnGetter
+	{
+		public Object getValue(ResultSet rs, int pos) throws SQLException
+		{
+			return rs.getTimestamp(pos); // Timestamp extends java.util.Date
+		}
+	}
+
+	private static class DateGetter extends ColumnGetter
+	{
+		public Object getValue(ResultSet rs, int pos) throws SQLException
+		{
+			return rs.getDate(pos);
+		}
+	}
+
+	private static class NullGetter extends ColumnGetter
+	{
+		public Object getValue(ResultSet rs, int pos) throws SQLException
+		{
+			return null;
+		}
+	}
+}
@@ -205,4 +205,12 @@ public class SQLiteDatabaseMeta extends BaseDatabaseMeta implements DatabaseInte
         return new String[] { "sqlitejdbc-v037-nested.jar" };
     }
 
+    /**
+     * @return 999, the default maximum number of host parameters of SQLite
+     */
+    public int getMaxStatementParameters()
+    {
+        return 999;
+    }
+
 }
@@ -0,0 +1,464 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core.database;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Date;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Sets the values of rows on a prepared statement.<br>
+ * <br>
+ * The way to set a value depends on the data type, the storage type and the database, but not on the value itself.
+ * It's worked out once per column when the binder is created, after that every row is set without looking at the metadata again.
+ * Create a new binder when the row metadata changes.
+ *
+ * @author matt
+ */
+public class StatementBinder
+{
+	private RowMetaInterface rowMeta;
+	private ValueBinder[]    binders;
+
+	/**
+	 * @param databaseMeta the database the statement is prepared on
+	 * @param rowMeta the metadata of the rows to set on the statement
+	 */
+	public StatementBinder(DatabaseMeta databaseMeta, RowMetaInterface rowMeta)
+	{
+		this.rowMeta = rowMeta;
+
+		binders = new ValueBinder[rowMeta.size()];
+		for (int i=0;i<binders.length;i++)
+		{
+			binders[i] = createValueBinder(databaseMeta, rowMeta.getValueMeta(i));
+		}
+	}
+
+	/**
+	 * @return the metadata of the rows to set on the statement
+	 */
+	public RowMetaInterface getRowMeta()
+	{
+		return rowMeta;
+	}
+
+	/**
+	 * Set the values of a row on the parameters of a prepared statement.
+	 *
+	 * @param ps the prepared statement
+	 * @param data the row
+	 */
+	public void setValues(PreparedStatement ps, Object[] data) throws KettleDatabaseException
+	{
+		for (int i=0;i<binders.length;i++)
+		{
+			try
+			{
+				binders[i].setValue(ps, data[i], i+1);
+			}
+			catch(KettleDatabaseException e)
+			{
+				throw new KettleDatabaseException("offending row : "+rowMeta, e);
+			}
+		}
+	}
+
+	/**
+	 * Set the values of a row on the parameters of a prepared statement, except for one value.
+	 *
+	 * @param ps the prepared statement
+	 * @param data the row
+	 * @param ignoreThisValueIndex the index of the value that is not set
+	 */
+	public void setValues(PreparedStatement ps, Object[] data, int ignoreThisValueIndex) throws KettleDatabaseException
+	{
+		int index=0;
+		for (int i=0;i<binders.length;i++)
+		{
+			if (i!=ignoreThisValueIndex)
+			{
+				try
+				{
+					binders[i].setValue(ps, data[i], index+1);
+					index++;
+				}
+				catch(KettleDatabaseException e)
+				{
+					throw new KettleDatabaseException("offending row : "+rowMeta, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Work out how to set the values of a column on a prepared statement.
+	 *
+	 * @param databaseMeta the database the statement is prepared on
+	 * @param v the metadata of the values
+	 * @return the binder of the values
+	 */
+	public static ValueBinder createValueBinder(DatabaseMeta databaseMeta, ValueMetaInterface v)
+	{
+		switch(v.getType())
+		{
+		case ValueMetaInterface.TYPE_NUMBER     : return new NumberBinder(databaseMeta, v);
+		case ValueMetaInterface.TYPE_INTEGER    : return new IntegerBinder(databaseMeta, v);
+		case ValueMetaInterface.TYPE_STRING     : return new StringBinder(databaseMeta, v);
+		case ValueMetaInterface.TYPE_DATE       : return new DateBinder(databaseMeta, v);
+		case ValueMetaInterface.TYPE_BOOLEAN    : return new BooleanBinder(databaseMeta, v);
+		case ValueMetaInterface.TYPE_BIGNUMBER  : return new BigNumberBinder(v);
+		case ValueMetaInterface.TYPE_BINARY     : return new BinaryBinder(v);
+		default                                 : return new NullBinder(v);
+		}
+	}
+
+	/**
+	 * Sets the values of one column on a prepared statement.
+	 */
+	public abstract static class ValueBinder
+	{
+		protected ValueMetaInterface valueMeta;
+		private String description;
+		private boolean normalStorage;
+		private boolean binaryStringStorage;
+
+		protected ValueBinder(ValueMetaInterface valueMeta, String description)
+		{
+			this.valueMeta = valueMeta;
+			this.description = description;
+			this.normalStorage = valueMeta.isStorageNormal();
+			this.binaryStringStorage = valueMeta.isStorageBinaryString();
+		}
+
+		/**
+		 * Set a value on a parameter of a prepared statement.
+		 *
+		 * @param ps the prepared statement
+		 * @param object the value in the storage type of the metadata
+		 * @param pos the position of the parameter, starting at 1
+		 */
+		public void setValue(PreparedStatement ps, Object object, int pos) throws KettleDatabaseException
+		{
+			try
+			{
+				// Convert lazy and indexed values only once, not for the null check and again to get the value
+				//
+				Object value;
+				if (normalStorage)
+				{
+					value = object;
+				}
+				else if (binaryStringStorage && object!=null && !ValueMeta.EMPTY_STRING_AND_NULL_ARE_DIFFERENT && ((byte[])object).length==0)
+				{
+					value = null; // an empty field is null
+				}
+				else
+				{
+					value = valueMeta.convertToNormalStorageType(object);
+				}
+				if (value==null)
+				{
+					setNull(ps, pos);
+				}
+				else
+				{
+					setNotNull(ps, value, pos);
+				}
+			}
+			catch(SQLException ex)
+			{
+				throw new KettleDatabaseException("Error setting value #"+pos+" ["+valueMeta.toString()+"] on prepared statement ("+description+")"+Const.CR+ex.toString(), ex);
+			}
+			catch(Exception e)
+			{
+				throw new KettleDatabaseException("Error setting value #"+pos+" ["+valueMeta.toString()+"] on prepared statement ("+description+")"+Const.CR+e.toString(), e);
+			}
+		}
+
+		protected abstract void setNull(PreparedStatement ps, int pos) throws SQLException;
+
+		/**
+		 * @param value the value in the normal storage type, not null
+		 */
+		protected abstract void setNotNull(PreparedStatement ps, Object value, int pos) throws Exception;
+	}
+
+	private static class NumberBinder extends ValueBinder
+	{
+		private boolean round;
+		private int precision;
+
+		NumberBinder(DatabaseMeta databaseMeta, ValueMetaInterface v)
+		{
+			super(v, "Number");
+			round = databaseMeta.supportsFloatRoundingOnUpdate() && v.getPrecision()>=0;
+			precision = v.getPrecision();
+		}
+
+		protected void setNull(PreparedStatement ps, int pos) throws SQLException
+		{
+			ps.setNull(pos, java.sql.Types.DOUBLE);
+		}
+
+		protected void setNotNull(PreparedStatement ps, Object value, int pos) throws Exception
+		{
+			double num = ((Double)value).doubleValue();
+			if (round)
+			{
+				num = Const.round(num, precision);
+			}
+			ps.setDouble(pos, num);
+		}
+	}
+
+	private static class IntegerBinder extends ValueBinder
+	{
+		private boolean setLong;
+		private boolean round;
+		private int precision;
+
+		IntegerBinder(DatabaseMeta databaseMeta, ValueMetaInterface v)
+		{
+			super(v, "Integer");
+			setLong = databaseMeta.supportsSetLong();
+			// Rounded here unless the database rounds (same as Database.setValue() always did)
+			round = !(databaseMeta.supportsFloatRoundingOnUpdate() && v.getPrecision()>=0);
+			precision = v.getPrecision();
+		}
+
+		protected void setNull(PreparedStatement ps, int pos) throws SQLException
+		{
+			ps.setNull(pos, java.sql.Types.INTEGER);
+		}
+
+		protected void setNotNull(PreparedStatement ps, Object value, int pos) throws Exception
+		{
+			if (setLong)
+			{
+				ps.setLong(pos, ((Long)value).longValue());
+			}
+			else
+			{
+				double d = ((Long)value).doubleValue();
+				ps.setDouble(pos, round ? Const.round(d, precision) : d);
+			}
+		}
+	}
+
+	private static class StringBinder extends ValueBinder
+	{
+		private boolean clob;
+		private int maxTextFieldLength;
+		private boolean characterStream;
+
+		StringBinder(DatabaseMeta databaseMeta, ValueMetaInterface v)
+		{
+			super(v, "String");
+			clob = v.getLength()>=DatabaseMeta.CLOB_LENGTH;
+			maxTextFieldLength = databaseMeta.getMaxTextFieldLength();
+			characterStream = databaseMeta.supportsSetCharacterStream();
+		}
+
+		/**
+		 * Strings are trimmed and can be empty, the metadata takes care of that.
+		 */
+		public void setValue(PreparedStatement ps, Object object, int pos) throws KettleDatabaseException
+		{
+			try
+			{
+				if (valueMeta.isNull(object))
+				{
+					setNull(ps, pos);
+				}
+				else
+				{
+					setNotNull(ps, valueMeta.getString(object), pos);
+				}
+			}
+			catch(SQLException ex)
+			{
+				throw new KettleDatabaseException("Error setting value #"+pos+" ["+valueMeta.toString()+"] on prepared statement (String)"+Const.CR+ex.toString(), ex);
+			}
+			catch(Exception e)
+			{
+				throw new KettleDatabaseException("Error setting value #"+pos+" ["+valueMeta.toString()+"] on prepared statement (String)"+Const.CR+e.toString(), e);
+			}
+		}
+
+		protected void setNull(PreparedStatement ps, int pos) throws SQLException
+		{
+			ps.setNull(pos, java.sql.Types.VARCHAR);
+		}
+
+		protected void setNotNull(PreparedStatement ps, Object value, int pos) throws Exception
+		{
+			String string = (String)value;
+			if (!clob)
+			{
+				ps.setString(pos, string);
+				return;
+			}
+
+			// Take the last maxlen characters of the string...
+			//
+			int begin = string.length() - maxTextFieldLength;
+			if (begin<0) begin=0;
+			String logging = string.substring(begin);
+
+			if (characterStream)
+			{
+				ps.setCharacterStream(pos, new StringReader(logging), logging.length());
+			}
+			else
+			{
+				ps.setString(pos, logging);
+			}
+		}
+	}
+
+	private static class DateBinder extends ValueBinder
+	{
+		private boolean date;
+
+		DateBinder(DatabaseMeta databaseMeta, ValueMetaInterface v)
+		{
+			super(v, "Date");
+			date = v.getPrecision()==1 || !databaseMeta.supportsTimeStampToDateConversion();
+		}
+
+		protected void setNull(PreparedStatement ps, int pos) throws SQLException
+		{
+			ps.setNull(pos, date ? java.sql.Types.DATE : java.sql.Types.TIMESTAMP);
+		}
+
+		protected void setNotNull(PreparedStatement ps, Object value, int pos) throws Exception
+		{
+			long dat = ((Date)value).getTime();
+			if (date)
+			{
+				ps.setDate(pos, new java.sql.Date(dat));
+			}
+			else
+			{
+				ps.setTimestamp(pos, new java.sql.Timestamp(dat));
+			}
+		}
+	}
+
+	private static class BooleanBinder extends ValueBinder
+	{
+		private boolean booleanDataType;
+
+		BooleanBinder(DatabaseMeta databaseMeta, ValueMetaInterface v)
+		{
+			super(v, "Boolean");
+			booleanDataType = databaseMeta.supportsBooleanDataType();
+		}
+
+		protected void setNull(PreparedStatement ps, int pos) throws SQLException
+		{
+			ps.setNull(pos, booleanDataType ? java.sql.Types.BOOLEAN : java.sql.Types.CHAR);
+		}
+
+		protected void setNotNull(PreparedStatement ps, Object value, int pos) throws Exception
+		{
+			boolean bool = ((Boolean)value).booleanValue();
+			if (booleanDataType)
+			{
+				ps.setBoolean(pos, bool);
+			}
+			else
+			{
+				ps.setString(pos, bool?"Y":"N");
+			}
+		}
+	}
+
+	private static class BigNumberBinder extends ValueBinder
+	{
+		BigNumberBinder(ValueMetaInterface v)
+		{
+			super(v, "BigNumber");
+		}
+
+		protected void setNull(PreparedStatement ps, int pos) throws SQLException
+		{
+			ps.setNull(pos, java.sql.Types.DECIMAL);
+		}
+
+		protected void setNotNull(PreparedStatement ps, Object value, int pos) throws Exception
+		{
+			ps.setBigDecimal(pos, (BigDecimal)value);
+		}
+	}
+
+	private static class BinaryBinder extends ValueBinder
+	{
+		BinaryBinder(ValueMetaInterface v)
+		{
+			super(v, "Binary");
+		}
+
+		protected void setNull(PreparedStatement ps, int pos) throws SQLException
+		{
+			ps.setNull(pos, java.sql.Types.BINARY);
+		}
+
+		protected void setNotNull(PreparedStatement ps, Object value, int pos) throws Exception
+		{
+			ps.setBytes(pos, (byte[])value);
+		}
+	}
+
+	/**
+	 * Other data types are set to null as a placeholder.
+	 */
+	private static class NullBinder extends ValueBinder
+	{
+		NullBinder(ValueMetaInterface v)
+		{
+			super(v, "default");
+		}
+
+		public void setValue(PreparedStatement ps, Object object, int pos) throws KettleDatabaseException
+		{
+			try
+			{
+				setNull(ps, pos);
+			}
+			catch(SQLException ex)
+			{
+				throw new KettleDatabaseException("Error setting value #"+pos+" ["+valueMeta.toString()+"] on prepared statement (default)"+Const.CR+ex.toString(), ex);
+			}
+		}
+
+		protected void setNull(PreparedStatement ps, int pos) throws SQLException
+		{
+			ps.setNull(pos, java.sql.Types.VARCHAR);
+		}
+
+		protected void setNotNull(PreparedStatement ps, Object value, int pos) throws Exception
+		{
+			setNull(ps, pos);
+		}
+	}
+}
@@ -3351,6 +3351,7 @@ public class TransGraph extends AbstractGraph implements XulEventHandler, Redraw
             log.logMinimal(BaseMessages.getString(PKG, "TransLog.Log.LaunchingTransformation") + trans.getTransMeta().getName() + "]..."); //$NON-NLS-1$ //$NON-NLS-2$
             
             trans.setSafeModeEnabled(executionConfiguration.isSafeModeEnabled());
+            trans.setTransformationType(executionConfiguration.getTransformationType());
 
             // Launch the step preparation in a different thread. 
             // That way Spoon doesn't block anymore and that way we can follow the progress of the initialization
@@ -106,6 +106,7 @@ public class CsvInputDialog extends BaseStepDialog implements StepDialogInterfac
     private Button wAddResult;
 	private boolean isReceivingInput;
 	private Button wRunningInParallel;
+	private Button wMemoryMapped;
 	private ComboVar     wEncoding;
 
 	private boolean gotEncodings = false;
@@ -413,6 +414,25 @@ public class CsvInputDialog extends BaseStepDialog implements StepDialogInterfac
 		fdRunningInParallel.left = new FormAttachment(middle, 0);
 		wRunningInParallel.setLayoutData(fdRunningInParallel);
 		lastControl=wRunningInParallel;
+
+		// memory-mapped reading?
+		//
+		Label wlMemoryMapped = new Label(shell, SWT.RIGHT);
+		wlMemoryMapped.setText(BaseMessages.getString(PKG, inputMeta.getDescription("MEMORY_MAPPED"))); //$NON-NLS-1$
+ 		props.setLook(wlMemoryMapped);
+		FormData fdlMemoryMapped = new FormData();
+		fdlMemoryMapped.top  = new FormAttachment(lastControl, margin);
+		fdlMemoryMapped.left = new FormAttachment(0, 0);
+		fdlMemoryMapped.right= new FormAttachment(middle, -margin);
+		wlMemoryMapped.setLayoutData(fdlMemoryMapped);
+		wMemoryMapped = new Button(shell, SWT.CHECK);
+ 		props.setLook(wMemoryMapped);
+		wMemoryMapped.setToolTipText(BaseMessages.getString(PKG, inputMeta.getTooltip("MEMORY_MAPPED"))); //$NON-NLS-1$
+		FormData fdMemoryMapped = new FormData();
+		fdMemoryMapped.top  = new FormAttachment(lastControl, margin);
+		fdMemoryMapped.left = new FormAttachment(middle, 0);
+		wMemoryMapped.setLayoutData(fdMemoryMapped);
+		lastControl=wMemoryMapped;
 		
 		// Encoding
 		Label wlEncoding = new Label(shell, SWT.RIGHT);
@@ -637,6 +657,7 @@ public class CsvInputDialog extends BaseStepDialog implements StepDialogInterfac
 		wLazyConversion.setSelection(inputMeta.isLazyConversionActive());
 		wHeaderPresent.setSelection(inputMeta.isHeaderPresent());
 		wRunningInParallel.setSelection(inputMeta.isRunningInParallel());
+		wMemoryMapped.setSelection(inputMeta.isMemoryMapped());
 		wRowNumField.setText(Const.NVL(inputMeta.getRowNumField(), ""));
 		wAddResult.setSelection(inputMeta.isAddResultFile());
 		wEncoding.setText(Const.NVL(inputMeta.getEncoding(), ""));
@@ -687,6 +708,7 @@ public class CsvInputDialog extends BaseStepDialog implements StepDialogInterfac
 		inputMeta.setRowNumField(wRowNumField.getText());
 		inputMeta.setAddResultFile( wAddResult.getSelection() );
 		inputMeta.setRunningInParallel(wRunningInParallel.getSelection());
+		inputMeta.setMemoryMapped(wMemoryMapped.getSelection());
 		inputMeta.setEncoding(wEncoding.getText());
 		
     	int nrNonEmptyFields = wFields.nrNonEmpty(); 
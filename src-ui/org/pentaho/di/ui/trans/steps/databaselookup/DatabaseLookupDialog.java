@@ -83,6 +83,22 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
 	private Text         wCachesize;
 	private FormData     fdlCachesize, fdCachesize;
 
+	private Label        wlCacheTimeToLive;
+	private Text         wCacheTimeToLive;
+	private FormData     fdlCacheTimeToLive, fdCacheTimeToLive;
+
+	private Label        wlCacheNotFound;
+	private Button       wCacheNotFound;
+	private FormData     fdlCacheNotFound, fdCacheNotFound;
+
+	private Label        wlCacheShared;
+	private Button       wCacheShared;
+	private FormData     fdlCacheShared, fdCacheShared;
+
+	private Label        wlLookupBatchSize;
+	private Text         wLookupBatchSize;
+	private FormData     fdlLookupBatchSize, fdLookupBatchSize;
+
 	private Label        wlKey;
 	private TableView    wKey;
 	private FormData     fdlKey, fdKey;
@@ -341,13 +357,100 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
 			}
 		);
 
+		// Cache time to live line
+		wlCacheTimeToLive=new Label(shell, SWT.RIGHT);
+		wlCacheTimeToLive.setText(BaseMessages.getString(PKG, "DatabaseLookupDialog.CacheTimeToLive.Label")); //$NON-NLS-1$
+ 		props.setLook(wlCacheTimeToLive);
+		fdlCacheTimeToLive=new FormData();
+		fdlCacheTimeToLive.left   = new FormAttachment(0, 0);
+		fdlCacheTimeToLive.right  = new FormAttachment(middle, -margin);
+		fdlCacheTimeToLive.top    = new FormAttachment(wCacheLoadAll, margin);
+		wlCacheTimeToLive.setLayoutData(fdlCacheTimeToLive);
+		wCacheTimeToLive=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+ 		props.setLook(wCacheTimeToLive);
+		wCacheTimeToLive.setToolTipText(BaseMessages.getString(PKG, "DatabaseLookupDialog.CacheTimeToLive.Tooltip")); //$NON-NLS-1$
+		wCacheTimeToLive.addModifyListener(lsMod);
+		fdCacheTimeToLive=new FormData();
+		fdCacheTimeToLive.left   = new FormAttachment(middle, 0);
+		fdCacheTimeToLive.right  = new FormAttachment(100, 0);
+		fdCacheTimeToLive.top    = new FormAttachment(wCacheLoadAll, margin);
+		wCacheTimeToLive.setLayoutData(fdCacheTimeToLive);
+
+		// Cache : not found keys?
+		wlCacheNotFound=new Label(shell, SWT.RIGHT);
+		wlCacheNotFound.setText(BaseMessages.getString(PKG, "DatabaseLookupDialog.CacheNotFound.Label")); //$NON-NLS-1$
+ 		props.setLook(wlCacheNotFound);
+		fdlCacheNotFound=new FormData();
+		fdlCacheNotFound.left = new FormAttachment(0, 0);
+		fdlCacheNotFound.right= new FormAttachment(middle, -margin);
+		fdlCacheNotFound.top  = new FormAttachment(wCacheTimeToLive, margin);
+		wlCacheNotFound.setLayoutData(fdlCacheNotFound);
+		wCacheNotFound=new Button(shell, SWT.CHECK);
+ 		props.setLook(wCacheNotFound);
+		wCacheNotFound.setToolTipText(BaseMessages.getString(PKG, "DatabaseLookupDialog.CacheNotFound.Tooltip")); //$NON-NLS-1$
+		fdCacheNotFound=new FormData();
+		fdCacheNotFound.left = new FormAttachment(middle, 0);
+		fdCacheNotFound.top  = new FormAttachment(wCacheTimeToLive, margin);
+		wCacheNotFound.setLayoutData(fdCacheNotFound);
+		wCacheNotFound.addSelectionListener(new SelectionAdapter() 
+			{
+				public void widgetSelected(SelectionEvent e) 
+				{
+					input.setChanged();
+				}
+			}
+		);
+
+		// Cache : shared by the step copies?
+		wlCacheShared=new Label(shell, SWT.RIGHT);
+		wlCacheShared.setText(BaseMessages.getString(PKG, "DatabaseLookupDialog.CacheShared.Label")); //$NON-NLS-1$
+ 		props.setLook(wlCacheShared);
+		fdlCacheShared=new FormData();
+		fdlCacheShared.left = new FormAttachment(0, 0);
+		fdlCacheShared.right= new FormAttachment(middle, -margin);
+		fdlCacheShared.top  = new FormAttachment(wCacheNotFound, margin);
+		wlCacheShared.setLayoutData(fdlCacheShared);
+		wCacheShared=new Button(shell, SWT.CHECK);
+ 		props.setLook(wCacheShared);
+		wCacheShared.setToolTipText(BaseMessages.getString(PKG, "DatabaseLookupDialog.CacheShared.Tooltip")); //$NON-NLS-1$
+		fdCacheShared=new FormData();
+		fdCacheShared.left = new FormAttachment(middle, 0);
+		fdCacheShared.top  = new FormAttachment(wCacheNotFound, margin);
+		wCacheShared.setLayoutData(fdCacheShared);
+		wCacheShared.addSelectionListener(new SelectionAdapter() 
+			{
+				public void widgetSelected(SelectionEvent e) 
+				{
+					input.setChanged();
+				}
+			}
+		);
+
+		// Lookup batch size line
+		wlLookupBatchSize=new Label(shell, SWT.RIGHT);
+		wlLookupBatchSize.setText(BaseMessages.getString(PKG, "DatabaseLookupDialog.LookupBatchSize.Label")); //$NON-NLS-1$
+ 		props.setLook(wlLookupBatchSize);
+		fdlLookupBatchSize=new FormData();
+		fdlLookupBatchSize.left   = new FormAttachment(0, 0);
+		fdlLookupBatchSize.right  = new FormAttachment(middle, -margin);
+		fdlLookupBatchSize.top    = new FormAttachment(wCacheShared, margin);
+		wlLookupBatchSize.setLayoutData(fdlLookupBatchSize);
+		wLookupBatchSize=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+ 		props.setLook(wLookupBatchSize);
+		wLookupBatchSize.setToolTipText(BaseMessages.getString(PKG, "DatabaseLookupDialog.LookupBatchSize.Tooltip")); //$NON-NLS-1$
+		wLookupBatchSize.addModifyListener(lsMod);
+		fdLookupBatchSize=new FormData();
+		fdLookupBatchSize.left   = new FormAttachment(middle, 0);
+		fdLookupBatchSize.right  = new FormAttachment(100, 0);
+		fdLookupBatchSize.top    = new FormAttachment(wCacheShared, margin);
+		wLookupBatchSize.setLayoutData(fdLookupBatchSize);
 
 		wlKey=new Label(shell, SWT.NONE);
 		wlKey.setText(BaseMessages.getString(PKG, "DatabaseLookupDialog.Keys.Label")); //$NON-NLS-1$
  		props.setLook(wlKey);
 		fdlKey=new FormData();
 		fdlKey.left  = new FormAttachment(0, 0);
-		fdlKey.top   = new FormAttachment(wCacheLoadAll, margin);
+		fdlKey.top   = new FormAttachment(wLookupBatchSize, margin);
 		wlKey.setLayoutData(fdlKey);
 
 		int nrKeyCols=4;
@@ -510,6 +613,8 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
 		wTable.addSelectionListener( lsDef );
 		wOrderBy.addSelectionListener( lsDef );
 		wCachesize.addSelectionListener( lsDef );
+		wCacheTimeToLive.addSelectionListener( lsDef );
+		wLookupBatchSize.addSelectionListener( lsDef );
 		
 		// Detect X or ALT-F4 or something that kills this window...
 		shell.addShellListener(	new ShellAdapter() { public void shellClosed(ShellEvent e) { cancel(); } } );
@@ -626,6 +731,12 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
 		wlCachesize.setEnabled(wCache.getSelection() && !wCacheLoadAll.getSelection());
 		wCacheLoadAll.setEnabled(wCache.getSelection());
 		wlCacheLoadAll.setEnabled(wCache.getSelection());
+		wCacheTimeToLive.setEnabled(wCache.getSelection() && !wCacheLoadAll.getSelection());
+		wlCacheTimeToLive.setEnabled(wCache.getSelection() && !wCacheLoadAll.getSelection());
+		wCacheNotFound.setEnabled(wCache.getSelection() && !wCacheLoadAll.getSelection());
+		wlCacheNotFound.setEnabled(wCache.getSelection() && !wCacheLoadAll.getSelection());
+		wCacheShared.setEnabled(wCache.getSelection());
+		wlCacheShared.setEnabled(wCache.getSelection());
 		wFailMultiple.setEnabled(!wCache.getSelection());
 		wlFailMultiple.setEnabled(!wCache.getSelection());
     }
@@ -641,6 +752,10 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
 		wCache.setSelection(input.isCached());
 		wCachesize.setText(""+input.getCacheSize()); //$NON-NLS-1$
 		wCacheLoadAll.setSelection(input.isLoadingAllDataInCache());
+		wCacheTimeToLive.setText(""+input.getCacheTimeToLive()); //$NON-NLS-1$
+		wCacheNotFound.setSelection(input.isCachingNotFound());
+		wCacheShared.setSelection(input.isSharingCache());
+		wLookupBatchSize.setText(""+input.getLookupBatchSize()); //$NON-NLS-1$
 		
 		if (input.getStreamKeyField1()!=null)
 		for (i=0;i<input.getStreamKeyField1().length;i++)
@@ -703,6 +818,10 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
 		input.setCached( wCache.getSelection() );
 		input.setCacheSize( Const.toInt(wCachesize.getText(), 0) );
 		input.setLoadingAllDataInCache( wCacheLoadAll.getSelection() );
+		input.setCacheTimeToLive( Const.toInt(wCacheTimeToLive.getText(), 0) );
+		input.setCachingNotFound( wCacheNotFound.getSelection() );
+		input.setSharingCache( wCacheShared.getSelection() );
+		input.setLookupBatchSize( Const.toInt(wLookupBatchSize.getText(), 0) );
 		
 		logDebug(BaseMessages.getString(PKG, "DatabaseLookupDialog.Log.FoundKeys",String.valueOf(nrkeys))); //$NON-NLS-1$ //$NON-NLS-2$
 		for (int i=0;i<nrkeys;i++)
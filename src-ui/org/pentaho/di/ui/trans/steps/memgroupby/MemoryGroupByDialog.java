@@ -73,6 +73,10 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
     private Label        wlAlwaysAddResult;
     private Button       wAlwaysAddResult;
     private FormData     fdlAlwaysAddResult, fdAlwaysAddResult;
+
+    private Label        wlMergeCopies;
+    private Button       wMergeCopies;
+    private FormData     fdlMergeCopies, fdMergeCopies;
 
 	private Button wGet, wGetAgg;
 	private FormData fdGet, fdGetAgg;
@@ -159,13 +163,33 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
         fdAlwaysAddResult.right= new FormAttachment(100, 0);
         wAlwaysAddResult.setLayoutData(fdAlwaysAddResult);
 
+        // Merge the partial aggregates of the step copies
+        //
+        wlMergeCopies=new Label(shell, SWT.RIGHT);
+        wlMergeCopies.setText(BaseMessages.getString(PKG, "MemoryGroupByDialog.MergeCopies.Label")); //$NON-NLS-1$
+        wlMergeCopies.setToolTipText(BaseMessages.getString(PKG, "MemoryGroupByDialog.MergeCopies.ToolTip")); //$NON-NLS-1$
+        props.setLook(wlMergeCopies);
+        fdlMergeCopies=new FormData();
+        fdlMergeCopies.left = new FormAttachment(0, 0);
+        fdlMergeCopies.top  = new FormAttachment(wAlwaysAddResult, margin);
+        fdlMergeCopies.right= new FormAttachment(middle, -margin);
+        wlMergeCopies.setLayoutData(fdlMergeCopies);
+        wMergeCopies=new Button(shell, SWT.CHECK );
+        wMergeCopies.setToolTipText(BaseMessages.getString(PKG, "MemoryGroupByDialog.MergeCopies.ToolTip")); //$NON-NLS-1$
+        props.setLook(wMergeCopies);
+        fdMergeCopies=new FormData();
+        fdMergeCopies.left = new FormAttachment(middle, 0);
+        fdMergeCopies.top  = new FormAttachment(wAlwaysAddResult, margin);
+        fdMergeCopies.right= new FormAttachment(100, 0);
+        wMergeCopies.setLayoutData(fdMergeCopies);
+
         
 		wlGroup=new Label(shell, SWT.NONE);
 		wlGroup.setText(BaseMessages.getString(PKG, "MemoryGroupByDialog.Group.Label")); //$NON-NLS-1$
  		props.setLook(wlGroup);
 		fdlGroup=new FormData();
 		fdlGroup.left  = new FormAttachment(0, 0);
-		fdlGroup.top   = new FormAttachment(wAlwaysAddResult, margin);
+		fdlGroup.top   = new FormAttachment(wMergeCopies, margin);
 		wlGroup.setLayoutData(fdlGroup);
 
 		int nrKeyCols=1;
@@ -338,6 +362,7 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
 		logDebug(BaseMessages.getString(PKG, "MemoryGroupByDialog.Log.GettingKeyInfo")); //$NON-NLS-1$
 		
         wAlwaysAddResult.setSelection(input.isAlwaysGivingBackOneRow());
+        wMergeCopies.setSelection(input.isMergingCopies());
         
 		if (input.getGroupField()!=null)
 		for (i=0;i<input.getGroupField().length;i++)
@@ -378,6 +403,7 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
 		int nrfields = wAgg.nrNonEmpty();
 
         input.setAlwaysGivingBackOneRow( wAlwaysAddResult.getSelection() );
+        input.setMergingCopies( wMergeCopies.getSelection() );
         
 		input.allocate(sizegroup, nrfields);
 				
@@ -111,6 +111,18 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
 	private TextVar				wDelimiter;
 	private FormData			fdlDelimiter, fdDelimiter;	
 
+	private Label				wlUseCopyApi;
+	private Button				wUseCopyApi;
+	private FormData			fdlUseCopyApi, fdUseCopyApi;
+
+	private Label				wlCopyChunkSize;
+	private Text				wCopyChunkSize;
+	private FormData			fdlCopyChunkSize, fdCopyChunkSize;
+
+	private Label				wlNrCopyStreams;
+	private Text				wNrCopyStreams;
+	private FormData			fdlNrCopyStreams, fdNrCopyStreams;
+
     private Label				wlDbNameOverride;
 	private TextVar				wDbNameOverride;
 	private FormData			fdlDbNameOverride, fdDbNameOverride;		
@@ -356,6 +368,69 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
 		fdDelimiter.right = new FormAttachment(100, 0);
 		wDelimiter.setLayoutData(fdDelimiter);
 		
+		// Use the COPY API of the JDBC driver instead of psql
+		wlUseCopyApi = new Label(shell, SWT.RIGHT);
+		wlUseCopyApi.setText(BaseMessages.getString(PKG, "PGBulkLoaderDialog.UseCopyApi.Label")); //$NON-NLS-1$
+ 		props.setLook(wlUseCopyApi);
+		fdlUseCopyApi = new FormData();
+		fdlUseCopyApi.left = new FormAttachment(0, 0);
+		fdlUseCopyApi.top = new FormAttachment(wDelimiter, margin);
+		fdlUseCopyApi.right = new FormAttachment(middle, -margin);
+		wlUseCopyApi.setLayoutData(fdlUseCopyApi);
+		wUseCopyApi = new Button(shell, SWT.CHECK);
+ 		props.setLook(wUseCopyApi);
+		wUseCopyApi.setToolTipText(BaseMessages.getString(PKG, "PGBulkLoaderDialog.UseCopyApi.Tooltip")); //$NON-NLS-1$
+		fdUseCopyApi = new FormData();
+		fdUseCopyApi.left = new FormAttachment(middle, 0);
+		fdUseCopyApi.top = new FormAttachment(wDelimiter, margin);
+		fdUseCopyApi.right = new FormAttachment(100, 0);
+		wUseCopyApi.setLayoutData(fdUseCopyApi);
+		wUseCopyApi.addSelectionListener(new SelectionAdapter()
+			{
+				public void widgetSelected(SelectionEvent e)
+				{
+					input.setChanged();
+					setFlags();
+				}
+			}
+		);
+
+		// The number of rows per chunk
+		wlCopyChunkSize = new Label(shell, SWT.RIGHT);
+		wlCopyChunkSize.setText(BaseMessages.getString(PKG, "PGBulkLoaderDialog.CopyChunkSize.Label")); //$NON-NLS-1$
+ 		props.setLook(wlCopyChunkSize);
+		fdlCopyChunkSize = new FormData();
+		fdlCopyChunkSize.left = new FormAttachment(0, 0);
+		fdlCopyChunkSize.top = new FormAttachment(wUseCopyApi, margin);
+		fdlCopyChunkSize.right = new FormAttachment(middle, -margin);
+		wlCopyChunkSize.setLayoutData(fdlCopyChunkSize);
+		wCopyChunkSize = new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+ 		props.setLook(wCopyChunkSize);
+		wCopyChunkSize.addModifyListener(lsMod);
+		fdCopyChunkSize = new FormData();
+		fdCopyChunkSize.left = new FormAttachment(middle, 0);
+		fdCopyChunkSize.top = new FormAttachment(wUseCopyApi, margin);
+		fdCopyChunkSize.right = new FormAttachment(100, 0);
+		wCopyChunkSize.setLayoutData(fdCopyChunkSize);
+
+		// The number of connections that copy in parallel
+		wlNrCopyStreams = new Label(shell, SWT.RIGHT);
+		wlNrCopyStreams.setText(BaseMessages.getString(PKG, "PGBulkLoaderDialog.NrCopyStreams.Label")); //$NON-NLS-1$
+ 		props.setLook(wlNrCopyStreams);
+		fdlNrCopyStreams = new FormData();
+		fdlNrCopyStreams.left = new FormAttachment(0, 0);
+		fdlNrCopyStreams.top = new FormAttachment(wCopyChunkSize, margin);
+		fdlNrCopyStreams.right = new FormAttachment(middle, -margin);
+		wlNrCopyStreams.setLayoutData(fdlNrCopyStreams);
+		wNrCopyStreams = new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+ 		props.setLook(wNrCopyStreams);
+		wNrCopyStreams.addModifyListener(lsMod);
+		fdNrCopyStreams = new FormData();
+		fdNrCopyStreams.left = new FormAttachment(middle, 0);
+		fdNrCopyStreams.top = new FormAttachment(wCopyChunkSize, margin);
+		fdNrCopyStreams.right = new FormAttachment(100, 0);
+		wNrCopyStreams.setLayoutData(fdNrCopyStreams);
+		
 		// THE BUTTONS
 		wOK = new Button(shell, SWT.PUSH);
 		wOK.setText(BaseMessages.getString(PKG, "System.Button.OK")); //$NON-NLS-1$
@@ -372,7 +447,7 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
  		props.setLook(wlReturn);
 		fdlReturn = new FormData();
 		fdlReturn.left = new FormAttachment(0, 0);
-		fdlReturn.top = new FormAttachment(wDelimiter, margin);
+		fdlReturn.top = new FormAttachment(wNrCopyStreams, margin);
 		wlReturn.setLayoutData(fdlReturn);
 
 		int UpInsCols = 3;
@@ -507,6 +582,8 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
         wDbNameOverride.addSelectionListener(lsDef);
         wEnclosure.addSelectionListener(lsDef);
         wDelimiter.addSelectionListener(lsDef);
+        wCopyChunkSize.addSelectionListener(lsDef);
+        wNrCopyStreams.addSelectionListener(lsDef);
 
 
 		// Detect X or ALT-F4 or something that kills this window...
@@ -598,6 +675,10 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
 		if (input.getDelimiter() != null) wDelimiter.setText(input.getDelimiter());
 		if (input.getEnclosure() != null) wEnclosure.setText(input.getEnclosure());
 		if (input.getDbNameOverride() != null ) wDbNameOverride.setText(input.getDbNameOverride());
+		wUseCopyApi.setSelection(input.isUsingCopyApi());
+		wCopyChunkSize.setText(Integer.toString(input.getCopyChunkSize()));
+		wNrCopyStreams.setText(Integer.toString(input.getNrCopyStreams()));
+		setFlags();
 		
 		String action = input.getLoadAction();
 		if ( PGBulkLoaderMeta.ACTION_INSERT.equals(action))
@@ -618,6 +699,21 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
 		wReturn.setRowNums();
 		wReturn.optWidth(true);
 	}
+	/**
+	 * The path to psql is not used by the COPY API, the chunks and connections only by the COPY API.
+	 */
+	private void setFlags()
+	{
+		boolean copyApi = wUseCopyApi.getSelection();
+		wlPsqlPath.setEnabled(!copyApi);
+		wPsqlPath.setEnabled(!copyApi);
+		wbPsqlPath.setEnabled(!copyApi);
+		wlCopyChunkSize.setEnabled(copyApi);
+		wCopyChunkSize.setEnabled(copyApi);
+		wlNrCopyStreams.setEnabled(copyApi);
+		wNrCopyStreams.setEnabled(copyApi);
+	}
+
 	protected void setComboBoxes()
     {
         // Something was changed in the row.
@@ -775,6 +871,9 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
 		inf.setPsqlpath( wPsqlPath.getText() );
 		inf.setDelimiter( wDelimiter.getText() );
 		inf.setEnclosure( wEnclosure.getText() );
+		inf.setUsingCopyApi( wUseCopyApi.getSelection() );
+		inf.setCopyChunkSize( Const.toInt(wCopyChunkSize.getText(), PGBulkLoaderMeta.DEFAULT_COPY_CHUNK_SIZE) );
+		inf.setNrCopyStreams( Const.toInt(wNrCopyStreams.getText(), 1) );
 
 		/*
 		/*
@@ -90,6 +90,10 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
     private Button       wIntegerPair;
     private FormData     fdlIntegerPair, fdIntegerPair;
 
+    private Label        wlOffHeap;
+    private Button       wOffHeap;
+    private FormData     fdlOffHeap, fdOffHeap;
+
 	private StreamLookupMeta input;
 
     private Button       wGetLU;
@@ -248,7 +252,7 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
 		fdReturn.left  = new FormAttachment(0, 0);
 		fdReturn.top   = new FormAttachment(wlReturn, margin);
 		fdReturn.right = new FormAttachment(100, 0);
-		fdReturn.bottom= new FormAttachment(100, -125);
+		fdReturn.bottom= new FormAttachment(100, -150);
 		wReturn.setLayoutData(fdReturn);
         
         wlPreserveMemory=new Label(shell, SWT.RIGHT);
@@ -323,6 +327,30 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
             }
         );
 
+        wlOffHeap=new Label(shell, SWT.RIGHT);
+        wlOffHeap.setText(BaseMessages.getString(PKG, "StreamLookupDialog.OffHeap.Label")); //$NON-NLS-1$
+        props.setLook(wlOffHeap);
+        fdlOffHeap=new FormData();
+        fdlOffHeap.left = new FormAttachment(0, 0);
+        fdlOffHeap.top  = new FormAttachment(wSortedList, margin);
+        fdlOffHeap.right= new FormAttachment(middle, -margin);
+        wlOffHeap.setLayoutData(fdlOffHeap);
+        wOffHeap=new Button(shell, SWT.CHECK );
+        props.setLook(wOffHeap);
+        fdOffHeap=new FormData();
+        fdOffHeap.left = new FormAttachment(middle, 0);
+        fdOffHeap.top  = new FormAttachment(wSortedList, margin);
+        fdOffHeap.right= new FormAttachment(100, 0);
+        wOffHeap.setLayoutData(fdOffHeap);
+        wOffHeap.addSelectionListener(new SelectionAdapter() 
+            {
+                public void widgetSelected(SelectionEvent e) 
+                {
+                    input.setChanged();
+                }
+            }
+        );
+
         
 		// THE BUTTONS
 		wOK=new Button(shell, SWT.PUSH);
@@ -495,6 +523,7 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
 		wPreserveMemory.setSelection(input.isMemoryPreservationActive());
         wSortedList.setSelection(input.isUsingSortedList());
         wIntegerPair.setSelection(input.isUsingIntegerPair());
+        wOffHeap.setSelection(input.isUsingOffHeapStore());
 		
 		wStepname.selectAll();
 		wKey.setRowNums();
@@ -520,6 +549,7 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
 		input.setMemoryPreservationActive(wPreserveMemory.getSelection());
 		input.setUsingSortedList(wSortedList.getSelection());
         input.setUsingIntegerPair(wIntegerPair.getSelection());
+        input.setUsingOffHeapStore(wOffHeap.getSelection());
         
         if(log.isDebug()) logDebug(BaseMessages.getString(PKG, "StreamLookupDialog.Log.FoundKeys",nrkeys+"")); //$NON-NLS-1$ //$NON-NLS-2$
 		for (int i=0;i<nrkeys;i++)
@@ -100,6 +100,14 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
     private Button       wLazyConversion;
     private FormData     fdlLazyConversion, fdLazyConversion; 
 
+    private Label        wlFetchSize;
+    private TextVar      wFetchSize;
+    private FormData     fdlFetchSize, fdFetchSize;
+
+    private Label        wlPrefetch;
+    private Button       wPrefetch;
+    private FormData     fdlPrefetch, fdPrefetch;
+
 	private Button wbTable;
 	private FormData fdbTable;
 	private Listener lsbTable;
@@ -286,12 +294,52 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
         wLazyConversion.setLayoutData(fdLazyConversion);
         wLazyConversion.addSelectionListener(new SelectionAdapter() { public void widgetSelected(SelectionEvent arg0) { input.setChanged();setSQLToolTip(); } });
 
+        // Fetch size
+		//
+        wlFetchSize = new Label(shell, SWT.RIGHT);
+        wlFetchSize.setText(BaseMessages.getString(PKG, "TableInputDialog.FetchSize")); //$NON-NLS-1$
+        props.setLook(wlFetchSize);
+        fdlFetchSize = new FormData();
+        fdlFetchSize.left = new FormAttachment(0, 0);
+        fdlFetchSize.right = new FormAttachment(middle, -margin);
+        fdlFetchSize.bottom = new FormAttachment(wLazyConversion, -margin);
+        wlFetchSize.setLayoutData(fdlFetchSize);
+        wFetchSize = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        wFetchSize.setToolTipText(BaseMessages.getString(PKG, "TableInputDialog.FetchSize.Tooltip")); //$NON-NLS-1$
+        props.setLook(wFetchSize);
+        wFetchSize.addModifyListener(lsMod);
+        fdFetchSize = new FormData();
+        fdFetchSize.left = new FormAttachment(middle, 0);
+        fdFetchSize.right = new FormAttachment(100, 0);
+        fdFetchSize.bottom = new FormAttachment(wLazyConversion, -margin);
+        wFetchSize.setLayoutData(fdFetchSize);
+
+        // Read ahead in a thread of its own?
+		//
+        wlPrefetch = new Label(shell, SWT.RIGHT);
+        wlPrefetch.setText(BaseMessages.getString(PKG, "TableInputDialog.Prefetch")); //$NON-NLS-1$
+        props.setLook(wlPrefetch);
+        fdlPrefetch = new FormData();
+        fdlPrefetch.left = new FormAttachment(0, 0);
+        fdlPrefetch.right = new FormAttachment(middle, -margin);
+        fdlPrefetch.bottom = new FormAttachment(wFetchSize, -margin);
+        wlPrefetch.setLayoutData(fdlPrefetch);
+        wPrefetch = new Button(shell, SWT.CHECK);
+        wPrefetch.setToolTipText(BaseMessages.getString(PKG, "TableInputDialog.Prefetch.Tooltip")); //$NON-NLS-1$
+        props.setLook(wPrefetch);
+        fdPrefetch = new FormData();
+        fdPrefetch.left = new FormAttachment(middle, 0);
+        fdPrefetch.right = new FormAttachment(100, 0);
+        fdPrefetch.bottom = new FormAttachment(wFetchSize, -margin);
+        wPrefetch.setLayoutData(fdPrefetch);
+        wPrefetch.addSelectionListener(lsSelMod);
+
 		wlPosition=new Label(shell, SWT.NONE); 
 		props.setLook(wlPosition);
 		fdlPosition=new FormData();
 		fdlPosition.left  = new FormAttachment(0,0);
 		fdlPosition.right = new FormAttachment(100, 0);
-		fdlPosition.bottom = new FormAttachment(wLazyConversion, -margin);
+		fdlPosition.bottom = new FormAttachment(wPrefetch, -margin);
 		wlPosition.setLayoutData(fdlPosition);
 		
 		
@@ -371,6 +419,7 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
 		
 		wStepname.addSelectionListener( lsDef );
 		wLimit.addSelectionListener( lsDef );
+		wFetchSize.addSelectionListener( lsDef );
 		
 		
 		// Detect X or ALT-F4 or something that kills this window...
@@ -437,6 +486,8 @@ public void setPosition(){
         
         wVariables.setSelection(input.isVariableReplacementActive());
         wLazyConversion.setSelection(input.isLazyConversionActive());
+        wFetchSize.setText(Const.NVL(input.getFetchSize(), "")); //$NON-NLS-1$
+        wPrefetch.setSelection(input.isPrefetching());
                
 		wStepname.selectAll();
         setSQLToolTip();
@@ -483,6 +534,8 @@ public void setPosition(){
         meta.setExecuteEachInputRow(wEachRow.getSelection());
         meta.setVariableReplacementActive(wVariables.getSelection());
         meta.setLazyConversionActive(wLazyConversion.getSelection());
+        meta.setFetchSize( wFetchSize.getText() );
+        meta.setPrefetching(wPrefetch.getSelection());
     }
     
 	private void ok()
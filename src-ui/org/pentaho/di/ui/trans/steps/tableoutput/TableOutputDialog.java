@@ -129,6 +129,18 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
 	private Button       wBatch;
 	private FormData     fdlBatch, fdBatch;
 	
+	private Label        wlAsyncCommit;
+	private Button       wAsyncCommit;
+	private FormData     fdlAsyncCommit, fdAsyncCommit;
+	
+	private Label        wlWriters;
+	private Text         wWriters;
+	private FormData     fdlWriters, fdWriters;
+	
+	private Label        wlRoutingFields;
+	private Text         wRoutingFields;
+	private FormData     fdlRoutingFields, fdRoutingFields;
+	
     private Label        wlUsePart;
     private Button       wUsePart;
     private FormData     fdlUsePart, fdUsePart;
@@ -588,6 +600,63 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
 	        }
 		);
 		
+        // Asynchronous batch commits
+		wlAsyncCommit=new Label(wMainComp, SWT.RIGHT);
+		wlAsyncCommit.setText(BaseMessages.getString(PKG, "TableOutputDialog.AsyncCommit.Label"));
+ 		props.setLook(wlAsyncCommit);
+		fdlAsyncCommit=new FormData();
+		fdlAsyncCommit.left  = new FormAttachment(0, 0);
+		fdlAsyncCommit.top   = new FormAttachment(wBatch, margin);
+		fdlAsyncCommit.right = new FormAttachment(middle, -margin);
+		wlAsyncCommit.setLayoutData(fdlAsyncCommit);
+		wAsyncCommit=new Button(wMainComp, SWT.CHECK);
+ 		props.setLook(wAsyncCommit);
+		wAsyncCommit.setToolTipText(BaseMessages.getString(PKG, "TableOutputDialog.AsyncCommit.Tooltip"));
+		fdAsyncCommit=new FormData();
+		fdAsyncCommit.left  = new FormAttachment(middle, 0);
+		fdAsyncCommit.top   = new FormAttachment(wBatch, margin);
+		fdAsyncCommit.right = new FormAttachment(100, 0);
+		wAsyncCommit.setLayoutData(fdAsyncCommit);
+		wAsyncCommit.addSelectionListener(lsSelMod);
+		
+        // Number of writer connections
+		wlWriters=new Label(wMainComp, SWT.RIGHT);
+		wlWriters.setText(BaseMessages.getString(PKG, "TableOutputDialog.Writers.Label"));
+ 		props.setLook(wlWriters);
+		fdlWriters=new FormData();
+		fdlWriters.left  = new FormAttachment(0, 0);
+		fdlWriters.top   = new FormAttachment(wAsyncCommit, margin);
+		fdlWriters.right = new FormAttachment(middle, -margin);
+		wlWriters.setLayoutData(fdlWriters);
+		wWriters=new Text(wMainComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+ 		props.setLook(wWriters);
+		wWriters.setToolTipText(BaseMessages.getString(PKG, "TableOutputDialog.Writers.Tooltip"));
+		wWriters.addModifyListener(lsMod);
+		fdWriters=new FormData();
+		fdWriters.left  = new FormAttachment(middle, 0);
+		fdWriters.top   = new FormAttachment(wAsyncCommit, margin);
+		fdWriters.right = new FormAttachment(100, 0);
+		wWriters.setLayoutData(fdWriters);
+		
+        // Routing fields of the writer connections
+		wlRoutingFields=new Label(wMainComp, SWT.RIGHT);
+		wlRoutingFields.setText(BaseMessages.getString(PKG, "TableOutputDialog.RoutingFields.Label"));
+ 		props.setLook(wlRoutingFields);
+		fdlRoutingFields=new FormData();
+		fdlRoutingFields.left  = new FormAttachment(0, 0);
+		fdlRoutingFields.top   = new FormAttachment(wWriters, margin);
+		fdlRoutingFields.right = new FormAttachment(middle, -margin);
+		wlRoutingFields.setLayoutData(fdlRoutingFields);
+		wRoutingFields=new Text(wMainComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+ 		props.setLook(wRoutingFields);
+		wRoutingFields.setToolTipText(BaseMessages.getString(PKG, "TableOutputDialog.RoutingFields.Tooltip"));
+		wRoutingFields.addModifyListener(lsMod);
+		fdRoutingFields=new FormData();
+		fdRoutingFields.left  = new FormAttachment(middle, 0);
+		fdRoutingFields.top   = new FormAttachment(wWriters, margin);
+		fdRoutingFields.right = new FormAttachment(100, 0);
+		wRoutingFields.setLayoutData(fdRoutingFields);
+		
 		
         // NameInField
         wlNameInField=new Label(wMainComp, SWT.RIGHT);
@@ -595,14 +664,14 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
         props.setLook(wlNameInField);
         fdlNameInField=new FormData();
         fdlNameInField.left  = new FormAttachment(0, 0);
-        fdlNameInField.top   = new FormAttachment(wBatch, margin*5);
+        fdlNameInField.top   = new FormAttachment(wRoutingFields, margin*5);
         fdlNameInField.right = new FormAttachment(middle, -margin);
         wlNameInField.setLayoutData(fdlNameInField);
         wNameInField=new Button(wMainComp, SWT.CHECK);
         props.setLook(wNameInField);
         fdNameInField=new FormData();
         fdNameInField.left  = new FormAttachment(middle, 0);
-        fdNameInField.top   = new FormAttachment(wBatch, margin*5);
+        fdNameInField.top   = new FormAttachment(wRoutingFields, margin*5);
         fdNameInField.right = new FormAttachment(100, 0);
         wNameInField.setLayoutData(fdNameInField);
         wNameInField.addSelectionListener(
@@ -1235,6 +1304,12 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
         
         wlBatch.setEnabled(enableBatch);
         wBatch.setEnabled(enableBatch);
+        wlAsyncCommit.setEnabled(enableBatch && useBatch);
+        wAsyncCommit.setEnabled(enableBatch && useBatch);
+        wlWriters.setEnabled(enableBatch && useBatch);
+        wWriters.setEnabled(enableBatch && useBatch);
+        wlRoutingFields.setEnabled(enableBatch && useBatch);
+        wRoutingFields.setEnabled(enableBatch && useBatch);
         
         boolean specifyFields = wSpecifyFields.getSelection();
         wFields.setEnabled(specifyFields);
@@ -1258,6 +1333,15 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
         wTruncate.setSelection( input.truncateTable() );
         wIgnore.setSelection(input.ignoreErrors());
 		wBatch.setSelection(input.useBatchUpdate());
+		wAsyncCommit.setSelection(input.isAsyncBatchCommit());
+		wWriters.setText(Integer.toString(input.getNrWriterConnections()));
+		StringBuffer routingFields = new StringBuffer();
+		for (int i=0;i<input.getRoutingFields().length;i++)
+		{
+			if (i>0) routingFields.append(", ");
+			routingFields.append(input.getRoutingFields()[i]);
+		}
+		wRoutingFields.setText(routingFields.toString());
 
         wCommit.setText(input.getCommitSize());
 
@@ -1309,6 +1393,14 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
 		info.setTruncateTable( wTruncate.getSelection() );
 		info.setIgnoreErrors( wIgnore.getSelection() );
 		info.setUseBatchUpdate( wBatch.getSelection() );
+		info.setAsyncBatchCommit( wAsyncCommit.getSelection() );
+		info.setNrWriterConnections( Math.max(1, Const.toInt(wWriters.getText(), 1)) );
+		List<String> routingFields = new ArrayList<String>();
+		for (String routingField : wRoutingFields.getText().split(","))
+		{
+			if (!Const.isEmpty(routingField.trim())) routingFields.add(routingField.trim());
+		}
+		info.setRoutingFields( routingFields.toArray(new String[routingFields.size()]) );
         info.setPartitioningEnabled( wUsePart.getSelection() );
         info.setPartitioningField( wPartField.getText() );
         info.setPartitioningDaily( wPartDaily.getSelection() );
@@ -301,6 +301,14 @@ public class TextFileInputDialog extends BaseStepDialog implements StepDialogInt
 	private CCombo       wDateLocale;
 	private FormData     fdlDateLocale, fdDateLocale;
 
+    private Label        wlRunningInParallel;
+    private Button       wRunningInParallel;
+    private FormData     fdlRunningInParallel, fdRunningInParallel;
+
+    private Label        wlLazyConversion;
+    private Button       wLazyConversion;
+    private FormData     fdlLazyConversion, fdLazyConversion;
+
     // ERROR HANDLING...
     private Label        wlErrorIgnored;
     private Button       wErrorIgnored;
@@ -1548,6 +1556,40 @@ public class TextFileInputDialog extends BaseStepDialog implements StepDialogInt
             }
         );
 
+        // Run in parallel checkbox
+        wlRunningInParallel=new Label(wContentComp, SWT.RIGHT);
+        wlRunningInParallel.setText(BaseMessages.getString(PKG, "TextFileInputDialog.RunningInParallel.Label"));
+        props.setLook(wlRunningInParallel);
+        fdlRunningInParallel=new FormData();
+        fdlRunningInParallel.left = new FormAttachment(0, 0);
+        fdlRunningInParallel.top  = new FormAttachment(wDateLocale, margin);
+        fdlRunningInParallel.right= new FormAttachment(middle, -margin);
+        wlRunningInParallel.setLayoutData(fdlRunningInParallel);
+        wRunningInParallel=new Button(wContentComp, SWT.CHECK);
+        wRunningInParallel.setToolTipText(BaseMessages.getString(PKG, "TextFileInputDialog.RunningInParallel.Tooltip"));
+        props.setLook(wRunningInParallel);
+        fdRunningInParallel=new FormData();
+        fdRunningInParallel.left = new FormAttachment(middle, 0);
+        fdRunningInParallel.top  = new FormAttachment(wDateLocale, margin);
+        wRunningInParallel.setLayoutData(fdRunningInParallel);
+
+        // Lazy conversion checkbox
+        wlLazyConversion=new Label(wContentComp, SWT.RIGHT);
+        wlLazyConversion.setText(BaseMessages.getString(PKG, "TextFileInputDialog.LazyConversion.Label"));
+        props.setLook(wlLazyConversion);
+        fdlLazyConversion=new FormData();
+        fdlLazyConversion.left = new FormAttachment(0, 0);
+        fdlLazyConversion.top  = new FormAttachment(wRunningInParallel, margin);
+        fdlLazyConversion.right= new FormAttachment(middle, -margin);
+        wlLazyConversion.setLayoutData(fdlLazyConversion);
+        wLazyConversion=new Button(wContentComp, SWT.CHECK);
+        wLazyConversion.setToolTipText(BaseMessages.getString(PKG, "TextFileInputDialog.LazyConversion.Tooltip"));
+        props.setLook(wLazyConversion);
+        fdLazyConversion=new FormData();
+        fdLazyConversion.left = new FormAttachment(middle, 0);
+        fdLazyConversion.top  = new FormAttachment(wRunningInParallel, margin);
+        wLazyConversion.setLayoutData(fdLazyConversion);
+
      // ///////////////////////////////
 		// START OF AddFileResult GROUP  //
 		///////////////////////////////// 
@@ -1566,7 +1608,7 @@ public class TextFileInputDialog extends BaseStepDialog implements StepDialogInt
  		props.setLook(wlAddResult);
 		fdlAddResult=new FormData();
 		fdlAddResult.left = new FormAttachment(0, 0);
-		fdlAddResult.top  = new FormAttachment(wDateLocale, margin);
+		fdlAddResult.top  = new FormAttachment(wLazyConversion, margin);
 		fdlAddResult.right= new FormAttachment(middle, -margin);
 		wlAddResult.setLayoutData(fdlAddResult);
 		wAddResult=new Button(wAddFileResult, SWT.CHECK );
@@ -1574,12 +1616,12 @@ public class TextFileInputDialog extends BaseStepDialog implements StepDialogInt
 		wAddResult.setToolTipText(BaseMessages.getString(PKG, "TextFileInputDialog.AddResult.Tooltip"));
 		fdAddResult=new FormData();
 		fdAddResult.left = new FormAttachment(middle, 0);
-		fdAddResult.top  = new FormAttachment(wDateLocale, margin);
+		fdAddResult.top  = new FormAttachment(wLazyConversion, margin);
 		wAddResult.setLayoutData(fdAddResult);
 
 		fdAddFileResult = new FormData();
 		fdAddFileResult.left = new FormAttachment(0, margin);
-		fdAddFileResult.top = new FormAttachment(wDateLocale, margin);
+		fdAddFileResult.top = new FormAttachment(wLazyConversion, margin);
 		fdAddFileResult.right = new FormAttachment(100, -margin);
 		wAddFileResult.setLayoutData(fdAddFileResult);
 			
@@ -2211,6 +2253,8 @@ public class TextFileInputDialog extends BaseStepDialog implements StepDialogInt
 		wRownumByFile.setSelection(in.isRowNumberByFile());
         wDateLenient.setSelection(in.isDateFormatLenient());
         wAddResult.setSelection(in.isAddResultFile());
+        wRunningInParallel.setSelection(in.isRunningInParallel());
+        wLazyConversion.setSelection(in.isLazyConversionActive());
 		
         if (in.getFilenameField()!=null) wInclFilenameField.setText(in.getFilenameField());
 		if (in.getRowNumberField()!=null) wInclRownumField.setText(in.getRowNumberField());
@@ -2398,6 +2442,8 @@ public class TextFileInputDialog extends BaseStepDialog implements StepDialogInt
         meta.setNrLinesDocHeader( Const.toInt( wNrLinesDocHeader.getText(), 0) );
 		meta.setFileCompression(wCompression.getText() );
 		meta.setDateFormatLenient( wDateLenient.getSelection() );
+		meta.setRunningInParallel( wRunningInParallel.getSelection() );
+		meta.setLazyConversionActive( wLazyConversion.getSelection() );
 		meta.setNoEmptyLines( wNoempty.getSelection() );
         meta.setEncoding(wEncoding.getText());
         
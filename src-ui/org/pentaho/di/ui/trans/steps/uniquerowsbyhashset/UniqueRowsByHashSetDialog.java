@@ -80,6 +80,18 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
 	private TextVar      wErrorDesc;
 	private FormData     fdlErrorDesc, fdErrorDesc;
 	
+	private Label        wlUseBloomFilter;
+	private Button       wUseBloomFilter;
+	private FormData     fdlUseBloomFilter, fdUseBloomFilter;
+
+	private Label        wlBloomExpectedRows;
+	private TextVar      wBloomExpectedRows;
+	private FormData     fdlBloomExpectedRows, fdBloomExpectedRows;
+
+	private Label        wlBloomFalsePositiveRate;
+	private TextVar      wBloomFalsePositiveRate;
+	private FormData     fdlBloomFalsePositiveRate, fdBloomFalsePositiveRate;
+	
 	private Group wSettings;
 	private FormData fdSettings;
     
@@ -217,6 +229,65 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
 		fdErrorDesc.top  = new FormAttachment(wStoreValues, margin);
 		fdErrorDesc.right= new FormAttachment(100, 0);
 		wErrorDesc.setLayoutData(fdErrorDesc);
+
+		wlUseBloomFilter=new Label(wSettings, SWT.RIGHT);
+		wlUseBloomFilter.setText(BaseMessages.getString(PKG, "UniqueRowsByHashSetDialog.UseBloomFilter.Label")); //$NON-NLS-1$
+ 		props.setLook(wlUseBloomFilter);
+		fdlUseBloomFilter=new FormData();
+		fdlUseBloomFilter.left = new FormAttachment(0, 0);
+		fdlUseBloomFilter.top  = new FormAttachment(wErrorDesc, margin);
+		fdlUseBloomFilter.right= new FormAttachment(middle, -margin);
+		wlUseBloomFilter.setLayoutData(fdlUseBloomFilter);
+		wUseBloomFilter=new Button(wSettings, SWT.CHECK );
+ 		props.setLook(wUseBloomFilter);
+		wUseBloomFilter.setToolTipText(BaseMessages.getString(PKG, "UniqueRowsByHashSetDialog.UseBloomFilter.ToolTip",Const.CR)); //$NON-NLS-1$ //$NON-NLS-2$
+		fdUseBloomFilter=new FormData();
+		fdUseBloomFilter.left = new FormAttachment(middle, 0);
+		fdUseBloomFilter.top  = new FormAttachment(wErrorDesc, margin);
+		wUseBloomFilter.setLayoutData(fdUseBloomFilter);
+		wUseBloomFilter.addSelectionListener(new SelectionAdapter() 
+			{
+				public void widgetSelected(SelectionEvent e) 
+				{
+					input.setChanged();
+					setBloomFilter();
+				}
+			}
+		);
+
+		wlBloomExpectedRows=new Label(wSettings, SWT.RIGHT);
+		wlBloomExpectedRows.setText(BaseMessages.getString(PKG, "UniqueRowsByHashSetDialog.BloomExpectedRows.Label")); //$NON-NLS-1$
+ 		props.setLook(wlBloomExpectedRows);
+		fdlBloomExpectedRows=new FormData();
+		fdlBloomExpectedRows.left = new FormAttachment(0, 0);
+		fdlBloomExpectedRows.top  = new FormAttachment(wUseBloomFilter, margin);
+		fdlBloomExpectedRows.right= new FormAttachment(middle, -margin);
+		wlBloomExpectedRows.setLayoutData(fdlBloomExpectedRows);
+		wBloomExpectedRows=new TextVar(transMeta, wSettings, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+ 		props.setLook(wBloomExpectedRows);
+		wBloomExpectedRows.addModifyListener(lsMod);
+		fdBloomExpectedRows=new FormData();
+		fdBloomExpectedRows.left = new FormAttachment(middle, 0);
+		fdBloomExpectedRows.top  = new FormAttachment(wUseBloomFilter, margin);
+		fdBloomExpectedRows.right= new FormAttachment(100, 0);
+		wBloomExpectedRows.setLayoutData(fdBloomExpectedRows);
+
+		wlBloomFalsePositiveRate=new Label(wSettings, SWT.RIGHT);
+		wlBloomFalsePositiveRate.setText(BaseMessages.getString(PKG, "UniqueRowsByHashSetDialog.BloomFalsePositiveRate.Label")); //$NON-NLS-1$
+ 		props.setLook(wlBloomFalsePositiveRate);
+		fdlBloomFalsePositiveRate=new FormData();
+		fdlBloomFalsePositiveRate.left = new FormAttachment(0, 0);
+		fdlBloomFalsePositiveRate.top  = new FormAttachment(wBloomExpectedRows, margin);
+		fdlBloomFalsePositiveRate.right= new FormAttachment(middle, -margin);
+		wlBloomFalsePositiveRate.setLayoutData(fdlBloomFalsePositiveRate);
+		wBloomFalsePositiveRate=new TextVar(transMeta, wSettings, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+ 		props.setLook(wBloomFalsePositiveRate);
+		wBloomFalsePositiveRate.addModifyListener(lsMod);
+		fdBloomFalsePositiveRate=new FormData();
+		fdBloomFalsePositiveRate.left = new FormAttachment(middle, 0);
+		fdBloomFalsePositiveRate.top  = new FormAttachment(wBloomExpectedRows, margin);
+		fdBloomFalsePositiveRate.right= new FormAttachment(100, 0);
+		wBloomFalsePositiveRate.setLayoutData(fdBloomFalsePositiveRate);
 		
 
 		fdSettings = new FormData();
@@ -324,6 +395,7 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
 		
 		getData();
 		setErrorDesc();
+		setBloomFilter();
 		input.setChanged(changed);
 	
 		shell.open();
@@ -338,6 +410,13 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
 		wlErrorDesc.setEnabled(wRejectDuplicateRow.getSelection());
 		wErrorDesc.setEnabled(wRejectDuplicateRow.getSelection());
 	}
+	private void setBloomFilter()
+	{
+		wlBloomExpectedRows.setEnabled(wUseBloomFilter.getSelection());
+		wBloomExpectedRows.setEnabled(wUseBloomFilter.getSelection());
+		wlBloomFalsePositiveRate.setEnabled(wUseBloomFilter.getSelection());
+		wBloomFalsePositiveRate.setEnabled(wUseBloomFilter.getSelection());
+	}
 	protected void setComboBoxes()
     {
         // Something was changed in the row.
@@ -363,6 +442,9 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
 	    wStoreValues.setSelection(input.getStoreValues());
 		wRejectDuplicateRow.setSelection(input.isRejectDuplicateRow());
 		if (input.getErrorDescription()!=null) wErrorDesc.setText(input.getErrorDescription());
+		wUseBloomFilter.setSelection(input.isUsingBloomFilter());
+		if (input.getBloomFilterExpectedRows()!=null) wBloomExpectedRows.setText(input.getBloomFilterExpectedRows());
+		if (input.getBloomFilterFalsePositiveRate()!=null) wBloomFalsePositiveRate.setText(input.getBloomFilterFalsePositiveRate());
 	    for (int i=0;i<input.getCompareFields().length;i++)
 	    {
 	        TableItem item = wFields.table.getItem(i);
@@ -398,6 +480,9 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
         input.setStoreValues( wStoreValues.getSelection() );
 		input.setRejectDuplicateRow(wRejectDuplicateRow.getSelection());
 		input.setErrorDescription(wErrorDesc.getText());
+		input.setUsingBloomFilter(wUseBloomFilter.getSelection());
+		input.setBloomFilterExpectedRows(wBloomExpectedRows.getText());
+		input.setBloomFilterFalsePositiveRate(wBloomFalsePositiveRate.getText());
 		dispose();
 	}
 	
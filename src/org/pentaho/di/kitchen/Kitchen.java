@@ -70,7 +70,7 @@ public class Kitchen
 		Job            job      = null;
 		
 		StringBuffer optionRepname, optionUsername, optionPassword, optionJobname, optionDirname, optionFilename, optionLoglevel;
-        StringBuffer optionLogfile, optionLogfileOld, optionListdir, optionListjobs, optionListrep, optionNorep, optionVersion, optionListParam, optionExport;
+        StringBuffer optionLogfile, optionLogfileOld, optionListdir, optionListjobs, optionListrep, optionNorep, optionVersion, optionListParam, optionExport, optionTranstype;
         NamedParams optionParams = new NamedParamsDefault();
 
     CommandLineOption maxLogLinesOption = new CommandLineOption("maxloglines", BaseMessages.getString(PKG, "Kitchen.CmdLine.MaxLogLines"), new StringBuffer()); //$NON-NLS-1$ //$NON-NLS-2$
@@ -95,6 +95,7 @@ public class Kitchen
                 new CommandLineOption("param", BaseMessages.getString(PKG, "Kitchen.ComdLine.Param") , optionParams, false),
 		        new CommandLineOption("listparam", BaseMessages.getString(PKG, "Kitchen.ComdLine.ListParam"), optionListParam=new StringBuffer(), true, false),
 		        new CommandLineOption("export", BaseMessages.getString(PKG, "Kitchen.ComdLine.Export"), optionExport=new StringBuffer(), true, false),
+		        new CommandLineOption("transtype", BaseMessages.getString(PKG, "Kitchen.ComdLine.TransType"), optionTranstype=new StringBuffer()),
 		        maxLogLinesOption,
 		        maxLogTimeoutOption,
             };
@@ -335,6 +336,12 @@ public class Kitchen
                 job.getJobMeta().setArguments((String[]) args.toArray(new String[args.size()]));
             }
             job.initializeVariablesFrom(null);
+            if (!Const.isEmpty(optionTranstype))
+            {
+                // The transformations of the job inherit this variable
+                //
+                job.setVariable(Const.KETTLE_TRANS_TYPE, optionTranstype.toString());
+            }
             job.setLogLevel(log.getLogLevel());
             job.getJobMeta().setInternalKettleVariables(job);
             
@@ -43,6 +43,7 @@ import org.pentaho.di.repository.RepositoryDirectoryInterface;
 import org.pentaho.di.repository.RepositoryMeta;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.TransMeta.TransformationType;
 import org.pentaho.di.version.BuildVersion;
 import org.w3c.dom.Document;
 
@@ -66,7 +67,7 @@ public class Pan {
 
     // The options:
     StringBuffer optionRepname, optionUsername, optionPassword, optionTransname, optionDirname, optionFilename, optionLoglevel;
-    StringBuffer optionLogfile, optionLogfileOld, optionListdir, optionListtrans, optionListrep, optionExprep, optionNorep, optionSafemode, optionVersion, optionJarFilename, optionListParam;
+    StringBuffer optionLogfile, optionLogfileOld, optionListdir, optionListtrans, optionListrep, optionExprep, optionNorep, optionSafemode, optionVersion, optionJarFilename, optionListParam, optionTranstype;
     NamedParams optionParams = new NamedParamsDefault();
     
     CommandLineOption maxLogLinesOption = new CommandLineOption("maxloglines", BaseMessages.getString(PKG, "Pan.CmdLine.MaxLogLines"), new StringBuffer()); //$NON-NLS-1$ //$NON-NLS-2$
@@ -91,6 +92,7 @@ public class Pan {
         new CommandLineOption("jarfile", BaseMessages.getString(PKG, "Pan.ComdLine.JarFile"), optionJarFilename = new StringBuffer(), false, true),
         new CommandLineOption("param", BaseMessages.getString(PKG, "Pan.ComdLine.Param"), optionParams, false),
         new CommandLineOption("listparam", BaseMessages.getString(PKG, "Pan.ComdLine.ListParam"), optionListParam = new StringBuffer(), true, false),
+        new CommandLineOption("transtype", BaseMessages.getString(PKG, "Pan.ComdLine.TransType"), optionTranstype = new StringBuffer()),
         maxLogLinesOption,
         maxLogTimeoutOption };
 
@@ -380,6 +382,11 @@ public class Pan {
         trans.setSafeModeEnabled(true);
       }
 
+      // See if we want to run in another type of engine than the one the transformation was designed for:
+      if (!Const.isEmpty(optionTranstype)) {
+        trans.setTransformationType(TransformationType.getTransformationTypeByCode(optionTranstype.toString()));
+      }
+
       // List the parameters defined in this transformation
       // Then simply exit...
       //
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans;
+
+/**
+ * The memory a step (copy) reserved with the MemoryManager of the transformation.<br>
+ * <br>
+ * The memory is taken from the manager in chunks, so most reservations don't need to go to the manager.
+ * A consumer is used by the thread of its step only, except for the spill requests coming from the other steps.
+ *
+ * @author matt
+ */
+public class MemoryConsumer {
+
+	private static final long MAX_CHUNK_SIZE = 1024*1024;
+
+	private MemoryManager manager;
+	String name;
+	boolean spillable;
+
+	/** The number of bytes taken from the manager, guarded by the manager */
+	long reserved;
+
+	volatile boolean spillRequested;
+	boolean overBudgetLogged;
+
+	/** The part of the reserved bytes that isn't used yet */
+	private long credit;
+	private long chunkSize;
+
+	MemoryConsumer(MemoryManager manager, String name, boolean spillable) {
+		this.manager = manager;
+		this.name = name;
+		this.spillable = spillable;
+		this.chunkSize = Math.max(0L, Math.min(MAX_CHUNK_SIZE, manager.getBudget()/64));
+	}
+
+	/**
+	 * Reserve memory for rows that can be spilled to disk.
+	 *
+	 * @param bytes the estimated number of bytes
+	 * @return true if the memory is granted, false if the rows need to be written to disk first.
+	 */
+	public boolean reserve(long bytes) {
+		return take(bytes, false);
+	}
+
+	/**
+	 * Reserve memory for rows that have to stay in memory.  The memory is always granted, the steps that can spill will make room.
+	 *
+	 * @param bytes the estimated number of bytes
+	 */
+	public void allocate(long bytes) {
+		take(bytes, true);
+	}
+
+	private boolean take(long bytes, boolean force) {
+		if (bytes<=credit) {
+			credit-=bytes;
+			return true;
+		}
+		long needed = bytes-credit;
+		if (manager.reserve(this, needed+chunkSize, force)) {
+			credit = chunkSize;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Give back part of the memory, for example when rows are removed.
+	 *
+	 * @param bytes the estimated number of bytes no longer used
+	 */
+	public void release(long bytes) {
+		credit+=bytes;
+		if (credit>2*chunkSize) {
+			manager.release(this, credit-chunkSize);
+			credit = chunkSize;
+		}
+	}
+
+	/**
+	 * Give back all the memory, for example after the rows were written to disk.  This also clears a spill request.
+	 */
+	public void releaseAll() {
+		manager.release(this, Long.MAX_VALUE);
+		credit = 0L;
+		spillRequested = false;
+	}
+
+	/**
+	 * @return true if another step asked this one to write its rows to disk to make room.
+	 */
+	public boolean isSpillRequested() {
+		return spillRequested;
+	}
+
+	/**
+	 * Tell the manager that part of the rows were written to disk after a spill request, the memory was given back with release().
+	 */
+	public void clearSpillRequest() {
+		spillRequested = false;
+	}
+
+	/**
+	 * @return the estimated number of bytes in use
+	 */
+	public long getUsed() {
+		synchronized(manager) {
+			return reserved-credit;
+		}
+	}
+
+	/**
+	 * Give back all the memory and stop using the manager.
+	 */
+	public void close() {
+		manager.unregister(this);
+		credit = 0L;
+		spillRequested = false;
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.i18n.BaseMessages;
+
+/**
+ * Keeps track of the memory the steps of a transformation use to keep rows around: sorting, grouping, lookups and so on.<br>
+ * <br>
+ * The transformation gets a fixed budget (variable KETTLE_TRANS_MEMORY_BUDGET).  Every step that buffers rows registers a MemoryConsumer
+ * and reserves the estimated size of the rows it keeps.  When the budget is used up, a step that can write its rows to disk
+ * (Sort Rows, Blocking Step) is told to do so: either it doesn't get the memory it asks for, or it is asked to spill because it holds
+ * a lot more than the step that is asking.  Steps that can't spill (lookups, hash sets, ...) always get the memory, only the others make room.<br>
+ * <br>
+ * The sizes are estimates based on the data types of the values, see estimateRowSize().
+ *
+ * @author matt
+ */
+public class MemoryManager {
+
+	private static Class<?> PKG = Trans.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
+
+	private long budget;
+	private LogChannelInterface log;
+
+	/** All guarded by this */
+	private long used;
+	private List<MemoryConsumer> consumers;
+
+	/**
+	 * @param budget the number of bytes the steps of the transformation can use to keep rows in memory
+	 * @param log the log channel of the transformation
+	 */
+	public MemoryManager(long budget, LogChannelInterface log) {
+		this.budget = budget;
+		this.log = log;
+		consumers = new ArrayList<MemoryConsumer>();
+	}
+
+	/**
+	 * @param name the name of the consumer to use in the logging, usually the step copy
+	 * @param spillable true if the consumer can write its rows to disk when asked to
+	 * @return a new consumer to reserve memory with
+	 */
+	public synchronized MemoryConsumer register(String name, boolean spillable) {
+		MemoryConsumer consumer = new MemoryConsumer(this, name, spillable);
+		consumers.add(consumer);
+		return consumer;
+	}
+
+	synchronized void unregister(MemoryConsumer consumer) {
+		release(consumer, consumer.reserved);
+		consumers.remove(consumer);
+	}
+
+	/**
+	 * Reserve memory for a consumer.
+	 *
+	 * @param consumer the consumer asking for the memory
+	 * @param bytes the number of bytes
+	 * @param force true if the memory needs to be granted anyway: the consumer can't spill
+	 * @return true if the memory was granted, false if a spillable consumer needs to spill instead
+	 */
+	synchronized boolean reserve(MemoryConsumer consumer, long bytes, boolean force) {
+		if (used+bytes<=budget) {
+			grant(consumer, bytes);
+			return true;
+		}
+
+		// The budget is used up. The consumers that hold a lot more than this one should spill first...
+		//
+		List<MemoryConsumer> larger = new ArrayList<MemoryConsumer>();
+		for (MemoryConsumer other : consumers) {
+			if (other!=consumer && other.spillable && !other.spillRequested && other.reserved>consumer.reserved) {
+				larger.add(other);
+			}
+		}
+		Collections.sort(larger, new Comparator<MemoryConsumer>() {
+			public int compare(MemoryConsumer one, MemoryConsumer two) {
+				return one.reserved<two.reserved ? 1 : (one.reserved>two.reserved ? -1 : 0);
+			}
+		});
+		long needed = used+bytes-budget;
+		for (MemoryConsumer other : larger) {
+			if (needed<=0) break;
+			if (log.isDetailed()) log.logDetailed(BaseMessages.getString(PKG, "MemoryManager.Log.SpillRequested", other.name, Long.toString(other.reserved/1024))); //$NON-NLS-1$
+			other.spillRequested = true;
+			needed-=other.reserved;
+		}
+
+		// A spillable consumer that holds the most makes room itself, right away.
+		//
+		if (!force && larger.isEmpty()) {
+			return false;
+		}
+
+		// Go over budget until the others have spilled
+		//
+		if (!consumer.overBudgetLogged && larger.isEmpty()) {
+			consumer.overBudgetLogged = true;
+			log.logBasic(BaseMessages.getString(PKG, "MemoryManager.Log.OverBudget", consumer.name, Long.toString(budget/(1024*1024)))); //$NON-NLS-1$
+		}
+		grant(consumer, bytes);
+		return true;
+	}
+
+	private void grant(MemoryConsumer consumer, long bytes) {
+		used+=bytes;
+		consumer.reserved+=bytes;
+	}
+
+	synchronized void release(MemoryConsumer consumer, long bytes) {
+		bytes = Math.min(bytes, consumer.reserved);
+		used-=bytes;
+		consumer.reserved-=bytes;
+	}
+
+	/**
+	 * @return the number of bytes the steps can use
+	 */
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @return the number of bytes reserved by all the consumers
+	 */
+	public synchronized long getUsed() {
+		return used;
+	}
+
+	/**
+	 * @param budget the size of the budget: a number of megabytes or a percentage of the maximum heap size (for example 25%)
+	 * @return the size of the budget in bytes or -1 if none is specified
+	 */
+	public static long parseBudget(String budget) {
+		if (Const.isEmpty(budget)) {
+			return -1L;
+		}
+		budget = budget.trim();
+		if (budget.endsWith("%")) {
+			int percentage = Const.toInt(budget.substring(0, budget.length()-1).trim(), -1);
+			if (percentage<=0) return -1L;
+			return Runtime.getRuntime().maxMemory()/100*percentage;
+		}
+		long megabytes = Const.toLong(budget, -1L);
+		if (megabytes<=0) return -1L;
+		return megabytes*1024*1024;
+	}
+
+	/**
+	 * Estimate the number of bytes a row takes on the heap: the array and the values in it.
+	 *
+	 * @param rowMeta the metadata of the row
+	 * @param row the row data
+	 * @return the estimated size of the row in bytes
+	 */
+	public static long estimateRowSize(RowMetaInterface rowMeta, Object[] row) {
+		long size = 16+8*row.length;
+		for (int i=0;i<rowMeta.size() && i<row.length;i++) {
+			size+=estimateValueSize(rowMeta.getValueMeta(i), row[i]);
+		}
+		return size;
+	}
+
+	/**
+	 * Estimate the number of bytes a value takes on the heap, on top of the reference to it.
+	 *
+	 * @param valueMeta the metadata of the value
+	 * @param value the value data
+	 * @return the estimated size of the value in bytes
+	 */
+	public static long estimateValueSize(ValueMetaInterface valueMeta, Object value) {
+		if (value==null) {
+			return 0L;
+		}
+		switch(valueMeta.getStorageType()) {
+		case ValueMetaInterface.STORAGE_TYPE_BINARY_STRING : return 16+((byte[])value).length;
+		case ValueMetaInterface.STORAGE_TYPE_INDEXED       : return 0L; // shared by all the rows
+		default: break;
+		}
+		switch(valueMeta.getType()) {
+		case ValueMetaInterface.TYPE_STRING    : return 40+2*((String)value).length();
+		case ValueMetaInterface.TYPE_INTEGER   : return 16L;
+		case ValueMetaInterface.TYPE_NUMBER    : return 16L;
+		case ValueMetaInterface.TYPE_DATE      : return 24L;
+		case ValueMetaInterface.TYPE_BOOLEAN   : return 0L;  // Boolean.TRUE and Boolean.FALSE
+		case ValueMetaInterface.TYPE_BIGNUMBER : return 64L;
+		case ValueMetaInterface.TYPE_BINARY    : return 16+((byte[])value).length;
+		default: return 64L;
+		}
+	}
+}
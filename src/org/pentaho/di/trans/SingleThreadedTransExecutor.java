@@ -1,27 +1,60 @@
 package org.pentaho.di.trans;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.TransMeta.TransformationType;
+import org.pentaho.di.trans.step.BaseStep;
+import org.pentaho.di.trans.step.RunThread;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaDataCombi;
-import org.pentaho.di.trans.step.errorhandling.StreamInterface;
 
+/**
+ * Runs all the steps of a transformation one after the other on a single thread.<br>
+ * <br>
+ * The steps are sorted from start to finish.  In every iteration each step gets to process the rows that are waiting on its input,
+ * a batch of rows at a time.  A step with info streams (Stream Lookup and so on) only gets its turn once those streams are complete.<br>
+ * <br>
+ * There are 2 ways to use this class:<br>
+ * - execute() runs a prepared transformation till the end, this is what Trans does for the SingleThreaded transformation type.<br>
+ * - init() and oneIteration() let the caller feed rows to the transformation (with a RowProducer) and push them through, one batch at a time.
+ *   After each iteration the steps are told that the batch is complete.
+ *
+ * @author matt
+ */
 public class SingleThreadedTransExecutor {
 
+  private static Class<?> PKG = Trans.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
+
   private Trans trans;
+  private LogChannelInterface log;
   private List<StepMetaDataCombi> steps;
   private boolean[] done;
   private int nrDone;
-  private List<List<StreamInterface>> stepInfoStreams;
-  private List<List<RowSet>> stepInfoRowSets;
-  
+  private List<Set<String>> stepInfoStepnames;
+
+  /** Set while execute() runs the transformation, null when the caller drives the iterations */
+  private RunThread[] runners;
+
+  /** The maximum number of rows a step processes in one iteration, 0 means no limit */
+  private int batchSize;
+
+  private boolean[] hasInput;
+  private long[] processingNanos;
+  private long[] nrTurns;
+
   public SingleThreadedTransExecutor(final Trans trans) {
     this.trans = trans;
+    this.log = trans.getLogChannel();
 
-    steps = trans.getSteps();
+    steps = new ArrayList<StepMetaDataCombi>(trans.getSteps());
 
     // Always disable thread priority management, it will always slow us down...
     //
@@ -30,96 +63,86 @@ public class SingleThreadedTransExecutor {
     }
 
     sortSteps();
-    
+
     done = new boolean[steps.size()];
     nrDone = 0;
+    processingNanos = new long[steps.size()];
+    nrTurns = new long[steps.size()];
 
-    stepInfoStreams = new ArrayList<List<StreamInterface>>();
-    stepInfoRowSets = new ArrayList<List<RowSet>>();
+    stepInfoStepnames = new ArrayList<Set<String>>();
     for (StepMetaDataCombi combi : steps) {
-      List<StreamInterface> infoStreams = combi.stepMeta.getStepMetaInterface().getStepIOMeta().getInfoStreams();
-      stepInfoStreams.add( infoStreams );
-      List<RowSet> infoRowSets = new ArrayList<RowSet>();
-      for (StreamInterface infoStream : infoStreams) {
-        RowSet infoRowSet = trans.findRowSet(infoStream.getStepname(), 0, combi.stepname, 0);
-        if (infoRowSet!=null) {
-          infoRowSets.add(infoRowSet);
+      Set<String> infoStepnames = new HashSet<String>();
+      String[] names = combi.stepMeta.getStepMetaInterface().getStepIOMeta().getInfoStepnames();
+      if (names!=null) {
+        for (String name : names) {
+          if (name!=null) infoStepnames.add(name.toUpperCase());
         }
       }
-      stepInfoRowSets.add(infoRowSets);
+      stepInfoStepnames.add(infoStepnames);
     }
-
   }
-  
+
+  /**
+   * Sorts the steps from start to finish: a step always comes after all the steps it reads from, info and error hops included.
+   * The steps that don't depend on each other keep the order they have in the transformation.
+   */
   private void sortSteps() {
-    // Sort the steps from start to finish...
-    //
-    /*
-    Collections.sort(steps, new Comparator<StepMetaDataCombi>() {
-      public int compare(StepMetaDataCombi c1, StepMetaDataCombi c2) {
+    TransMeta transMeta = trans.getTransMeta();
 
-        boolean c1BeforeC2 = trans.getTransMeta().findPrevious(c2.stepMeta, c1.stepMeta);
-        boolean c2BeforeC1 = trans.getTransMeta().findPrevious(c1.stepMeta, c2.stepMeta);
+    List<StepMeta> sorted = new ArrayList<StepMeta>();
+    List<StepMeta> todo = new ArrayList<StepMeta>();
+    for (StepMetaDataCombi combi : steps) {
+      if (!todo.contains(combi.stepMeta)) todo.add(combi.stepMeta);
+    }
 
-        if (!(c1BeforeC2 ^ c2BeforeC1)) {
-          // In this situation there is no path from c1 to c2
-          // This causes Collections.sort() great trouble.
-          //
-          return false; 
+    while (!todo.isEmpty()) {
+      StepMeta next = null;
+      for (StepMeta stepMeta : todo) {
+        boolean ready = true;
+        for (StepMeta previous : transMeta.findPreviousSteps(stepMeta, true)) {
+          if (todo.contains(previous)) {
+            ready = false;
+            break;
+          }
         }
-        
-        if (c1BeforeC2) {
-          return -1;
-        } else {
-          return 1;
+        if (ready) {
+          next = stepMeta;
+          break;
         }
       }
-    });
-    */
-    
-    // The bubble sort algorithm in contrast to the QuickSort or MergeSort algorithms 
-    // does indeed cover all possibilities.
-    // Sorting larger transformations with hundreds of steps might be too slow though.
-    // We should consider caching TransMeta.findPrevious() results in that case.
-    //
-    for (int x=0;x<steps.size();x++) {
-      for (int y=0;y<steps.size()-1;y++) {
-        StepMetaDataCombi one = steps.get(y);
-        StepMetaDataCombi two = steps.get(y+1);
-        boolean before = trans.getTransMeta().findPrevious(one.stepMeta, two.stepMeta);
-        if (before) {
-          // two was found to be positioned BEFORE one so we need to switch them...
-          //
-          steps.set(y, two);
-          steps.set(y+1, one);
-        }
+
+      // A loop in the hops, shouldn't happen: keep the remaining steps in their original order.
+      //
+      if (next==null) next = todo.get(0);
+
+      todo.remove(next);
+      sorted.add(next);
+    }
+
+    List<StepMetaDataCombi> sortedSteps = new ArrayList<StepMetaDataCombi>(steps.size());
+    for (StepMeta stepMeta : sorted) {
+      for (StepMetaDataCombi combi : steps) {
+        if (combi.stepMeta==stepMeta) sortedSteps.add(combi);
       }
     }
-    
-    //
-    System.out.println("-------------------------------------------------------");
-    System.out.println("Steps after sort: ");
-    for (StepMetaDataCombi combi : steps) {
-      System.out.println(combi.step.toString());
+    steps = sortedSteps;
+
+    if (log.isDetailed()) {
+      for (StepMetaDataCombi combi : steps) {
+        log.logDetailed(BaseMessages.getString(PKG, "SingleThreadedTransExecutor.Log.StepOrder", combi.step.toString())); //$NON-NLS-1$
+      }
     }
-    System.out.println("-------------------------------------------------------");
-    //
   }
 
   public boolean init() throws KettleException {
-    
+
     // See if the steps support the SingleThreaded transformation type...
     //
     for (StepMetaDataCombi combi : steps) {
-      TransformationType[] types = combi.stepMeta.getStepMetaInterface().getSupportedTransformationTypes();
-      boolean ok = false;
-      for (TransformationType type : types) {
-        if (type == TransformationType.SingleThreaded) ok = true; 
-      }
-      if (!ok) {
-        throw new KettleException("Step '"+combi.stepname+"' of type '"+combi.stepMeta.getStepID()+"' is not yet supported in a Single Threaded transformation engine.");
+      if (!combi.stepMeta.isSupportingTransformationType(TransformationType.SingleThreaded)) {
+        throw new KettleException(BaseMessages.getString(PKG, "Trans.Exception.StepNotSupportedSingleThreaded", combi.stepname, combi.stepMeta.getStepID())); //$NON-NLS-1$
       }
-    }    
+    }
     // Initialize all the steps...
     //
     for (StepMetaDataCombi combi : steps) {
@@ -131,89 +154,201 @@ public class SingleThreadedTransExecutor {
     return true;
 
   }
-  
+
+  /**
+   * Runs the prepared (initialized) transformation till all the steps are finished, the transformation is stopped or a step fails.
+   * The steps are run, finished and disposed of just like they are on their own threads, so the logging, the metrics and the listeners are the same.
+   */
+  public void execute() {
+    runners = new RunThread[steps.size()];
+    for (int s=0;s<steps.size();s++) {
+      runners[s] = new RunThread(steps.get(s));
+      runners[s].startRunning();
+    }
+    batchSize = trans.getTransMeta().getSizeRowset();
+
+    try {
+      while (oneIteration());
+    } catch(Throwable e) {
+      log.logError(BaseMessages.getString(PKG, "SingleThreadedTransExecutor.Log.UnexpectedError"), e); //$NON-NLS-1$
+      trans.stopAll();
+    } finally {
+      // The steps that didn't finish (stopped or stuck) need to be cleaned up all the same to end the transformation.
+      //
+      for (int s=0;s<steps.size();s++) {
+        if (!done[s]) {
+          finishStep(s);
+        }
+      }
+    }
+  }
+
   /**
    * Give all steps in the transformation the chance to process all rows on input...
-   * 
+   *
    * @return true if more iterations can be performed.  False if this is not the case.
    */
   public boolean oneIteration() throws KettleException {
-    
+
+    if (hasInput==null) {
+      // Remember which steps read from other steps (or from a row producer) before the finished input is cleaned up.
+      //
+      hasInput = new boolean[steps.size()];
+      for (int s=0;s<steps.size();s++) {
+        hasInput[s] = !steps.get(s).step.getInputRowSets().isEmpty();
+      }
+    }
+
+    boolean progress = false;
     for (int s=0;s<steps.size() && !trans.isStopped();s++) {
       if (!done[s]) {
-        
+
         StepMetaDataCombi combi = steps.get(s);
 
-        // If this step is waiting for data (text, db, and so on), we simply read all the data
-        // This means that it is impractical to use this transformation type to load large files.
+        // Reading from an info stream blocks until the stream is complete.
         //
+        if (!isInfoComplete(s)) {
+          continue;
+        }
+
         boolean stepDone = false;
-        // For every input row we call the processRow() method of the step.
-        //
-        List<RowSet> infoRowSets = stepInfoRowSets.get(s);
-        
-        // Loop over info-rowsets FIRST to make sure we support the "Stream Lookup" step and so on.
-        //
-        for (RowSet rowSet : infoRowSets) {
-          boolean once = true;
-          while(once || (rowSet.size()>0 && !stepDone)) {
-            once=false;
-            stepDone = !combi.step.processRow(combi.meta, combi.data);
-          }
-        }        
+        long startTime = System.nanoTime();
+        int nrRows = 0;
 
-        // Do normal processing of input rows...
-        //
-        List<RowSet> rowSets = combi.step.getInputRowSets();
-        
-        // If there are no input row sets, we read all rows until finish.
-        // This applies to steps like "Table Input", "Text File Input" and so on.
-        // If they do have an input row set, to get filenames or other parameters, 
-        // we need to handle this in the batchComplete() methods.
-        //
-        if (rowSets.size()==0) {
-          while (!stepDone && !trans.isStopped()) {
-            stepDone = !combi.step.processRow(combi.meta, combi.data);
+        if (!hasInput[s]) {
+          // If there are no input row sets, we read a batch of rows or all rows until finish.
+          // This applies to steps like "Table Input", "Text File Input" and so on.
+          //
+          while (!stepDone && !trans.isStopped() && (batchSize<=0 || nrRows<batchSize)) {
+            stepDone = !processRow(s);
+            nrRows++;
           }
         } else {
-          // Since we can't be sure that the step actually reads from the row sets where we measure rows, 
-          // we simply count the total nr of rows on input.  The steps will find the rows in either row set.
-          // 
-          int nrRows=0;
-          for (RowSet rowSet : rowSets) {
-            nrRows+=rowSet.size();
+          // Process the rows waiting on input, never wait for rows that aren't there: nobody would produce them.
+          // The steps will find the rows in any of the row sets.
+          //
+          while (!stepDone && !trans.isStopped() && (batchSize<=0 || nrRows<batchSize) && combi.step.canProcessOneRow()) {
+            stepDone = !processRow(s);
+            nrRows++;
           }
-          
-          // Now do the number of processRows() calls.
+
+          // When all the input is done, let the step find out and finish.
+          // When the caller drives the iterations the input is only done for this batch (sort rows and so on), we leave it at that.
           //
-          for (int i=0;i<nrRows;i++) {
-              stepDone = !combi.step.processRow(combi.meta, combi.data);
+          if (runners!=null && !stepDone && !trans.isStopped() && !combi.step.canProcessOneRow() && isInputDone(combi.step)) {
+            stepDone = !processRow(s);
+            nrRows++;
           }
         }
-        
+
+        if (nrRows>0) {
+          progress = true;
+        } else if (runners!=null) {
+          continue;
+        }
+
+        // Pass the rows we're holding in blocks to the next steps, they're up next.
+        //
+        if (combi.step instanceof BaseStep) {
+          ((BaseStep)combi.step).handOverOutputBlocks();
+        }
+
         // Signal the step that a batch of rows has passed for this iteration (sort rows and all)
+        // When we run the whole transformation the step sees the end of its input instead.
         //
-        combi.step.batchComplete();
-        
-        // System.out.println(combi.step.toString()+" : input="+getTotalRows(combi.step.getInputRowSets())+", output="+getTotalRows(combi.step.getOutputRowSets()));
+        if (runners==null) {
+          combi.step.batchComplete();
+        }
+
+        processingNanos[s]+=System.nanoTime()-startTime;
+        nrTurns[s]++;
 
         if (stepDone) {
           nrDone++;
+          done[s] = true;
+          if (runners!=null) {
+            finishStep(s);
+          }
         }
-        
-        done[s] = stepDone;
       }
     }
-    
-    return nrDone<steps.size() && !trans.isStopped();
+
+    boolean more = nrDone<steps.size() && !trans.isStopped();
+
+    // When we run the transformation, there should always be a step that can do something.
+    //
+    if (more && !progress && runners!=null) {
+      throw new KettleException(BaseMessages.getString(PKG, "SingleThreadedTransExecutor.Exception.NoStepCanProceed")); //$NON-NLS-1$
+    }
+
+    return more;
+  }
+
+  private boolean processRow(int s) throws KettleException {
+    if (runners!=null) {
+      return runners[s].processRow();
+    } else {
+      StepMetaDataCombi combi = steps.get(s);
+      return combi.step.processRow(combi.meta, combi.data);
+    }
+  }
+
+  private void finishStep(int s) {
+    if (runners!=null) {
+      StepMetaDataCombi combi = steps.get(s);
+      if (log.isDetailed()) log.logDetailed(BaseMessages.getString(PKG, "SingleThreadedTransExecutor.Log.StepMetrics", combi.step.toString(), Long.toString(nrTurns[s]), Long.toString(processingNanos[s]/1000000))); //$NON-NLS-1$
+      runners[s].finishRunning();
+    }
+  }
+
+  /**
+   * @return true if all the info streams of the step are complete.
+   */
+  private boolean isInfoComplete(int s) {
+    Set<String> infoStepnames = stepInfoStepnames.get(s);
+    if (infoStepnames.isEmpty()) {
+      return true;
+    }
+    List<RowSet> rowSets = steps.get(s).step.getInputRowSets();
+    for (int i=0;i<rowSets.size();i++) {
+      RowSet rowSet = rowSets.get(i);
+      if (!rowSet.isDone() && infoStepnames.contains(rowSet.getOriginStepName().toUpperCase())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return true if all the row sets the step reads from are done.
+   */
+  private boolean isInputDone(StepInterface step) {
+    List<RowSet> rowSets = step.getInputRowSets();
+    for (int i=0;i<rowSets.size();i++) {
+      if (!rowSets.get(i).isDone()) {
+        return false;
+      }
+    }
+    return true;
   }
-  
+
   protected int getTotalRows(List<RowSet> rowSets) {
     int total=0;
     for (RowSet rowSet : rowSets) total+=rowSet.size();
     return total;
   }
 
+  /**
+   * @param step the step copy to look for
+   * @return the time in nano-seconds the step spent processing rows in this executor
+   */
+  public long getProcessingNanos(StepInterface step) {
+    for (int s=0;s<steps.size();s++) {
+      if (steps.get(s).step==step) return processingNanos[s];
+    }
+    return 0L;
+  }
+
   public void dispose() throws KettleException {
     // Finalize all the steps...
     //
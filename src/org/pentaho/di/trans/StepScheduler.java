@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.step.BaseStep;
+import org.pentaho.di.trans.step.RunThread;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMetaDataCombi;
+
+/**
+ * Runs the step copies of a transformation as tasks on a pool of worker threads instead of starting a thread for every step copy.<br>
+ * <br>
+ * The pool is shared by all the transformations in the JVM.  A step copy is handed to a worker when it can make progress:
+ * it has rows waiting on input (or all of its input is done) and there is room in all of its output row sets.
+ * It then processes rows until it runs out of input, fills up one of its outputs or has had its turn.
+ * The steps with the most rows waiting on input go first, the steps that only produce rows go last, so the rows are drained before new ones are produced.<br>
+ * <br>
+ * Steps that block in processRow() anyway (waiting for an info stream, a database, ...) keep their worker.
+ * When no step finished its turn for a while and other steps are waiting for a worker, an extra worker is started so the transformation can't lock up.
+ *
+ * @author matt
+ */
+public class StepScheduler implements Runnable {
+
+	private static Class<?> PKG = Trans.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
+
+	/** The maximum number of rows a step copy processes before it hands its worker to the next step copy */
+	private static final int NR_OF_ROWS_IN_TURN = 500;
+
+	/** The maximum time the scheduler waits for a step copy to finish its turn before it looks at all the steps again */
+	private static final long DISPATCH_WAIT_MILLIS = 10;
+
+	/** When no step copy finished its turn for this long while others are waiting for a worker, an extra worker is started */
+	private static final long STALLED_MILLIS = 1000;
+
+	private static ThreadPoolExecutor workerPool;
+	private static int workerPoolSize;
+	private static long lastCompletedTaskCount;
+	private static long lastProgressTime;
+
+	private Trans trans;
+	private LogChannelInterface log;
+	private RunThread[] runners;
+	private int rowSetSize;
+
+	/** The step copies that are waiting for or running on a worker, guarded by this */
+	private boolean[] scheduled;
+
+	/** The step copies that are completely done, guarded by this */
+	private boolean[] finished;
+	private int nrFinished;
+
+	/** Only touched by the step's own turns, one after the other */
+	private boolean[] started;
+
+	private boolean turnCompleted;
+
+	/**
+	 * @param trans the transformation to run, the steps need to be initialized
+	 * @param poolSize the number of workers to run the steps on, the pool is shared by all transformations
+	 */
+	public StepScheduler(Trans trans, int poolSize) {
+		this.trans = trans;
+		this.log = trans.getLogChannel();
+		this.rowSetSize = trans.getTransMeta().getSizeRowset();
+
+		List<StepMetaDataCombi> steps = trans.getSteps();
+		runners = new RunThread[steps.size()];
+		for (int i=0;i<runners.length;i++) {
+			runners[i] = new RunThread(steps.get(i));
+		}
+		scheduled = new boolean[runners.length];
+		finished = new boolean[runners.length];
+		started = new boolean[runners.length];
+		nrFinished = 0;
+
+		getWorkerPool(poolSize);
+	}
+
+	/**
+	 * Starts scheduling the steps in a separate thread.
+	 */
+	public void start() {
+		Thread thread = new Thread(this);
+		thread.setName(trans.getName()+" - step scheduler");
+		thread.start();
+	}
+
+	/**
+	 * Hands the step copies that can make progress to the workers until all of them are finished.
+	 */
+	public void run() {
+		try {
+			List<Integer> candidates = new ArrayList<Integer>();
+			final int[] backlog = new int[runners.length];
+
+			while (!isFinished()) {
+				candidates.clear();
+				synchronized(this) {
+					for (int i=0;i<runners.length;i++) {
+						if (!finished[i] && !scheduled[i] && canMakeProgress(runners[i].getStep())) {
+							backlog[i] = getBacklog(runners[i].getStep());
+							candidates.add(Integer.valueOf(i));
+						}
+					}
+				}
+
+				// Back-pressure: first drain the steps with the most rows waiting on input...
+				//
+				Collections.sort(candidates, new Comparator<Integer>() {
+					public int compare(Integer one, Integer two) {
+						return backlog[two.intValue()]-backlog[one.intValue()];
+					}
+				});
+				for (Integer index : candidates) {
+					synchronized(this) {
+						scheduled[index.intValue()] = true;
+					}
+					workerPool.execute(new Turn(index.intValue()));
+				}
+
+				synchronized(this) {
+					if (!turnCompleted) {
+						wait(DISPATCH_WAIT_MILLIS);
+					}
+					turnCompleted=false;
+				}
+
+				if (balanceWorkers()) {
+					if (log.isDetailed()) log.logDetailed(BaseMessages.getString(PKG, "Trans.Log.StartedExtraStepWorker", String.valueOf(workerPool.getCorePoolSize()))); //$NON-NLS-1$
+				}
+			}
+		} catch(Throwable e) {
+			log.logError(BaseMessages.getString(PKG, "Trans.Log.UnexpectedErrorInStepScheduler"), e); //$NON-NLS-1$
+			trans.stopAll();
+		}
+	}
+
+	/**
+	 * @return true if all the step copies are finished
+	 */
+	public synchronized boolean isFinished() {
+		return nrFinished>=runners.length;
+	}
+
+	/**
+	 * @param step the step copy to verify
+	 * @return true if the step copy can process a row right now without waiting for input or for room on output.
+	 */
+	private boolean canMakeProgress(StepInterface step) {
+		// A stopped step needs to finish, a paused one stays put.
+		//
+		if (step.isStopped()) {
+			return true;
+		}
+		if (step.isPaused()) {
+			return false;
+		}
+
+		// Don't run a step that can't hand over its rows
+		//
+		List<RowSet> outputRowSets = step.getOutputRowSets();
+		for (int i=0;i<outputRowSets.size();i++) {
+			RowSet rowSet = outputRowSets.get(i);
+			if (!rowSet.isDone() && rowSet.size()>=rowSetSize) {
+				return false;
+			}
+		}
+
+		List<RowSet> inputRowSets = step.getInputRowSets();
+		if (inputRowSets.isEmpty() || step.canProcessOneRow()) {
+			return true;
+		}
+
+		// Without rows to process, the step can only make progress if all its input is done: it can finish.
+		//
+		for (int i=0;i<inputRowSets.size();i++) {
+			if (!inputRowSets.get(i).isDone()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of rows waiting on input of the step copy, -1 for steps without input
+	 */
+	private int getBacklog(StepInterface step) {
+		List<RowSet> inputRowSets = step.getInputRowSets();
+		if (inputRowSets.isEmpty()) {
+			return -1;
+		}
+		int backlog = 0;
+		for (int i=0;i<inputRowSets.size();i++) {
+			backlog+=inputRowSets.get(i).size();
+		}
+		return backlog;
+	}
+
+	/**
+	 * One turn of a step copy on a worker thread.
+	 */
+	private class Turn implements Runnable {
+		private int index;
+
+		public Turn(int index) {
+			this.index = index;
+		}
+
+		public void run() {
+			RunThread runner = runners[index];
+			StepInterface step = runner.getStep();
+			boolean more = true;
+			try {
+				if (!started[index]) {
+					started[index] = true;
+					runner.startRunning();
+				}
+
+				more = !step.isStopped();
+				for (int r=0;r<NR_OF_ROWS_IN_TURN && more;r++) {
+					more = runner.processRow();
+					if (more && !canMakeProgress(step)) {
+						break;
+					}
+				}
+
+				if (more) {
+					// The next steps shouldn't wait for the rows we're holding while we're off the worker
+					//
+					if (step instanceof BaseStep) {
+						((BaseStep)step).handOverOutputBlocks();
+					}
+				} else {
+					runner.finishRunning();
+				}
+			} finally {
+				synchronized(StepScheduler.this) {
+					scheduled[index] = false;
+					if (!more) {
+						finished[index] = true;
+						nrFinished++;
+					}
+					turnCompleted = true;
+					StepScheduler.this.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the shared pool of workers or grows it to the given size.
+	 *
+	 * @param poolSize the number of workers
+	 */
+	private static synchronized void getWorkerPool(int poolSize) {
+		if (workerPool==null) {
+			final AtomicInteger threadNr = new AtomicInteger(0);
+			workerPool = new ThreadPoolExecutor(poolSize, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Step worker #"+threadNr.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			workerPoolSize = poolSize;
+			lastProgressTime = System.currentTimeMillis();
+		} else if (poolSize>workerPoolSize) {
+			workerPoolSize = poolSize;
+			if (workerPool.getCorePoolSize()<poolSize) {
+				workerPool.setCorePoolSize(poolSize);
+			}
+		}
+	}
+
+	/**
+	 * Starts an extra worker when the workers didn't finish a turn for a while and there are turns waiting for a worker.
+	 * The extra workers are stopped one by one again once nobody is waiting for a worker anymore.
+	 *
+	 * @return true if an extra worker was started
+	 */
+	private static synchronized boolean balanceWorkers() {
+		long now = System.currentTimeMillis();
+		long completedTaskCount = workerPool.getCompletedTaskCount();
+		boolean waiting = !workerPool.getQueue().isEmpty();
+
+		if (completedTaskCount!=lastCompletedTaskCount) {
+			lastCompletedTaskCount = completedTaskCount;
+			lastProgressTime = now;
+			if (!waiting && workerPool.getCorePoolSize()>workerPoolSize && workerPool.getActiveCount()<workerPool.getCorePoolSize()) {
+				workerPool.setCorePoolSize(workerPool.getCorePoolSize()-1);
+			}
+			return false;
+		}
+
+		if (waiting && now-lastProgressTime>STALLED_MILLIS) {
+			lastProgressTime = now;
+			workerPool.setCorePoolSize(workerPool.getCorePoolSize()+1);
+			return true;
+		}
+		return false;
+	}
+}
@@ -33,6 +33,7 @@ import org.apache.commons.vfs.FileObject;
 import org.pentaho.di.cluster.SlaveServer;
 import org.pentaho.di.core.BlockingRowSet;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.LockFreeRowSet;
 import org.pentaho.di.core.QueueRowSet;
 import org.pentaho.di.core.Result;
 import org.pentaho.di.core.RowMetaAndData;
@@ -66,6 +67,7 @@ import org.pentaho.di.core.parameters.UnknownParamException;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMeta;
 import org.pentaho.di.core.util.EnvUtil;
+import org.pentaho.di.core.util.ThreadUtil;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.core.variables.Variables;
 import org.pentaho.di.core.vfs.KettleVFS;
@@ -79,6 +81,7 @@ import org.pentaho.di.repository.Repository;
 import org.pentaho.di.repository.RepositoryDirectoryInterface;
 import org.pentaho.di.resource.ResourceUtil;
 import org.pentaho.di.resource.TopLevelResource;
+import org.pentaho.di.trans.TransMeta.TransformationType;
 import org.pentaho.di.trans.cluster.TransSplitter;
 import org.pentaho.di.trans.performance.StepPerformanceSnapShot;
 import org.pentaho.di.trans.step.RunThread;
@@ -114,6 +117,9 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
 	private static Class<?> PKG = Trans.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
     public static final String REPLAY_DATE_FORMAT = "yyyy/MM/dd HH:mm:ss"; //$NON-NLS-1$
+
+    /** The fallback from virtual threads is only reported once per JVM, jobs can run a transformation over and over */
+    private static final AtomicBoolean virtualThreadsNotSupportedLogged = new AtomicBoolean(false);
     
 	private LogChannelInterface log;
 	private LogLevel logLevel = LogLevel.BASIC;
@@ -244,6 +250,15 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
 	private Map<String, Trans> activeSubtransformations;
 
   private int stepPerformanceSnapshotSizeLimit;
+
+	/** The type of engine to run the transformation in, overrides the one of the transformation metadata if set */
+	private TransformationType transformationType;
+
+	/** True if rows are fed to the transformation with a row producer */
+	private boolean producingRows;
+
+	/** Keeps track of the memory the steps use to keep rows around, null if there is no budget */
+	private MemoryManager memoryManager;
 	
 	public Trans() {
 		finished = new AtomicBoolean(false);
@@ -474,12 +489,20 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
     				for (int c=0;c<nrCopies;c++)
     				{
     					RowSet rowSet;
-    					switch(transMeta.getTransformationType()) {
-    					case Normal: rowSet = new BlockingRowSet(transMeta.getSizeRowset()); break;
+    					switch(getTransformationType()) {
+    					case Normal:
+    						// Every row set of a 1:1 or N:N hop has exactly one step copy writing and one reading: no need to lock anything.
+    						//
+    						if ((dispatchType==TYPE_DISP_1_1 || dispatchType==TYPE_DISP_N_N) && transMeta.isUsingLockFreeRowSets()) {
+    							rowSet = new LockFreeRowSet(transMeta.getSizeRowset(), transMeta.getRowSetSpinCount());
+    						} else {
+    							rowSet = new BlockingRowSet(transMeta.getSizeRowset());
+    						}
+    						break;
     					case SerialSingleThreaded: rowSet = new SingleRowRowSet(); break;
                         case SingleThreaded: rowSet = new QueueRowSet(); break;
     					default: 
-    					  throw new KettleException("Unhandled transformation type: "+transMeta.getTransformationType());
+    					  throw new KettleException("Unhandled transformation type: "+getTransformationType());
     					}
     						
     					switch(dispatchType)
@@ -666,6 +689,31 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
         StepInitThread initThreads[] = new StepInitThread[steps.size()];
         Thread[] threads = new Thread[steps.size()];
 
+        boolean virtualThreads = transMeta.isUsingVirtualThreads();
+        if (virtualThreads && !ThreadUtil.isVirtualThreadSupported() && virtualThreadsNotSupportedLogged.compareAndSet(false, true)) {
+        	log.logBasic(BaseMessages.getString(PKG, "Trans.Log.VirtualThreadsNotSupported")); //$NON-NLS-1$
+        }
+
+        // The memory the steps can use to keep rows around, the steps register with the manager during initialization.
+        //
+        long memoryBudget = MemoryManager.parseBudget(environmentSubstitute(getVariable(Const.KETTLE_TRANS_MEMORY_BUDGET)));
+        if (memoryBudget>0) {
+        	memoryManager = new MemoryManager(memoryBudget, log);
+        	if (log.isDetailed()) log.logDetailed(BaseMessages.getString(PKG, "Trans.Log.MemoryBudget", Long.toString(memoryBudget/(1024*1024)))); //$NON-NLS-1$
+        } else {
+        	memoryManager = null;
+        }
+
+        // The single threaded engine can't run every step, we want to know before anything gets initialized.
+        //
+        if (getTransformationType()==TransformationType.SingleThreaded) {
+        	for (StepMetaDataCombi combi : steps) {
+        		if (!combi.stepMeta.isSupportingTransformationType(TransformationType.SingleThreaded)) {
+        			throw new KettleException(BaseMessages.getString(PKG, "Trans.Exception.StepNotSupportedSingleThreaded", combi.stepname, combi.stepMeta.getStepID())); //$NON-NLS-1$
+        		}
+        	}
+        }
+
         // Initialize all the threads...
         //
 		for (int i=0;i<steps.size();i++)
@@ -676,14 +724,22 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
             // Init all steps at once, but ALL steps need to finish before we can continue properly!
 			initThreads[i] = new StepInitThread(sid, log);
             
+			// The single threaded engines run everything on one thread, there is no point in starting threads to do the init.
+			//
+			if (getTransformationType()!=TransformationType.Normal) {
+				initThreads[i].run();
+				continue;
+			}
+			
             // Put it in a separate thread!
-			threads[i] = new Thread(initThreads[i]);
+			threads[i] = ThreadUtil.newThread(initThreads[i], virtualThreads);
             threads[i].setName("init of "+sid.stepname+"."+sid.copy+" ("+threads[i].getName()+")");
             threads[i].start();
 		}
         
         for (int i=0; i < threads.length;i++)
         {
+            if (threads[i]==null) continue;
             try {
                 threads[i].join();
             } catch(Exception ex) {
@@ -889,16 +945,25 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
 		
         running=true;
         
-        switch(transMeta.getTransformationType()) {
+        switch(getTransformationType()) {
         case Normal:
         	
+        	// Let the steps take turns on the shared pool of workers if there is one...
+        	//
+        	int workerPoolSize = transMeta.getWorkerPoolSize();
+        	if (workerPoolSize>0) {
+        		new StepScheduler(this, workerPoolSize).start();
+        		break;
+        	}
+        	
 	        // Now start all the threads...
 	    	//
+	        boolean virtualThreads = transMeta.isUsingVirtualThreads();
 	        for (int i=0;i<steps.size();i++)
 	        {
 	        	StepMetaDataCombi combi = steps.get(i);
 	        	RunThread runThread = new RunThread(combi);
-	        	Thread thread = new Thread(runThread);
+	        	Thread thread = ThreadUtil.newThread(runThread, virtualThreads);
 	        	thread.setName(getName()+" - "+combi.stepname);
 	        	thread.start();
 	        }
@@ -963,8 +1028,20 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
 			break;
 			
         case SingleThreaded :
-          // Don't do anything, this needs to be handled by the transformation executor!
+          // Whoever feeds rows to the steps with a row producer runs the steps with a SingleThreadedTransExecutor, one batch at a time.
+          // Otherwise we run all the steps one after the other on a single thread till the end.
           //
+          if (producingRows) {
+            break;
+          }
+          final SingleThreadedTransExecutor executor = new SingleThreadedTransExecutor(this);
+          Thread thread = new Thread(new Runnable() {
+            public void run() {
+              executor.execute();
+            }
+          });
+          thread.setName(getName()+" - single threaded");
+          thread.start();
           break;
 
         	
@@ -2236,6 +2313,37 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
 		return safeModeEnabled;
 	}
 
+    /**
+     * @return the type of engine the transformation runs in: the one set on this transformation, 
+     *         the one in variable KETTLE_TRANS_TYPE or the one of the transformation metadata, in that order.
+     */
+    public TransformationType getTransformationType()
+    {
+        if (transformationType!=null) return transformationType;
+        
+        String typeCode = getVariable(Const.KETTLE_TRANS_TYPE);
+        if (!Const.isEmpty(typeCode)) return TransformationType.getTransformationTypeByCode(typeCode);
+        
+        return transMeta.getTransformationType();
+    }
+
+    /**
+     * @param transformationType the type of engine to run the transformation in or null to use the one of the transformation metadata.
+     *        Set it before prepareExecution() is called.
+     */
+    public void setTransformationType(TransformationType transformationType)
+    {
+        this.transformationType = transformationType;
+    }
+
+    /**
+     * @return the manager of the memory the steps use to keep rows around or null if there is no memory budget (variable KETTLE_TRANS_MEMORY_BUDGET)
+     */
+    public MemoryManager getMemoryManager()
+    {
+        return memoryManager;
+    }
+
     /**
      * This adds a row producer to the transformation that just got set up.
      * Preferable run this BEFORE execute() but after prepareExcution()
@@ -2254,7 +2362,7 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
 
         // We are going to add an extra RowSet to this stepInterface.
         RowSet rowSet;
-        switch(transMeta.getTransformationType()) {
+        switch(getTransformationType()) {
         case Normal:
           rowSet = new BlockingRowSet(transMeta.getSizeRowset());
           break;
@@ -2265,11 +2373,12 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
           rowSet = new QueueRowSet();
           break;
         default:
-          throw new KettleException("Unhandled transformation type: "+transMeta.getTransformationType());
+          throw new KettleException("Unhandled transformation type: "+getTransformationType());
         }
 
         // Add this rowset to the list of active rowsets for the selected step
         stepInterface.getInputRowSets().add(rowSet);
+        producingRows = true;
 
         return new RowProducer(stepInterface, rowSet);
     }
@@ -37,6 +37,7 @@ import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.di.repository.RepositoriesMeta;
 import org.pentaho.di.repository.Repository;
 import org.pentaho.di.repository.RepositoryMeta;
+import org.pentaho.di.trans.TransMeta.TransformationType;
 import org.pentaho.di.trans.debug.TransDebugMeta;
 import org.w3c.dom.Node;
 
@@ -63,6 +64,7 @@ public class TransExecutionConfiguration implements Cloneable
     
     private Date     replayDate;
     private boolean  safeModeEnabled;
+    private TransformationType transformationType;
     private LogLevel logLevel;
     private boolean  clearingLog;
     
@@ -436,6 +438,22 @@ public class TransExecutionConfiguration implements Cloneable
         this.safeModeEnabled = usingSafeMode;
     }
 
+    /**
+     * @return the type of engine to run the transformation in or null to use the one the transformation was designed with
+     */
+    public TransformationType getTransformationType()
+    {
+        return transformationType;
+    }
+
+    /**
+     * @param transformationType the type of engine to run the transformation in or null to use the one the transformation was designed with
+     */
+    public void setTransformationType(TransformationType transformationType)
+    {
+        this.transformationType = transformationType;
+    }
+
     /**
      * @return the logLevel
      */
@@ -521,6 +539,10 @@ public class TransExecutionConfiguration implements Cloneable
         
         xml.append("    ").append(XMLHandler.addTagValue("replay_date", replayDate));
         xml.append("    ").append(XMLHandler.addTagValue("safe_mode", safeModeEnabled));
+        if (transformationType!=null)
+        {
+            xml.append("    ").append(XMLHandler.addTagValue("trans_type", transformationType.getCode()));
+        }
         xml.append("    ").append(XMLHandler.addTagValue("log_level", logLevel.getCode()));
         xml.append("    ").append(XMLHandler.addTagValue("clear_log", clearingLog));
         
@@ -611,6 +633,8 @@ public class TransExecutionConfiguration implements Cloneable
 
         replayDate = XMLHandler.stringToDate( XMLHandler.getTagValue(trecNode, "replay_date") );
         safeModeEnabled = "Y".equalsIgnoreCase(XMLHandler.getTagValue(trecNode, "safe_mode"));
+        String transTypeCode = XMLHandler.getTagValue(trecNode, "trans_type");
+        transformationType = Const.isEmpty(transTypeCode) ? null : TransformationType.getTransformationTypeByCode(transTypeCode);
         logLevel = LogLevel.getLogLevelForCode( XMLHandler.getTagValue(trecNode, "log_level") );
         clearingLog = "Y".equalsIgnoreCase(XMLHandler.getTagValue(trecNode, "clear_log"));
         
@@ -35,6 +35,7 @@ import org.pentaho.di.core.Counter;
 import org.pentaho.di.core.DBCache;
 import org.pentaho.di.core.EngineMetaInterface;
 import org.pentaho.di.core.LastUsedFile;
+import org.pentaho.di.core.LockFreeRowSet;
 import org.pentaho.di.core.NotePadMeta;
 import org.pentaho.di.core.ProgressMonitorListener;
 import org.pentaho.di.core.Props;
@@ -4190,6 +4191,14 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
                     remarks.add(cr);
                 }
                 
+                // See if the step can run in the transformation engine of this transformation...
+                //
+                if (transformationType==TransformationType.SingleThreaded && !stepMeta.isSupportingTransformationType(transformationType))
+                {
+                    CheckResult cr = new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "TransMeta.CheckResult.TypeResultError.StepDoesntSupportTransformationType.Description", transformationType.getDescription()), stepMeta); //$NON-NLS-1$
+                    remarks.add(cr);
+                }
+
                 // Also check for mixing rows...
                 try
                 {
@@ -4483,6 +4492,51 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
         }
     }
 
+    /**
+     * @return the number of rows that steps hand over to or take from a rowset in one go, never larger than the rowset size.  1 means row by row.
+     */
+    public int getRowSetBlockSize()
+    {
+        int blockSize = Const.toInt(getVariable(Const.KETTLE_TRANS_ROWSET_BLOCK_SIZE), 1);
+        if (blockSize<1) {
+          return 1;
+        }
+        return Math.min(blockSize, getSizeRowset());
+    }
+
+    /**
+     * @return true if the rowsets of hops with exactly one writing and one reading step copy (1:1 and N:N) can be lock-free.
+     */
+    public boolean isUsingLockFreeRowSets()
+    {
+        return !"N".equalsIgnoreCase(Const.NVL(getVariable(Const.KETTLE_TRANS_ROWSET_LOCK_FREE), "Y"));
+    }
+
+    /**
+     * @return the number of times a step spins on a full or empty lock-free rowset before it parks its thread.
+     */
+    public int getRowSetSpinCount()
+    {
+        int spinCount = Const.toInt(getVariable(Const.KETTLE_TRANS_ROWSET_SPIN_COUNT), LockFreeRowSet.DEFAULT_SPIN_COUNT);
+        return Math.max(0, spinCount);
+    }
+
+    /**
+     * @return the number of worker threads the steps are scheduled on, 0 to start a thread for every step copy.
+     */
+    public int getWorkerPoolSize()
+    {
+        return Math.max(0, Const.toInt(getVariable(Const.KETTLE_TRANS_WORKER_POOL_SIZE), 0));
+    }
+
+    /**
+     * @return true if the steps should run on virtual threads, provided the JVM supports them.
+     */
+    public boolean isUsingVirtualThreads()
+    {
+        return "Y".equalsIgnoreCase(getVariable(Const.KETTLE_TRANS_USE_VIRTUAL_THREADS));
+    }
+
     /**
      * @param sizeRowset The sizeRowset to set.
      */
@@ -25,16 +25,20 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import org.pentaho.di.core.BlockingRowSet;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.ResultFile;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.RowSetSignal;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleRowException;
 import org.pentaho.di.core.exception.KettleStepException;
@@ -59,6 +63,7 @@ import org.pentaho.di.repository.RepositoryDirectory;
 import org.pentaho.di.trans.SlaveStepCopyPartitionDistribution;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.TransMeta.TransformationType;
 import org.pentaho.di.trans.cluster.TransSplitter;
 import org.pentaho.di.trans.step.BaseStepData.StepExecutionStatus;
 import org.pentaho.di.trans.steps.mapping.Mapping;
@@ -86,42 +91,52 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     private Trans                        trans;
 
-    private Object statusCountersLock = new Object();
+    /*
+     * The line counters are only ever changed through these updaters: an increment doesn't need a lock
+     * and the getters simply read the volatile fields, so monitoring a running step (Spoon, Carte, the performance snapshots) doesn't hold it up.
+     */
+    private static final AtomicLongFieldUpdater<BaseStep> LINES_READ = AtomicLongFieldUpdater.newUpdater(BaseStep.class, "linesRead");
+    private static final AtomicLongFieldUpdater<BaseStep> LINES_WRITTEN = AtomicLongFieldUpdater.newUpdater(BaseStep.class, "linesWritten");
+    private static final AtomicLongFieldUpdater<BaseStep> LINES_INPUT = AtomicLongFieldUpdater.newUpdater(BaseStep.class, "linesInput");
+    private static final AtomicLongFieldUpdater<BaseStep> LINES_OUTPUT = AtomicLongFieldUpdater.newUpdater(BaseStep.class, "linesOutput");
+    private static final AtomicLongFieldUpdater<BaseStep> LINES_UPDATED = AtomicLongFieldUpdater.newUpdater(BaseStep.class, "linesUpdated");
+    private static final AtomicLongFieldUpdater<BaseStep> LINES_SKIPPED = AtomicLongFieldUpdater.newUpdater(BaseStep.class, "linesSkipped");
+    private static final AtomicLongFieldUpdater<BaseStep> LINES_REJECTED = AtomicLongFieldUpdater.newUpdater(BaseStep.class, "linesRejected");
     
     /**  nr of lines read from previous step(s)
      * @deprecated please use the supplied getters, setters and increment/decrement methods 
      */
-    public long                          linesRead;
+    public volatile long                 linesRead;
     
     /** nr of lines written to next step(s)
      * @deprecated please use the supplied getters, setters and increment/decrement methods 
      */
-    public long                          linesWritten;
+    public volatile long                 linesWritten;
     
     /** nr of lines read from file or database
      * @deprecated please use the supplied getters, setters and increment/decrement methods 
      */
-    public long                          linesInput;
+    public volatile long                 linesInput;
     
     /** nr of lines written to file or database
      * @deprecated please use the supplied getters, setters and increment/decrement methods 
      */
-    public long                          linesOutput;
+    public volatile long                 linesOutput;
     
     /** nr of updates in a database table or file
      * @deprecated please use the supplied getters, setters and increment/decrement methods 
      */
-    public long                          linesUpdated;
+    public volatile long                 linesUpdated;
     
     /** nr of lines skipped
      * @deprecated please use the supplied getters, setters and increment/decrement methods 
      */
-    public long                          linesSkipped;
+    public volatile long                 linesSkipped;
     
     /** total sleep time in ns caused by an empty input buffer (previous step is slow)
      * @deprecated please use the supplied getters, setters and increment/decrement methods 
      */
-    public long                          linesRejected;
+    public volatile long                 linesRejected;
 
     
     private boolean                      distributed;
@@ -172,7 +187,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     private StepDataInterface            stepDataInterface;
 
-    /** The list of RowListener interfaces */
+    /** The list of RowListener interfaces, copied on write: the rows are passed to the listeners without any locking */
     private List<RowListener>                         rowListeners;
 
     /**
@@ -240,6 +255,17 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     private int blockPointer;
     
+    /** The number of rows handed over to or taken from a row set in one go, 1 means row by row */
+    private int rowSetBlockSize;
+    
+    /** The block of rows taken from an input row set that still needs to be handed out by getRow() */
+    private Object[][] inputBlock;
+    private int inputBlockIndex, inputBlockSize;
+    private RowSet inputBlockRowSet;
+    
+    /** The blocks of rows kept per output row set that are not yet handed over */
+    private Map<RowSet, RowSetBlock> outputBlocks;
+    
     
     /**
      * A flag to indicate that clustered partitioning was not yet initialized
@@ -261,8 +287,8 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 	/** The upper buffer size boundary after which we manage the thread priority a little bit to prevent excessive locking */
 	private int upperBufferBoundary;
 	
-	/** The lower buffer size boundary after which we manage the thread priority a little bit to prevent excessive locking */
-	private int lowerBufferBoundary;
+	/** Raised by the input row sets when rows arrive or when they are done, so that we can wait for all of them at once */
+	private RowSetSignal inputSignal;
 
 	/** maximum number of errors to allow */
 	private Long maxErrors = -1L;
@@ -312,15 +338,13 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
         
         init = false;
 
-        synchronized (statusCountersLock) {
-            linesRead = 0L; // new AtomicLong(0L); // Keep some statistics!
-            linesWritten = 0L; // new AtomicLong(0L);
-            linesUpdated = 0L; // new AtomicLong(0L);
-            linesSkipped = 0L; // new AtomicLong(0L);
-            linesRejected = 0L; // new AtomicLong(0L);
-            linesInput = 0L; // new AtomicLong(0L);
-            linesOutput = 0L; //new AtomicLong(0L);
-        }
+        linesRead = 0L; // Keep some statistics!
+        linesWritten = 0L;
+        linesUpdated = 0L;
+        linesSkipped = 0L;
+        linesRejected = 0L;
+        linesInput = 0L;
+        linesOutput = 0L;
         
         inputRowSets = null;
         outputRowSets = null;
@@ -348,7 +372,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
         else
             if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "BaseStep.Log.DistributionDeactivated")); //$NON-NLS-1$
 
-        rowListeners = new ArrayList<RowListener>();
+        rowListeners = new CopyOnWriteArrayList<RowListener>();
         resultFiles = new Hashtable<String,ResultFile>();
 
         repartitioning = StepPartitioningMeta.PARTITIONING_METHOD_NONE;
@@ -370,12 +394,19 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 	    
 	    blockPointer = 0; 
 	    
+	    // Only the multi-threaded engine benefits from handing over rows in blocks.
+	    // The engine type can be overruled when the transformation is started so ask the transformation, not the metadata.
+	    //
+	    TransformationType transformationType = trans!=null ? trans.getTransformationType() : transMeta.getTransformationType();
+	    rowSetBlockSize = transformationType==TransformationType.Normal ? transMeta.getRowSetBlockSize() : 1;
+	    outputBlocks = new IdentityHashMap<RowSet, RowSetBlock>();
+	    inputSignal = new RowSetSignal();
+	    
 	    stepListeners = new ArrayList<StepListener>();
         
         dispatch();
         
         upperBufferBoundary = (int)(transMeta.getSizeRowset() * 0.99);
-        lowerBufferBoundary = (int)(transMeta.getSizeRowset() * 0.01);
     }
 
     public boolean init(StepMetaInterface smi, StepDataInterface sdi)
@@ -662,9 +693,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long getLinesRead()
     {
-        synchronized (statusCountersLock) {
-            return linesRead;
-        }
+        return linesRead;
     }
     
     /**
@@ -673,9 +702,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long incrementLinesRead()
     {
-        synchronized (statusCountersLock) {
-            return ++linesRead;
-        }
+        return LINES_READ.incrementAndGet(this);
     }
     
     
@@ -685,9 +712,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long decrementLinesRead()
     {
-        synchronized (statusCountersLock) {
-            return --linesRead;
-        }
+        return LINES_READ.decrementAndGet(this);
     }
     
     /**
@@ -695,9 +720,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public void setLinesRead(long newLinesReadValue)
     {
-        synchronized (statusCountersLock) {
-            linesRead = newLinesReadValue;
-        }
+        linesRead = newLinesReadValue;
     }
     
     /**
@@ -705,9 +728,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long getLinesInput()
     {
-        synchronized (statusCountersLock) {
-            return linesInput;
-        }
+        return linesInput;
     }
     
     /**
@@ -716,9 +737,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long incrementLinesInput()
     {
-        synchronized (statusCountersLock) {
-            return ++linesInput;
-        }
+        return LINES_INPUT.incrementAndGet(this);
     }
     
     /**
@@ -726,9 +745,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public void setLinesInput(long newLinesInputValue)
     {
-        synchronized (statusCountersLock) {
-            linesInput = newLinesInputValue;
-        }
+        linesInput = newLinesInputValue;
     }
 
     /**
@@ -736,9 +753,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long getLinesOutput()
     {
-        synchronized (statusCountersLock) {
-            return linesOutput;
-        }
+        return linesOutput;
     }
     
     /**
@@ -747,9 +762,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long incrementLinesOutput()
     {
-        synchronized (statusCountersLock) {
-            return ++linesOutput;
-        }
+        return LINES_OUTPUT.incrementAndGet(this);
     }
     
     /**
@@ -757,9 +770,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public void setLinesOutput(long newLinesOutputValue)
     {
-        synchronized (statusCountersLock) {
-            linesOutput = newLinesOutputValue;
-        }
+        linesOutput = newLinesOutputValue;
     }
 
     /**
@@ -767,9 +778,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long getLinesWritten()
     {
-        synchronized (statusCountersLock) {
-            return linesWritten;
-        }
+        return linesWritten;
     }
     
     /**
@@ -778,9 +787,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long incrementLinesWritten()
     {
-        synchronized (statusCountersLock) {
-            return ++linesWritten;
-        }
+        return LINES_WRITTEN.incrementAndGet(this);
     }
 
     /**
@@ -789,9 +796,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long decrementLinesWritten()
     {
-        synchronized (statusCountersLock) {
-            return --linesWritten;
-        }
+        return LINES_WRITTEN.decrementAndGet(this);
     }
 
     /**
@@ -799,9 +804,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public void setLinesWritten(long newLinesWrittenValue)
     {
-        synchronized (statusCountersLock) {
-            linesWritten = newLinesWrittenValue;
-        }
+        linesWritten = newLinesWrittenValue;
     }
 
     /**
@@ -809,9 +812,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long getLinesUpdated()
     {
-        synchronized (statusCountersLock) {
-            return linesUpdated;
-        }
+        return linesUpdated;
     }
     
     /**
@@ -820,9 +821,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long incrementLinesUpdated()
     {
-        synchronized (statusCountersLock) {
-            return ++linesUpdated;
-        }
+        return LINES_UPDATED.incrementAndGet(this);
     }
     
     /**
@@ -830,9 +829,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public void setLinesUpdated(long newLinesUpdatedValue)
     {
-        synchronized (statusCountersLock) {
-            linesUpdated = newLinesUpdatedValue;
-        }
+        linesUpdated = newLinesUpdatedValue;
     }
 
     /**
@@ -840,9 +837,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long getLinesRejected()
     {
-        synchronized (statusCountersLock) {
-            return linesRejected;
-        }
+        return linesRejected;
     }
     
     /**
@@ -851,9 +846,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long incrementLinesRejected()
     {
-        synchronized (statusCountersLock) {
-            return ++linesRejected;
-        }
+        return LINES_REJECTED.incrementAndGet(this);
     }
 
     /**
@@ -861,9 +854,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public void setLinesRejected(long newLinesRejectedValue)
     {
-        synchronized (statusCountersLock) {
-            linesRejected = newLinesRejectedValue;
-        }
+        linesRejected = newLinesRejectedValue;
     }
 
     /**
@@ -871,9 +862,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long getLinesSkipped()
     {
-        synchronized (statusCountersLock) {
-            return linesSkipped;
-        }
+        return linesSkipped;
     }
     
     /**
@@ -882,9 +871,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long incrementLinesSkipped()
     {
-        synchronized (statusCountersLock) {
-            return ++linesSkipped;
-        }
+        return LINES_SKIPPED.incrementAndGet(this);
     }
 
     /**
@@ -892,9 +879,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public void setLinesSkipped(long newLinesSkippedValue)
     {
-        synchronized (statusCountersLock) {
-            linesSkipped = newLinesSkippedValue;
-        }
+        linesSkipped = newLinesSkippedValue;
     }
 
 
@@ -1036,9 +1021,8 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
   
       // call all row listeners...
       //
-      synchronized (this) {
-        for (int i = 0; i < rowListeners.size(); i++) {
-          RowListener rowListener = rowListeners.get(i);
+      if (!rowListeners.isEmpty()) {
+        for (RowListener rowListener : rowListeners) {
           rowListener.rowWrittenEvent(rowMeta, row);
         }
       }
@@ -1082,13 +1066,12 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
       	    //
               if (isUsingThreadPriorityManagment() && !rs.isDone() && rs.size()>= upperBufferBoundary && !isStopped())
               {
-              	try { Thread.sleep(0,1); } catch (InterruptedException e) { }
+              	Thread.yield();
               }
               
               // Loop until we find room in the target rowset
               //
-              while (!rs.putRow(rowMeta, row) && !isStopped()) 
-              	;
+              putRowToRowSet(rs, rowMeta, row);
               incrementLinesWritten();
 
               // Now determine the next output rowset!
@@ -1115,15 +1098,14 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
           	    //
                   if (isUsingThreadPriorityManagment() && !rs.isDone() && rs.size()>= upperBufferBoundary && !isStopped())
                   {
-                  	try { Thread.sleep(0,1); } catch (InterruptedException e) { }
+                  	Thread.yield();
                   }
 
                   try
                   {
                       // Loop until we find room in the target rowset
                       //
-                      while (!rs.putRow(rowMeta, rowMeta.cloneRow(row)) && !isStopped()) 
-                      	;
+                      putRowToRowSet(rs, rowMeta, rowMeta.cloneRow(row));
                       incrementLinesWritten();
                   }
                   catch (KettleValueException e)
@@ -1135,8 +1117,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
               // set row in first output rowset
               //
               RowSet rs = outputRowSets.get(0);
-              while (!rs.putRow(rowMeta, row) && !isStopped()) 
-              	;
+              putRowToRowSet(rs, rowMeta, row);
               incrementLinesWritten();
           }
       }
@@ -1241,8 +1222,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
               
               // logBasic("Putting row to partition #"+partitionNr);
                 
-                while (!selectedRowSet.putRow(rowMeta, row) && !isStopped()) 
-                	;
+                putRowToRowSet(selectedRowSet, rowMeta, row);
                 incrementLinesWritten();
                 
                 if (log.isRowLevel())
@@ -1260,8 +1240,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
               for (int r = 0; r < outputRowSets.size(); r++)
               {
                   RowSet rowSet = outputRowSets.get(r);
-                  while (!rowSet.putRow(rowMeta, row) && !isStopped()) 
-                  	;
+                  putRowToRowSet(rowSet, rowMeta, row);
               }
           }
           break;
@@ -1296,9 +1275,8 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     // call all row listeners...
     //
-    synchronized (this) {
-      for (int i = 0; i < rowListeners.size(); i++) {
-        RowListener rowListener = rowListeners.get(i);
+    if (!rowListeners.isEmpty()) {
+      for (RowListener rowListener : rowListeners) {
         rowListener.rowWrittenEvent(rowMeta, row);
       }
     }
@@ -1321,11 +1299,106 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     // Don't distribute or anything, only go to this rowset!
     //
-    while (!rowSet.putRow(rowMeta, row) && !isStopped())
-      ;
+    putRowToRowSet(rowSet, rowMeta, row);
     incrementLinesWritten();
   }
 
+  /**
+   * Puts a row in a row set, looping until there is room for it.
+   * When rows are handed over in blocks, the row is added to the block kept for the row set and the block is only handed over once it is full.
+   * 
+   * @param rowSet the row set to put the row into
+   * @param rowMeta the row metadata
+   * @param row the row data
+   */
+  private void putRowToRowSet(RowSet rowSet, RowMetaInterface rowMeta, Object[] row) {
+    if (rowSetBlockSize<=1) {
+      while (!rowSet.putRow(rowMeta, row) && !isStopped())
+        ;
+      return;
+    }
+    
+    RowSetBlock block = outputBlocks.get(rowSet);
+    if (block==null) {
+      block = new RowSetBlock(rowSet, rowSetBlockSize);
+      outputBlocks.put(rowSet, block);
+    } else if (block.needsHandOver(rowMeta)) {
+      handOverOutputBlock(block);
+    }
+    if (block.add(rowMeta, row)) {
+      handOverOutputBlock(block);
+    }
+  }
+  
+  /**
+   * Hands over the rows of an output block, looping until the row set took all of them.
+   * While the target row set is full we keep feeding the other output row sets: 
+   * a next step might be waiting for the rows we're holding for another one.
+   */
+  private void handOverOutputBlock(RowSetBlock block) {
+    while (!block.handOver() && !isStopped()) {
+      for (RowSetBlock other : outputBlocks.values()) {
+        if (other!=block && other.hasPendingRows()) {
+          other.handOver();
+        }
+      }
+    }
+    if (isStopped()) {
+      block.clear(); // nobody is going to read these anymore
+    }
+  }
+  
+  /**
+   * Hands over all the rows that are kept in output blocks.  
+   * This is done before we start waiting for input and when we're done writing so that the next steps never wait for rows that we're holding.
+   * The step scheduler also calls this each time it takes the step off a worker thread.
+   */
+  public void handOverOutputBlocks() {
+    if (outputBlocks.isEmpty()) {
+      return;
+    }
+    for (RowSetBlock block : outputBlocks.values()) {
+      if (block.hasPendingRows()) {
+        handOverOutputBlock(block);
+      }
+    }
+  }
+  
+  /**
+   * Takes a row from the given row set if one is available, without waiting.
+   * When rows are handed over in blocks, all the available rows are taken in one go: the first one is returned, the others are handed out by the next calls to getRow().
+   * 
+   * @param rowSet the row set to read from
+   * @return the row or null if no row is available.
+   */
+  private Object[] getRowImmediateFromRowSet(RowSet rowSet) {
+    if (rowSetBlockSize<=1) {
+      return rowSet.getRowImmediate();
+    }
+    
+    if (inputBlock==null) {
+      inputBlock = new Object[rowSetBlockSize][];
+    }
+    inputBlockSize = rowSet.getRowsWait(inputBlock, rowSetBlockSize, 0, TimeUnit.MILLISECONDS);
+    inputBlockIndex = 0;
+    inputBlockRowSet = rowSet;
+    
+    return nextRowFromInputBlock(rowSet);
+  }
+  
+  /**
+   * @param rowSet the row set the row needs to come from
+   * @return the next row of the input block if it was taken from the given row set, null if there is no such row.
+   */
+  private Object[] nextRowFromInputBlock(RowSet rowSet) {
+    if (inputBlockIndex>=inputBlockSize || inputBlockRowSet!=rowSet) {
+      return null;
+    }
+    Object[] row = inputBlock[inputBlockIndex];
+    inputBlock[inputBlockIndex++] = null;
+    return row;
+  }
+
   public void putError(RowMetaInterface rowMeta, Object[] row, long nrErrors, String errorDescriptions, String fieldNames, String errorCodes) throws KettleStepException {
     if (trans.isSafeModeEnabled()) {
       if (rowMeta.size() > row.length) {
@@ -1351,9 +1424,8 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     stepErrorMeta.addErrorRowData(errorRowData, rowMeta.size(), nrErrors, errorDescriptions, fieldNames, errorCodes);
 
     // call all row listeners...
-    synchronized (this) {
-      for (int i = 0; i < rowListeners.size(); i++) {
-        RowListener rowListener = rowListeners.get(i);
+    if (!rowListeners.isEmpty()) {
+      for (RowListener rowListener : rowListeners) {
         rowListener.errorRowWrittenEvent(rowMeta, row);
       }
     }
@@ -1472,8 +1544,21 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     RowSet inputRowSet = null;
     Object[] row = null;
 
+    // First hand out the rows of the block we took from an input row set earlier on.
+    //
+    if (inputBlockIndex<inputBlockSize) {
+      inputRowSet = inputBlockRowSet;
+      row = nextRowFromInputBlock(inputRowSet);
+      incrementLinesRead();
+      blockPointer++;
+    } else {
+      // We're about to go look for input, the next steps shouldn't wait for the rows we wrote so far. 
+      //
+      handOverOutputBlocks();
+    }
+
     // Do we need to switch to the next input stream?
-    if (blockPointer >= NR_OF_ROWS_IN_BLOCK) {
+    if (row == null && blockPointer >= NR_OF_ROWS_IN_BLOCK) {
 
       // Take a peek at the next input stream.
       // If there is no data, process another NR_OF_ROWS_IN_BLOCK on the next
@@ -1487,22 +1572,11 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
       if (row != null) {
         incrementLinesRead();
       }
-    } else {
+    } else if (row == null) {
       // What's the current input stream?
       inputRowSet = currentInputStream();
     }
 
-    // To reduce stress on the locking system we are going to allow
-    // The buffer to grow beyond "a few" entries.
-    // We'll only do that if the previous step has not ended...
-    //
-    if (isUsingThreadPriorityManagment() && !inputRowSet.isDone() && inputRowSet.size() <= lowerBufferBoundary && !isStopped()) {
-      try {
-        Thread.sleep(0, 1);
-      } catch (InterruptedException e) {
-      }
-    }
-
     // See if this step is receiving partitioned data...
     // In that case it might be the case that one input row set is receiving
     // all data and
@@ -1513,14 +1587,15 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     // alternatively.
     // So in THIS particular case it is safe to just read 100 rows from one
     // rowset, then switch to another etc.
-    // We can use timeouts to switch from one to another...
+    // When none of the row sets has anything for us, we wait until one of them signals that rows arrived or that it's done.
     // 
+    int nrEmptyRowSets = 0;
     while (row == null && !isStopped()) {
       // Get a row from the input in row set ...
-      // Timeout immediately if nothing is there to read.
+      // Don't wait if nothing is there to read.
       // We will then switch to the next row set to read from...
       //
-      row = inputRowSet.getRowWait(1, TimeUnit.MILLISECONDS);
+      row = getRowImmediateFromRowSet(inputRowSet);
       if (row != null) {
         incrementLinesRead();
         blockPointer++;
@@ -1531,17 +1606,26 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
         // the input stream and move on to the next one...
         //
         if (inputRowSet.isDone()) {
-          row = inputRowSet.getRowWait(1, TimeUnit.MILLISECONDS);
+          row = getRowImmediateFromRowSet(inputRowSet);
           if (row == null) {
             inputRowSets.remove(currentInputRowSetNr);
             if (inputRowSets.isEmpty())
               return null; // We're completely done.
           } else {
             incrementLinesRead();
+            blockPointer++;
           }
         }
-        nextInputStream();
-        inputRowSet = currentInputStream();
+        if (row == null) {
+          // All the input row sets were empty: block until one of them raises the signal.
+          //
+          if (++nrEmptyRowSets >= inputRowSets.size()) {
+            inputSignal.waitForInput(inputRowSets, Const.TIMEOUT_GET_MILLIS, TimeUnit.MILLISECONDS);
+            nrEmptyRowSets = 0;
+          }
+          nextInputStream();
+          inputRowSet = currentInputStream();
+        }
       }
     }
 
@@ -1579,9 +1663,8 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
         }
       }
 
-      synchronized (this) {
-        for (int i = 0; i < rowListeners.size(); i++) {
-          RowListener rowListener = rowListeners.get(i);
+      if (!rowListeners.isEmpty()) {
+        for (RowListener rowListener : rowListeners) {
           rowListener.rowReadEvent(inputRowMeta, row);
         }
       }
@@ -1762,58 +1845,56 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
       }
       this.checkTransRunning = true;
     }
-    Object[] rowData = null;
-
-    // To reduce stress on the locking system we are going to allow
-    // The buffer to grow beyond "a few" entries.
-    // We'll only do that if the previous step has not ended...
-    //
-    if (isUsingThreadPriorityManagment() && !rowSet.isDone() && rowSet.size() <= lowerBufferBoundary && !isStopped()) {
-      try {
-        Thread.sleep(0, 1);
-      } catch (InterruptedException e) {
-      }
-    }
 
-    // Grab a row... If nothing received after a timeout, try again.
+    // First hand out the rows of the block we took from this row set earlier on.
     //
-    rowData = rowSet.getRow();
-    while (rowData == null && !rowSet.isDone() && !stopped.get()) {
-      rowData = rowSet.getRow();
-    }
+    Object[] rowData = nextRowFromInputBlock(rowSet);
+    
+    if (rowData == null) {
+      // We're about to wait for input, the next steps shouldn't wait for the rows we wrote so far. 
+      //
+      handOverOutputBlocks();
 
-    // Still nothing: no more rows to be had?
-    //
-    if (rowData == null && rowSet.isDone()) {
-      // Try one more time to get a row to make sure we don't get a
-      // race-condition between the get and the isDone()
+      // Grab a row... If nothing received after a timeout, try again.
+      // The row set wakes us up as soon as a row arrives or when it's done.
       //
       rowData = rowSet.getRow();
-    }
-
-    if (stopped.get()) {
-      if (log.isDebug())
-        logDebug(BaseMessages.getString(PKG, "BaseStep.Log.StopLookingForMoreRows")); //$NON-NLS-1$
-      stopAll();
-      return null;
-    }
+      while (rowData == null && !rowSet.isDone() && !stopped.get()) {
+        rowData = rowSet.getRow();
+      }
 
-    if (rowData == null && rowSet.isDone()) {
-      // Try one more time...
+      // Still nothing: no more rows to be had?
       //
-      rowData = rowSet.getRow();
-      if (rowData == null) {
-        inputRowSets.remove(rowSet);
+      if (rowData == null && rowSet.isDone()) {
+        // Try one more time to get a row to make sure we don't get a
+        // race-condition between the get and the isDone()
+        //
+        rowData = rowSet.getRow();
+      }
+
+      if (stopped.get()) {
+        if (log.isDebug())
+          logDebug(BaseMessages.getString(PKG, "BaseStep.Log.StopLookingForMoreRows")); //$NON-NLS-1$
+        stopAll();
         return null;
       }
+
+      if (rowData == null && rowSet.isDone()) {
+        // Try one more time...
+        //
+        rowData = rowSet.getRow();
+        if (rowData == null) {
+          inputRowSets.remove(rowSet);
+          return null;
+        }
+      }
     }
     incrementLinesRead();
 
     // call all rowlisteners...
     //
-    synchronized (this) {
-      for (int i = 0; i < rowListeners.size(); i++) {
-        RowListener rowListener = rowListeners.get(i);
+    if (!rowListeners.isEmpty()) {
+      for (RowListener rowListener : rowListeners) {
         rowListener.rowReadEvent(rowSet.getRowMeta(), rowData);
       }
     }
@@ -1955,6 +2036,11 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     public void setOutputDone()
     {
         if (log.isDebug()) logDebug(BaseMessages.getString(PKG, "BaseStep.Log.OutputDone", String.valueOf(outputRowSets.size()))); //$NON-NLS-1$ //$NON-NLS-2$
+        
+        // Hand over the rows we're still holding before we signal the end of the line
+        //
+        handOverOutputBlocks();
+        
         synchronized(outputRowSets)
         {
             for (int i = 0; i < outputRowSets.size(); i++)
@@ -2246,6 +2332,9 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
 	public void setStopped(boolean stopped) {
 		this.stopped.set(stopped);
+		if (stopped) {
+			inputSignal.signal(); // don't keep waiting for input
+		}
 	}
 
 	public void setRunning(boolean running) {
@@ -2468,18 +2557,16 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     public void logSummary()
     {
-        synchronized (statusCountersLock) {
-            long li = getLinesInput();
-            long lo = getLinesOutput();
-            long lr = getLinesRead();
-            long lw = getLinesWritten();
-            long lu = getLinesUpdated();
-            long lj = getLinesRejected();
-            if (li > 0 || lo > 0 || lr > 0 || lw > 0 || lu > 0 || lj > 0 || errors > 0)
-                logBasic(BaseMessages.getString(PKG, "BaseStep.Log.SummaryInfo", String.valueOf(li), String.valueOf(lo), String.valueOf(lr), String.valueOf(lw), String.valueOf(lw), String.valueOf(errors+lj)));
-            else
-                logDetailed(BaseMessages.getString(PKG, "BaseStep.Log.SummaryInfo", String.valueOf(li), String.valueOf(lo), String.valueOf(lr), String.valueOf(lw), String.valueOf(lw), String.valueOf(errors+lj)));
-        }
+        long li = getLinesInput();
+        long lo = getLinesOutput();
+        long lr = getLinesRead();
+        long lw = getLinesWritten();
+        long lu = getLinesUpdated();
+        long lj = getLinesRejected();
+        if (li > 0 || lo > 0 || lr > 0 || lw > 0 || lu > 0 || lj > 0 || errors > 0)
+            logBasic(BaseMessages.getString(PKG, "BaseStep.Log.SummaryInfo", String.valueOf(li), String.valueOf(lo), String.valueOf(lr), String.valueOf(lw), String.valueOf(lw), String.valueOf(errors+lj)));
+        else
+            logDetailed(BaseMessages.getString(PKG, "BaseStep.Log.SummaryInfo", String.valueOf(li), String.valueOf(lo), String.valueOf(lr), String.valueOf(lw), String.valueOf(lw), String.valueOf(errors+lj)));
     }
 
     public String getStepID()
@@ -2897,23 +2984,19 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 		return false;
 	}
 	
+	/**
+	 * @return true if a row is waiting on input: in one of the input row sets or in the block of rows we took from one of them earlier on.
+	 */
 	public boolean canProcessOneRow() {
-		switch(inputRowSets.size()) {
-		case 0: return false;
-		case 1:
-			RowSet set = inputRowSets.get(0);
-			if (set.isDone()) return false;
-			return set.size()>0;
-		default: 
-			boolean allDone=true;
-			for (RowSet rowSet : inputRowSets) {
-				if (!rowSet.isDone()) allDone=false;
-				if (rowSet.size()>0) {
-					return true;
-				}
+		if (inputBlockIndex<inputBlockSize) {
+			return true;
+		}
+		for (int i=0;i<inputRowSets.size();i++) {
+			if (inputRowSets.get(i).size()>0) {
+				return true;
 			}
-			return !allDone;
 		}
+		return false;
 	}
 	
 	public void addStepListener(StepListener stepListener) {
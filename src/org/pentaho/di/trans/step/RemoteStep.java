@@ -22,6 +22,7 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -32,6 +33,7 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileException;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.util.ThreadUtil;
 import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.di.core.xml.XMLInterface;
 import org.pentaho.di.www.SocketRepository;
@@ -91,6 +93,9 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 
 	private String	sourceSlaveServerName;
 
+	/** Guards opening the sockets.  A lock rather than synchronized methods so that a step on a virtual thread doesn't pin its carrier thread while it connects. */
+	private final ReentrantLock socketLock = new ReentrantLock();
+
 	/**
 	 * @param hostname
 	 * @param port
@@ -208,18 +213,23 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 		this.port = port;
 	}
 
-	public synchronized void openServerSocket(BaseStep baseStep) throws IOException {
-		this.baseStep = baseStep;
-		int portNumber = Integer.parseInt( baseStep.environmentSubstitute(port) );
-		
-		SocketRepository socketRepository = baseStep.getSocketRepository();
-		serverSocket = socketRepository.openServerSocket(portNumber, baseStep.getTransMeta().getName()+" - "+baseStep.toString());
-		
-		// Add this socket to the steps server socket list
-		// That way, the socket can be closed during transformation cleanup
-		// That is called when the cluster has finished processing.
-		//
-		baseStep.getServerSockets().add(serverSocket);
+	public void openServerSocket(BaseStep baseStep) throws IOException {
+		socketLock.lock();
+		try {
+			this.baseStep = baseStep;
+			int portNumber = Integer.parseInt( baseStep.environmentSubstitute(port) );
+			
+			SocketRepository socketRepository = baseStep.getSocketRepository();
+			serverSocket = socketRepository.openServerSocket(portNumber, baseStep.getTransMeta().getName()+" - "+baseStep.toString());
+			
+			// Add this socket to the steps server socket list
+			// That way, the socket can be closed during transformation cleanup
+			// That is called when the cluster has finished processing.
+			//
+			baseStep.getServerSockets().add(serverSocket);
+		} finally {
+			socketLock.unlock();
+		}
 	}
 
 	/**
@@ -249,7 +259,16 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 	 * @return the RowSet created that will accept the rows for the remote step
 	 * @throws IOException
 	 */
-	public synchronized BlockingRowSet openWriterSocket() throws IOException {
+	public BlockingRowSet openWriterSocket() throws IOException {
+		socketLock.lock();
+		try {
+			return openWriterSocketLocked();
+		} finally {
+			socketLock.unlock();
+		}
+	}
+
+	private BlockingRowSet openWriterSocketLocked() throws IOException {
 
 		// Create an output row set: to be added to BaseStep.outputRowSets
 		//
@@ -346,7 +365,7 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 		
 		// Fire this off in the in a separate thread...
 		//
-		new Thread(runnable).start();
+		ThreadUtil.newThread(runnable, baseStep.getTransMeta().isUsingVirtualThreads()).start();
 		
 		// Return the rowSet to be added to the output row set of baseStep 
 		//
@@ -370,7 +389,16 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 		return rowData;
 	}
 	
-	public synchronized BlockingRowSet openReaderSocket(final BaseStep baseStep) throws IOException, KettleException {
+	public BlockingRowSet openReaderSocket(final BaseStep baseStep) throws IOException, KettleException {
+		socketLock.lock();
+		try {
+			return openReaderSocketLocked(baseStep);
+		} finally {
+			socketLock.unlock();
+		}
+	}
+
+	private BlockingRowSet openReaderSocketLocked(final BaseStep baseStep) throws IOException, KettleException {
 		this.baseStep = baseStep;
 		
 		final BlockingRowSet rowSet = new BlockingRowSet(baseStep.getTransMeta().getSizeRowset());
@@ -529,7 +557,7 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 				rowSet.setDone(); 
 			}
 		};
-		new Thread(runnable).start();
+		ThreadUtil.newThread(runnable, baseStep.getTransMeta().isUsingVirtualThreads()).start();
 		
 		return rowSet;
 	}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.step;
+
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * A block of rows that a step collects for an output row set before handing them over in one go.
+ * It is only ever used by the thread of the step that owns it so there is no synchronization.
+ *
+ * @author matt
+ */
+class RowSetBlock {
+
+	private RowSet rowSet;
+	private RowMetaInterface rowMeta;
+	private Object[][] rows;
+
+	/** The index of the first row that wasn't handed over yet */
+	private int start;
+
+	/** The number of rows in the block */
+	private int size;
+
+	public RowSetBlock(RowSet rowSet, int blockSize) {
+		this.rowSet = rowSet;
+		this.rows = new Object[blockSize][];
+	}
+
+	/**
+	 * Adds a row to the block.  The block needs to be handed over first if it is full or if the row metadata changes.
+	 * @return true if the block is full after adding the row.
+	 */
+	public boolean add(RowMetaInterface rowMeta, Object[] row) {
+		this.rowMeta = rowMeta;
+		rows[size++] = row;
+		return size==rows.length;
+	}
+
+	/**
+	 * Tries to hand over the pending rows of the block to the row set, waiting a short while if the row set is full.
+	 * @return true if all the rows are handed over, false if some rows are still pending.
+	 */
+	public boolean handOver() {
+		if (start<size) {
+			start+=rowSet.putRows(rowMeta, rows, start, size-start);
+			if (start<size) {
+				return false;
+			}
+		}
+		clear();
+		return true;
+	}
+
+	public void clear() {
+		for (int i=0;i<size;i++) {
+			rows[i]=null;
+		}
+		start=0;
+		size=0;
+	}
+
+	/**
+	 * @return true if the block contains rows that are not yet handed over
+	 */
+	public boolean hasPendingRows() {
+		return start<size;
+	}
+
+	/**
+	 * @return true if the row can't be added before the block is handed over.
+	 */
+	public boolean needsHandOver(RowMetaInterface rowMeta) {
+		return size==rows.length || (size>0 && rowMeta!=this.rowMeta);
+	}
+
+	public RowSet getRowSet() {
+		return rowSet;
+	}
+}
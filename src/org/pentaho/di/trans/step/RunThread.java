@@ -34,40 +34,79 @@ public class RunThread implements Runnable {
 	public void run() {
 		try
 		{
-			step.setRunning(true);
-			if (log.isDetailed()) log.logDetailed(BaseMessages.getString(PKG, "System.Log.StartingToRun")); //$NON-NLS-1$
+			startRunning();
 
 			while (step.processRow(meta, data) && !step.isStopped());
 		}
 		catch(Throwable t)
 		{
-		    try
-		    {
-		        //check for OOME
-		        if(t instanceof OutOfMemoryError) {
-		            // Handle this different with as less overhead as possible to get an error message in the log.
-		            // Otherwise it crashes likely with another OOME in Me$$ages.getString() and does not log
-		            // nor call the setErrors() and stopAll() below.
-		        	log.logError("UnexpectedError: ", t); //$NON-NLS-1$
-		        } else {
-		        	log.logError(BaseMessages.getString(PKG, "System.Log.UnexpectedError"), t); //$NON-NLS-1$ //$NON-NLS-2$
-		        }
-		        // baseStep.logError(Const.getStackTracker(t));
-		    }
-		    catch(OutOfMemoryError e)
-		    {
-		        e.printStackTrace();
-		    }
-		    finally
-		    {
-		        step.setErrors(1);
-		        step.stopAll();
+			handleError(t);
+		}
+		finally
+		{
+			finishRunning();
+		}
+	}
+
+	/**
+	 * Flags the step as running.  Called once, before the first row is processed.
+	 */
+	public void startRunning() {
+		step.setRunning(true);
+		if (log.isDetailed()) log.logDetailed(BaseMessages.getString(PKG, "System.Log.StartingToRun")); //$NON-NLS-1$
+	}
+
+	/**
+	 * Lets the step process one row.  Errors are logged and stop the transformation, just like in run().
+	 * 
+	 * @return true if the step can process more rows, false if it is done, stopped or failed.
+	 */
+	public boolean processRow() {
+		try
+		{
+			return step.processRow(meta, data) && !step.isStopped();
+		}
+		catch(Throwable t)
+		{
+			handleError(t);
+			return false;
+		}
+	}
+
+	/**
+	 * Logs an unexpected error, flags the step as failed and stops the transformation.
+	 */
+	private void handleError(Throwable t) {
+		try
+		{
+		    //check for OOME
+		    if(t instanceof OutOfMemoryError) {
+		        // Handle this different with as less overhead as possible to get an error message in the log.
+		        // Otherwise it crashes likely with another OOME in Me$$ages.getString() and does not log
+		        // nor call the setErrors() and stopAll() below.
+		    	log.logError("UnexpectedError: ", t); //$NON-NLS-1$
+		    } else {
+		    	log.logError(BaseMessages.getString(PKG, "System.Log.UnexpectedError"), t); //$NON-NLS-1$ //$NON-NLS-2$
 		    }
+		    // baseStep.logError(Const.getStackTracker(t));
+		}
+		catch(OutOfMemoryError e)
+		{
+		    e.printStackTrace();
 		}
 		finally
 		{
-			step.dispose(meta, data);
-			try {
+		    step.setErrors(1);
+		    step.stopAll();
+		}
+	}
+
+	/**
+	 * Disposes of the step, logs the summary and marks the stop of the step.  Called once, after the last row was processed.
+	 */
+	public void finishRunning() {
+		step.dispose(meta, data);
+		try {
 	            long li = step.getLinesInput();
 	            long lo = step.getLinesOutput();
 	            long lr = step.getLinesRead();
@@ -79,15 +118,21 @@ public class RunThread implements Runnable {
 	            	log.logBasic(BaseMessages.getString(PKG, "BaseStep.Log.SummaryInfo", String.valueOf(li), String.valueOf(lo), String.valueOf(lr), String.valueOf(lw), String.valueOf(lu), String.valueOf(e+lj)));
 	            else
 	            	log.logDetailed(BaseMessages.getString(PKG, "BaseStep.Log.SummaryInfo", String.valueOf(li), String.valueOf(lo), String.valueOf(lr), String.valueOf(lw), String.valueOf(lu), String.valueOf(e+lj)));
-			} catch(Throwable t) {
-				//
-				// it's likely an OOME, so we don't want to introduce overhead by using BaseMessages.getString(), see above
-				//
-				log.logError("UnexpectedError: " + t.toString()); //$NON-NLS-1$
-			} finally {
-				step.markStop();
-			}
+		} catch(Throwable t) {
+			//
+			// it's likely an OOME, so we don't want to introduce overhead by using BaseMessages.getString(), see above
+			//
+			log.logError("UnexpectedError: " + t.toString()); //$NON-NLS-1$
+		} finally {
+			step.markStop();
 		}
 	}
 
+	/**
+	 * @return the step that is run
+	 */
+	public StepInterface getStep() {
+		return step;
+	}
+
 }
@@ -44,6 +44,7 @@ import org.pentaho.di.resource.ResourceReference;
 import org.pentaho.di.shared.SharedObjectBase;
 import org.pentaho.di.shared.SharedObjectInterface;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.TransMeta.TransformationType;
 import org.pentaho.di.trans.step.errorhandling.StreamInterface;
 import org.w3c.dom.Node;
 
@@ -785,6 +786,19 @@ public class StepMeta extends SharedObjectBase implements Cloneable, Comparable<
     	return STRING_ID_MAPPING_OUTPUT.equals(stepid);
     }
 
+    /**
+     * @param transformationType the type of transformation engine to run the step in
+     * @return true if the step can run in the given type of transformation engine
+     */
+    public boolean isSupportingTransformationType(TransformationType transformationType) {
+    	for (TransformationType type : stepMetaInterface.getSupportedTransformationTypes()) {
+    		if (type==transformationType) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+
     /**
      * Get a list of all the resource dependencies that the step is depending on.
      * 
@@ -30,6 +30,7 @@ import org.pentaho.di.core.exception.KettleFileException;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.MemoryManager;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
@@ -58,14 +59,31 @@ public class BlockingStep extends BaseStep implements StepInterface {
       
 	private boolean addBuffer(RowMetaInterface rowMeta, Object[] r)    
 	{
+		boolean memoryFull = false;
 		if (r!=null)
 		{
 			data.buffer.add(r);     // Save row
+			
+			// With a memory budget we also write to disk when the budget is used up or another step needs the memory.
+			// Below the minimum number of rows per file the memory is taken anyway, not to end up with a file per row.
+			if (data.memory!=null)
+			{
+				long rowSize = MemoryManager.estimateRowSize(rowMeta, r);
+				if (data.buffer.size()<data.minSpillSize)
+				{
+					data.memory.allocate(rowSize);
+				}
+				else
+				{
+					memoryFull = !data.memory.reserve(rowSize) || data.memory.isSpillRequested();
+				}
+			}
 		}
 		
 		// Time to write to disk: buffer in core is full!
 		if (   data.buffer.size()==meta.getCacheSize()                 // Buffer is full: dump to disk 
 		   || (data.files.size()>0 && r==null && data.buffer.size()>0) // No more records: join from disk 
+		   || memoryFull                                               // Memory budget is used up: dump to disk
 		   )
 		{		
 			// Then write them to disk...
@@ -78,6 +96,7 @@ public class BlockingStep extends BaseStep implements StepInterface {
 				FileObject fileObject=KettleVFS.createTempFile(meta.getPrefix(), ".tmp", environmentSubstitute(meta.getDirectory()), getTransMeta());
 				
 				data.files.add(fileObject); // Remember the files!
+				data.nrTempFiles++;
 				OutputStream outputStream = KettleVFS.getOutputStream(fileObject,false);
 				if (meta.getCompress())
 				{
@@ -113,6 +132,10 @@ public class BlockingStep extends BaseStep implements StepInterface {
 			}
 			
 			data.buffer.clear();
+			if (data.memory!=null)
+			{
+				data.memory.releaseAll();
+			}
 		}		
 		
 		return true; 
@@ -252,6 +275,10 @@ public class BlockingStep extends BaseStep implements StepInterface {
         logError(e.getLocalizedMessage(), e);
       }
     }
+    if (data.memory != null) {
+      data.memory.close();
+      data.memory = null;
+    }
     super.dispose(smi, sdi);
   }	
 
@@ -262,7 +289,13 @@ public class BlockingStep extends BaseStep implements StepInterface {
 		
 		if (super.init(smi, sdi))
 		{
-		    // Add init code here.
+		    // Rows are written to disk when the memory budget of the transformation is used up.
+		    //
+		    if (getTrans()!=null && getTrans().getMemoryManager()!=null)
+		    {
+		    	data.memory = getTrans().getMemoryManager().register(toString(), true);
+		    	data.minSpillSize = Math.min(BlockingStepMeta.CACHE_SIZE, meta.getCacheSize());
+		    }
 		    return true;
 		}
 		return false;
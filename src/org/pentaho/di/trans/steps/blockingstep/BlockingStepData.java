@@ -19,6 +19,7 @@ import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.vfs.FileObject;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.MemoryConsumer;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
@@ -36,6 +37,15 @@ public class BlockingStepData extends BaseStepData implements StepDataInterface
 
 	public int        fieldnrs[];    // the corresponding field numbers;
     public FileObject fil;
+    
+    /** The memory reserved for the rows in the buffer, null if the transformation has no memory budget */
+    public MemoryConsumer memory;
+    
+    /** The minimum number of rows to write to disk when the memory budget is used up */
+    public int minSpillSize;
+    
+    /** The number of temporary files written */
+    public int nrTempFiles;
 
     public BlockingStepData()
     {
@@ -262,7 +262,7 @@ public class CombinationLookup extends BaseStep implements StepInterface
 		val_key = lookupInCache(data.hashRowMeta, hashRow);
 		if (val_key==null)
 		{
-			data.db.setValues(data.lookupRowMeta, lookupRow, data.prepStatementLookup);
+			data.db.setValues(data.lookupBinder, lookupRow, data.prepStatementLookup);
 			Object[] add = data.db.getLookup(data.prepStatementLookup);
             incrementLinesInput();
 
@@ -495,6 +495,7 @@ public class CombinationLookup extends BaseStep implements StepInterface
         {
             if (log.isDebug()) logDebug("preparing combi-lookup statement:"+Const.CR+sql);
             data.prepStatementLookup=data.db.getConnection().prepareStatement(databaseMeta.stripCR(sql));
+            data.lookupBinder = data.db.createStatementBinder(data.lookupRowMeta);
             if (databaseMeta.supportsSetMaxRows())
             {
                 data.prepStatementLookup.setMaxRows(1); // alywas get only 1 line back!
@@ -624,6 +625,7 @@ public class CombinationLookup extends BaseStep implements StepInterface
                 {
                     throw new KettleDatabaseException("Unable to prepare combi insert statement : "+Const.CR+sqlStatement, ex);
                 }
+                data.insertBinder = data.db.createStatementBinder(data.insertRowMeta);
             }
             
             debug="Create new insert row rins";
@@ -655,7 +657,7 @@ public class CombinationLookup extends BaseStep implements StepInterface
             
             debug="Set values on insert";
             // INSERT NEW VALUE!
-            data.db.setValues(data.insertRowMeta, insertRow, data.prepStatementInsert);
+            data.db.setValues(data.insertBinder, insertRow, data.prepStatementInsert);
             
             debug="Insert row";
             data.db.insertRow(data.prepStatementInsert);
@@ -17,6 +17,7 @@ import java.util.Map;
 
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.StatementBinder;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -37,6 +38,8 @@ public class CombinationLookupData extends BaseStepData implements StepDataInter
     public RowMetaInterface outputRowMeta;
     public RowMetaInterface lookupRowMeta;
     public RowMetaInterface insertRowMeta;
+    public StatementBinder lookupBinder;
+    public StatementBinder insertBinder;
     public RowMetaInterface hashRowMeta;
     public String realTableName;
     public String realSchemaName;
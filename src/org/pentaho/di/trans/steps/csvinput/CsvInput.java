@@ -286,6 +286,7 @@ public class CsvInput extends BaseStep implements StepInterface
 			if (data.fis!=null) {
 				data.fis.close();
 			}
+			data.mappedScanner = null;
 			
 			if (data.filenr>=data.filenames.length) {
 				return false;
@@ -306,13 +307,21 @@ public class CsvInput extends BaseStep implements StepInterface
 			
 			data.fis = new FileInputStream(KettleVFS.getFilename(fileObject));
 			data.fc = data.fis.getChannel();
-			data.bb = ByteBuffer.allocateDirect( data.preferredBufferSize );
+			if (data.memoryMapped) {
+				data.mappedScanner = new MappedCsvScanner(data.fc, data.delimiter[0], data.enclosure, meta.getInputFields().length, MappedCsvScanner.DEFAULT_WINDOW_SIZE);
+			} else {
+				data.bb = ByteBuffer.allocateDirect( data.preferredBufferSize );
+			}
 
 			// If we are running in parallel and we need to skip bytes in the first file, let's do so here.
 			//
 			if (data.parallel) {
 				if (data.bytesToSkipInFirstFile>0) {
-					data.fc.position(data.bytesToSkipInFirstFile);
+					if (data.memoryMapped) {
+						data.mappedScanner.setPosition(data.bytesToSkipInFirstFile);
+					} else {
+						data.fc.position(data.bytesToSkipInFirstFile);
+					}
 	
 					// Now, we need to skip the first row, until the first CR that is.
 					//
@@ -447,6 +456,10 @@ public class CsvInput extends BaseStep implements StepInterface
 	 */
 	private Object[] readOneRow(boolean doConversions) throws KettleException {
 
+		if (data.memoryMapped) {
+			return readOneMappedRow(doConversions);
+		}
+		
 		try {
 
 			Object[] outputRowData = RowDataUtil.allocateRowData(data.outputRowMeta.size());
@@ -701,30 +714,7 @@ public class CsvInput extends BaseStep implements StepInterface
 				data.startBuffer = data.endBuffer;
 			}
 			
-			// Optionally add the current filename to the mix as well...
-			//
-			if (meta.isIncludingFilename() && !Const.isEmpty(meta.getFilenameField())) {
-				if (meta.isLazyConversionActive()) {
-					outputRowData[data.filenameFieldIndex] = data.binaryFilename;
-				}
-				else {
-					outputRowData[data.filenameFieldIndex] = data.filenames[data.filenr-1];
-				}
-			}
-			
-			if (data.isAddingRowNumber) {
-				outputRowData[data.rownumFieldIndex] = new Long(data.rowNumber++);
-			}
-		
-			incrementLinesInput();
-			
-			if (conversionExceptions!=null && conversionExceptions.size()>0) {
-				// Forward the first exception
-				//
-				throw new KettleConversionException("There were "+conversionExceptions.size()+" conversion errors on line "+getLinesInput(), conversionExceptions, exceptionFields, outputRowData);
-			}
-			
-			return outputRowData;
+			return completeRow(outputRowData, conversionExceptions, exceptionFields);
 		}
 		catch(KettleConversionException e) {
 			throw e;
@@ -736,6 +726,97 @@ public class CsvInput extends BaseStep implements StepInterface
 
 	}
 
+	/**
+	 * Read a single row of data from the memory-mapped file.  The scanner finds the field offsets on the line, 
+	 * only the fields of the step are copied out of the file.
+	 * 
+	 * @param doConversions if you want to do conversions, set to false for the header row.
+	 * @return a row of data or null at the end of the file.
+	 * @throws KettleException
+	 */
+	private Object[] readOneMappedRow(boolean doConversions) throws KettleException {
+		try {
+			long startPosition = data.mappedScanner.getPosition();
+			int nrFields = data.mappedScanner.readLine();
+			if (nrFields<0) {
+				return null; // nothing more to read, call it a day.
+			}
+			data.totalBytesRead+=data.mappedScanner.getPosition()-startPosition;
+			
+			Object[] outputRowData = RowDataUtil.allocateRowData(data.outputRowMeta.size());
+			List<Exception> conversionExceptions = null;
+			List<ValueMetaInterface> exceptionFields = null;
+			
+			if (doConversions) {
+				for (int outputIndex=0;outputIndex<nrFields;outputIndex++) {
+					byte[] field = data.mappedScanner.getField(outputIndex);
+					if (meta.isLazyConversionActive()) {
+						outputRowData[outputIndex] = field;
+					}
+					else {
+						ValueMetaInterface sourceValueMeta = data.convertRowMeta.getValueMeta(outputIndex);
+						try {
+							outputRowData[outputIndex] = sourceValueMeta.convertBinaryStringToNativeType(field);
+						} catch(KettleValueException e) {
+							// There was a conversion error,
+							//
+							outputRowData[outputIndex] = null;
+							
+							if (conversionExceptions==null) {
+								conversionExceptions = new ArrayList<Exception>();
+								exceptionFields = new ArrayList<ValueMetaInterface>();
+							}
+							
+							conversionExceptions.add(e);
+							exceptionFields.add(sourceValueMeta);
+						}
+					}
+				}
+			}
+			
+			return completeRow(outputRowData, conversionExceptions, exceptionFields);
+		}
+		catch(KettleConversionException e) {
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new KettleFileException("Exception reading line from memory-mapped file", e);
+		}
+	}
+
+	/**
+	 * Add the filename and row number to a row that was read and count it.
+	 * 
+	 * @throws KettleConversionException in case there were conversion errors in the row
+	 */
+	private Object[] completeRow(Object[] outputRowData, List<Exception> conversionExceptions, List<ValueMetaInterface> exceptionFields) throws KettleConversionException {
+		// Optionally add the current filename to the mix as well...
+		//
+		if (meta.isIncludingFilename() && !Const.isEmpty(meta.getFilenameField())) {
+			if (meta.isLazyConversionActive()) {
+				outputRowData[data.filenameFieldIndex] = data.binaryFilename;
+			}
+			else {
+				outputRowData[data.filenameFieldIndex] = data.filenames[data.filenr-1];
+			}
+		}
+		
+		if (data.isAddingRowNumber) {
+			outputRowData[data.rownumFieldIndex] = new Long(data.rowNumber++);
+		}
+	
+		incrementLinesInput();
+		
+		if (conversionExceptions!=null && conversionExceptions.size()>0) {
+			// Forward the first exception
+			//
+			throw new KettleConversionException("There were "+conversionExceptions.size()+" conversion errors on line "+getLinesInput(), conversionExceptions, exceptionFields, outputRowData);
+		}
+		
+		return outputRowData;
+	}
+
 	private int calculateFieldLength(boolean newLineFound, int newLines, boolean enclosureFound, boolean endOfBuffer) {
 	  
 	  int length = data.endBuffer-data.startBuffer;
@@ -846,6 +927,17 @@ public class CsvInput extends BaseStep implements StepInterface
             case DOUBLE_LITTLE_ENDIAN: data.crLfMatcher = new MultiByteLittleCrLfMatcher(); break;
             default: data.crLfMatcher = new SingleByteCrLfMatcher(); break;
             }
+            
+            // The memory-mapped scanner handles single byte encodings, delimiters and enclosures
+            //
+            data.memoryMapped = false;
+            if (meta.isMemoryMapped()) {
+              if (MappedCsvScanner.isSupported(data.delimiter, data.enclosure, data.encodingType==EncodingType.SINGLE)) {
+                data.memoryMapped = true;
+              } else {
+                logBasic(BaseMessages.getString(PKG, "CsvInput.Log.MemoryMappingNotSupported")); //$NON-NLS-1$
+              }
+            }
 
 			return true;
 
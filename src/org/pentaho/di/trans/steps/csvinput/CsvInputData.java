@@ -72,6 +72,10 @@ public class CsvInputData extends BaseStepData implements StepDataInterface
     public PatternMatcherInterface delimiterMatcher;
     public PatternMatcherInterface enclosureMatcher;
     public CrLfMatcherInterface crLfMatcher;
+    
+    /** true if the files are read with the memory-mapped scanner */
+    public boolean memoryMapped;
+    public MappedCsvScanner mappedScanner;
 	
 	/**
 	 * 
@@ -89,6 +89,8 @@ public class CsvInputMeta extends BaseStepMeta implements StepMetaInterface, Inp
 	
 	private String encoding;
 	
+	private boolean memoryMapped;
+	
 	public CsvInputMeta()
 	{
 		super(); // allocate BaseStepMeta
@@ -132,6 +134,7 @@ public class CsvInputMeta extends BaseStepMeta implements StepMetaInterface, Inp
 			isaddresult= "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, getXmlCode("ADD_FILENAME_RESULT")));
 			runningInParallel = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, getXmlCode("PARALLEL")));
 			encoding = XMLHandler.getTagValue(stepnode, getXmlCode("ENCODING"));
+			memoryMapped = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, getXmlCode("MEMORY_MAPPED")));
 			
 			Node fields = XMLHandler.getSubNode(stepnode, getXmlCode("FIELDS"));
 			int nrfields = XMLHandler.countNodes(fields, getXmlCode("FIELD"));
@@ -181,6 +184,7 @@ public class CsvInputMeta extends BaseStepMeta implements StepMetaInterface, Inp
 		retval.append("    ").append(XMLHandler.addTagValue(getXmlCode("ADD_FILENAME_RESULT"), isaddresult));
 		retval.append("    ").append(XMLHandler.addTagValue(getXmlCode("PARALLEL"), runningInParallel));
 		retval.append("    ").append(XMLHandler.addTagValue(getXmlCode("ENCODING"), encoding));
+		retval.append("    ").append(XMLHandler.addTagValue(getXmlCode("MEMORY_MAPPED"), memoryMapped));
 
 		retval.append("    ").append(XMLHandler.openTag(getXmlCode("FIELDS"))).append(Const.CR);
 		for (int i = 0; i < inputFields.length; i++)
@@ -221,6 +225,7 @@ public class CsvInputMeta extends BaseStepMeta implements StepMetaInterface, Inp
 			isaddresult = rep.getStepAttributeBoolean(id_step, getRepCode("ADD_FILENAME_RESULT"));
 			runningInParallel = rep.getStepAttributeBoolean(id_step, getRepCode("PARALLEL"));
 			encoding = rep.getStepAttributeString(id_step, getRepCode("ENCODING"));
+			memoryMapped = rep.getStepAttributeBoolean(id_step, getRepCode("MEMORY_MAPPED"));
 			
 			int nrfields = rep.countNrStepAttributes(id_step, getRepCode("FIELD_NAME"));
 
@@ -263,6 +268,7 @@ public class CsvInputMeta extends BaseStepMeta implements StepMetaInterface, Inp
 			rep.saveStepAttribute(id_transformation, id_step, getRepCode("ADD_FILENAME_RESULT"), isaddresult);
 			rep.saveStepAttribute(id_transformation, id_step, getRepCode("PARALLEL"), runningInParallel);
 			rep.saveStepAttribute(id_transformation, id_step, getRepCode("ENCODING"), encoding);
+			rep.saveStepAttribute(id_transformation, id_step, getRepCode("MEMORY_MAPPED"), memoryMapped);
 
 			for (int i = 0; i < inputFields.length; i++)
 			{
@@ -632,6 +638,20 @@ public class CsvInputMeta extends BaseStepMeta implements StepMetaInterface, Inp
 	public void setEncoding(String encoding) {
 		this.encoding = encoding;
 	}
+
+	/**
+	 * @return true if the files are memory-mapped and scanned 8 bytes at a time (single byte encodings, delimiters and enclosures only)
+	 */
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
+	/**
+	 * @param memoryMapped true if the files need to be memory-mapped
+	 */
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
 	
 	/**
 	 * Since the exported transformation that runs this will reside in a ZIP file, we can't reference files relatively.
@@ -695,6 +715,7 @@ public class CsvInputMeta extends BaseStepMeta implements StepMetaInterface, Inp
           if (attr.getKey().equals("PARALLEL")) { runningInParallel = (Boolean) entry.getValue(); } else
           if (attr.getKey().equals("ADD_FILENAME_RESULT")) { isaddresult = (Boolean) entry.getValue(); } else
           if (attr.getKey().equals("ENCODING")) { encoding = (String) entry.getValue(); } else
+          if (attr.getKey().equals("MEMORY_MAPPED")) { memoryMapped = (Boolean) entry.getValue(); } else
           { 
             throw new RuntimeException("Unhandled metadata injection of attribute: "+attr.toString()+" - "+attr.getDescription());
           }
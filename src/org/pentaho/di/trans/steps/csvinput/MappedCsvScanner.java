@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.csvinput;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Splits the lines of a memory-mapped CSV file in fields, for single byte encodings with a single byte delimiter and enclosure.<br>
+ * <br>
+ * The mapped file is scanned 8 bytes at a time: a long is compared with the delimiter, CR and LF in all its bytes at once
+ * (SWAR, SIMD within a register), so the loop only stops at the bytes that matter.
+ * A line is split in field offsets, only the fields that are asked for with getField() are copied out of the mapping.<br>
+ * <br>
+ * The file is mapped in windows.  A line always lies completely in the current window:
+ * when a line runs over the end of the window, the window is moved to the start of that line and the line is scanned again.
+ *
+ * @author matt
+ */
+public class MappedCsvScanner {
+
+	public static final int DEFAULT_WINDOW_SIZE = 64*1024*1024;
+
+	private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+	private static final long ONES     = 0x0101010101010101L;
+
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+
+	private FileChannel channel;
+	private long fileSize;
+	private int windowSize;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	private long windowEnd;
+
+	private byte delimiter;
+	private byte enclosure;
+	private boolean enclosed;
+
+	private long delimiterPattern;
+	private long crPattern;
+	private long lfPattern;
+	private long enclosurePattern;
+
+	/** The position of the next line */
+	private long position;
+
+	private int maxFields;
+	private int nrFields;
+	private long[] fieldStarts;
+	private long[] fieldEnds;
+	private int[] fieldEscapes;
+
+	/**
+	 * @param channel the channel of the file to read
+	 * @param delimiter the field delimiter
+	 * @param enclosure the enclosure or null if fields are not enclosed
+	 * @param maxFields the number of fields to keep the offsets of, the other fields of a line are skipped
+	 * @param windowSize the number of bytes to map at a time
+	 * @throws IOException in case the size of the file can't be determined
+	 */
+	public MappedCsvScanner(FileChannel channel, byte delimiter, byte[] enclosure, int maxFields, int windowSize) throws IOException {
+		this.channel = channel;
+		this.fileSize = channel.size();
+		this.windowSize = windowSize;
+		this.delimiter = delimiter;
+		this.enclosed = enclosure!=null;
+		this.enclosure = enclosed ? enclosure[0] : 0;
+		this.maxFields = maxFields;
+
+		delimiterPattern = ONES * (delimiter & 0xFF);
+		crPattern = ONES * CR;
+		lfPattern = ONES * LF;
+		enclosurePattern = ONES * (this.enclosure & 0xFF);
+
+		fieldStarts = new long[maxFields];
+		fieldEnds = new long[maxFields];
+		fieldEscapes = new int[maxFields];
+	}
+
+	/**
+	 * @param delimiter the field delimiter
+	 * @param enclosure the enclosure or null
+	 * @param encodingSingleByte true if the file is in a single byte encoding
+	 * @return true if the file can be scanned with this class
+	 */
+	public static boolean isSupported(byte[] delimiter, byte[] enclosure, boolean encodingSingleByte) {
+		return encodingSingleByte && delimiter.length==1 && (enclosure==null || enclosure.length==1);
+	}
+
+	/**
+	 * Continue reading at another position in the file, for example to skip the first part of the file in a parallel read.
+	 */
+	public void setPosition(long position) {
+		this.position = position;
+	}
+
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Split the next line in fields.
+	 *
+	 * @return the number of fields found on the line (at most maxFields) or -1 at the end of the file.
+	 * @throws IOException in case the file can't be mapped
+	 */
+	public int readLine() throws IOException {
+		if (position>=fileSize) {
+			return -1;
+		}
+		while (true) {
+			if (position<windowStart || position>=windowEnd) {
+				map(position, windowSize);
+			}
+			long next = scanLine(position);
+			if (next>=0) {
+				position = next;
+				return nrFields;
+			}
+
+			// The line runs over the end of the window: map a window that starts at the line, larger if the line is that long.
+			//
+			if (windowStart==position) {
+				windowSize = (int)Math.min(Integer.MAX_VALUE-8L, 2L*windowSize);
+			}
+			map(position, windowSize);
+		}
+	}
+
+	private void map(long start, int size) throws IOException {
+		long length = Math.min(size, fileSize-start);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+		window.order(ByteOrder.LITTLE_ENDIAN);
+		windowStart = start;
+		windowEnd = start+length;
+	}
+
+	/**
+	 * Find the fields of the line that starts at the given position.
+	 *
+	 * @return the position of the next line or -1 if the line doesn't end in the current window
+	 */
+	private long scanLine(long lineStart) {
+		nrFields = 0;
+		long p = lineStart;
+		while (true) {
+			long fieldStart = p;
+			long contentStart = p;
+			long contentEnd = -1L;
+			int escapes = 0;
+
+			// An enclosed field: look for the closing enclosure, a doubled enclosure is an escaped one
+			//
+			if (enclosed && p<windowEnd && byteAt(p)==enclosure) {
+				contentStart = p+1;
+				p++;
+				while (true) {
+					long q = find(p, enclosurePattern, 0L, 0L);
+					if (q<0) {
+						if (windowEnd<fileSize) return -1L;
+						contentEnd = fileSize; // missing closing enclosure at the end of the file
+						p = fileSize;
+						break;
+					}
+					if (q+1>=windowEnd && windowEnd<fileSize) return -1L;
+					if (q+1<fileSize && byteAt(q+1)==enclosure) {
+						escapes++;
+						p = q+2;
+					} else {
+						contentEnd = q;
+						p = q+1;
+						break;
+					}
+				}
+			}
+
+			long end = p<windowEnd ? find(p, delimiterPattern, crPattern, lfPattern) : -1L;
+			if (end<0) {
+				if (windowEnd<fileSize) return -1L;
+				end = fileSize;
+			}
+
+			if (nrFields<maxFields) {
+				fieldStarts[nrFields] = contentEnd<0 ? fieldStart : contentStart;
+				fieldEnds[nrFields] = contentEnd<0 ? end : contentEnd;
+				fieldEscapes[nrFields] = escapes;
+				nrFields++;
+			}
+
+			if (end>=fileSize) {
+				return fileSize;
+			}
+
+			byte b = byteAt(end);
+			if (b==delimiter) {
+				p = end+1;
+				if (p>=fileSize) {
+					return fileSize; // a delimiter at the very end of the file: no extra field
+				}
+				continue;
+			}
+
+			// A CR or LF, skip a second one as in CR+LF
+			//
+			p = end+1;
+			if (p<fileSize) {
+				if (p>=windowEnd) return -1L;
+				byte c = byteAt(p);
+				if (c==CR || c==LF) {
+					p++;
+				}
+			}
+			return p;
+		}
+	}
+
+	private byte byteAt(long p) {
+		return window.get((int)(p-windowStart));
+	}
+
+	/**
+	 * Find the first byte in the window from the given position that equals one of the patterns (a byte repeated 8 times).
+	 * Pass 0 for the unused patterns: they are only checked when different from the first pattern, 0 bytes don't need to be found.
+	 *
+	 * @return the position of the byte or -1 if it isn't in the window
+	 */
+	private long find(long from, long pattern1, long pattern2, long pattern3) {
+		int i = (int)(from-windowStart);
+		int limit = (int)(windowEnd-windowStart);
+		boolean checkOthers = pattern2!=0L;
+		while (i+8<=limit) {
+			long word = window.getLong(i);
+			long found = zeroBytes(word ^ pattern1);
+			if (checkOthers) {
+				found |= zeroBytes(word ^ pattern2) | zeroBytes(word ^ pattern3);
+			}
+			if (found!=0L) {
+				return windowStart+i+(Long.numberOfTrailingZeros(found)>>>3);
+			}
+			i+=8;
+		}
+		byte b1 = (byte)pattern1;
+		byte b2 = (byte)pattern2;
+		byte b3 = (byte)pattern3;
+		while (i<limit) {
+			byte b = window.get(i);
+			if (b==b1 || (checkOthers && (b==b2 || b==b3))) {
+				return windowStart+i;
+			}
+			i++;
+		}
+		return -1L;
+	}
+
+	/**
+	 * @return a long with the high bit set in every byte that is 0 in the given word and nothing else
+	 */
+	private static long zeroBytes(long word) {
+		long t = (word & LOW_BITS) + LOW_BITS;
+		return ~(t | word | LOW_BITS);
+	}
+
+	/**
+	 * @return the number of fields found on the last line read, at most maxFields
+	 */
+	public int getNrFields() {
+		return nrFields;
+	}
+
+	/**
+	 * @return the length in bytes of a field of the last line read, without the enclosures
+	 */
+	public int getFieldLength(int index) {
+		return (int)(fieldEnds[index]-fieldStarts[index])-fieldEscapes[index];
+	}
+
+	/**
+	 * Copy a field of the last line read out of the mapping, without the enclosures and with the escaped enclosures replaced.
+	 *
+	 * @param index the index of the field on the line
+	 * @return the bytes of the field
+	 */
+	public byte[] getField(int index) {
+		int start = (int)(fieldStarts[index]-windowStart);
+		int length = (int)(fieldEnds[index]-fieldStarts[index]);
+		byte[] field = new byte[length-fieldEscapes[index]];
+		if (fieldEscapes[index]==0) {
+			window.position(start);
+			window.get(field);
+		} else {
+			int f = 0;
+			for (int i=0;i<length;i++) {
+				byte b = window.get(start+i);
+				field[f++] = b;
+				if (b==enclosure) {
+					i++; // skip the second enclosure of the pair
+				}
+			}
+		}
+		return field;
+	}
+}
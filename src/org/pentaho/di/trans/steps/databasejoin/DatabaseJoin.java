@@ -193,9 +193,7 @@ public class DatabaseJoin extends BaseStep implements StepInterface
 
         if (data.db!=null && !data.isCanceled)
         {
-          synchronized(data.db) {
-            data.db.cancelStatement(data.pstmt);
-          }
+          data.db.cancelStatement(data.pstmt);
           setStopped(true);
           data.isCanceled=true;
         }
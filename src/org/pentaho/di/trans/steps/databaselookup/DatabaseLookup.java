@@ -11,18 +11,21 @@
  
 package org.pentaho.di.trans.steps.databaselookup;
 
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.RowMetaAndData;
-import org.pentaho.di.core.TimedRow;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.row.RowDataUtil;
@@ -49,6 +52,12 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 {
 	private static Class<?> PKG = DatabaseLookupMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
+	/** The results of a key in a batch when the lookup fails on multiple results */
+	private static final Object[] MULTIPLE_RESULTS = new Object[0];
+
+	/** The number of partitions with their own lock of a cache the copies of the step share */
+	private static final int SHARED_CACHE_PARTITIONS = 16;
+
 	private DatabaseLookupMeta meta;
 	private DatabaseLookupData data;
 
@@ -67,42 +76,13 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 	{
 		Object[] outputRow = RowDataUtil.resizeArray(row, data.outputRowMeta.size());
                 
-        Object[] lookupRow = new Object[data.lookupMeta.size()];
-        int lookupIndex=0;
-        
-        for (int i=0;i<meta.getStreamKeyField1().length;i++)
-		{
-			if (data.keynrs[i]>=0)
-			{
-                ValueMetaInterface input = inputRowMeta.getValueMeta(data.keynrs[i]);
-				ValueMetaInterface value = data.lookupMeta.getValueMeta(lookupIndex);
-                lookupRow[lookupIndex] = row[data.keynrs[i]];
-                
-				// Try to convert type if needed
-				if (input.getType()!=value.getType())
-                {
-                    lookupRow[lookupIndex] = value.convertData(input, lookupRow[lookupIndex]);
-                }
-                lookupIndex++;
-			}
-			if (data.keynrs2[i]>=0)
-			{
-                ValueMetaInterface input = inputRowMeta.getValueMeta(data.keynrs2[i]);
-                ValueMetaInterface value = data.lookupMeta.getValueMeta(lookupIndex);
-                lookupRow[lookupIndex] = row[data.keynrs2[i]];
-                
-                // Try to convert type if needed
-                if (input.getType()!=value.getType())
-                {
-                    lookupRow[lookupIndex] = value.convertData(input, lookupRow[lookupIndex]);
-                }
-                lookupIndex++;
-			}
-		}
+        Object[] lookupRow = getLookupRow(inputRowMeta, row);
 
         Object[] add = null;
         boolean cache_now=false;
         boolean cacheHit = false;
+        boolean batchHit = false;
+        boolean batchLookedUp = false;
 
 		// First, check if we looked up before
 		if (meta.isCached())
@@ -111,23 +91,59 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 			if (add!=null) 
 			{
 				cacheHit=true;
+				if (add==DatabaseLookupCache.NOT_FOUND)
+				{
+					add=null; // looked up before without result
+				}
 			}
         }
 		else add=null; 
 
-		if (add==null)
+		if (add==null && !cacheHit)
 		{
 			if ( !(meta.isCached() && meta.isLoadingAllDataInCache()) || data.hasDBCondition ) { // do not go to the database when all rows are in (exception LIKE operator)
-				if (log.isRowLevel()) logRowlevel(BaseMessages.getString(PKG, "DatabaseLookup.Log.AddedValuesToLookupRow1")+meta.getStreamKeyField1().length+BaseMessages.getString(PKG, "DatabaseLookup.Log.AddedValuesToLookupRow2")+data.lookupMeta.getString(lookupRow)); //$NON-NLS-1$ //$NON-NLS-2$
-
-				data.db.setValuesLookup(data.lookupMeta, lookupRow);
-				add = data.db.getLookup(meta.isFailingOnMultipleResults());
+				if (data.batchResults!=null)
+				{
+					// Looked up together with the other rows of the batch, the data types are already converted.
+					// A key that was in the cache when the batch was queried can be gone from it by now, it's looked up on its own.
+					//
+					RowMetaAndData batchKey = getBatchKey(lookupRow);
+					if (data.batchKeys.contains(batchKey))
+					{
+						add = data.batchResults.get(batchKey);
+						if (add==MULTIPLE_RESULTS)
+						{
+							throw new KettleDatabaseException(BaseMessages.getString(PKG, "DatabaseLookup.Exception.MultipleResultsFound")); //$NON-NLS-1$
+						}
+						batchHit = add!=null;
+						
+						// The results are matched with the keys in Java: a string key the database found with padding or in another case 
+						// isn't matched, so only trust a miss for exact keys.  A null key is never found.
+						//
+						batchLookedUp = batchHit || !data.batchInexactKeys || hasNullKey(lookupRow);
+					}
+				}
+				if (!batchLookedUp)
+				{
+					if (log.isRowLevel()) logRowlevel(BaseMessages.getString(PKG, "DatabaseLookup.Log.AddedValuesToLookupRow1")+meta.getStreamKeyField1().length+BaseMessages.getString(PKG, "DatabaseLookup.Log.AddedValuesToLookupRow2")+data.lookupMeta.getString(lookupRow)); //$NON-NLS-1$ //$NON-NLS-2$
+	
+					data.db.setValuesLookup(data.lookupBinder, lookupRow);
+					add = data.db.getLookup(meta.isFailingOnMultipleResults());
+				}
 				cache_now=true;
 			}
 		}
 
 		if (add==null) // nothing was found, unknown code: add default values
 		{
+			// Remember that the key is not in the table, the default values are not stored
+			//
+			if (meta.isCached() && cache_now && meta.isCachingNotFound() && !meta.isLoadingAllDataInCache() && data.allEquals)
+			{
+				storeRowInCache(data.lookupMeta, lookupRow, DatabaseLookupCache.NOT_FOUND);
+			}
+			cache_now=false;
+
 			if (meta.isEatingRowOnLookupFailure())
 			{
 				return null;
@@ -161,7 +177,7 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 
         	// Only verify the data types if the data comes from the DB, NOT when we have a cache hit
         	// In that case, we already know the data type is OK.
-        	if (!cacheHit)
+        	if (!cacheHit && !batchHit)
         	{
                 incrementLinesInput();
 
@@ -201,71 +217,60 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 		return outputRow;
 	}
 
+	/**
+	 * @return the values of the input row to look up, converted to the data types of the table
+	 */
+	private Object[] getLookupRow(RowMetaInterface inputRowMeta, Object[] row) throws KettleException
+	{
+        Object[] lookupRow = new Object[data.lookupMeta.size()];
+        int lookupIndex=0;
+        
+        for (int i=0;i<meta.getStreamKeyField1().length;i++)
+		{
+			if (data.keynrs[i]>=0)
+			{
+                ValueMetaInterface input = inputRowMeta.getValueMeta(data.keynrs[i]);
+				ValueMetaInterface value = data.lookupMeta.getValueMeta(lookupIndex);
+                lookupRow[lookupIndex] = row[data.keynrs[i]];
+                
+				// Try to convert type if needed
+				if (input.getType()!=value.getType())
+                {
+                    lookupRow[lookupIndex] = value.convertData(input, lookupRow[lookupIndex]);
+                }
+                lookupIndex++;
+			}
+			if (data.keynrs2[i]>=0)
+			{
+                ValueMetaInterface input = inputRowMeta.getValueMeta(data.keynrs2[i]);
+                ValueMetaInterface value = data.lookupMeta.getValueMeta(lookupIndex);
+                lookupRow[lookupIndex] = row[data.keynrs2[i]];
+                
+                // Try to convert type if needed
+                if (input.getType()!=value.getType())
+                {
+                    lookupRow[lookupIndex] = value.convertData(input, lookupRow[lookupIndex]);
+                }
+                lookupIndex++;
+			}
+		}
+        
+        return lookupRow;
+	}
+
 	private void storeRowInCache(RowMetaInterface lookupMeta, Object[] lookupRow, Object[] add) {
 		
-		RowMetaAndData rowMetaAndData = new RowMetaAndData(lookupMeta, lookupRow);
-// DEinspanjer 2009-02-01 XXX: I want to write a test case to prove this point before checking in.
-//		/* Don't insert a row with a duplicate key into the cache. It doesn't seem
-//		 * to serve a useful purpose and can potentially cause the step to return
-//		 * different values over the life of the transformation (if the source DB rows change)
-//		 * Additionally, if using the load all data feature, re-inserting would reverse the order
-//		 * specified in the step.
-//		 */
-//		if (!data.look.containsKey(rowMetaAndData)) {
-//		    data.look.put(rowMetaAndData, new TimedRow(add));
-//		}
-		data.look.put(rowMetaAndData, new TimedRow(add));
-
-        // See if we have to limit the cache_size.
-        // Sample 10% of the rows in the cache.
-        // Remove everything below the second lowest date.
-        // That should on average remove more than 10% of the entries
-        // It's not exact science, but it will be faster than the old algorithm
-        
-		// DEinspanjer 2009-02-01: If you had previously set a cache size and then turned on load all, this
-		// method would throw out entries if the previous cache size wasn't big enough.
-        if (!meta.isLoadingAllDataInCache() && meta.getCacheSize()>0 && data.look.size()>meta.getCacheSize())
-        {
-            List<RowMetaAndData> keys = new ArrayList<RowMetaAndData>(data.look.keySet());
-            List<Date> samples = new ArrayList<Date>();
-            int incr = keys.size()/10;
-            if (incr==0) incr=1;
-            for (int k=0;k<keys.size();k+=incr)
-            {
-                RowMetaAndData key = (RowMetaAndData) keys.get(k);
-                TimedRow timedRow = (TimedRow) data.look.get(key);
-                samples.add(timedRow.getLogDate());
-            }
-            
-            Collections.sort(samples);
-            
-            if (samples.size()>1)
-            {
-                Date smallest = (Date) samples.get(1);
-                
-                // Everything below the smallest date goes away...
-                for (int k=0;k<keys.size();k++)
-                {
-                    RowMetaAndData key = (RowMetaAndData) keys.get(k);
-                    TimedRow timedRow = (TimedRow) data.look.get(key);
-                    
-                    if (timedRow.getLogDate().compareTo(smallest)<0)
-                    {
-                        data.look.remove(key);
-                    }
-                }
-            }
-        }	
+		// The cache evicts the least recently used keys itself when it's full.
+		// DEinspanjer 2009-02-01: If you had previously set a cache size and then turned on load all, the cache
+		// would throw out entries if the previous cache size wasn't big enough: that cache has no limit.
+		//
+		data.cache.put(new RowMetaAndData(lookupMeta, lookupRow), add);
 	}
 
 	private Object[] getRowFromCache(RowMetaInterface lookupMeta, Object[] lookupRow) throws KettleException {
 		if (data.allEquals) {
 			// only do the hashtable lookup when all equals otherwise conditions >, <, <> will give wrong results
-	        TimedRow timedRow = (TimedRow) data.look.get(new RowMetaAndData(data.lookupMeta, lookupRow));
-	        if (timedRow!=null)
-	        {
-	            return timedRow.getRow();
-	        }
+	        return data.cache.get(new RowMetaAndData(data.lookupMeta, lookupRow));
 		}
         else // special handling of conditions <,>, <> etc.
         {
@@ -275,9 +280,7 @@ public class DatabaseLookup extends BaseStep implements StepInterface
     			// Not all conditions are "=" so we are going to have to evaluate row by row
     			// A sorted list or index might be a good solution here...
     			// 
-    			Enumeration<RowMetaAndData> keys = data.look.keys();
-    			while (keys.hasMoreElements()) {
-    				RowMetaAndData key = keys.nextElement();
+    			for (RowMetaAndData key : data.cache.getKeys()) {
     				// Now verify that the key is matching our conditions...
     				//
     				boolean match = true;
@@ -317,17 +320,15 @@ public class DatabaseLookup extends BaseStep implements StepInterface
     					lookupIndex++;
     				}
 					if (match) {
-						TimedRow timedRow = data.look.get(key);
-				        if (timedRow!=null)
-				        {
-				            return timedRow.getRow();
-				        }
-				        else
+						Object[] row = data.cache.peek(key);
+				        if (row!=null)
 				        {
-				        	// This should never occur
+				        	data.cache.countLookup(true);
+				            return row;
 				        }
 					}
     			}
+    			data.cache.countLookup(false);
     		}
        	}
         return null;
@@ -338,12 +339,13 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 		meta=(DatabaseLookupMeta)smi;
 		data=(DatabaseLookupData)sdi;
 		
-		 boolean sendToErrorRow=false;
-		 String errorMessage = null;
-
 		Object[] r=getRow();       // Get row from input rowset & set row busy!
 		if (r==null)  // no more input to be expected...
 		{
+			if (data.batchRows!=null && !data.batchRows.isEmpty())
+			{
+				if (!lookupBatch()) return false;
+			}
 			setOutputDone();
 			return false;
 		}
@@ -356,18 +358,6 @@ public class DatabaseLookup extends BaseStep implements StepInterface
             data.outputRowMeta = getInputRowMeta().clone();
             meta.getFields(data.outputRowMeta, getStepname(), null, null, this);
 
-            if (meta.isCached())
-            {
-                if (meta.getCacheSize()>0)
-                {
-                    data.look=new Hashtable<RowMetaAndData, TimedRow>((int)(meta.getCacheSize()*1.5));
-                }
-                else
-                {
-                    data.look=new Hashtable<RowMetaAndData, TimedRow>();
-                }
-            }
-
             data.db.setLookup(environmentSubstitute(meta.getSchemaName()), 
             		          environmentSubstitute(meta.getTablename()), meta.getTableKeyField(), meta.getKeyCondition(), meta.getReturnValueField(), meta.getReturnValueNewName(), meta.getOrderByClause(), meta.isFailingOnMultipleResults());
 
@@ -467,6 +457,7 @@ public class DatabaseLookup extends BaseStep implements StepInterface
                     data.lookupMeta.addValueMeta( value );
                 }
             }
+            data.lookupBinder = data.db.createStatementBinder(data.lookupMeta);
             
             // We also want to know the metadata of the return values beforehand (null handling)
             data.returnMeta = new RowMeta();
@@ -480,11 +471,66 @@ public class DatabaseLookup extends BaseStep implements StepInterface
             // If the user selected to load all data into the cache at startup, that's what we do now...
             //
             if (meta.isCached() && meta.isLoadingAllDataInCache()) {
-            	loadAllTableDataIntoTheCache();
+            	// A shared cache is loaded by the first copy that gets here
+            	//
+            	synchronized(data.cache) {
+            		if (!data.cache.isLoaded()) {
+            			loadAllTableDataIntoTheCache();
+            			data.cache.setLoaded(true);
+            		}
+            	}
             }
             
+            // Batches can only be looked up with a list of keys when all the conditions are "="
+            //
+            if (meta.getLookupBatchSize()>1)
+            {
+            	if (data.allEquals && data.lookupMeta.size()>0 && !(meta.isCached() && meta.isLoadingAllDataInCache()))
+            	{
+            		data.batchSize = meta.getLookupBatchSize();
+            		int maxBatchSize = getMaxBatchSize();
+            		if (data.batchSize>maxBatchSize)
+            		{
+            			logBasic(BaseMessages.getString(PKG, "DatabaseLookup.Log.BatchSizeLimited", Integer.toString(data.batchSize), Integer.toString(maxBatchSize))); //$NON-NLS-1$
+            			data.batchSize = maxBatchSize;
+            		}
+            		data.batchRows = new ArrayList<Object[]>(data.batchSize);
+            		for (int i=0;i<data.lookupMeta.size();i++)
+            		{
+            			data.batchInexactKeys |= data.lookupMeta.getValueMeta(i).isString();
+            		}
+            	}
+            	else
+            	{
+            		logBasic(BaseMessages.getString(PKG, "DatabaseLookup.Log.NotLookingUpInBatches")); //$NON-NLS-1$
+            	}
+            }
         }
 
+		if (data.batchSize>0)
+		{
+			// Look up the keys of a batch of rows with a single query
+			//
+			data.batchRows.add(r);
+			if (data.batchRows.size()>=data.batchSize)
+			{
+				return lookupBatch();
+			}
+			return true;
+		}
+
+		return lookupAndPutRow(r);
+	}
+
+	/**
+	 * Look up the values of a row and pass it on.
+	 * @return false if the step can't continue
+	 */
+	private boolean lookupAndPutRow(Object[] r) throws KettleException
+	{
+		boolean sendToErrorRow=false;
+		String errorMessage = null;
+
 		if (log.isRowLevel()) logRowlevel(BaseMessages.getString(PKG, "DatabaseLookup.Log.GotRowFromPreviousStep")+getInputRowMeta().getString(r)); //$NON-NLS-1$
 
 		try
@@ -527,6 +573,275 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 		return true;
 	}
     
+	/**
+	 * Look up the keys of the buffered rows with a single query and pass the rows on in their original order.
+	 * @return false if the step can't continue
+	 */
+	private boolean lookupBatch() throws KettleException
+	{
+		try
+		{
+			try
+			{
+				data.batchResults = lookupBatchKeys(data.batchRows);
+			}
+			catch(KettleException e)
+			{
+				if (!getStepMeta().isDoingErrorHandling())
+				{
+					throw e;
+				}
+				
+				// A single bad key or value makes the whole query fail: look up the rows one by one, only those go to the error handling
+				//
+				if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "DatabaseLookup.Log.BatchFailed", e.getMessage())); //$NON-NLS-1$
+				data.batchResults = null;
+				data.batchKeys = null;
+			}
+			for (Object[] row : data.batchRows)
+			{
+				if (!lookupAndPutRow(row)) return false;
+			}
+			return true;
+		}
+		finally
+		{
+			data.batchResults = null;
+			data.batchKeys = null;
+			data.batchRows.clear();
+		}
+	}
+
+	/**
+	 * Look up the distinct keys of the rows that are not in the cache.  The keys that were looked for are kept in data.batchKeys.<br>
+	 * The rows of the result are matched with the keys by value, in Java.  When a key has strings, a key that isn't matched
+	 * is looked up again on its own: CHAR padding and case insensitive collations match in the database but not in Java.
+	 *
+	 * @return the values found in the table by key
+	 */
+	private Map<RowMetaAndData, Object[]> lookupBatchKeys(List<Object[]> rows) throws KettleException
+	{
+		Map<RowMetaAndData, Object[]> results = new HashMap<RowMetaAndData, Object[]>();
+		
+		List<Object[]> keys = new ArrayList<Object[]>();
+		Set<RowMetaAndData> distinctKeys = new HashSet<RowMetaAndData>();
+		data.batchKeys = distinctKeys;
+		for (Object[] row : rows)
+		{
+			Object[] lookupRow;
+			try
+			{
+				lookupRow = getLookupRow(getInputRowMeta(), row);
+			}
+			catch(KettleException e)
+			{
+				continue; // the error is handled when the row itself is looked up
+			}
+			
+			// A null is never equal to anything so it's not found without a query, the cached keys don't need to be looked up
+			//
+			if (hasNullKey(lookupRow))
+			{
+				distinctKeys.add(getBatchKey(lookupRow));
+				continue;
+			}
+			if (meta.isCached() && data.cache.peek(new RowMetaAndData(data.lookupMeta, lookupRow))!=null)
+			{
+				continue;
+			}
+			if (distinctKeys.add(getBatchKey(lookupRow)))
+			{
+				keys.add(lookupRow);
+			}
+		}
+		
+		for (int start=0;start<keys.size();start+=data.batchSize)
+		{
+			queryBatch(keys, start, results);
+		}
+		return results;
+	}
+
+	/**
+	 * Look up a batch of keys with one query.  The query always has the same number of keys, the last batch repeats its last key.
+	 */
+	private void queryBatch(List<Object[]> keys, int start, Map<RowMetaAndData, Object[]> results) throws KettleException
+	{
+		int nrKeyValues = data.lookupMeta.size();
+		if (data.batchStatement==null)
+		{
+			prepareBatchStatement();
+		}
+		
+		Object[] parameters = new Object[data.batchSize*nrKeyValues];
+		for (int i=0;i<data.batchSize;i++)
+		{
+			Object[] key = keys.get(Math.min(start+i, keys.size()-1));
+			System.arraycopy(key, 0, parameters, i*nrKeyValues, nrKeyValues);
+		}
+		if (log.isDebug()) logDebug(BaseMessages.getString(PKG, "DatabaseLookup.Log.LookingUpBatch", Integer.toString(Math.min(data.batchSize, keys.size()-start)))); //$NON-NLS-1$
+		
+		ResultSet resultSet = data.db.openQuery(data.batchStatement, data.batchBinder, parameters);
+		try
+		{
+			RowMetaInterface returnRowMeta = data.db.getReturnRowMeta();
+			int types[] = meta.getReturnValueDefaultType();
+			
+			Object[] row = data.db.getRow(resultSet);
+			while (row!=null)
+			{
+				incrementLinesInput();
+				
+				Object[] keyValues = new Object[nrKeyValues];
+				for (int i=0;i<nrKeyValues;i++)
+				{
+					keyValues[i] = data.lookupMeta.getValueMeta(i).convertData(returnRowMeta.getValueMeta(i), row[i]);
+				}
+				
+				// Set the types to the default return types, like for a single row
+				//
+				Object[] add = new Object[data.returnMeta.size()];
+				for (int i=0;i<add.length;i++)
+				{
+					ValueMetaInterface returned = returnRowMeta.getValueMeta(nrKeyValues+i);
+					add[i] = row[nrKeyValues+i];
+					if (returned!=null && types[i]>0 && types[i]!=returned.getType())
+					{
+						add[i] = data.returnMeta.getValueMeta(i).convertData(returned, add[i]);
+					}
+				}
+				
+				// The first row of a key is used, like the lookup of a single row does
+				//
+				RowMetaAndData key = getBatchKey(keyValues);
+				if (!results.containsKey(key))
+				{
+					results.put(key, add);
+				}
+				else if (meta.isFailingOnMultipleResults())
+				{
+					results.put(key, MULTIPLE_RESULTS);
+				}
+				row = data.db.getRow(resultSet);
+			}
+		}
+		finally
+		{
+			try
+			{
+				resultSet.close();
+			}
+			catch(SQLException e)
+			{
+				logError(BaseMessages.getString(PKG, "DatabaseLookup.Log.UnableToCloseBatchStatement"), e); //$NON-NLS-1$
+			}
+		}
+	}
+
+	/**
+	 * SELECT keys, values FROM table WHERE key IN ( ?, ?, ... ) or WHERE ( key1 = ? AND key2 = ? ) OR ( ... ) for multiple keys
+	 */
+	private void prepareBatchStatement() throws KettleException
+	{
+		DatabaseMeta dbMeta = meta.getDatabaseMeta();
+		String[] keyFields = meta.getTableKeyField();
+		
+		String sql = "SELECT ";
+		for (int i=0;i<keyFields.length;i++)
+		{
+			if (i>0) sql+=", ";
+			sql+=dbMeta.quoteField(keyFields[i]);
+		}
+		for (int i=0;i<meta.getReturnValueField().length;i++)
+		{
+			sql+=", "+dbMeta.quoteField(meta.getReturnValueField()[i]);
+		}
+		sql+=" FROM "+dbMeta.getQuotedSchemaTableCombination(environmentSubstitute(meta.getSchemaName()), environmentSubstitute(meta.getTablename()));
+		sql+=" WHERE ";
+		
+		data.batchParameterMeta = new RowMeta();
+		if (keyFields.length==1)
+		{
+			sql+=dbMeta.quoteField(keyFields[0])+" IN ( ";
+			for (int b=0;b<data.batchSize;b++)
+			{
+				if (b>0) sql+=", ";
+				sql+="?";
+				data.batchParameterMeta.addValueMeta(data.lookupMeta.getValueMeta(0));
+			}
+			sql+=" )";
+		}
+		else
+		{
+			for (int b=0;b<data.batchSize;b++)
+			{
+				if (b>0) sql+=" OR ";
+				sql+="( ";
+				for (int i=0;i<keyFields.length;i++)
+				{
+					if (i>0) sql+=" AND ";
+					sql+=dbMeta.quoteField(keyFields[i])+" = ?";
+					data.batchParameterMeta.addValueMeta(data.lookupMeta.getValueMeta(i));
+				}
+				sql+=" )";
+			}
+		}
+		if (!Const.isEmpty(meta.getOrderByClause()))
+		{
+			sql+=" ORDER BY "+meta.getOrderByClause();
+		}
+		
+		if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "DatabaseLookup.Log.PreparingBatchStatement", sql)); //$NON-NLS-1$
+		data.batchStatement = data.db.prepareSQL(sql);
+		data.batchBinder = data.db.createStatementBinder(data.batchParameterMeta);
+	}
+
+	/**
+	 * @return the number of keys the database allows in one batch query
+	 */
+	private int getMaxBatchSize()
+	{
+		DatabaseMeta dbMeta = meta.getDatabaseMeta();
+		int nrKeyValues = data.lookupMeta.size();
+		int max = Integer.MAX_VALUE;
+		if (dbMeta.getMaxStatementParameters()>0)
+		{
+			max = dbMeta.getMaxStatementParameters()/nrKeyValues;
+		}
+		if (nrKeyValues==1 && dbMeta.getMaxInListSize()>0)
+		{
+			max = Math.min(max, dbMeta.getMaxInListSize());
+		}
+		return Math.max(1, max);
+	}
+
+	private static boolean hasNullKey(Object[] lookupRow)
+	{
+		for (int i=0;i<lookupRow.length;i++)
+		{
+			if (lookupRow[i]==null) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The key of a lookup row in the results of a batch.
+	 * Big numbers are normalized, the database can return another scale than the one that was looked up.
+	 */
+	private RowMetaAndData getBatchKey(Object[] lookupRow)
+	{
+		Object[] key = new Object[data.lookupMeta.size()];
+		for (int i=0;i<key.length;i++)
+		{
+			key[i] = lookupRow[i];
+			if (key[i] instanceof BigDecimal)
+			{
+				key[i] = ((BigDecimal)key[i]).stripTrailingZeros();
+			}
+		}
+		return new RowMetaAndData(data.lookupMeta, key);
+	}
+
     private void loadAllTableDataIntoTheCache() throws KettleException {
     	DatabaseMeta dbMeta = meta.getDatabaseMeta();
     	
@@ -597,9 +912,7 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 
         if (data.db!=null && !data.isCanceled) 
         {
-          synchronized(data.db) {
-            data.db.cancelQuery();
-          }
+          data.db.cancelQuery();
         	data.isCanceled = true;
         }
     }
@@ -648,6 +961,10 @@ public class DatabaseLookup extends BaseStep implements StepInterface
                 		data.hasDBCondition = true;
                 	}
                 }
+                
+                if (meta.isCached()) {
+                	createCache();
+                }
 
 				return true;
 			}
@@ -662,18 +979,64 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 		return false;
 	}
 
+	/**
+	 * Create the cache or, when the copies of the step share the cache, use the one of the first copy.
+	 */
+	private void createCache()
+	{
+		// If we load all data in the cache, there is no limit and nothing expires
+		//
+		int maxSize = meta.isLoadingAllDataInCache() ? 0 : meta.getCacheSize();
+		long timeToLive = meta.isLoadingAllDataInCache() ? 0L : meta.getCacheTimeToLive()*1000L;
+		
+		if (meta.isSharingCache() && getStepMeta().getCopies()>1)
+		{
+			DatabaseLookupData firstData = (DatabaseLookupData)getTrans().getStepDataInterface(getStepname(), 0);
+			synchronized(firstData)
+			{
+				if (firstData.cache==null)
+				{
+					firstData.cache = new DatabaseLookupCache(maxSize, timeToLive, SHARED_CACHE_PARTITIONS);
+				}
+				data.cache = firstData.cache;
+			}
+		}
+		else
+		{
+			data.cache = new DatabaseLookupCache(maxSize, timeToLive, 1);
+		}
+		data.cache.open();
+	}
+
 	public void dispose(StepMetaInterface smi, StepDataInterface sdi)
 	{
 	    meta = (DatabaseLookupMeta)smi;
 	    data = (DatabaseLookupData)sdi;
 
 	    if (data.db!=null) {
+	    	if (data.batchStatement!=null) {
+	    		try {
+	    			data.batchStatement.close();
+	    		} catch(SQLException e) {
+	    			logError(BaseMessages.getString(PKG, "DatabaseLookup.Log.UnableToCloseBatchStatement"), e); //$NON-NLS-1$
+	    		}
+	    		data.batchStatement = null;
+	    	}
         	data.db.disconnect();
 	    }
 	    
         // Recover memory immediately, allow in-memory data to be garbage collected
         //
-	    data.look = null;
+	    if (data.cache!=null) {
+	    	// The last copy that uses the cache reports on it
+	    	//
+	    	if (data.cache.close()) {
+	    		logBasic(BaseMessages.getString(PKG, "DatabaseLookup.Log.CacheStatistics", //$NON-NLS-1$
+	    				Long.toString(data.cache.getHits()), Long.toString(data.cache.getMisses()), 
+	    				Long.toString(data.cache.getEvictions()), Long.toString(data.cache.getExpirations()), Integer.toString(data.cache.size())));
+	    	}
+	    	data.cache = null;
+	    }
 
 	    super.dispose(smi, sdi);
 	}
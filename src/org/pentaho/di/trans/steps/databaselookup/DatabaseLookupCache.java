@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.databaselookup;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.di.core.RowMetaAndData;
+
+/**
+ * The cache of the rows Database Lookup found (or didn't find) for the keys it looked up.<br>
+ * <br>
+ * The cache is a segmented LRU: a key that is found once goes to the probation segment, a key that is found again moves to the protected segment.
+ * The least recently used key of the probation segment is evicted first, so a scan over many keys that are used only once
+ * doesn't push out the keys that are used all the time.  Entries can expire after a time to live.<br>
+ * <br>
+ * Without a maximum size nothing is ever evicted, the keys then simply stay in the order they were added.<br>
+ * <br>
+ * The keys are spread over a number of partitions that each have their own lock, so the copies of a step can share a cache.
+ *
+ * @author matt
+ */
+public class DatabaseLookupCache {
+
+	/** The row in the cache of a key that was looked up but not found */
+	public static final Object[] NOT_FOUND = new Object[0];
+
+	/** The part of the cache that is kept for the keys that are found more than once */
+	private static final double PROTECTED_RATIO = 0.8;
+
+	private Partition[] partitions;
+	private long timeToLive;
+
+	private volatile boolean loaded;
+	private int users;
+
+	/**
+	 * @param maxSize the maximum number of keys in the cache, 0 or less for no limit
+	 * @param timeToLive the number of milliseconds a row stays in the cache, 0 or less to keep it forever
+	 * @param nrPartitions the number of partitions with their own lock, more partitions allow more threads to use the cache at the same time
+	 */
+	public DatabaseLookupCache(int maxSize, long timeToLive, int nrPartitions) {
+		this.timeToLive = timeToLive;
+
+		if (maxSize>0) {
+			nrPartitions = Math.max(1, Math.min(nrPartitions, maxSize));
+		}
+		partitions = new Partition[Math.max(1, nrPartitions)];
+		for (int i=0;i<partitions.length;i++) {
+			int partitionSize = maxSize<=0 ? 0 : maxSize/partitions.length + (i<maxSize%partitions.length ? 1 : 0);
+			partitions[i] = new Partition(partitionSize);
+		}
+	}
+
+	/**
+	 * Look up a key and count the hit or miss.
+	 *
+	 * @param key the key to look up
+	 * @return the row of the key, NOT_FOUND if the key was not found in the database or null if the key is not in the cache
+	 */
+	public Object[] get(RowMetaAndData key) {
+		return getPartition(key).get(key, System.currentTimeMillis());
+	}
+
+	/**
+	 * Look at the row of a key without counting it or moving it in the cache, for example to evaluate other conditions than "=" on all the keys.
+	 *
+	 * @param key the key to look up
+	 * @return the row of the key, NOT_FOUND or null if the key is not in the cache
+	 */
+	public Object[] peek(RowMetaAndData key) {
+		return getPartition(key).peek(key, System.currentTimeMillis());
+	}
+
+	/**
+	 * Store the row of a key, the least recently used key is evicted if the cache is full.
+	 *
+	 * @param key the key
+	 * @param row the row that was found or NOT_FOUND
+	 */
+	public void put(RowMetaAndData key, Object[] row) {
+		getPartition(key).put(key, row, System.currentTimeMillis());
+	}
+
+	/**
+	 * Count a lookup that was not done with get(), for example a search over the keys with peek().
+	 *
+	 * @param hit true if a row was found in the cache
+	 */
+	public void countLookup(boolean hit) {
+		Partition partition = partitions[0];
+		synchronized(partition) {
+			if (hit) partition.hits++; else partition.misses++;
+		}
+	}
+
+	/**
+	 * @return a copy of all the keys in the cache
+	 */
+	public List<RowMetaAndData> getKeys() {
+		List<RowMetaAndData> keys = new ArrayList<RowMetaAndData>();
+		for (Partition partition : partitions) {
+			synchronized(partition) {
+				keys.addAll(partition.probation.keySet());
+				keys.addAll(partition.protectedKeys.keySet());
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * @return the number of keys in the cache
+	 */
+	public int size() {
+		int size = 0;
+		for (Partition partition : partitions) {
+			synchronized(partition) {
+				size+=partition.probation.size()+partition.protectedKeys.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the number of lookups that found the key in the cache
+	 */
+	public long getHits() {
+		long hits = 0L;
+		for (Partition partition : partitions) {
+			synchronized(partition) {
+				hits+=partition.hits;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups that didn't find the key in the cache
+	 */
+	public long getMisses() {
+		long misses = 0L;
+		for (Partition partition : partitions) {
+			synchronized(partition) {
+				misses+=partition.misses;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * @return the number of keys that were removed to make room for others
+	 */
+	public long getEvictions() {
+		long evictions = 0L;
+		for (Partition partition : partitions) {
+			synchronized(partition) {
+				evictions+=partition.evictions;
+			}
+		}
+		return evictions;
+	}
+
+	/**
+	 * @return the number of keys that were removed because their time to live was over
+	 */
+	public long getExpirations() {
+		long expirations = 0L;
+		for (Partition partition : partitions) {
+			synchronized(partition) {
+				expirations+=partition.expirations;
+			}
+		}
+		return expirations;
+	}
+
+	/**
+	 * @return true if all the data of the table was loaded in the cache
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * @param loaded true if all the data of the table was loaded in the cache
+	 */
+	public void setLoaded(boolean loaded) {
+		this.loaded = loaded;
+	}
+
+	/**
+	 * Register a step copy that uses the cache.
+	 */
+	public synchronized void open() {
+		users++;
+	}
+
+	/**
+	 * Unregister a step copy that uses the cache.
+	 *
+	 * @return true if this was the last step copy using the cache
+	 */
+	public synchronized boolean close() {
+		users--;
+		return users<=0;
+	}
+
+	private Partition getPartition(RowMetaAndData key) {
+		if (partitions.length==1) {
+			return partitions[0];
+		}
+		int hash = key.hashCode();
+		hash ^= hash>>>16;
+		return partitions[(hash & 0x7FFFFFFF) % partitions.length];
+	}
+
+	private static class CachedRow {
+		Object[] row;
+		long created;
+
+		CachedRow(Object[] row, long created) {
+			this.row = row;
+			this.created = created;
+		}
+	}
+
+	private class Partition {
+		/** The maximum number of keys, 0 for no limit */
+		int maxSize;
+		int maxProtectedSize;
+
+		/** The keys in the order they were used last, least recently used first, or in the order they were added if there is no limit */
+		LinkedHashMap<RowMetaAndData, CachedRow> probation;
+		LinkedHashMap<RowMetaAndData, CachedRow> protectedKeys;
+
+		long hits;
+		long misses;
+		long evictions;
+		long expirations;
+
+		Partition(int maxSize) {
+			this.maxSize = maxSize;
+			this.maxProtectedSize = (int)(maxSize*PROTECTED_RATIO);
+
+			probation = new LinkedHashMap<RowMetaAndData, CachedRow>();
+			protectedKeys = new LinkedHashMap<RowMetaAndData, CachedRow>();
+		}
+
+		synchronized Object[] get(RowMetaAndData key, long now) {
+			if (maxSize<=0) {
+				// No limit: there is nothing to evict, leave the keys in the order they were added
+				//
+				CachedRow entry = probation.get(key);
+				if (entry==null) {
+					misses++;
+					return null;
+				}
+				if (isExpired(entry, now)) {
+					probation.remove(key);
+					expirations++;
+					misses++;
+					return null;
+				}
+				hits++;
+				return entry.row;
+			}
+
+			CachedRow entry = protectedKeys.remove(key);
+			if (entry==null) {
+				entry = probation.remove(key);
+			}
+			if (entry==null) {
+				misses++;
+				return null;
+			}
+			if (isExpired(entry, now)) {
+				expirations++;
+				misses++;
+				return null;
+			}
+
+			hits++;
+
+			// Found again: move to the end of the protected keys, the least recently used protected key goes back to probation
+			//
+			protectedKeys.put(key, entry);
+			if (protectedKeys.size()>maxProtectedSize) {
+				Iterator<Map.Entry<RowMetaAndData, CachedRow>> iterator = protectedKeys.entrySet().iterator();
+				Map.Entry<RowMetaAndData, CachedRow> eldest = iterator.next();
+				iterator.remove();
+				probation.put(eldest.getKey(), eldest.getValue());
+			}
+			return entry.row;
+		}
+
+		synchronized Object[] peek(RowMetaAndData key, long now) {
+			CachedRow entry = protectedKeys.get(key);
+			if (entry==null) {
+				entry = probation.get(key);
+			}
+			if (entry==null || isExpired(entry, now)) {
+				return null;
+			}
+			return entry.row;
+		}
+
+		synchronized void put(RowMetaAndData key, Object[] row, long now) {
+			CachedRow entry = protectedKeys.get(key);
+			if (entry==null) {
+				entry = probation.get(key);
+			}
+			if (entry!=null) {
+				entry.row = row;
+				entry.created = now;
+				return;
+			}
+
+			probation.put(key, new CachedRow(row, now));
+
+			if (maxSize>0) {
+				while (probation.size()+protectedKeys.size()>maxSize) {
+					LinkedHashMap<RowMetaAndData, CachedRow> victims = probation.isEmpty() ? protectedKeys : probation;
+					Iterator<RowMetaAndData> iterator = victims.keySet().iterator();
+					iterator.next();
+					iterator.remove();
+					evictions++;
+				}
+			}
+		}
+
+		private boolean isExpired(CachedRow entry, long now) {
+			return timeToLive>0 && now-entry.created>=timeToLive;
+		}
+	}
+}
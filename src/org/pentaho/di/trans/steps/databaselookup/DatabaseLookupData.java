@@ -12,11 +12,14 @@
 
 package org.pentaho.di.trans.steps.databaselookup;
 
-import java.util.Hashtable;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.pentaho.di.core.RowMetaAndData;
-import org.pentaho.di.core.TimedRow;
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.StatementBinder;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -30,7 +33,7 @@ import org.pentaho.di.trans.step.StepDataInterface;
  */
 public class DatabaseLookupData extends BaseStepData implements StepDataInterface
 {
-	public Hashtable<RowMetaAndData, TimedRow> look;       // to store values in used to look up things...
+	public DatabaseLookupCache cache;      // to store values in used to look up things...
 	public Database db;
 
 	public Object nullif[];         // Not found: default values...
@@ -40,12 +43,26 @@ public class DatabaseLookupData extends BaseStepData implements StepDataInterfac
     
     public RowMetaInterface outputRowMeta;
     public RowMetaInterface lookupMeta;
+    public StatementBinder  lookupBinder;
     public RowMetaInterface returnMeta;
 	public boolean isCanceled;
 	public boolean allEquals;
 	public int[] conditions;
 	public boolean hasDBCondition;
 
+	/** The number of rows to look up with a single query, 0 to look up row by row */
+	public int batchSize;
+	public List<Object[]> batchRows;
+	/** The values found by the query of the current batch, by lookup key */
+	public Map<RowMetaAndData, Object[]> batchResults;
+	/** The keys the query of the current batch looked for, the other keys of the batch are looked up on their own */
+	public Set<RowMetaAndData> batchKeys;
+	/** True if a key has strings: the database can match them with padding or another case, the results can't */
+	public boolean batchInexactKeys;
+	public PreparedStatement batchStatement;
+	public RowMetaInterface batchParameterMeta;
+	public StatementBinder batchBinder;
+
 
 	/**
 	 * 
@@ -109,6 +109,15 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
 	
 	/** Flag to make it load all data into the cache at startup */
 	private boolean loadingAllDataInCache;
+	
+	/** The number of seconds a looked up row stays in the cache, 0 to keep it until it's evicted */
+	private int     cacheTimeToLive;
+	
+	/** Flag to remember the keys that were not found in the cache as well */
+	private boolean cachingNotFound;
+	
+	/** Flag to have the copies of the step use the same cache */
+	private boolean sharingCache;
     
     /** Have the lookup fail if multiple results were found, renders the orderByClause useless */
     private boolean failingOnMultipleResults;
@@ -116,6 +125,9 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
     /** Have the lookup eat the incoming row when nothing gets found */
     private boolean eatingRowOnLookupFailure;
     
+    /** Look up the keys of this many rows with a single query, 0 or 1 to look up row by row */
+    private int lookupBatchSize;
+    
 	public DatabaseLookupMeta()
 	{
 		super(); // allocate BaseStepMeta
@@ -408,6 +420,10 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
 			loadingAllDataInCache = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "cache_load_all")); //$NON-NLS-1$ //$NON-NLS-2$
 			csize      = XMLHandler.getTagValue(stepnode, "cache_size"); //$NON-NLS-1$
 			cacheSize=Const.toInt(csize, 0);
+			cacheTimeToLive = Const.toInt(XMLHandler.getTagValue(stepnode, "cache_ttl"), 0); //$NON-NLS-1$
+			cachingNotFound = !"N".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "cache_not_found")); //$NON-NLS-1$ //$NON-NLS-2$
+			sharingCache = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "cache_shared")); //$NON-NLS-1$ //$NON-NLS-2$
+			lookupBatchSize = Const.toInt(XMLHandler.getTagValue(stepnode, "lookup_batch_size"), 0); //$NON-NLS-1$
             schemaName = XMLHandler.getTagValue(stepnode, "lookup", "schema"); //$NON-NLS-1$ //$NON-NLS-2$
 			tablename = XMLHandler.getTagValue(stepnode, "lookup", "table"); //$NON-NLS-1$ //$NON-NLS-2$
 	
@@ -462,6 +478,10 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
 		databaseMeta     = null;
 		cached           = false;
 		cacheSize        = 0;
+		cacheTimeToLive  = 0;
+		cachingNotFound  = true;
+		sharingCache     = false;
+		lookupBatchSize  = 0;
         schemaName       = ""; //$NON-NLS-1$
 		tablename        = BaseMessages.getString(PKG, "DatabaseLookupMeta.Default.TableName"); //$NON-NLS-1$
 
@@ -525,6 +545,10 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
 		retval.append("    ").append(XMLHandler.addTagValue("cache", cached)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("    ").append(XMLHandler.addTagValue("cache_load_all", loadingAllDataInCache)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("    ").append(XMLHandler.addTagValue("cache_size", cacheSize)); //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("    ").append(XMLHandler.addTagValue("cache_ttl", cacheTimeToLive)); //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("    ").append(XMLHandler.addTagValue("cache_not_found", cachingNotFound)); //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("    ").append(XMLHandler.addTagValue("cache_shared", sharingCache)); //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("    ").append(XMLHandler.addTagValue("lookup_batch_size", lookupBatchSize)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("    <lookup>").append(Const.CR); //$NON-NLS-1$
         retval.append("      ").append(XMLHandler.addTagValue("schema", schemaName)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("      ").append(XMLHandler.addTagValue("table", tablename)); //$NON-NLS-1$ //$NON-NLS-2$
@@ -567,6 +591,10 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
 			cached                   =      rep.getStepAttributeBoolean(id_step, "cache"); //$NON-NLS-1$
 			loadingAllDataInCache    =      rep.getStepAttributeBoolean(id_step, "cache_load_all"); //$NON-NLS-1$
 			cacheSize                = (int)rep.getStepAttributeInteger(id_step, "cache_size"); //$NON-NLS-1$
+			cacheTimeToLive          = (int)rep.getStepAttributeInteger(id_step, "cache_ttl"); //$NON-NLS-1$
+			cachingNotFound          =      rep.getStepAttributeBoolean(id_step, 0, "cache_not_found", true); //$NON-NLS-1$
+			sharingCache             =      rep.getStepAttributeBoolean(id_step, "cache_shared"); //$NON-NLS-1$
+			lookupBatchSize          = (int)rep.getStepAttributeInteger(id_step, "lookup_batch_size"); //$NON-NLS-1$
             schemaName               =      rep.getStepAttributeString (id_step, "lookup_schema");  //$NON-NLS-1$
 			tablename                =      rep.getStepAttributeString (id_step, "lookup_table");  //$NON-NLS-1$
 			orderByClause            =      rep.getStepAttributeString (id_step, "lookup_orderby");  //$NON-NLS-1$
@@ -610,6 +638,10 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
 			rep.saveStepAttribute(id_transformation, id_step, "cache",              cached); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "cache_load_all",     loadingAllDataInCache); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "cache_size",         cacheSize); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "cache_ttl",          cacheTimeToLive); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "cache_not_found",    cachingNotFound); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "cache_shared",       sharingCache); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "lookup_batch_size",  lookupBatchSize); //$NON-NLS-1$
             rep.saveStepAttribute(id_transformation, id_step, "lookup_schema",      schemaName); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "lookup_table",       tablename); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "lookup_orderby",     orderByClause); //$NON-NLS-1$
@@ -940,4 +972,60 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
 	public void setLoadingAllDataInCache(boolean loadingAllDataInCache) {
 		this.loadingAllDataInCache = loadingAllDataInCache;
 	}
+
+	/**
+	 * @return the number of rows to look up with a single query, 0 or 1 to look up row by row
+	 */
+	public int getLookupBatchSize() {
+		return lookupBatchSize;
+	}
+
+	/**
+	 * @param lookupBatchSize the number of rows to look up with a single query, 0 or 1 to look up row by row
+	 */
+	public void setLookupBatchSize(int lookupBatchSize) {
+		this.lookupBatchSize = lookupBatchSize;
+	}
+
+	/**
+	 * @return the number of seconds a looked up row stays in the cache, 0 to keep it until it's evicted
+	 */
+	public int getCacheTimeToLive() {
+		return cacheTimeToLive;
+	}
+
+	/**
+	 * @param cacheTimeToLive the number of seconds a looked up row stays in the cache, 0 to keep it until it's evicted
+	 */
+	public void setCacheTimeToLive(int cacheTimeToLive) {
+		this.cacheTimeToLive = cacheTimeToLive;
+	}
+
+	/**
+	 * @return true if the keys that were not found are remembered in the cache as well
+	 */
+	public boolean isCachingNotFound() {
+		return cachingNotFound;
+	}
+
+	/**
+	 * @param cachingNotFound true to remember the keys that were not found in the cache as well
+	 */
+	public void setCachingNotFound(boolean cachingNotFound) {
+		this.cachingNotFound = cachingNotFound;
+	}
+
+	/**
+	 * @return true if the copies of the step use the same cache
+	 */
+	public boolean isSharingCache() {
+		return sharingCache;
+	}
+
+	/**
+	 * @param sharingCache true to have the copies of the step use the same cache
+	 */
+	public void setSharingCache(boolean sharingCache) {
+		this.sharingCache = sharingCache;
+	}
 }
\ No newline at end of file
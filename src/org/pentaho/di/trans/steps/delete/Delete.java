@@ -70,7 +70,7 @@ public class Delete extends BaseStep implements StepInterface
             }
         }
         
-        data.db.setValues(data.deleteParameterRowMeta, deleteRow, data.prepStatementDelete);
+        data.db.setValues(data.deleteBinder, deleteRow, data.prepStatementDelete);
         		
 		if (log.isDebug()) logDebug(BaseMessages.getString(PKG, "Delete.Log.SetValuesForDelete",data.deleteParameterRowMeta.getString(deleteRow),rowMeta.getString(row))); //$NON-NLS-1$
 
@@ -207,6 +207,7 @@ public class Delete extends BaseStep implements StepInterface
         {
         	if (log.isDetailed()) logDetailed("Setting delete preparedStatement to ["+sql+"]");
             data.prepStatementDelete=data.db.getConnection().prepareStatement(databaseMeta.stripCR(sql));
+            data.deleteBinder = data.db.createStatementBinder(data.deleteParameterRowMeta);
         }
         catch(SQLException ex) 
         {
@@ -15,6 +15,7 @@ package org.pentaho.di.trans.steps.delete;
 import java.sql.PreparedStatement;
 
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.StatementBinder;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -40,6 +41,9 @@ public class DeleteData extends BaseStepData implements StepDataInterface
     public RowMetaInterface deleteParameterRowMeta;
 
     public PreparedStatement prepStatementDelete;
+    
+    /** How to set the parameters of the delete statement, worked out once */
+    public StatementBinder deleteBinder;
 	
 	/**
 	 * 
@@ -11,6 +11,7 @@
 
 package org.pentaho.di.trans.steps.dimensionlookup;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
@@ -182,7 +183,15 @@ public class DimensionLookup extends BaseStep implements StepInterface
 	                    data.cacheKeyRowMeta.addValueMeta( key.clone());
 	                }
 	                
-	                data.cache = new ByteArrayHashMap(meta.getCacheSize()>0 ? meta.getCacheSize() : 5000, data.cacheKeyRowMeta);
+	                // Cache all: keep all the versions of the dimension entries, not only the last one looked up
+	                //
+	                data.usingVersionCache = meta.getCacheSize()==0;
+	                if (data.usingVersionCache) {
+	                	data.integerMeta = new ValueMeta(meta.getKeyField(), ValueMetaInterface.TYPE_INTEGER);
+	                	data.dateMeta = new ValueMeta(meta.getDateFrom(), ValueMetaInterface.TYPE_DATE);
+	                } else {
+	                	data.cache = new ByteArrayHashMap(meta.getCacheSize()>0 ? meta.getCacheSize() : 5000, data.cacheKeyRowMeta);
+	                }
 	            }
             }
 
@@ -207,6 +216,10 @@ public class DimensionLookup extends BaseStep implements StepInterface
             if (getCopy()==0) checkDimZero();
             
             setDimLookup(data.outputRowMeta);
+            
+            if (data.usingVersionCache && meta.isUpdate() && meta.isPreloadingCache()) {
+            	preloadVersionCache();
+            }
         }
         
         // convert row to normal storage...
@@ -309,6 +322,60 @@ public class DimensionLookup extends BaseStep implements StepInterface
 		}
 	}
 
+    /**
+     * Pre-load all the versions of the dimension entries in the versions cache, to update the dimension.
+     * After that the cache holds all the versions so the table is never queried again.
+     * 
+     * @throws KettleException in case there is a database or cache problem.
+     */
+	private void preloadVersionCache() throws KettleException {
+		DatabaseMeta databaseMeta = meta.getDatabaseMeta();
+		
+		// The values of the lookup query (tk, version, fields, from, to) followed by the natural keys
+		//
+		String sql = "SELECT "+databaseMeta.quoteField(meta.getKeyField())+", "+databaseMeta.quoteField(meta.getVersionField());
+		for (int i=0;i<meta.getFieldLookup().length;i++) {
+			if (!Const.isEmpty(meta.getFieldLookup()[i]) && !DimensionLookupMeta.isUpdateTypeWithoutArgument(meta.isUpdate(), meta.getFieldUpdate()[i])) {
+				sql+=", "+databaseMeta.quoteField(meta.getFieldLookup()[i]);
+				if (!Const.isEmpty( meta.getFieldStream()[i] ) && !meta.getFieldLookup()[i].equals(meta.getFieldStream()[i])) {
+					sql+=" AS "+databaseMeta.quoteField(meta.getFieldStream()[i]);
+				}
+			}
+		}
+		sql+=", "+databaseMeta.quoteField(meta.getDateFrom())+", "+databaseMeta.quoteField(meta.getDateTo());
+		for (int i=0;i<meta.getKeyLookup().length;i++) {
+			sql+=", "+databaseMeta.quoteField(meta.getKeyLookup()[i]);
+		}
+		sql+=" FROM "+data.schemaTable;
+		logDetailed("Pre-loading the versions cache by reading from database with: "+Const.CR+sql+Const.CR);
+		
+		ResultSet resultSet = data.db.openQuery(sql);
+		try {
+			RowMetaInterface rowMeta = data.db.getReturnRowMeta();
+			int nrValues = rowMeta.size()-meta.getKeyLookup().length;
+			
+			data.returnRowMeta = new RowMeta();
+			for (int i=0;i<nrValues;i++) {
+				data.returnRowMeta.addValueMeta(rowMeta.getValueMeta(i));
+			}
+			DimensionVersionCache versionCache = getVersionCache();
+			
+			Object[] keyValues = new Object[data.cacheKeyRowMeta.size()];
+			Object[] row = data.db.getRow(resultSet);
+			while (row!=null) {
+				for (int i=0;i<keyValues.length;i++) {
+					keyValues[i] = data.cacheKeyRowMeta.getValueMeta(i).convertData(rowMeta.getValueMeta(nrValues+i), row[nrValues+i]);
+				}
+				versionCache.put(keyValues, row); // the natural keys at the end are ignored
+				row = data.db.getRow(resultSet);
+			}
+			logDetailed("Pre-loaded "+versionCache.getNrVersions()+" versions of "+versionCache.getNrKeys()+" dimension entries.");
+		} finally {
+			data.db.closeQuery(resultSet);
+		}
+		data.versionCachePreloaded = true;
+	}
+
   private synchronized Object[] lookupValues(RowMetaInterface rowMeta, Object[] row) throws KettleException {
     Object[] outputRow = new Object[data.outputRowMeta.size()];
 
@@ -413,7 +480,7 @@ public class DimensionLookup extends BaseStep implements StepInterface
       // Nothing found in the cache?
       // Perform the lookup in the database...
       //
-      if (returnRow == null) {
+      if (returnRow == null && !data.versionCachePreloaded) {
         data.db.setValues(data.lookupRowMeta, lookupRow, data.prepStatementLookup);
         returnRow = data.db.getLookup(data.prepStatementLookup);
         data.returnRowMeta = data.db.getReturnRowMeta();
@@ -606,7 +673,13 @@ public class DimensionLookup extends BaseStep implements StepInterface
             incrementLinesUpdated();
 
             // We need to capture this change in the cache as well...
-            if (meta.getCacheSize() >= 0) {
+            if (data.usingVersionCache) {
+              // The version keeps its date range
+              //
+              valueDateFrom = data.returnRowMeta.getDate(returnRow, data.returnRowMeta.size() - 2);
+              valueDateTo = data.returnRowMeta.getDate(returnRow, data.returnRowMeta.size() - 1);
+              getVersionCache().put(lookupRow, getVersionCacheValues(rowMeta, row, technicalKey, valueVersion, valueDateFrom, valueDateTo));
+            } else if (meta.getCacheSize() >= 0) {
               Object[] values = getCacheValues(rowMeta, row, technicalKey, valueVersion, valueDateFrom, valueDateTo);
               addToCache(lookupRow, values);
             }
@@ -648,7 +721,8 @@ public class DimensionLookup extends BaseStep implements StepInterface
           incrementLinesOutput();
 
           // We need to capture this change in the cache as well...
-          if (meta.getCacheSize() >= 0) {
+          // The versions cache was already brought up to date by dimInsert()
+          if (meta.getCacheSize() >= 0 && !data.usingVersionCache) {
             Object[] values = getCacheValues(rowMeta, row, technicalKey, valueNewVersion, valueDateFrom, valueDateTo);
             addToCache(lookupRow, values);
           }
@@ -665,6 +739,10 @@ public class DimensionLookup extends BaseStep implements StepInterface
            */
           dimPunchThrough(rowMeta, row);
           incrementLinesUpdated();
+
+          if (data.usingVersionCache) {
+            punchThroughVersionCache(rowMeta, row, lookupRow);
+          }
         }
 
         returnRow = new Object[data.returnRowMeta.size()];
@@ -1035,6 +1113,7 @@ public class DimensionLookup extends BaseStep implements StepInterface
       throw new KettleStepException(BaseMessages.getString(PKG, "DimensionLookup.Exception.IllegalStartDateSelection", Integer.toString(data.startDateChoice)));
     }
 
+    Date versionDateFrom = (Date) insertRow[insertIndex - 1];
     insertRow[insertIndex++] = dateTo;
 
     for (int i = 0; i < data.keynrs.length; i++) {
@@ -1083,6 +1162,7 @@ public class DimensionLookup extends BaseStep implements StepInterface
       }
     }
 
+    Date previousDateTo = null;
     if (!newEntry) // we have to update the previous version in the dimension!
     {
       /*
@@ -1102,6 +1182,7 @@ public class DimensionLookup extends BaseStep implements StepInterface
       default: 
           throw new KettleStepException(BaseMessages.getString("DimensionLookup.Exception.IllegalStartDateSelection", Integer.toString(data.startDateChoice))); 
       } 
+      previousDateTo = (Date) updateRow[0];
       
       // The special update fields...
       //
@@ -1139,6 +1220,10 @@ public class DimensionLookup extends BaseStep implements StepInterface
       }
     }
 
+    if (data.usingVersionCache) {
+      addToVersionCache(inputRowMeta, row, technicalKey, newEntry, versionNr, versionDateFrom, dateTo, previousDateTo);
+    }
+
     return technicalKey;
   }
     
@@ -1374,8 +1459,14 @@ public class DimensionLookup extends BaseStep implements StepInterface
      * @param returnValues
      * @throws KettleValueException 
      */
-	private void addToCache(Object[] keyValues, Object[] returnValues) throws KettleValueException
+	private void addToCache(Object[] keyValues, Object[] returnValues) throws KettleException
     {
+        if (data.usingVersionCache)
+        {
+        	getVersionCache().put(keyValues, returnValues);
+        	return;
+        }
+        
         if (data.cacheValueRowMeta==null)
         {
             data.cacheValueRowMeta = assembleCacheValueRowMeta();
@@ -1481,6 +1572,15 @@ public class DimensionLookup extends BaseStep implements StepInterface
 
 	private Object[] getFromCache(Object[] keyValues, Date dateValue) throws KettleValueException
     {
+        if (data.usingVersionCache)
+        {
+        	if (data.versionCache==null) return null; // nothing in the cache yet
+        	
+        	Object[] row = data.versionCache.lookup(keyValues, dateValue);
+        	if (row!=null && log.isRowLevel()) logRowlevel("Cache hit: key="+data.cacheKeyRowMeta.getString(keyValues)+"  values="+data.cacheValueRowMeta.getString(row));
+        	return row;
+        }
+        
         if (data.cacheValueRowMeta==null)
         {
         	// nothing in the cache yet, no lookup was ever performed
@@ -1511,6 +1611,100 @@ public class DimensionLookup extends BaseStep implements StepInterface
 
 
     
+    /**
+     * @return the cache of all the versions of the dimension entries, created once the return row metadata is known.
+     */
+    private DimensionVersionCache getVersionCache()
+    {
+        if (data.cacheValueRowMeta==null)
+        {
+            data.cacheValueRowMeta = assembleCacheValueRowMeta();
+        }
+        if (data.versionCache==null)
+        {
+        	data.versionCache = new DimensionVersionCache(data.cacheKeyRowMeta, data.cacheValueRowMeta);
+        }
+        return data.versionCache;
+    }
+
+    /**
+     * The same values as getCacheValues() but converted to the data types of the cache, the types of the dimension table.
+     */
+    private Object[] getVersionCacheValues(RowMetaInterface rowMeta, Object[] row, Long technicalKey, Long valueVersion, Date valueDateFrom, Date valueDateTo) throws KettleValueException
+    {
+    	RowMetaInterface cacheRowMeta = data.cacheValueRowMeta;
+        Object[] cacheValues = new Object[cacheRowMeta.size()];
+        int cacheIndex = 0;
+        
+        cacheValues[cacheIndex] = cacheRowMeta.getValueMeta(cacheIndex).convertData(data.integerMeta, technicalKey);
+        cacheIndex++;
+        cacheValues[cacheIndex] = cacheRowMeta.getValueMeta(cacheIndex).convertData(data.integerMeta, valueVersion);
+        cacheIndex++;
+        
+        for (int i=0;i<data.fieldnrs.length;i++)
+        {
+        	if (data.fieldnrs[i]>=0) {
+        		cacheValues[cacheIndex] = cacheRowMeta.getValueMeta(cacheIndex).convertData(rowMeta.getValueMeta(data.fieldnrs[i]), row[ data.fieldnrs[i] ]);
+        		cacheIndex++;
+        	}
+        }
+
+        cacheValues[cacheIndex] = cacheRowMeta.getValueMeta(cacheIndex).convertData(data.dateMeta, valueDateFrom);
+        cacheIndex++;
+        cacheValues[cacheIndex] = cacheRowMeta.getValueMeta(cacheIndex).convertData(data.dateMeta, valueDateTo);
+        
+        return cacheValues;
+    }
+
+    /**
+     * Add an inserted dimension entry or version to the versions cache.
+     * The date range of the previous version ends where the new version starts.
+     */
+    private void addToVersionCache(RowMetaInterface rowMeta, Object[] row, Long technicalKey, boolean newEntry, Long versionNr, Date dateFrom, Date dateTo, Date previousDateTo) throws KettleException
+    {
+    	Object[] keyValues = new Object[data.keynrs.length];
+    	for (int i=0;i<data.keynrs.length;i++)
+    	{
+    		keyValues[i] = row[data.keynrs[i]];
+    	}
+    	
+    	DimensionVersionCache versionCache = getVersionCache();
+    	if (!newEntry)
+    	{
+    		versionCache.setVersionDateTo(keyValues, versionNr.longValue()-1, previousDateTo);
+    	}
+    	versionCache.put(keyValues, getVersionCacheValues(rowMeta, row, technicalKey, versionNr, dateFrom, dateTo));
+    }
+
+    /**
+     * Change the punch through fields in all the cached versions of a dimension entry, like dimPunchThrough() does in the table.
+     */
+    private void punchThroughVersionCache(RowMetaInterface rowMeta, Object[] row, Object[] keyValues) throws KettleException
+    {
+    	List<Integer> indexes = new ArrayList<Integer>();
+    	List<Object> values = new ArrayList<Object>();
+    	
+    	int cacheIndex = 2; // after the technical key and version
+    	for (int i=0;i<data.fieldnrs.length;i++)
+    	{
+    		if (data.fieldnrs[i]>=0) {
+    			if (meta.getFieldUpdate()[i]==DimensionLookupMeta.TYPE_UPDATE_DIM_PUNCHTHROUGH)
+    			{
+    				indexes.add(cacheIndex);
+    				values.add(data.cacheValueRowMeta.getValueMeta(cacheIndex).convertData(rowMeta.getValueMeta(data.fieldnrs[i]), row[ data.fieldnrs[i] ]));
+    			}
+    			cacheIndex++;
+    		}
+    	}
+    	
+    	int[] valueIndexes = new int[indexes.size()];
+    	for (int i=0;i<valueIndexes.length;i++)
+    	{
+    		valueIndexes[i] = indexes.get(i);
+    	}
+    	getVersionCache().updateAllVersions(keyValues, valueIndexes, values.toArray());
+    }
+    
     public void checkDimZero() throws KettleException
     {
     	// Don't insert anything when running in lookup mode.
@@ -1611,6 +1805,10 @@ public class DimensionLookup extends BaseStep implements StepInterface
 	{
 	    meta = (DimensionLookupMeta)smi;
 	    data = (DimensionLookupData)sdi;
+	    if (data.versionCache!=null) {
+	    	data.versionCache.close();
+	    	data.versionCache = null;
+	    }
 	    if(data.db!=null) {
 	        try
 	        {
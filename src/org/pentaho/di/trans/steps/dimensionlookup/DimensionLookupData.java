@@ -18,6 +18,7 @@ import java.util.List;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.hash.ByteArrayHashMap;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
@@ -41,6 +42,13 @@ public class DimensionLookupData extends BaseStepData implements StepDataInterfa
 
     public ByteArrayHashMap cache;
 
+    /** All the versions of the dimension entries, used instead of the cache above when all rows are cached */
+    public DimensionVersionCache versionCache;
+    public boolean usingVersionCache;
+    public boolean versionCachePreloaded;
+    public ValueMetaInterface integerMeta;
+    public ValueMetaInterface dateMeta;
+
     public long smallestCacheKey;
 
     public Long notFoundTk;
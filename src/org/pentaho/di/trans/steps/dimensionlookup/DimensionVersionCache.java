@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.dimensionlookup;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.hash.OffHeapHashIndex;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * A cache of all the versions of the dimension entries: for every natural key the date ranges and technical keys of its versions.<br>
+ * <br>
+ * The versions of a natural key are kept together in a segment of 3 primitive arrays (start of the range, end of the range, technical key),
+ * sorted on the start of the range, so a lookup is a binary search.  When a new version doesn't fit in the segment,
+ * the segment moves to the end of the arrays with twice the room.  The arrays are compacted once half of them is unused.<br>
+ * <br>
+ * The natural keys and the rows of the versions (technical key, version, fields, date range) are serialized in off-heap indexes.
+ * That way millions of versions are only a handful of objects for the garbage collector.
+ *
+ * @author matt
+ */
+public class DimensionVersionCache {
+
+	private static final int SLAB_SIZE = 4*1024*1024;
+
+	/** A date that is null: no start of the range (minus infinity) or no end of the range (never matches, like in SQL) */
+	private static final long NULL_DATE = Long.MIN_VALUE;
+
+	private RowMetaInterface keyRowMeta;
+	private RowMetaInterface valueRowMeta;
+	private int fromIndex;
+	private int toIndex;
+
+	/** The natural keys and their number */
+	private OffHeapHashIndex keys;
+
+	/** The rows of the versions by technical key */
+	private OffHeapHashIndex values;
+
+	// The segment of every natural key...
+	//
+	private int[] segmentStart;
+	private int[] segmentCount;
+	private int[] segmentCapacity;
+	private int nrKeys;
+
+	// The versions...
+	//
+	private long[] dateFrom;
+	private long[] dateTo;
+	private long[] technicalKeys;
+	private int used;
+	private int unused;
+	private long nrVersions;
+
+	/**
+	 * @param keyRowMeta the metadata of the natural key
+	 * @param valueRowMeta the metadata of the rows of the versions: the technical key first, the start and end of the date range last
+	 */
+	public DimensionVersionCache(RowMetaInterface keyRowMeta, RowMetaInterface valueRowMeta) {
+		this.keyRowMeta = keyRowMeta;
+		this.valueRowMeta = valueRowMeta;
+		fromIndex = valueRowMeta.size()-2;
+		toIndex = valueRowMeta.size()-1;
+
+		keys = new OffHeapHashIndex(SLAB_SIZE, null);
+		values = new OffHeapHashIndex(SLAB_SIZE, null);
+
+		segmentStart = new int[1024];
+		segmentCount = new int[1024];
+		segmentCapacity = new int[1024];
+
+		dateFrom = new long[4096];
+		dateTo = new long[4096];
+		technicalKeys = new long[4096];
+	}
+
+	/**
+	 * Look up the version of a natural key that is valid on a date.
+	 *
+	 * @param keyValues the natural key (at the start of the row)
+	 * @param date the lookup date
+	 * @return the row of the version or null if the cache doesn't contain it
+	 * @throws KettleValueException in case the key can't be serialized
+	 */
+	public Object[] lookup(Object[] keyValues, Date date) throws KettleValueException {
+		if (date==null) return null;
+
+		int keyNr = findKey(keyValues);
+		if (keyNr<0) return null;
+
+		int index = findVersion(keyNr, date.getTime());
+		if (index<0) return null;
+
+		return getRow(index);
+	}
+
+	/**
+	 * Add a version of a natural key, a version with the same technical key is replaced.
+	 *
+	 * @param keyValues the natural key (at the start of the row)
+	 * @param row the row of the version
+	 * @throws KettleException in case the data can't be serialized or stored
+	 */
+	public void put(Object[] keyValues, Object[] row) throws KettleException {
+		long technicalKey = valueRowMeta.getInteger(row, 0).longValue();
+		long from = getTime(valueRowMeta.getDate(row, fromIndex));
+		long to = getTime(valueRowMeta.getDate(row, toIndex));
+
+		try {
+			int keyNr = findKey(keyValues);
+			if (keyNr<0) {
+				keyNr = addKey(keyValues);
+			}
+			removeVersion(keyNr, technicalKey);
+			insertVersion(keyNr, from, to, technicalKey);
+
+			values.put(getBytes(technicalKey), RowMeta.extractData(valueRowMeta, row));
+		} catch(IOException e) {
+			throw new KettleException("Unable to store a dimension version in the cache", e);
+		}
+	}
+
+	/**
+	 * Change the end of the date range of a version, for example when a newer version is added.
+	 *
+	 * @param keyValues the natural key (at the start of the row)
+	 * @param version the version number (the second value of the row)
+	 * @param to the new end of the date range
+	 * @throws KettleValueException in case the key can't be serialized
+	 */
+	public void setVersionDateTo(Object[] keyValues, long version, Date to) throws KettleValueException {
+		int keyNr = findKey(keyValues);
+		if (keyNr<0) return;
+
+		int start = segmentStart[keyNr];
+		for (int i=start;i<start+segmentCount[keyNr];i++) {
+			Object[] row = RowMeta.getRow(valueRowMeta, values.get(getBytes(technicalKeys[i])));
+			Long versionNr = valueRowMeta.getInteger(row, 1);
+			if (versionNr!=null && versionNr.longValue()==version) {
+				dateTo[i] = getTime(to);
+			}
+		}
+	}
+
+	/**
+	 * Change values in all the versions of a natural key, for example after a punch through update.
+	 *
+	 * @param keyValues the natural key (at the start of the row)
+	 * @param indexes the indexes of the values in the rows of the versions
+	 * @param newValues the new values, in the order of the indexes
+	 * @throws KettleException in case the data can't be serialized or stored
+	 */
+	public void updateAllVersions(Object[] keyValues, int[] indexes, Object[] newValues) throws KettleException {
+		int keyNr = findKey(keyValues);
+		if (keyNr<0) return;
+
+		try {
+			int start = segmentStart[keyNr];
+			for (int i=start;i<start+segmentCount[keyNr];i++) {
+				byte[] tk = getBytes(technicalKeys[i]);
+				Object[] row = RowMeta.getRow(valueRowMeta, values.get(tk));
+				for (int v=0;v<indexes.length;v++) {
+					row[indexes[v]] = newValues[v];
+				}
+				values.put(tk, RowMeta.extractData(valueRowMeta, row));
+			}
+		} catch(IOException e) {
+			throw new KettleException("Unable to store a dimension version in the cache", e);
+		}
+	}
+
+	/**
+	 * @return the number of versions in the cache
+	 */
+	public long getNrVersions() {
+		return nrVersions;
+	}
+
+	/**
+	 * @return the number of natural keys in the cache
+	 */
+	public int getNrKeys() {
+		return nrKeys;
+	}
+
+	/**
+	 * Release the memory of the cache.
+	 */
+	public void close() {
+		keys.close();
+		values.close();
+		dateFrom = dateTo = technicalKeys = null;
+		segmentStart = segmentCount = segmentCapacity = null;
+		nrKeys = 0;
+		nrVersions = 0L;
+	}
+
+	private int findKey(Object[] keyValues) throws KettleValueException {
+		byte[] keyNr = keys.get(RowMeta.extractData(keyRowMeta, keyValues));
+		if (keyNr==null) return -1;
+		return ((keyNr[0]&0xFF)<<24) | ((keyNr[1]&0xFF)<<16) | ((keyNr[2]&0xFF)<<8) | (keyNr[3]&0xFF);
+	}
+
+	private int addKey(Object[] keyValues) throws IOException {
+		int keyNr = nrKeys++;
+		if (keyNr==segmentStart.length) {
+			segmentStart = grow(segmentStart);
+			segmentCount = grow(segmentCount);
+			segmentCapacity = grow(segmentCapacity);
+		}
+		segmentStart[keyNr] = used;
+		segmentCount[keyNr] = 0;
+		segmentCapacity[keyNr] = 0;
+
+		keys.put(RowMeta.extractData(keyRowMeta, keyValues), new byte[] { (byte)(keyNr>>>24), (byte)(keyNr>>>16), (byte)(keyNr>>>8), (byte)keyNr });
+		return keyNr;
+	}
+
+	/**
+	 * The last version that starts on or before the lookup time and ends after it.
+	 */
+	private int findVersion(int keyNr, long time) {
+		int start = segmentStart[keyNr];
+		int low = start;
+		int high = start+segmentCount[keyNr]-1;
+		while (low<=high) {
+			int middle = (low+high)>>>1;
+			if (dateFrom[middle]<=time) { // a null start sorts first
+				low = middle+1;
+			} else {
+				high = middle-1;
+			}
+		}
+		// Usually the one found matches, older versions only in case date ranges overlap
+		//
+		for (int i=high;i>=start;i--) {
+			if (dateTo[i]!=NULL_DATE && time<dateTo[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void removeVersion(int keyNr, long technicalKey) {
+		int start = segmentStart[keyNr];
+		int count = segmentCount[keyNr];
+		for (int i=start;i<start+count;i++) {
+			if (technicalKeys[i]==technicalKey) {
+				int tail = start+count-i-1;
+				System.arraycopy(dateFrom, i+1, dateFrom, i, tail);
+				System.arraycopy(dateTo, i+1, dateTo, i, tail);
+				System.arraycopy(technicalKeys, i+1, technicalKeys, i, tail);
+				segmentCount[keyNr]--;
+				nrVersions--;
+				return;
+			}
+		}
+	}
+
+	private void insertVersion(int keyNr, long from, long to, long technicalKey) {
+		if (segmentCount[keyNr]==segmentCapacity[keyNr]) {
+			moveSegment(keyNr, Math.max(2, 2*segmentCapacity[keyNr]));
+		}
+
+		int start = segmentStart[keyNr];
+		int end = start+segmentCount[keyNr];
+		int position = end;
+		while (position>start && dateFrom[position-1]>from) {
+			position--;
+		}
+		System.arraycopy(dateFrom, position, dateFrom, position+1, end-position);
+		System.arraycopy(dateTo, position, dateTo, position+1, end-position);
+		System.arraycopy(technicalKeys, position, technicalKeys, position+1, end-position);
+		dateFrom[position] = from;
+		dateTo[position] = to;
+		technicalKeys[position] = technicalKey;
+
+		segmentCount[keyNr]++;
+		nrVersions++;
+	}
+
+	/**
+	 * Move the versions of a key to the end of the arrays, with more room.
+	 */
+	private void moveSegment(int keyNr, int capacity) {
+		if (unused>used/2 && used>4096) {
+			compact();
+		}
+		if (used+capacity>dateFrom.length) {
+			int size = Math.max(used+capacity, dateFrom.length+dateFrom.length/2);
+			dateFrom = resize(dateFrom, size);
+			dateTo = resize(dateTo, size);
+			technicalKeys = resize(technicalKeys, size);
+		}
+		int start = segmentStart[keyNr];
+		int count = segmentCount[keyNr];
+		System.arraycopy(dateFrom, start, dateFrom, used, count);
+		System.arraycopy(dateTo, start, dateTo, used, count);
+		System.arraycopy(technicalKeys, start, technicalKeys, used, count);
+
+		unused+=segmentCapacity[keyNr];
+		segmentStart[keyNr] = used;
+		segmentCapacity[keyNr] = capacity;
+		used+=capacity;
+	}
+
+	/**
+	 * Put the segments next to each other again, without the unused room in between.
+	 */
+	private void compact() {
+		int size = dateFrom.length;
+		long[] newFrom = new long[size];
+		long[] newTo = new long[size];
+		long[] newTechnicalKeys = new long[size];
+
+		int position = 0;
+		for (int keyNr=0;keyNr<nrKeys;keyNr++) {
+			int count = segmentCount[keyNr];
+			System.arraycopy(dateFrom, segmentStart[keyNr], newFrom, position, count);
+			System.arraycopy(dateTo, segmentStart[keyNr], newTo, position, count);
+			System.arraycopy(technicalKeys, segmentStart[keyNr], newTechnicalKeys, position, count);
+			segmentStart[keyNr] = position;
+			segmentCapacity[keyNr] = count;
+			position+=count;
+		}
+		dateFrom = newFrom;
+		dateTo = newTo;
+		technicalKeys = newTechnicalKeys;
+		used = position;
+		unused = 0;
+	}
+
+	private Object[] getRow(int index) {
+		Object[] row = RowMeta.getRow(valueRowMeta, values.get(getBytes(technicalKeys[index])));
+
+		// The date range can change after the row is stored
+		//
+		row[fromIndex] = dateFrom[index]==NULL_DATE ? null : new Date(dateFrom[index]);
+		row[toIndex] = dateTo[index]==NULL_DATE ? null : new Date(dateTo[index]);
+		return row;
+	}
+
+	private static long getTime(Date date) {
+		return date==null ? NULL_DATE : date.getTime();
+	}
+
+	private static byte[] getBytes(long value) {
+		byte[] bytes = new byte[8];
+		for (int i=7;i>=0;i--) {
+			bytes[i] = (byte)value;
+			value>>>=8;
+		}
+		return bytes;
+	}
+
+	private static int[] grow(int[] array) {
+		int[] newArray = new int[array.length*2];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+
+	private static long[] resize(long[] array, int size) {
+		long[] newArray = new long[size];
+		System.arraycopy(array, 0, newArray, 0, Math.min(array.length, size));
+		return newArray;
+	}
+}
@@ -258,9 +258,7 @@ public class DynamicSQLRow extends BaseStep implements StepInterface
 
         if (data.db!=null && !data.isCanceled)
         {
-            synchronized(data.db) {
-              data.db.cancelQuery();
-            }
+            data.db.cancelQuery();
             setStopped(true);
             data.isCanceled=true;
         }
@@ -33,6 +33,9 @@ import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueDataUtil;
 import org.pentaho.di.core.row.ValueMeta;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.sketch.HyperLogLog;
+import org.pentaho.di.core.sketch.Sketches;
+import org.pentaho.di.core.sketch.TDigest;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -94,6 +97,7 @@ public class GroupBy extends BaseStep implements StepInterface
         	//
 			data.counts     = new long[meta.getSubjectField().length];
 			data.subjectnrs = new int[meta.getSubjectField().length];
+			data.percentiles = new double[meta.getSubjectField().length];
 
 			data.cumulativeSumSourceIndexes = new ArrayList<Integer>();
 			data.cumulativeSumTargetIndexes = new ArrayList<Integer>();
@@ -128,6 +132,18 @@ public class GroupBy extends BaseStep implements StepInterface
 					//
 					data.cumulativeAvgTargetIndexes.add(data.inputRowMeta.size()+i);
 				}
+				if (meta.getAggregateType()[i]==GroupByMeta.TYPE_GROUP_PERCENTILE_APPROX)
+				{
+					String percentile = environmentSubstitute(meta.getValueField()[i]);
+					data.percentiles[i] = Const.toDouble(percentile, -1.0)/100;
+					if (data.percentiles[i]<0.0 || data.percentiles[i]>1.0)
+					{
+						logError(BaseMessages.getString(PKG, "GroupBy.Log.InvalidPercentile", meta.getAggregateField()[i], percentile)); //$NON-NLS-1$
+						setErrors(1);
+						stopAll();
+						return false;
+					}
+				}
 				
 			}
 			
@@ -540,6 +556,21 @@ public class GroupBy extends BaseStep implements StepInterface
                     }
                     
                     break; 
+                case GroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX :
+                case GroupByMeta.TYPE_GROUP_DISTINCT_SKETCH       :
+                	// Binary values holding a sketch (from a previous aggregation) are merged
+                	//
+                	if (!subjMeta.isNull(subj)) {
+                		getDistinctSketch(i).addValue(subjMeta, subj);
+                	}
+                	break;
+                case GroupByMeta.TYPE_GROUP_MEDIAN_APPROX         :
+                case GroupByMeta.TYPE_GROUP_PERCENTILE_APPROX     :
+                case GroupByMeta.TYPE_GROUP_PERCENTILE_SKETCH     :
+                	if (!subjMeta.isNull(subj)) {
+                		getPercentileSketch(i).addValue(subjMeta, subj);
+                	}
+                	break;
 				default: break;
 			}
 		}
@@ -551,6 +582,7 @@ public class GroupBy extends BaseStep implements StepInterface
 		// Put all the counters at 0
 		for (int i=0;i<data.counts.length;i++) data.counts[i]=0;
 		data.distinctObjs = null;
+		data.sketches = null;
 		data.agg = new Object[data.subjectnrs.length];
 		data.mean = new double[data.subjectnrs.length]; // sets all doubles to 0.0
 		data.aggMeta=new RowMeta();
@@ -602,13 +634,27 @@ public class GroupBy extends BaseStep implements StepInterface
                     vMeta = new ValueMeta(meta.getAggregateField()[i], ValueMetaInterface.TYPE_STRING);
                     v = ""; //$NON-NLS-1$
                     break; 
+				case GroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX :
+                    vMeta = new ValueMeta(meta.getAggregateField()[i], ValueMetaInterface.TYPE_INTEGER);
+                    break;
+				case GroupByMeta.TYPE_GROUP_MEDIAN_APPROX         :
+				case GroupByMeta.TYPE_GROUP_PERCENTILE_APPROX     :
+                    vMeta = new ValueMeta(meta.getAggregateField()[i], ValueMetaInterface.TYPE_NUMBER);
+                    break;
+				case GroupByMeta.TYPE_GROUP_DISTINCT_SKETCH       :
+				case GroupByMeta.TYPE_GROUP_PERCENTILE_SKETCH     :
+                    vMeta = new ValueMeta(meta.getAggregateField()[i], ValueMetaInterface.TYPE_BINARY);
+                    break;
 				default: 
 					// TODO raise an error here because we cannot continue successfully maybe the UI should validate this
 					break;
 			}
             
             if (meta.getAggregateType()[i]!=GroupByMeta.TYPE_GROUP_COUNT_ALL && 
-                meta.getAggregateType()[i]!=GroupByMeta.TYPE_GROUP_COUNT_DISTINCT)
+                meta.getAggregateType()[i]!=GroupByMeta.TYPE_GROUP_COUNT_DISTINCT &&
+                meta.getAggregateType()[i]!=GroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX &&
+                meta.getAggregateType()[i]!=GroupByMeta.TYPE_GROUP_DISTINCT_SKETCH &&
+                meta.getAggregateType()[i]!=GroupByMeta.TYPE_GROUP_PERCENTILE_SKETCH)
             {
             	vMeta.setLength(subjMeta.getLength(), subjMeta.getPrecision());
             }
@@ -680,6 +726,11 @@ public class GroupBy extends BaseStep implements StepInterface
                     	double sum = (Double)ag / data.counts[i];
                     	ag = Double.valueOf( Math.sqrt( sum ) );
                     	break;
+                    case GroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX : ag = new Long(getDistinctSketch(i).cardinality()); break;
+                    case GroupByMeta.TYPE_GROUP_MEDIAN_APPROX         : ag = Sketches.getPercentile(getPercentileSketch(i), 0.5); break;
+                    case GroupByMeta.TYPE_GROUP_PERCENTILE_APPROX     : ag = Sketches.getPercentile(getPercentileSketch(i), data.percentiles[i]); break;
+                    case GroupByMeta.TYPE_GROUP_DISTINCT_SKETCH       : ag = getDistinctSketch(i).toByteArray(); break;
+                    case GroupByMeta.TYPE_GROUP_PERCENTILE_SKETCH     : ag = getPercentileSketch(i).toByteArray(); break;
                     default: break;
                 }
                 result[i]=ag;
@@ -690,6 +741,22 @@ public class GroupBy extends BaseStep implements StepInterface
 
     }
 		
+    private HyperLogLog getDistinctSketch(int i)
+    {
+    	return Sketches.getDistinctSketch(getSketches(), i);
+    }
+    
+    private TDigest getPercentileSketch(int i)
+    {
+    	return Sketches.getPercentileSketch(getSketches(), i);
+    }
+    
+    private Object[] getSketches()
+    {
+    	if (data.sketches==null) data.sketches = new Object[data.subjectnrs.length];
+    	return data.sketches;
+    }
+    
     private void addToBuffer(Object[] row) throws KettleFileException
     {
         data.bufferList.add(row);
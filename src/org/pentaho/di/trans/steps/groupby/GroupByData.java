@@ -85,6 +85,12 @@ public class GroupByData extends BaseStepData implements StepDataInterface
 
 	public double[] mean;
 	
+	/** The HyperLogLog sketches and t-digests of the approximate aggregates, created when needed */
+	public Object[] sketches;
+	
+	/** The percentiles of the approximate percentile aggregates, as a fraction */
+	public double[] percentiles;
+	
 	public boolean newBatch;
     
 	/**
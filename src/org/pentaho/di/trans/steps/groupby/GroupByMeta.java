@@ -65,6 +65,11 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface
 	public static final int TYPE_GROUP_STANDARD_DEVIATION = 13;
 	public static final int TYPE_GROUP_CONCAT_STRING	  = 14;
 	public static final int TYPE_GROUP_COUNT_DISTINCT   = 15;
+	public static final int TYPE_GROUP_COUNT_DISTINCT_APPROX = 16;
+	public static final int TYPE_GROUP_MEDIAN_APPROX         = 17;
+	public static final int TYPE_GROUP_PERCENTILE_APPROX     = 18;
+	public static final int TYPE_GROUP_DISTINCT_SKETCH       = 19;
+	public static final int TYPE_GROUP_PERCENTILE_SKETCH     = 20;
 	
 
 	public static final String typeGroupCode[] =  /* WARNING: DO NOT TRANSLATE THIS. WE ARE SERIOUS, DON'T TRANSLATE! */ 
@@ -72,7 +77,8 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface
 			"-", "SUM", "AVERAGE", "MIN", "MAX", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ 
 			"COUNT_ALL", "CONCAT_COMMA", "FIRST", "LAST", "FIRST_INCL_NULL", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ 
 			"LAST_INCL_NULL", "CUM_SUM", "CUM_AVG", "STD_DEV","CONCAT_STRING",	 //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
-			"COUNT_DISTINCT", //$NON-NLS-1$
+			"COUNT_DISTINCT", "COUNT_DISTINCT_APPROX", "MEDIAN_APPROX", "PERCENTILE_APPROX", "DISTINCT_SKETCH", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+			"PERCENTILE_SKETCH", //$NON-NLS-1$
 		};
 
 	public static final String typeGroupLongDesc[] = 
@@ -93,6 +99,11 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface
             BaseMessages.getString(PKG, "GroupByMeta.TypeGroupLongDesc.STANDARD_DEVIATION"),  //$NON-NLS-1$ 
             BaseMessages.getString(PKG, "GroupByMeta.TypeGroupLongDesc.CONCAT_STRING"),  		//$NON-NLS-1$ 
             BaseMessages.getString(PKG, "GroupByMeta.TypeGroupLongDesc.COUNT_DISTINCT"),     //$NON-NLS-1$
+            BaseMessages.getString(PKG, "GroupByMeta.TypeGroupLongDesc.COUNT_DISTINCT_APPROX"),   //$NON-NLS-1$
+            BaseMessages.getString(PKG, "GroupByMeta.TypeGroupLongDesc.MEDIAN_APPROX"),           //$NON-NLS-1$
+            BaseMessages.getString(PKG, "GroupByMeta.TypeGroupLongDesc.PERCENTILE_APPROX"),       //$NON-NLS-1$
+            BaseMessages.getString(PKG, "GroupByMeta.TypeGroupLongDesc.DISTINCT_SKETCH"),         //$NON-NLS-1$
+            BaseMessages.getString(PKG, "GroupByMeta.TypeGroupLongDesc.PERCENTILE_SKETCH"),       //$NON-NLS-1$
 		};
 
 	
@@ -432,7 +443,12 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface
 					case TYPE_GROUP_MIN                : 
 					case TYPE_GROUP_MAX                : value_type = subj.getType(); break;
 					case TYPE_GROUP_COUNT_DISTINCT     :
+					case TYPE_GROUP_COUNT_DISTINCT_APPROX :
 					case TYPE_GROUP_COUNT_ALL          : value_type = ValueMetaInterface.TYPE_INTEGER; break;
+					case TYPE_GROUP_MEDIAN_APPROX      :
+					case TYPE_GROUP_PERCENTILE_APPROX  : value_type = ValueMetaInterface.TYPE_NUMBER; break;
+					case TYPE_GROUP_DISTINCT_SKETCH    :
+					case TYPE_GROUP_PERCENTILE_SKETCH  : value_type = ValueMetaInterface.TYPE_BINARY; break;
                     case TYPE_GROUP_CONCAT_COMMA       : value_type = ValueMetaInterface.TYPE_STRING; break;
                     case TYPE_GROUP_STANDARD_DEVIATION : value_type = ValueMetaInterface.TYPE_NUMBER; break;
                     case TYPE_GROUP_CONCAT_STRING      : value_type = ValueMetaInterface.TYPE_STRING; break;
@@ -447,7 +463,7 @@ public class GroupByMeta extends BaseStepMeta implements StepMetaInterface
 					precision=-1;
 					length=-1;
 				}
-				else if (aggregateType[i]==TYPE_GROUP_COUNT_ALL || aggregateType[i]==TYPE_GROUP_COUNT_DISTINCT)
+				else if (aggregateType[i]==TYPE_GROUP_COUNT_ALL || aggregateType[i]==TYPE_GROUP_COUNT_DISTINCT || aggregateType[i]==TYPE_GROUP_COUNT_DISTINCT_APPROX)
                 {
                     length    = ValueMetaInterface.DEFAULT_INTEGER_LENGTH;
                     precision = 0;
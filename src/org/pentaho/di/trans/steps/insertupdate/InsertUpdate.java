@@ -74,7 +74,7 @@ public class InsertUpdate extends BaseStep implements StepInterface
             }
         }
         
-        data.db.setValues(data.lookupParameterRowMeta, lookupRow, data.prepStatementLookup);
+        data.db.setValues(data.lookupBinder, lookupRow, data.prepStatementLookup);
 		
 		if (log.isDebug()) logDebug(BaseMessages.getString(PKG, "InsertUpdate.Log.ValuesSetForLookup")+data.lookupParameterRowMeta.getString(lookupRow)); //$NON-NLS-1$
 		Object[] add = data.db.getLookup(data.prepStatementLookup);
@@ -99,7 +99,7 @@ public class InsertUpdate extends BaseStep implements StepInterface
             }
             
             // Set the values on the prepared statement...
-			data.db.setValuesInsert(data.insertRowMeta, insertRow);
+			data.db.setValuesInsert(data.insertBinder, insertRow);
             
 			// Insert the row
             data.db.insertRow();
@@ -154,7 +154,7 @@ public class InsertUpdate extends BaseStep implements StepInterface
                     }
                     
                     if (log.isRowLevel()) logRowlevel(BaseMessages.getString(PKG, "InsertUpdate.Log.UpdateRow")+data.lookupParameterRowMeta.getString(lookupRow)); //$NON-NLS-1$
-                    data.db.setValues(data.updateParameterRowMeta, updateRow, data.prepStatementUpdate);
+                    data.db.setValues(data.updateBinder, updateRow, data.prepStatementUpdate);
                     data.db.insertRow(data.prepStatementUpdate);
                     incrementLinesUpdated();
                 }
@@ -271,6 +271,7 @@ public class InsertUpdate extends BaseStep implements StepInterface
             }
             data.db.prepareInsert(data.insertRowMeta, environmentSubstitute(meta.getSchemaName()), 
             		                                  environmentSubstitute(meta.getTableName()));
+            data.insertBinder = data.db.createStatementBinder(data.insertRowMeta);
             
             if (!meta.isUpdateBypassed())
             {
@@ -386,6 +387,7 @@ public class InsertUpdate extends BaseStep implements StepInterface
         {
             if(log.isDetailed()) logDetailed("Setting preparedStatement to [" + sql + "]");
             data.prepStatementLookup = data.db.getConnection().prepareStatement(databaseMeta.stripCR(sql));
+            data.lookupBinder = data.db.createStatementBinder(data.lookupParameterRowMeta);
         }
         catch (SQLException ex)
         {
@@ -463,6 +465,7 @@ public class InsertUpdate extends BaseStep implements StepInterface
         {
         	if(log.isDetailed()) logDetailed("Setting update preparedStatement to ["+sql+"]");
             data.prepStatementUpdate=data.db.getConnection().prepareStatement(databaseMeta.stripCR(sql));
+            data.updateBinder = data.db.createStatementBinder(data.updateParameterRowMeta);
         }
         catch(SQLException ex) 
         {
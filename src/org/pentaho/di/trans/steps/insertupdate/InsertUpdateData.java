@@ -14,6 +14,7 @@ package org.pentaho.di.trans.steps.insertupdate;
 import java.sql.PreparedStatement;
 
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.StatementBinder;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -45,6 +46,11 @@ public class InsertUpdateData extends BaseStepData implements StepDataInterface
     public RowMetaInterface  lookupParameterRowMeta;
     public RowMetaInterface  lookupReturnRowMeta;
     public RowMetaInterface  insertRowMeta;
+    
+    /** How to set the parameters of the statements, worked out once */
+    public StatementBinder   lookupBinder;
+    public StatementBinder   updateBinder;
+    public StatementBinder   insertBinder;
 	
 	/**
 	 *  Default constructor.
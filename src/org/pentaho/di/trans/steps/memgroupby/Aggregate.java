@@ -19,5 +19,14 @@ public class Aggregate {
 	public long counts[];
 	public Set<Object> distinctObjs[];
 	public double[] mean;
+	/** The HyperLogLog sketches and t-digests of the approximate aggregates, created when needed */
+	public Object[] sketches;
 	
+	/**
+	 * @return a new array for the distinct values of the subjects, an array of a generic type can only be created with a cast
+	 */
+	@SuppressWarnings("unchecked")
+	public static Set<Object>[] newDistinctSets(int size) {
+		return (Set<Object>[]) new Set<?>[size];
+	}
 }
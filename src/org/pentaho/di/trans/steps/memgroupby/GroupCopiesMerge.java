@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.memgroupby;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.pentaho.di.trans.step.StepInterface;
+
+/**
+ * Brings the partial aggregates of the copies of a Memory Group By step together.<br>
+ * <br>
+ * Every copy aggregates the rows it receives, then hands over its groups.  Once all the copies did that,
+ * every copy merges the partitions it owns (partition number modulo the number of copies) from all the other copies.
+ * That way a group ends up in exactly one copy and the merge work is spread over the copies as well.
+ * A copy doesn't stop (and remove its temporary files) before all the copies are done merging.
+ *
+ * @author matt
+ */
+public class GroupCopiesMerge {
+
+	private int nrCopies;
+	private GroupPartitions[] partitions;
+
+	private CountDownLatch aggregated;
+	private CountDownLatch merged;
+
+	/**
+	 * @param nrCopies the number of copies of the step
+	 */
+	public GroupCopiesMerge(int nrCopies) {
+		this.nrCopies = nrCopies;
+		partitions = new GroupPartitions[nrCopies];
+		aggregated = new CountDownLatch(nrCopies);
+		merged = new CountDownLatch(nrCopies);
+	}
+
+	public int getNrCopies() {
+		return nrCopies;
+	}
+
+	/**
+	 * @param copy the copy of the step
+	 * @param partition the partition number
+	 * @return true if the copy merges the partition of all the copies
+	 */
+	public boolean isOwner(int copy, int partition) {
+		return partition % nrCopies == copy;
+	}
+
+	/**
+	 * Hand over the groups of a copy after it aggregated all its rows.
+	 */
+	public void publish(int copy, GroupPartitions copyPartitions) {
+		partitions[copy] = copyPartitions;
+		aggregated.countDown();
+	}
+
+	/**
+	 * @param copy the copy of the step
+	 * @return the groups the copy handed over
+	 */
+	public GroupPartitions getPartitions(int copy) {
+		return partitions[copy];
+	}
+
+	/**
+	 * Wait until all the copies handed over their groups.
+	 *
+	 * @return false if the step was stopped while waiting
+	 */
+	public boolean waitUntilAggregated(StepInterface step) {
+		return await(aggregated, step);
+	}
+
+	/**
+	 * Tell the other copies that a copy is done reading their groups.
+	 */
+	public void setMerged() {
+		merged.countDown();
+	}
+
+	/**
+	 * Wait until all the copies are done reading the groups of the others.
+	 *
+	 * @return false if the step was stopped while waiting
+	 */
+	public boolean waitUntilMerged(StepInterface step) {
+		return await(merged, step);
+	}
+
+	private static boolean await(CountDownLatch latch, StepInterface step) {
+		try {
+			while (!step.isStopped()) {
+				if (latch.await(100, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+}
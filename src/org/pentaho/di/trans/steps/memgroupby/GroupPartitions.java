@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.memgroupby;
+
+import java.io.DataOutputStream;
+import java.util.HashMap;
+
+import org.apache.commons.vfs.FileObject;
+import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByData.HashEntry;
+
+/**
+ * The groups of the Memory Group By step, split in partitions on the hash code of the group.<br>
+ * <br>
+ * When the memory budget is used up, a partition is written to a temporary file: first the aggregates it holds,
+ * then all the rows that belong to it from then on.  At the end of the input the file is aggregated again,
+ * with partitions on the next bits of the hash code (level) in case it doesn't fit in memory either.
+ *
+ * @author matt
+ */
+public class GroupPartitions {
+
+	public static final int NR_PARTITIONS = 16;
+
+	/** Every level uses the next 4 bits of the hash code, the last level doesn't spill anymore */
+	public static final int MAX_LEVEL = 7;
+
+	public int level;
+
+	public HashMap<HashEntry, Aggregate>[] maps;
+
+	/** The estimated memory of the groups in each partition */
+	public long[] sizes;
+
+	/** The temporary files of the partitions that are written to disk, null for the partitions in memory */
+	public FileObject[] files;
+	public DataOutputStream[] outputs;
+	public long[] nrRecords;
+
+	/** The partitions another copy of the step merges and sends out, see GroupCopiesMerge */
+	public boolean[] handedOver;
+
+	public GroupPartitions(int level) {
+		this.level = level;
+
+		maps = newMaps(NR_PARTITIONS);
+		for (int p=0;p<NR_PARTITIONS;p++) {
+			maps[p] = new HashMap<HashEntry, Aggregate>(level==0 ? 500 : 100);
+		}
+		sizes = new long[NR_PARTITIONS];
+		files = new FileObject[NR_PARTITIONS];
+		outputs = new DataOutputStream[NR_PARTITIONS];
+		nrRecords = new long[NR_PARTITIONS];
+		handedOver = new boolean[NR_PARTITIONS];
+	}
+
+	/**
+	 * @return a new array for the maps of the partitions, an array of a generic type can only be created with a cast
+	 */
+	@SuppressWarnings("unchecked")
+	private static HashMap<HashEntry, Aggregate>[] newMaps(int size) {
+		return (HashMap<HashEntry, Aggregate>[]) new HashMap<?, ?>[size];
+	}
+
+	/**
+	 * @param hashCode the hash code of the group
+	 * @return the partition of the group on this level
+	 */
+	public int getPartition(int hashCode) {
+		int hash = hashCode * 0x9E3779B9;
+		hash ^= hash>>>16;
+		return (hash>>>(4*level)) & (NR_PARTITIONS-1);
+	}
+
+	/**
+	 * @return true if the partition is written to disk
+	 */
+	public boolean isSpilled(int partition) {
+		return files[partition]!=null;
+	}
+
+	/**
+	 * @return true if partitions can still be written to disk on this level
+	 */
+	public boolean canSpill() {
+		return level<MAX_LEVEL;
+	}
+}
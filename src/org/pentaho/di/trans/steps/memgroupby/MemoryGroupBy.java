@@ -11,10 +11,17 @@
  
 package org.pentaho.di.trans.steps.memgroupby;
 
-import java.util.HashMap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.apache.commons.vfs.FileObject;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleValueException;
@@ -24,7 +31,12 @@ import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueDataUtil;
 import org.pentaho.di.core.row.ValueMeta;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.sketch.HyperLogLog;
+import org.pentaho.di.core.sketch.Sketches;
+import org.pentaho.di.core.sketch.TDigest;
+import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.MemoryManager;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
@@ -44,6 +56,9 @@ import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByData.HashEntry;
 public class MemoryGroupBy extends BaseStep implements StepInterface
 {
 	private static Class<?> PKG = MemoryGroupByMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
+	
+	private static final byte RECORD_ROW       = 0;
+	private static final byte RECORD_AGGREGATE = 1;
 
 	private MemoryGroupByMeta meta;
 	private MemoryGroupByData data;
@@ -86,6 +101,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
         	// Calculate indexes, loop up fields, etc.
         	//
 			data.subjectnrs = new int[meta.getSubjectField().length];
+			data.percentiles = new double[meta.getSubjectField().length];
 
 			for (int i=0;i<meta.getSubjectField().length;i++)
 			{
@@ -96,6 +112,18 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 					setErrors(1);
 					stopAll();
 					return false;
+				}
+				if (meta.getAggregateType()[i]==MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_APPROX)
+				{
+					String percentile = environmentSubstitute(meta.getValueField()[i]);
+					data.percentiles[i] = Const.toDouble(percentile, -1.0)/100;
+					if (data.percentiles[i]<0.0 || data.percentiles[i]>1.0)
+					{
+						logError(BaseMessages.getString(PKG, "MemoryGroupBy.Log.InvalidPercentile", meta.getAggregateField()[i], percentile)); //$NON-NLS-1$
+						setErrors(1);
+						stopAll();
+						return false;
+					}
 				}
 			}
 						
@@ -117,6 +145,15 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 			data.valueMetaInteger = new ValueMeta("count", ValueMetaInterface.TYPE_INTEGER);
 			data.valueMetaNumber = new ValueMeta("sum", ValueMetaInterface.TYPE_NUMBER);
 			
+			// To write the distinct values of partial aggregates to disk
+			//
+			data.distinctMeta = new ValueMetaInterface[data.subjectnrs.length];
+			for (int i=0;i<data.subjectnrs.length;i++)
+			{
+				data.distinctMeta[i] = data.inputRowMeta.getValueMeta(data.subjectnrs[i]).clone();
+				data.distinctMeta[i].setStorageType(ValueMetaInterface.STORAGE_TYPE_NORMAL);
+			}
+			
 			// Initialize the group metadata
 			//
 			initGroupMeta(data.inputRowMeta);
@@ -130,6 +167,12 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 			data.groupAggMeta=new RowMeta();
 			data.groupAggMeta.addRowMeta(data.groupMeta);
 			data.groupAggMeta.addRowMeta(data.aggMeta);
+			
+			// The first copy keeps track of the merge of the groups of all the copies
+			//
+			if (isMergingCopies() && getCopy()>0) {
+				data.merge = ((MemoryGroupByData)getTrans().getStepDataInterface(getStepname(), 0)).merge;
+			}
 		}
         
         
@@ -137,28 +180,30 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
         //
         if (r==null)  // no more input to be expected... (or none received in the first place)
 		{
-        	// Dump the content of the map...
+        	// Take the groups of the partitions we own from the other copies...
+        	//
+        	if (data.merge!=null) {
+        		mergeCopies();
+        	}
+        	
+        	// Dump the content of the map and aggregate the partitions written to disk...
         	//
-			for (HashEntry entry : data.map.keySet()) {
-				Aggregate aggregate = data.map.get(entry);
-				Object[] aggregateResult = getAggregateResult(aggregate);
-				
-				Object[] outputRowData = RowDataUtil.allocateRowData(data.outputRowMeta.size());
-				int index=0;
-				for (int i=0;i<data.groupMeta.size();i++) {
-					outputRowData[index++] = entry.getGroupData()[i];
-				}
-				for (int i=0;i<data.aggMeta.size();i++) {
-					outputRowData[index++] = aggregateResult[i];
-				}
-				putRow(data.outputRowMeta, outputRowData);
-			}
+        	outputGroups(data.partitions);
 			
+        	// The other copies might still be reading our groups or temporary files
+        	//
+        	if (data.merge!=null) {
+        		data.merge.waitUntilMerged(this);
+        	}
+        	
+			if (data.memory!=null) {
+				data.memory.releaseAll();
+			}
 			setOutputDone();
 			return false;
 		}
         
-		addToAggregate(r);
+		addToAggregate(data.partitions, r);
 
 		if (checkFeedback(getLinesRead())) 
 		{
@@ -170,8 +215,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 
 	
 	// Calculate the aggregates in the row...
-	@SuppressWarnings("unchecked")
-	private void addToAggregate(Object[] r) throws KettleException
+	private void addToAggregate(GroupPartitions partitions, Object[] r) throws KettleException
 	{
 		// First, look up the row in the map...
 		//
@@ -182,7 +226,16 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 		}
 		HashEntry entry = data.getHashEntry(groupData);
 		
-		Aggregate aggregate = data.map.get(entry);
+		// The rows of a partition that is written to disk are aggregated at the end.
+		//
+		int partition = partitions.getPartition(entry.hashCode());
+		if (partitions.isSpilled(partition)) {
+			writeRecord(partitions, partition, RECORD_ROW, r, null);
+			return;
+		}
+		
+		boolean newGroup = false;
+		Aggregate aggregate = partitions.maps[partition].get(entry);
 		if (aggregate == null) {
 			// Create a new value...
 			//
@@ -191,7 +244,8 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 			
 			// Store it in the map!
 			//
-			data.map.put(entry, aggregate);
+			partitions.maps[partition].put(entry, aggregate);
+			newGroup = true;
 		}
 		
 		for (int i=0;i<data.subjectnrs.length;i++)
@@ -232,7 +286,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 				case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT :
 				  if (!subjMeta.isNull(subj)) {
 				    if (aggregate.distinctObjs == null) {
-				    	aggregate.distinctObjs = new Set[meta.getSubjectField().length];
+				    	aggregate.distinctObjs = Aggregate.newDistinctSets(meta.getSubjectField().length);
 				    }
 				    if (aggregate.distinctObjs[i] == null) {
 				    	aggregate.distinctObjs[i] = new TreeSet<Object>();
@@ -296,9 +350,473 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
                     }
                     
                     break; 
+                case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX :
+                case MemoryGroupByMeta.TYPE_GROUP_DISTINCT_SKETCH       :
+                	// Binary values holding a sketch (from a previous aggregation) are merged
+                	//
+                	if (!subjMeta.isNull(subj)) {
+                		getDistinctSketch(aggregate, i).addValue(subjMeta, subj);
+                	}
+                	break;
+                case MemoryGroupByMeta.TYPE_GROUP_MEDIAN_APPROX         :
+                case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_APPROX     :
+                case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_SKETCH     :
+                	if (!subjMeta.isNull(subj)) {
+                		getPercentileSketch(aggregate, i).addValue(subjMeta, subj);
+                	}
+                	break;
 				default: break;
 			}
 		}
+		
+		if (newGroup) {
+			reserveGroup(partitions, partition, groupData);
+		}
+	}
+	
+	/**
+	 * Add a partial aggregate, read back from disk, to the aggregate of its group.
+	 */
+	private void addToAggregate(GroupPartitions partitions, Object[] groupData, Aggregate partial) throws KettleException
+	{
+		HashEntry entry = data.getHashEntry(groupData);
+		
+		int partition = partitions.getPartition(entry.hashCode());
+		if (partitions.isSpilled(partition)) {
+			writeRecord(partitions, partition, RECORD_AGGREGATE, groupData, partial);
+			return;
+		}
+		
+		Aggregate aggregate = partitions.maps[partition].get(entry);
+		if (aggregate == null) {
+			partitions.maps[partition].put(entry, partial);
+			reserveGroup(partitions, partition, groupData);
+		} else {
+			mergeAggregate(aggregate, partial);
+		}
+	}
+	
+	/**
+	 * Merge a partial aggregate into an aggregate.  The partial aggregate covers the rows of the group that came after the ones in the aggregate.
+	 */
+	private void mergeAggregate(Aggregate aggregate, Aggregate partial) throws KettleValueException
+	{
+		for (int i=0;i<data.subjectnrs.length;i++)
+		{
+			ValueMetaInterface valueMeta=data.aggMeta.getValueMeta(i);
+			Object value = aggregate.agg[i];
+			Object other = partial.agg[i];
+			
+			switch(meta.getAggregateType()[i])
+			{
+				case MemoryGroupByMeta.TYPE_GROUP_SUM            :
+					aggregate.agg[i]=ValueDataUtil.sum(valueMeta, value, valueMeta, other);
+					break; 
+				case MemoryGroupByMeta.TYPE_GROUP_AVERAGE        :
+					aggregate.agg[i]=ValueDataUtil.sum(valueMeta, value, valueMeta, other);
+					aggregate.counts[i]+=partial.counts[i];
+					break; 
+				case MemoryGroupByMeta.TYPE_GROUP_STANDARD_DEVIATION :
+					// Combine the counts, means and sums of squared differences of both parts
+					//
+					double n1 = aggregate.counts[i];
+					double n2 = partial.counts[i];
+					if (n2>0) {
+						double n = n1+n2;
+						double delta = partial.mean[i]-aggregate.mean[i];
+						aggregate.agg[i] = (Double)value + (Double)other + delta*delta*n1*n2/n;
+						aggregate.mean[i] = aggregate.mean[i] + delta*n2/n;
+						aggregate.counts[i]+=partial.counts[i];
+					}
+					break; 
+				case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT :
+					if (partial.distinctObjs!=null && partial.distinctObjs[i]!=null) {
+					    if (aggregate.distinctObjs == null) {
+					    	aggregate.distinctObjs = Aggregate.newDistinctSets(meta.getSubjectField().length);
+					    }
+					    if (aggregate.distinctObjs[i] == null) {
+					    	aggregate.distinctObjs[i] = partial.distinctObjs[i];
+					    } else {
+					    	aggregate.distinctObjs[i].addAll(partial.distinctObjs[i]);
+					    }
+				    	aggregate.agg[i] = new Long(aggregate.distinctObjs[i].size());
+					}
+					aggregate.counts[i]+=partial.counts[i];
+					break;
+				case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL      :
+					aggregate.counts[i]+=partial.counts[i];
+					break;
+				case MemoryGroupByMeta.TYPE_GROUP_MIN            :
+					if (valueMeta.compare(other,value)<0) {
+						aggregate.agg[i]=other; 
+					}
+					break; 
+				case MemoryGroupByMeta.TYPE_GROUP_MAX            : 
+					if (valueMeta.compare(other,value)>0) {
+						aggregate.agg[i]=other; 
+					}
+					break; 
+                case MemoryGroupByMeta.TYPE_GROUP_FIRST          :
+                    if (valueMeta.isNull(value) && !valueMeta.isNull(other)) {
+                    	aggregate.agg[i]=other;
+                    }
+                    break; 
+                case MemoryGroupByMeta.TYPE_GROUP_LAST           : 
+                    if (!valueMeta.isNull(other)) {
+                    	aggregate.agg[i]=other; 
+                    }
+                    break; 
+                case MemoryGroupByMeta.TYPE_GROUP_FIRST_INCL_NULL:
+                	if (aggregate.counts[i]==0) {
+                		aggregate.agg[i]=other;
+                		aggregate.counts[i]=partial.counts[i];
+                	}
+                    break; 
+                case MemoryGroupByMeta.TYPE_GROUP_LAST_INCL_NULL : 
+                	aggregate.agg[i]=other; 
+                    break; 
+                case MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA   :
+                case MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING  :
+                	String separator = ", "; //$NON-NLS-1$
+                	if (meta.getAggregateType()[i]==MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING) {
+                		separator = Const.isEmpty(meta.getValueField()[i]) ? "" : environmentSubstitute(meta.getValueField()[i]);
+                	}
+                	String vString=valueMeta.getString(value);
+                	String oString=valueMeta.getString(other);
+                	if (!Const.isEmpty(oString)) {
+                		aggregate.agg[i] = Const.isEmpty(vString) ? oString : vString+separator+oString;
+                	}
+                    break; 
+                case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX :
+                case MemoryGroupByMeta.TYPE_GROUP_DISTINCT_SKETCH       :
+                	if (partial.sketches!=null && partial.sketches[i]!=null) {
+                		getDistinctSketch(aggregate, i).merge((HyperLogLog)partial.sketches[i]);
+                	}
+                	break;
+                case MemoryGroupByMeta.TYPE_GROUP_MEDIAN_APPROX         :
+                case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_APPROX     :
+                case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_SKETCH     :
+                	if (partial.sketches!=null && partial.sketches[i]!=null) {
+                		getPercentileSketch(aggregate, i).merge((TDigest)partial.sketches[i]);
+                	}
+                	break;
+				default: break;
+			}
+		}
+	}
+	
+	/**
+	 * Reserve the memory of a new group.  When the memory budget is used up or another step needs memory, 
+	 * the largest partitions are written to disk.
+	 */
+	private void reserveGroup(GroupPartitions partitions, int partition, Object[] groupData) throws KettleException
+	{
+		if (data.memory==null) {
+			return;
+		}
+		
+		// The group data, the map entry and the aggregate with its arrays.
+		//
+		long size = MemoryManager.estimateRowSize(data.entryMeta, groupData)+96+40*data.subjectnrs.length;
+		if (!partitions.canSpill()) {
+			data.memory.allocate(size);
+			partitions.sizes[partition]+=size;
+			return;
+		}
+		
+		boolean granted = data.memory.reserve(size);
+		if (granted) {
+			partitions.sizes[partition]+=size;
+		}
+		
+		if (!granted) {
+			spillLargestPartition(partitions);
+			if (!partitions.isSpilled(partition)) {
+				data.memory.allocate(size);
+				partitions.sizes[partition]+=size;
+			}
+		} else if (data.memory.isSpillRequested()) {
+			// Give back at least half of the memory we use
+			//
+			long target = data.memory.getUsed()/2;
+			while (data.memory.getUsed()>target && spillLargestPartition(partitions));
+			data.memory.clearSpillRequest();
+		}
+	}
+	
+	/**
+	 * Write the partition that holds the most groups in memory to a temporary file.
+	 * 
+	 * @return false if there was no partition left to write to disk
+	 */
+	private boolean spillLargestPartition(GroupPartitions partitions) throws KettleException
+	{
+		int largest = -1;
+		for (int p=0;p<GroupPartitions.NR_PARTITIONS;p++) {
+			if (!partitions.isSpilled(p) && !partitions.handedOver[p] && !partitions.maps[p].isEmpty() && (largest<0 || partitions.sizes[p]>partitions.sizes[largest])) {
+				largest = p;
+			}
+		}
+		if (largest<0) {
+			return false;
+		}
+		
+		if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "MemoryGroupBy.Log.SpillingPartition", Integer.toString(largest), Integer.toString(partitions.level), Integer.toString(partitions.maps[largest].size()))); //$NON-NLS-1$
+		
+		try {
+			partitions.files[largest] = KettleVFS.createTempFile("memgroupby", ".tmp", environmentSubstitute("%%java.io.tmpdir%%"), getTransMeta()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			partitions.outputs[largest] = new DataOutputStream(new BufferedOutputStream(KettleVFS.getOutputStream(partitions.files[largest], false), 50000));
+		} catch(IOException e) {
+			throw new KettleException(BaseMessages.getString(PKG, "MemoryGroupBy.Exception.UnableToCreateTemporaryFile"), e); //$NON-NLS-1$
+		}
+		
+		for (Map.Entry<HashEntry, Aggregate> group : partitions.maps[largest].entrySet()) {
+			writeRecord(partitions, largest, RECORD_AGGREGATE, group.getKey().getGroupData(), group.getValue());
+		}
+		partitions.maps[largest].clear();
+		
+		data.memory.release(partitions.sizes[largest]);
+		partitions.sizes[largest]=0L;
+		
+		return true;
+	}
+	
+	/**
+	 * Write a row or a partial aggregate to the temporary file of a partition.
+	 */
+	private void writeRecord(GroupPartitions partitions, int partition, byte type, Object[] data, Aggregate aggregate) throws KettleException
+	{
+		DataOutputStream dos = partitions.outputs[partition];
+		try {
+			dos.writeByte(type);
+			if (type==RECORD_ROW) {
+				this.data.inputRowMeta.writeData(dos, data);
+			} else {
+				this.data.entryMeta.writeData(dos, data);
+				this.data.aggMeta.writeData(dos, aggregate.agg);
+				for (int i=0;i<this.data.subjectnrs.length;i++) {
+					dos.writeLong(aggregate.counts[i]);
+					dos.writeDouble(aggregate.mean==null ? 0.0 : aggregate.mean[i]);
+					
+					Set<Object> distinct = aggregate.distinctObjs==null ? null : aggregate.distinctObjs[i];
+					if (distinct==null) {
+						dos.writeInt(-1);
+					} else {
+						dos.writeInt(distinct.size());
+						for (Object object : distinct) {
+							this.data.distinctMeta[i].writeData(dos, object);
+						}
+					}
+					
+					Object sketch = aggregate.sketches==null ? null : aggregate.sketches[i];
+					if (sketch==null) {
+						dos.writeInt(-1);
+					} else {
+						byte[] bytes = sketch instanceof HyperLogLog ? ((HyperLogLog)sketch).toByteArray() : ((TDigest)sketch).toByteArray();
+						dos.writeInt(bytes.length);
+						dos.write(bytes);
+					}
+				}
+			}
+			partitions.nrRecords[partition]++;
+		} catch(IOException e) {
+			throw new KettleException(BaseMessages.getString(PKG, "MemoryGroupBy.Exception.UnableToWriteTemporaryFile"), e); //$NON-NLS-1$
+		}
+	}
+	
+	private Aggregate readAggregate(DataInputStream dis) throws KettleException, IOException
+	{
+		Aggregate aggregate = new Aggregate();
+		aggregate.agg = data.aggMeta.readData(dis);
+		aggregate.counts = new long[data.subjectnrs.length];
+		aggregate.mean = new double[data.subjectnrs.length];
+		for (int i=0;i<data.subjectnrs.length;i++) {
+			aggregate.counts[i] = dis.readLong();
+			aggregate.mean[i] = dis.readDouble();
+			
+			int nrDistinct = dis.readInt();
+			if (nrDistinct>=0) {
+				if (aggregate.distinctObjs==null) {
+					aggregate.distinctObjs = Aggregate.newDistinctSets(data.subjectnrs.length);
+				}
+				aggregate.distinctObjs[i] = new TreeSet<Object>();
+				for (int d=0;d<nrDistinct;d++) {
+					aggregate.distinctObjs[i].add(data.distinctMeta[i].readData(dis));
+				}
+			}
+			
+			int sketchLength = dis.readInt();
+			if (sketchLength>=0) {
+				byte[] bytes = new byte[sketchLength];
+				dis.readFully(bytes);
+				if (HyperLogLog.isSketch(bytes)) {
+					getSketches(aggregate)[i] = HyperLogLog.fromByteArray(bytes);
+				} else {
+					getSketches(aggregate)[i] = TDigest.fromByteArray(bytes);
+				}
+			}
+		}
+		return aggregate;
+	}
+	
+	/**
+	 * Send out the groups held in memory, then aggregate the partitions that were written to disk, one at a time.
+	 */
+	private void outputGroups(GroupPartitions partitions) throws KettleException
+	{
+		for (int p=0;p<GroupPartitions.NR_PARTITIONS && !isStopped();p++) {
+			if (!partitions.isSpilled(p) && !partitions.handedOver[p]) {
+				for (Map.Entry<HashEntry, Aggregate> group : partitions.maps[p].entrySet()) {
+					outputGroup(group.getKey(), group.getValue());
+				}
+				partitions.maps[p].clear();
+				if (data.memory!=null) {
+					data.memory.release(partitions.sizes[p]);
+				}
+				partitions.sizes[p]=0L;
+			}
+		}
+		
+		for (int p=0;p<GroupPartitions.NR_PARTITIONS && !isStopped();p++) {
+			if (partitions.isSpilled(p) && !partitions.handedOver[p]) {
+				GroupPartitions next = new GroupPartitions(partitions.level+1);
+				try {
+					readPartition(partitions, p, next);
+					outputGroups(next);
+				} finally {
+					removeTempFiles(next);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return true if the copies of the step hand over their groups to each other instead of sending out partial aggregates.
+	 *         Partitioned copies already receive all the rows of a group.
+	 */
+	private boolean isMergingCopies()
+	{
+		StepMeta stepMeta = getStepMeta();
+		return meta.isMergingCopies() && stepMeta.getCopies()>1 && !stepMeta.isPartitioned() && !stepMeta.isClustered();
+	}
+	
+	/**
+	 * Hand over the partitions other copies own and merge the groups of the partitions we own from all the other copies.
+	 * The partial aggregates are combined just like the ones read back from disk.
+	 */
+	private void mergeCopies() throws KettleException
+	{
+		GroupCopiesMerge merge = data.merge;
+		GroupPartitions partitions = data.partitions;
+		
+		// The copy that owns a partition reserves the memory of its groups again
+		//
+		for (int p=0;p<GroupPartitions.NR_PARTITIONS;p++) {
+			if (!merge.isOwner(getCopy(), p)) {
+				partitions.handedOver[p] = true;
+				if (data.memory!=null) {
+					data.memory.release(partitions.sizes[p]);
+				}
+				partitions.sizes[p] = 0L;
+			}
+		}
+		merge.publish(getCopy(), partitions);
+		
+		if (!merge.waitUntilAggregated(this)) {
+			return;
+		}
+		
+		try {
+			for (int c=0;c<merge.getNrCopies() && !isStopped();c++) {
+				if (c==getCopy()) continue;
+				
+				GroupPartitions other = merge.getPartitions(c);
+				for (int p=0;p<GroupPartitions.NR_PARTITIONS;p++) {
+					if (merge.isOwner(getCopy(), p)) {
+						for (Map.Entry<HashEntry, Aggregate> group : other.maps[p].entrySet()) {
+							addToAggregate(partitions, group.getKey().getGroupData(), group.getValue());
+						}
+						other.maps[p].clear();
+						if (other.isSpilled(p)) {
+							readPartition(other, p, partitions);
+						}
+					}
+				}
+			}
+		} finally {
+			merge.setMerged();
+		}
+	}
+	
+	/**
+	 * Close and remove the temporary files that are left, when the step is stopped or fails.
+	 */
+	private void removeTempFiles(GroupPartitions partitions)
+	{
+		for (int p=0;p<GroupPartitions.NR_PARTITIONS;p++) {
+			BaseStep.closeQuietly(partitions.outputs[p]);
+			partitions.outputs[p] = null;
+			if (partitions.files[p]!=null) {
+				deleteTempFile(partitions.files[p]);
+				partitions.files[p] = null;
+			}
+		}
+	}
+	
+	/**
+	 * Aggregate the rows and partial aggregates in the temporary file of a partition, the file is removed afterwards.
+	 */
+	private void readPartition(GroupPartitions partitions, int partition, GroupPartitions next) throws KettleException
+	{
+		FileObject file = partitions.files[partition];
+		InputStream inputStream = null;
+		DataInputStream dis = null;
+		try {
+			partitions.outputs[partition].close();
+			partitions.outputs[partition] = null;
+			
+			inputStream = KettleVFS.getInputStream(file);
+			dis = new DataInputStream(new BufferedInputStream(inputStream, 50000));
+			for (long n=0;n<partitions.nrRecords[partition] && !isStopped();n++) {
+				if (dis.readByte()==RECORD_ROW) {
+					addToAggregate(next, data.inputRowMeta.readData(dis));
+				} else {
+					Object[] groupData = data.entryMeta.readData(dis);
+					addToAggregate(next, groupData, readAggregate(dis));
+				}
+			}
+		} catch(IOException e) {
+			throw new KettleException(BaseMessages.getString(PKG, "MemoryGroupBy.Exception.UnableToReadBackRowFromTemporaryFile"), e); //$NON-NLS-1$
+		} finally {
+			BaseStep.closeQuietly(dis);
+			BaseStep.closeQuietly(inputStream);
+			deleteTempFile(file);
+			partitions.files[partition] = null;
+		}
+	}
+	
+	private void outputGroup(HashEntry entry, Aggregate aggregate) throws KettleException
+	{
+		Object[] aggregateResult = getAggregateResult(aggregate);
+		
+		Object[] outputRowData = RowDataUtil.allocateRowData(data.outputRowMeta.size());
+		int index=0;
+		for (int i=0;i<data.groupMeta.size();i++) {
+			outputRowData[index++] = entry.getGroupData()[i];
+		}
+		for (int i=0;i<data.aggMeta.size();i++) {
+			outputRowData[index++] = aggregateResult[i];
+		}
+		putRow(data.outputRowMeta, outputRowData);
+	}
+	
+	private void deleteTempFile(FileObject file)
+	{
+		try {
+			file.delete();
+		} catch(IOException e) {
+			logError(BaseMessages.getString(PKG, "MemoryGroupBy.Log.UnableToDeleteTemporaryFile", file.toString()), e); //$NON-NLS-1$
+		}
 	}
 
 	// Initialize a group..
@@ -314,6 +832,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 				aggregate.counts[i]=0;
 			}
 			aggregate.distinctObjs = null;
+			aggregate.sketches = null;
 			aggregate.agg = new Object[data.subjectnrs.length];
 			aggregate.mean = new double[data.subjectnrs.length]; // sets all doubles to 0.0
 		}
@@ -354,6 +873,17 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
                     vMeta = new ValueMeta(meta.getAggregateField()[i], ValueMetaInterface.TYPE_STRING);
                     v = ""; //$NON-NLS-1$
                     break; 
+				case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX :
+                    vMeta = new ValueMeta(meta.getAggregateField()[i], ValueMetaInterface.TYPE_INTEGER);
+                    break;
+				case MemoryGroupByMeta.TYPE_GROUP_MEDIAN_APPROX         :
+				case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_APPROX     :
+                    vMeta = new ValueMeta(meta.getAggregateField()[i], ValueMetaInterface.TYPE_NUMBER);
+                    break;
+				case MemoryGroupByMeta.TYPE_GROUP_DISTINCT_SKETCH       :
+				case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_SKETCH     :
+                    vMeta = new ValueMeta(meta.getAggregateField()[i], ValueMetaInterface.TYPE_BINARY);
+                    break;
 				default: 
 					throw new KettleException("Unknown data type for aggregation : "+meta.getAggregateField()[i]);
 					// TODO raise an error here because we cannot continue successfully maybe the UI should validate this
@@ -361,7 +891,10 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 			}
             
             if (meta.getAggregateType()[i]!=MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL && 
-                meta.getAggregateType()[i]!=MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT)
+                meta.getAggregateType()[i]!=MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT &&
+                meta.getAggregateType()[i]!=MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX &&
+                meta.getAggregateType()[i]!=MemoryGroupByMeta.TYPE_GROUP_DISTINCT_SKETCH &&
+                meta.getAggregateType()[i]!=MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_SKETCH)
             {
             	vMeta.setLength(subjMeta.getLength(), subjMeta.getPrecision());
             }
@@ -387,6 +920,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 			
 			ValueMetaInterface normalMeta = valueMeta.clone();
 			normalMeta.setStorageType(ValueMetaInterface.STORAGE_TYPE_NORMAL);
+			data.entryMeta.addValueMeta(normalMeta);
 		}
 
         
@@ -417,6 +951,11 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
                     	double sum = (Double)ag / aggregate.counts[i];
                     	ag = Double.valueOf( Math.sqrt( sum ) );
                     	break;
+                    case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX : ag = new Long(getDistinctSketch(aggregate, i).cardinality()); break;
+                    case MemoryGroupByMeta.TYPE_GROUP_MEDIAN_APPROX         : ag = Sketches.getPercentile(getPercentileSketch(aggregate, i), 0.5); break;
+                    case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_APPROX     : ag = Sketches.getPercentile(getPercentileSketch(aggregate, i), data.percentiles[i]); break;
+                    case MemoryGroupByMeta.TYPE_GROUP_DISTINCT_SKETCH       : ag = getDistinctSketch(aggregate, i).toByteArray(); break;
+                    case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_SKETCH     : ag = getPercentileSketch(aggregate, i).toByteArray(); break;
                     default: break;
                 }
                 result[i]=ag;
@@ -427,6 +966,22 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 
     }
 		    
+    private HyperLogLog getDistinctSketch(Aggregate aggregate, int i)
+    {
+    	return Sketches.getDistinctSketch(getSketches(aggregate), i);
+    }
+    
+    private TDigest getPercentileSketch(Aggregate aggregate, int i)
+    {
+    	return Sketches.getPercentileSketch(getSketches(aggregate), i);
+    }
+    
+    private Object[] getSketches(Aggregate aggregate)
+    {
+    	if (aggregate.sketches==null) aggregate.sketches = new Object[data.subjectnrs.length];
+    	return aggregate.sketches;
+    }
+		    
 	public boolean init(StepMetaInterface smi, StepDataInterface sdi)
 	{
 		meta=(MemoryGroupByMeta)smi;
@@ -434,11 +989,39 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 		
 		if (super.init(smi, sdi))
 		{
-            data.map = new HashMap<HashEntry, Aggregate>(5000);
+            data.partitions = new GroupPartitions(0);
+            
+            if (isMergingCopies() && getCopy()==0) {
+            	data.merge = new GroupCopiesMerge(getStepMeta().getCopies());
+            }
+            
+            // With a memory budget the groups are written to disk when the budget is used up
+            //
+            if (getTrans()!=null && getTrans().getMemoryManager()!=null) {
+            	data.memory = getTrans().getMemoryManager().register(toString(), true);
+            }
             
             return true;
 		}
 		return false;
 	}
+	
+	public void dispose(StepMetaInterface smi, StepDataInterface sdi)
+	{
+		data=(MemoryGroupByData)sdi;
+		
+		// Remove the temporary files of the partitions in case we were stopped
+		//
+		if (data.partitions!=null) {
+			removeTempFiles(data.partitions);
+			data.partitions=null;
+		}
+		data.merge=null;
+		if (data.memory!=null) {
+			data.memory.close();
+			data.memory=null;
+		}
+		super.dispose(smi, sdi);
+	}
 
 }
\ No newline at end of file
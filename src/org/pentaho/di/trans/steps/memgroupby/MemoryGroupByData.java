@@ -11,11 +11,11 @@
 
 package org.pentaho.di.trans.steps.memgroupby;
 
-import java.util.HashMap;
 
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.MemoryConsumer;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
@@ -50,14 +50,15 @@ public class MemoryGroupByData extends BaseStepData implements StepDataInterface
 		
 		public int hashCode() {
 			try {
-				return groupMeta.hashCode(groupData);
+				return entryMeta.hashCode(groupData);
 			} catch (KettleValueException e) {
 				throw new RuntimeException(e);
 			}
 		}
 	}
 	
-	public HashMap<HashEntry, Aggregate> map;
+	/** The groups, in partitions that can be written to disk */
+	public GroupPartitions partitions;
 	
 	public RowMetaInterface aggMeta;
 	public RowMetaInterface groupMeta;
@@ -81,6 +82,18 @@ public class MemoryGroupByData extends BaseStepData implements StepDataInterface
 
 	public ValueMetaInterface valueMetaInteger;
 	public ValueMetaInterface valueMetaNumber;
+	
+	/** The metadata of the distinct values of the aggregates, with normal storage, to write them to disk */
+	public ValueMetaInterface[] distinctMeta;
+	
+	/** The percentiles of the approximate percentile aggregates, as a fraction */
+	public double[] percentiles;
+	
+	/** The memory reserved for the groups in the map, null if the transformation has no memory budget */
+	public MemoryConsumer memory;
+	
+	/** Shared by the copies of the step to merge their groups, null if the copies aren't merged */
+	public GroupCopiesMerge merge;
 
     
 	/**
@@ -64,6 +64,11 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
 	public static final int TYPE_GROUP_STANDARD_DEVIATION = 11;
 	public static final int TYPE_GROUP_CONCAT_STRING	  = 12;
 	public static final int TYPE_GROUP_COUNT_DISTINCT     = 13;
+	public static final int TYPE_GROUP_COUNT_DISTINCT_APPROX = 14;
+	public static final int TYPE_GROUP_MEDIAN_APPROX         = 15;
+	public static final int TYPE_GROUP_PERCENTILE_APPROX     = 16;
+	public static final int TYPE_GROUP_DISTINCT_SKETCH       = 17;
+	public static final int TYPE_GROUP_PERCENTILE_SKETCH     = 18;
 	
 
 	public static final String typeGroupCode[] =  /* WARNING: DO NOT TRANSLATE THIS. WE ARE SERIOUS, DON'T TRANSLATE! */ 
@@ -71,7 +76,8 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
 			"-", "SUM", "AVERAGE", "MIN", "MAX", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ 
 			"COUNT_ALL", "CONCAT_COMMA", "FIRST", "LAST", "FIRST_INCL_NULL", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ 
 			"LAST_INCL_NULL", "STD_DEV",  "CONCAT_STRING",	 //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
-			"COUNT_DISTINCT", //$NON-NLS-1$
+			"COUNT_DISTINCT", "COUNT_DISTINCT_APPROX", "MEDIAN_APPROX", "PERCENTILE_APPROX", "DISTINCT_SKETCH", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+			"PERCENTILE_SKETCH", //$NON-NLS-1$
 		};
 
 	public static final String typeGroupLongDesc[] = 
@@ -90,6 +96,11 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
             BaseMessages.getString(PKG, "MemoryGroupByMeta.TypeGroupLongDesc.STANDARD_DEVIATION"),  //$NON-NLS-1$ 
             BaseMessages.getString(PKG, "MemoryGroupByMeta.TypeGroupLongDesc.CONCAT_STRING"),  		//$NON-NLS-1$ 
             BaseMessages.getString(PKG, "MemoryGroupByMeta.TypeGroupLongDesc.COUNT_DISTINCT"),     //$NON-NLS-1$
+            BaseMessages.getString(PKG, "MemoryGroupByMeta.TypeGroupLongDesc.COUNT_DISTINCT_APPROX"),   //$NON-NLS-1$
+            BaseMessages.getString(PKG, "MemoryGroupByMeta.TypeGroupLongDesc.MEDIAN_APPROX"),           //$NON-NLS-1$
+            BaseMessages.getString(PKG, "MemoryGroupByMeta.TypeGroupLongDesc.PERCENTILE_APPROX"),       //$NON-NLS-1$
+            BaseMessages.getString(PKG, "MemoryGroupByMeta.TypeGroupLongDesc.DISTINCT_SKETCH"),         //$NON-NLS-1$
+            BaseMessages.getString(PKG, "MemoryGroupByMeta.TypeGroupLongDesc.PERCENTILE_SKETCH"),       //$NON-NLS-1$
 		};
 
 	
@@ -109,6 +120,9 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
     /** Flag to indicate that we always give back one row.  Defaults to true for existing transformations. */
     private boolean alwaysGivingBackOneRow;
     
+    /** Flag to indicate that the copies of the step merge their groups, so that every group is sent out once */
+    private boolean mergingCopies;
+    
 	public MemoryGroupByMeta()
 	{
 		super(); // allocate BaseStepMeta
@@ -257,6 +271,7 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
             } else {
             	alwaysGivingBackOneRow = "Y".equalsIgnoreCase( giveBackRow ); // $NON-NLS-1$
             }
+            mergingCopies = "Y".equalsIgnoreCase( XMLHandler.getTagValue(stepnode, "merge_copies") ); // $NON-NLS-1$
 		}
 		catch(Exception e)
 		{
@@ -334,7 +349,12 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
 					case TYPE_GROUP_MIN                : 
 					case TYPE_GROUP_MAX                : value_type = subj.getType(); break;
 					case TYPE_GROUP_COUNT_DISTINCT     :
+					case TYPE_GROUP_COUNT_DISTINCT_APPROX :
 					case TYPE_GROUP_COUNT_ALL          : value_type = ValueMetaInterface.TYPE_INTEGER; break;
+					case TYPE_GROUP_MEDIAN_APPROX      :
+					case TYPE_GROUP_PERCENTILE_APPROX  : value_type = ValueMetaInterface.TYPE_NUMBER; break;
+					case TYPE_GROUP_DISTINCT_SKETCH    :
+					case TYPE_GROUP_PERCENTILE_SKETCH  : value_type = ValueMetaInterface.TYPE_BINARY; break;
                     case TYPE_GROUP_CONCAT_COMMA       : value_type = ValueMetaInterface.TYPE_STRING; break;
 					case TYPE_GROUP_SUM                : 
 					case TYPE_GROUP_AVERAGE            : 
@@ -343,7 +363,7 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
 					default: break;
 				}
 				
-				if (aggregateType[i]==TYPE_GROUP_COUNT_ALL || aggregateType[i]==TYPE_GROUP_COUNT_DISTINCT)
+				if (aggregateType[i]==TYPE_GROUP_COUNT_ALL || aggregateType[i]==TYPE_GROUP_COUNT_DISTINCT || aggregateType[i]==TYPE_GROUP_COUNT_DISTINCT_APPROX)
                 {
                     length    = ValueMetaInterface.DEFAULT_INTEGER_LENGTH;
                     precision = 0;
@@ -378,6 +398,7 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
         StringBuffer retval = new StringBuffer(500);
 
         retval.append("      ").append(XMLHandler.addTagValue("give_back_row",  alwaysGivingBackOneRow)); //$NON-NLS-1$ //$NON-NLS-2$
+        retval.append("      ").append(XMLHandler.addTagValue("merge_copies",  mergingCopies)); //$NON-NLS-1$ //$NON-NLS-2$
         
 		retval.append("      <group>").append(Const.CR); //$NON-NLS-1$
 		for (int i=0;i<groupField.length;i++)
@@ -432,6 +453,7 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
 			}
 			
             alwaysGivingBackOneRow = rep.getStepAttributeBoolean(id_step, 0, "give_back_row", hasNumberOfValues); // $NON-NLS-1$
+            mergingCopies = rep.getStepAttributeBoolean(id_step, "merge_copies"); // $NON-NLS-1$
 		}
 		catch(Exception e)
 		{
@@ -445,6 +467,7 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
 		try
 		{
             rep.saveStepAttribute(id_transformation, id_step, "give_back_row",    alwaysGivingBackOneRow); // $NON-NLS-1$
+            rep.saveStepAttribute(id_transformation, id_step, "merge_copies",     mergingCopies); // $NON-NLS-1$
 
 			for (int i=0;i<groupField.length;i++)
 			{
@@ -505,6 +528,20 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
 	public void setAlwaysGivingBackOneRow(boolean alwaysGivingBackOneRow) {
 		this.alwaysGivingBackOneRow = alwaysGivingBackOneRow;
 	}
+
+	/**
+	 * @return true if the copies of the step merge their groups instead of each sending out partial aggregates
+	 */
+	public boolean isMergingCopies() {
+		return mergingCopies;
+	}
+
+	/**
+	 * @param mergingCopies true if the copies of the step merge their groups instead of each sending out partial aggregates
+	 */
+	public void setMergingCopies(boolean mergingCopies) {
+		this.mergingCopies = mergingCopies;
+	}
  
     public TransformationType[] getSupportedTransformationTypes() {
       return new TransformationType[] { TransformationType.Normal, };
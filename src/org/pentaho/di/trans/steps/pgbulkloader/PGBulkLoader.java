@@ -20,9 +20,11 @@ package org.pentaho.di.trans.steps.pgbulkloader;
 // 
 
 import java.math.BigDecimal;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.commons.vfs.FileObject;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileException;
@@ -90,6 +92,25 @@ public class PGBulkLoader extends BaseStep implements StepInterface
             contents.append(tableName + ";");
             contents.append(Const.CR);
         }
+        contents.append(getCopyStatement());
+        contents.append(";").append(Const.CR);
+
+		return contents.toString();
+	}
+
+	/**
+	 * @return the COPY ... FROM STDIN statement without the truncate and the semicolon, as the COPY API of the JDBC driver expects it
+	 */
+	public String getCopyStatement() throws KettleException
+	{
+		DatabaseMeta dm = meta.getDatabaseMeta();
+
+		StringBuffer contents = new StringBuffer(500);
+
+        String tableName = dm.getQuotedSchemaTableCombination(
+            environmentSubstitute(meta.getSchemaName()),
+            environmentSubstitute(meta.getTableName()));
+
         contents.append("COPY ");
         // Table name
 
@@ -120,7 +141,6 @@ public class PGBulkLoader extends BaseStep implements StepInterface
 
         // The "FORMAT" clause
         contents.append(" WITH CSV DELIMITER AS '").append(meta.getDelimiter()).append("' QUOTE AS '").append(meta.getEnclosure()).append("'");
-        contents.append(";").append(Const.CR);
 
 		return contents.toString();
 	}
@@ -253,6 +273,12 @@ public class PGBulkLoader extends BaseStep implements StepInterface
 			{
 				setOutputDone();
 
+				if (meta.isUsingCopyApi())
+				{
+					endCopyStreams();
+					return false;
+				}
+
 				// Close the output stream...
 				//
 				data.pgOutputStream.flush();
@@ -277,19 +303,44 @@ public class PGBulkLoader extends BaseStep implements StepInterface
 					data.keynrs[i] = getInputRowMeta().indexOfValue(meta.getFieldStream()[i]);
 				}
 
-				// execute the psql statement...
-				//
-				execute(meta, true);
-				
-				String copyCmd = getCopyCommand(getInputRowMeta(), r);
-				logBasic("Launching command: "+copyCmd);
-				data.pgOutputStream.write(copyCmd.getBytes());
-
-				// Write rows of data hereafter...
-				//
+				if (meta.isUsingCopyApi())
+				{
+					// The copies wait for the lock of a truncate until it's committed: commit it before they start
+					//
+					if (PGBulkLoaderMeta.ACTION_TRUNCATE.equalsIgnoreCase(meta.getLoadAction()))
+					{
+						data.copyDatabases[0].truncateTable(environmentSubstitute(meta.getSchemaName()), environmentSubstitute(meta.getTableName()));
+						data.copyDatabases[0].commit(true);
+					}
+					startCopyStreams();
+				}
+				else
+				{
+					// execute the psql statement...
+					//
+					execute(meta, true);
+					
+					String copyCmd = getCopyCommand(getInputRowMeta(), r);
+					logBasic("Launching command: "+copyCmd);
+					data.pgOutputStream.write(copyCmd.getBytes());
+	
+					// Write rows of data hereafter...
+					//
+				}
 			}
 			
-			writeRowToPostgres(getInputRowMeta(), r);
+			if (meta.isUsingCopyApi())
+			{
+				data.copyBuffer.addRow(r);
+				if (data.copyBuffer.getRowCount()>=data.copyChunkSize)
+				{
+					submitCopyBuffer();
+				}
+			}
+			else
+			{
+				writeRowToPostgres(getInputRowMeta(), r);
+			}
 			
 			putRow(getInputRowMeta(), r);
 			incrementLinesOutput();
@@ -306,6 +357,80 @@ public class PGBulkLoader extends BaseStep implements StepInterface
 		} 
 	}
 
+	/**
+	 * Start a COPY on every connection and get the chunks of rows ready.
+	 */
+	private void startCopyStreams() throws KettleException
+	{
+		String copyCommand = getCopyStatement();
+		logBasic(BaseMessages.getString(PKG, "PGBulkLoader.Log.CopyStreams", copyCommand, Integer.toString(data.copyDatabases.length))); //$NON-NLS-1$
+
+		// Every stream can have a chunk waiting and one being written, the step fills one more
+		//
+		data.freeCopyBuffers = new LinkedBlockingQueue<PGCopyBuffer>();
+		int nrBuffers = data.copyDatabases.length*(PGCopyStream.QUEUE_SIZE+1)+1;
+		for (int i=0;i<nrBuffers;i++)
+		{
+			data.freeCopyBuffers.add(new PGCopyBuffer(getInputRowMeta(), data, data.copyChunkSize*64));
+		}
+		data.copyBuffer = data.freeCopyBuffers.poll();
+
+		data.copyStreams = new PGCopyStream[data.copyDatabases.length];
+		for (int i=0;i<data.copyStreams.length;i++)
+		{
+			data.copyStreams[i] = new PGCopyStream(data.copyDatabases[i], copyCommand, data.freeCopyBuffers);
+			data.copyStreams[i].start(getStepname()+" copy stream "+i, getTransMeta().isUsingVirtualThreads());
+		}
+	}
+
+	/**
+	 * Hand over the chunk of rows to the next stream and take an empty one.
+	 */
+	private void submitCopyBuffer() throws KettleException
+	{
+		PGCopyStream stream = data.copyStreams[data.nextCopyStream];
+		data.nextCopyStream = (data.nextCopyStream+1)%data.copyStreams.length;
+
+		stream.submit(data.copyBuffer);
+		try
+		{
+			data.copyBuffer = data.freeCopyBuffers.take();
+		}
+		catch(InterruptedException e)
+		{
+			throw new KettleException("Interrupted while waiting for rows to be copied", e);
+		}
+	}
+
+	/**
+	 * Copy the last rows, end the copy on all the connections and commit them.
+	 */
+	private void endCopyStreams() throws KettleException
+	{
+		if (data.copyStreams==null)
+		{
+			return; // no rows
+		}
+		if (data.copyBuffer.getRowCount()>0)
+		{
+			submitCopyBuffer();
+		}
+
+		long rowsLoaded = 0L;
+		for (PGCopyStream stream : data.copyStreams)
+		{
+			stream.finish(false);
+			rowsLoaded+=stream.getRowsLoaded();
+		}
+		data.copyStreams = null;
+
+		for (Database db : data.copyDatabases)
+		{
+			db.commit(true);
+		}
+		logBasic(BaseMessages.getString(PKG, "PGBulkLoader.Log.RowsCopied", Long.toString(rowsLoaded))); //$NON-NLS-1$
+	}
+
     private void writeRowToPostgres(RowMetaInterface rowMeta, Object[] r) throws KettleException {
 		
     	try {
@@ -449,9 +574,80 @@ public class PGBulkLoader extends BaseStep implements StepInterface
 				}
 
 			}
+			
+			if (meta.isUsingCopyApi())
+			{
+				data.copyChunkSize = meta.getCopyChunkSize()>0 ? meta.getCopyChunkSize() : PGBulkLoaderMeta.DEFAULT_COPY_CHUNK_SIZE;
+				data.copyDatabases = new Database[Math.max(1, meta.getNrCopyStreams())];
+				try
+				{
+					for (int i=0;i<data.copyDatabases.length;i++)
+					{
+						data.copyDatabases[i] = new Database(this, meta.getDatabaseMeta());
+						data.copyDatabases[i].shareVariablesWith(this);
+						data.copyDatabases[i].connect(getPartitionID());
+						data.copyDatabases[i].setAutoCommit(false);
+					}
+				}
+				catch(KettleException e)
+				{
+					logError(BaseMessages.getString(PKG, "PGBulkLoader.Log.UnableToConnect"), e); //$NON-NLS-1$
+					return false;
+				}
+			}
 			return true;
 		}
 		return false;
 	}
 	
+	public void dispose(StepMetaInterface smi, StepDataInterface sdi)
+	{
+		meta=(PGBulkLoaderMeta)smi;
+		data=(PGBulkLoaderData)sdi;
+
+		if (data.copyStreams!=null)
+		{
+			// Stopped or failed before the end: cancel the copies
+			//
+			for (PGCopyStream stream : data.copyStreams)
+			{
+				try
+				{
+					stream.finish(true);
+				}
+				catch(KettleException e)
+				{
+					logError(BaseMessages.getString(PKG, "PGBulkLoader.Log.ErrorInStep"), e); //$NON-NLS-1$
+					setErrors(1);
+				}
+			}
+			data.copyStreams = null;
+			setErrors(Math.max(1, getErrors()));
+		}
+		if (data.copyDatabases!=null)
+		{
+			for (Database db : data.copyDatabases)
+			{
+				if (db==null) continue;
+				try
+				{
+					if (getErrors()>0)
+					{
+						db.rollback();
+					}
+				}
+				catch(KettleException e)
+				{
+					logError(BaseMessages.getString(PKG, "PGBulkLoader.Log.ErrorInStep"), e); //$NON-NLS-1$
+				}
+				finally
+				{
+					db.disconnect();
+				}
+			}
+			data.copyDatabases = null;
+		}
+		super.dispose(smi, sdi);
+	}
+	
 }
\ No newline at end of file
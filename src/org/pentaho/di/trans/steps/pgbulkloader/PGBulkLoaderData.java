@@ -12,6 +12,7 @@
 package org.pentaho.di.trans.steps.pgbulkloader;
 
 import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
 
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.row.ValueMeta;
@@ -52,6 +53,14 @@ public class PGBulkLoaderData extends BaseStepData implements StepDataInterface
 	public ValueMetaInterface dateMeta;
 	public ValueMetaInterface dateTimeMeta;
 	
+	/** The connections, the streams and the chunks of rows of the COPY API */
+	public Database[] copyDatabases;
+	public PGCopyStream[] copyStreams;
+	public BlockingQueue<PGCopyBuffer> freeCopyBuffers;
+	public PGCopyBuffer copyBuffer;
+	public int copyChunkSize;
+	public int nextCopyStream;
+	
 	
 	/**
 	 *  Default constructor.
@@ -86,6 +86,15 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInterface
 	/** The enclosure to use for loading */
 	private String enclosure;
 	
+	/** Stream the rows with the COPY API of the JDBC driver instead of the psql client */
+	private boolean usingCopyApi;
+	
+	/** The number of rows written to a COPY stream in one go */
+	private int copyChunkSize;
+	
+	/** The number of connections that copy into the table in parallel */
+	private int nrCopyStreams;
+	
 	/*
 	 * Do not translate following values!!! They are will end up in the job export.
 	 */
@@ -103,6 +112,8 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInterface
 	public static final int NR_DATE_MASK_DATE           = 1;
 	public static final int NR_DATE_MASK_DATETIME       = 2;
 	
+	public static final int DEFAULT_COPY_CHUNK_SIZE     = 5000;
+	
 	public PGBulkLoaderMeta()
 	{
 		super();
@@ -234,6 +245,9 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInterface
 			loadAction     = XMLHandler.getTagValue(stepnode, "load_action");  //$NON-NLS-1$			
 			PsqlPath         = XMLHandler.getTagValue(stepnode, "PsqlPath");       //$NON-NLS-1$
 			dbNameOverride = XMLHandler.getTagValue(stepnode, "dbname_override");  //$NON-NLS-1$
+			usingCopyApi   = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "use_copy_api")); //$NON-NLS-1$
+			copyChunkSize  = Const.toInt(XMLHandler.getTagValue(stepnode, "copy_chunk_size"), DEFAULT_COPY_CHUNK_SIZE); //$NON-NLS-1$
+			nrCopyStreams  = Math.max(1, Const.toInt(XMLHandler.getTagValue(stepnode, "copy_streams"), 1)); //$NON-NLS-1$
 
 			int nrvalues = XMLHandler.countNodes(stepnode, "mapping");      //$NON-NLS-1$
 			allocate(nrvalues);
@@ -279,6 +293,9 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInterface
 		dbNameOverride = "";
 		delimiter = ";";
 		enclosure = "\"";
+		usingCopyApi = false;
+		copyChunkSize = DEFAULT_COPY_CHUNK_SIZE;
+		nrCopyStreams = 1;
 		int nrvalues = 0;
 		allocate(nrvalues);
 	}
@@ -295,6 +312,9 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInterface
 		retval.append("    ").append(XMLHandler.addTagValue("dbname_override", dbNameOverride));      //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("    ").append(XMLHandler.addTagValue("enclosure",       enclosure));        //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("    ").append(XMLHandler.addTagValue("delimiter",       delimiter));      //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("    ").append(XMLHandler.addTagValue("use_copy_api",    usingCopyApi));   //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("    ").append(XMLHandler.addTagValue("copy_chunk_size", copyChunkSize));  //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("    ").append(XMLHandler.addTagValue("copy_streams",    nrCopyStreams));  //$NON-NLS-1$ //$NON-NLS-2$
 		
 		for (int i=0;i<fieldTable.length;i++)
 		{
@@ -320,6 +340,10 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInterface
 			PsqlPath         =      rep.getStepAttributeString(id_step,  "PsqlPath");         //$NON-NLS-1$
 
 			dbNameOverride =      rep.getStepAttributeString(id_step,  "dbname_override");//$NON-NLS-1$			
+			usingCopyApi   =      rep.getStepAttributeBoolean(id_step, "use_copy_api");   //$NON-NLS-1$
+			copyChunkSize  = (int)rep.getStepAttributeInteger(id_step, "copy_chunk_size");//$NON-NLS-1$
+			if (copyChunkSize<=0) copyChunkSize = DEFAULT_COPY_CHUNK_SIZE;
+			nrCopyStreams  = Math.max(1, (int)rep.getStepAttributeInteger(id_step, "copy_streams")); //$NON-NLS-1$
 			
 			int nrvalues = rep.countNrStepAttributes(id_step, "stream_name");             //$NON-NLS-1$
 
@@ -352,6 +376,9 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInterface
 			rep.saveStepAttribute(id_transformation, id_step, "PsqlPath",          PsqlPath);        //$NON-NLS-1$
 
 			rep.saveStepAttribute(id_transformation, id_step, "dbname_override", dbNameOverride);//$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "use_copy_api",    usingCopyApi);  //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "copy_chunk_size", copyChunkSize); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "copy_streams",    nrCopyStreams); //$NON-NLS-1$
 
 			for (int i=0;i<fieldTable.length;i++)
 			{
@@ -736,4 +763,46 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInterface
 	public void setEnclosure(String enclosure) {
 		this.enclosure = enclosure;
 	}	
+
+	/**
+	 * @return true if the rows are streamed with the COPY API of the JDBC driver instead of the psql client
+	 */
+	public boolean isUsingCopyApi() {
+		return usingCopyApi;
+	}
+
+	/**
+	 * @param usingCopyApi true to stream the rows with the COPY API of the JDBC driver instead of the psql client
+	 */
+	public void setUsingCopyApi(boolean usingCopyApi) {
+		this.usingCopyApi = usingCopyApi;
+	}
+
+	/**
+	 * @return the number of rows written to a COPY stream in one go
+	 */
+	public int getCopyChunkSize() {
+		return copyChunkSize;
+	}
+
+	/**
+	 * @param copyChunkSize the number of rows written to a COPY stream in one go
+	 */
+	public void setCopyChunkSize(int copyChunkSize) {
+		this.copyChunkSize = copyChunkSize;
+	}
+
+	/**
+	 * @return the number of connections that copy into the table in parallel
+	 */
+	public int getNrCopyStreams() {
+		return nrCopyStreams;
+	}
+
+	/**
+	 * @param nrCopyStreams the number of connections that copy into the table in parallel
+	 */
+	public void setNrCopyStreams(int nrCopyStreams) {
+		this.nrCopyStreams = nrCopyStreams;
+	}
 }
\ No newline at end of file
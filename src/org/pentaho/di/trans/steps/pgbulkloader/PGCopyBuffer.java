@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.pgbulkloader;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * A chunk of rows in the CSV format of the COPY command, written straight into a byte array that is used again for the next chunk.<br>
+ * <br>
+ * The data is encoded in UTF-8, the client encoding of the PostgreSQL JDBC driver.
+ * Strings are always enclosed, a null value is written as nothing at all.
+ * Values with lazy conversion are copied as they are, strings only if they are encoded in UTF-8.
+ *
+ * @author matt
+ */
+public class PGCopyBuffer {
+
+	private static final String UTF8 = "UTF-8";
+	private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+	private byte[] buffer;
+	private int    length;
+	private int    rowCount;
+
+	private ValueMetaInterface[] valueMetas;
+	private int[]     fieldnrs;
+	private int[]     dateFormatChoices;
+	private boolean[] passThrough;
+
+	private ValueMetaInterface dateMeta;
+	private ValueMetaInterface dateTimeMeta;
+
+	private byte[] separator;
+	private byte   quote;
+	private boolean enclosed;
+	private byte   newline;
+
+	/**
+	 * @param rowMeta the metadata of the input rows
+	 * @param data the field numbers, date formats, delimiter and enclosure worked out by the step
+	 * @param initialSize the initial size of the buffer in bytes
+	 */
+	public PGCopyBuffer(RowMetaInterface rowMeta, PGBulkLoaderData data, int initialSize) throws KettleException {
+		buffer = new byte[Math.max(1024, initialSize)];
+
+		fieldnrs = data.keynrs;
+		dateFormatChoices = data.dateFormatChoices;
+		dateMeta = data.dateMeta;
+		dateTimeMeta = data.dateTimeMeta;
+
+		separator = data.separator;
+		enclosed = data.quote.length>0;
+		quote = enclosed ? data.quote[0] : 0;
+		newline = '\n';
+
+		boolean utf8Default = Charset.defaultCharset().name().equalsIgnoreCase(UTF8);
+
+		valueMetas = new ValueMetaInterface[fieldnrs.length];
+		passThrough = new boolean[fieldnrs.length];
+		for (int i=0;i<fieldnrs.length;i++) {
+			valueMetas[i] = rowMeta.getValueMeta(fieldnrs[i]);
+			if (valueMetas[i].isStorageBinaryString()) {
+				if (valueMetas[i].isString()) {
+					String encoding = valueMetas[i].getStringEncoding();
+					passThrough[i] = Const.isEmpty(encoding) ? utf8Default : Charset.forName(encoding).name().equalsIgnoreCase(UTF8);
+				} else {
+					// A date is only passed along in the format it was read in without a date mask, like with psql
+					//
+					passThrough[i] = !valueMetas[i].isDate() || dateFormatChoices[i]==PGBulkLoaderMeta.NR_DATE_MASK_PASS_THROUGH;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Format a row at the end of the buffer.
+	 */
+	public void addRow(Object[] r) throws KettleException {
+		for (int i=0;i<valueMetas.length;i++) {
+			if (i>0) {
+				write(separator);
+			}
+			ValueMetaInterface valueMeta = valueMetas[i];
+			Object valueData = r[fieldnrs[i]];
+			if (valueMeta.isNull(valueData)) {
+				continue; // nothing at all is a null value
+			}
+
+			if (passThrough[i]) {
+				if (valueMeta.isString()) {
+					writeEnclosed((byte[])valueData);
+				} else {
+					write((byte[])valueData);
+				}
+				continue;
+			}
+
+			switch(valueMeta.getType()) {
+			case ValueMetaInterface.TYPE_STRING:
+				writeEnclosed(getUtf8(valueMeta.getString(valueData)));
+				break;
+			case ValueMetaInterface.TYPE_INTEGER:
+				writeAscii(Long.toString(valueMeta.getInteger(valueData).longValue()));
+				break;
+			case ValueMetaInterface.TYPE_NUMBER:
+				writeAscii(Double.toString(valueMeta.getNumber(valueData).doubleValue()));
+				break;
+			case ValueMetaInterface.TYPE_BIGNUMBER:
+				BigDecimal big = valueMeta.getBigNumber(valueData);
+				writeAscii(big.toString());
+				break;
+			case ValueMetaInterface.TYPE_BOOLEAN:
+				writeAscii(valueMeta.getBoolean(valueData).booleanValue() ? "t" : "f");
+				break;
+			case ValueMetaInterface.TYPE_DATE:
+				switch(dateFormatChoices[i]) {
+				case PGBulkLoaderMeta.NR_DATE_MASK_DATE:
+					writeAscii(dateMeta.getString(valueMeta.getDate(valueData)));
+					break;
+				case PGBulkLoaderMeta.NR_DATE_MASK_DATETIME:
+					writeAscii(dateTimeMeta.getString(valueMeta.getDate(valueData)));
+					break;
+				default:
+					write(getUtf8(valueMeta.getString(valueData)));
+					break;
+				}
+				break;
+			case ValueMetaInterface.TYPE_BINARY:
+				writeHex(valueMeta.getBinary(valueData));
+				break;
+			default:
+				writeEnclosed(getUtf8(valueMeta.getString(valueData)));
+				break;
+			}
+		}
+		write(newline);
+		rowCount++;
+	}
+
+	/**
+	 * @return the buffer, only the first getLength() bytes are used
+	 */
+	public byte[] getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * @return the number of bytes in the buffer
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the number of rows in the buffer
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Empty the buffer to use it again, the memory is kept.
+	 */
+	public void reset() {
+		length = 0;
+		rowCount = 0;
+	}
+
+	private void ensureCapacity(int extra) {
+		if (length+extra>buffer.length) {
+			byte[] bigger = new byte[Math.max(buffer.length*2, length+extra)];
+			System.arraycopy(buffer, 0, bigger, 0, length);
+			buffer = bigger;
+		}
+	}
+
+	private void write(byte b) {
+		ensureCapacity(1);
+		buffer[length++] = b;
+	}
+
+	private void write(byte[] bytes) {
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, buffer, length, bytes.length);
+		length+=bytes.length;
+	}
+
+	/**
+	 * Numbers and dates only have ASCII characters, they're copied without an encoder.
+	 */
+	private void writeAscii(String string) {
+		if (string==null) {
+			return;
+		}
+		int size = string.length();
+		ensureCapacity(size);
+		for (int i=0;i<size;i++) {
+			buffer[length++] = (byte)string.charAt(i);
+		}
+	}
+
+	/**
+	 * Enclose a value and double the enclosures in it.  The enclosure is ASCII, it can't be part of a multi-byte UTF-8 character.
+	 */
+	private void writeEnclosed(byte[] bytes) {
+		if (!enclosed) {
+			write(bytes);
+			return;
+		}
+		ensureCapacity(bytes.length+2);
+		buffer[length++] = quote;
+		for (int i=0;i<bytes.length;i++) {
+			if (bytes[i]==quote) {
+				ensureCapacity(bytes.length-i+2);
+				buffer[length++] = quote;
+			}
+			buffer[length++] = bytes[i];
+		}
+		buffer[length++] = quote;
+	}
+
+	/**
+	 * The hex format of bytea: \x followed by 2 hexadecimal digits per byte.
+	 */
+	private void writeHex(byte[] bytes) {
+		ensureCapacity(2+bytes.length*2);
+		buffer[length++] = '\\';
+		buffer[length++] = 'x';
+		for (int i=0;i<bytes.length;i++) {
+			buffer[length++] = HEX[(bytes[i]>>4) & 0x0F];
+			buffer[length++] = HEX[bytes[i] & 0x0F];
+		}
+	}
+
+	private static byte[] getUtf8(String string) throws KettleException {
+		try {
+			return string.getBytes(UTF8);
+		} catch(UnsupportedEncodingException e) {
+			throw new KettleException(e);
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.pgbulkloader;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.util.ThreadUtil;
+
+/**
+ * Streams chunks of rows into a table with the COPY API of the PostgreSQL JDBC driver, in a thread of its own.<br>
+ * <br>
+ * The COPY API is only available in driver version 8.4 and later, it's called by reflection so the step also works with older drivers for psql.
+ * The copy is not committed: the step commits all the connections at the end.
+ * The chunks are handed back to the step once they are written, whether the copy failed or not, so the step never waits for a buffer forever.
+ *
+ * @author matt
+ */
+public class PGCopyStream implements Runnable {
+
+	/** The number of chunks that can wait to be written */
+	public static final int QUEUE_SIZE = 2;
+
+	private static final Object END = new Object();
+
+	private Database db;
+	private String copyCommand;
+	private BlockingQueue<PGCopyBuffer> free;
+
+	private BlockingQueue<Object> todo;
+	private Thread thread;
+	private volatile KettleException exception;
+	private volatile boolean aborted;
+	private long rowsLoaded;
+
+	private Object copyIn;
+	private Method writeToCopy;
+	private Method endCopy;
+	private Method cancelCopy;
+
+	/**
+	 * @param db the connection to copy with, it's no longer used by the step until the stream is finished
+	 * @param copyCommand the COPY ... FROM STDIN command
+	 * @param free the queue the chunks go back to once they're written
+	 */
+	public PGCopyStream(Database db, String copyCommand, BlockingQueue<PGCopyBuffer> free) {
+		this.db = db;
+		this.copyCommand = copyCommand;
+		this.free = free;
+
+		todo = new ArrayBlockingQueue<Object>(QUEUE_SIZE+1);
+	}
+
+	/**
+	 * Start the thread that copies the chunks.
+	 *
+	 * @param threadName the name of the thread
+	 * @param virtual true to copy in a virtual thread if the JVM supports it
+	 */
+	public void start(String threadName, boolean virtual) {
+		thread = ThreadUtil.newThread(this, virtual);
+		thread.setName(threadName);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Hand over a chunk to write, wait if the previous chunks are not written yet.
+	 *
+	 * @throws KettleException if the copy failed
+	 */
+	public void submit(PGCopyBuffer buffer) throws KettleException {
+		if (exception!=null) {
+			throw exception;
+		}
+		try {
+			todo.put(buffer);
+		} catch(InterruptedException e) {
+			throw new KettleException("Interrupted while handing over rows to copy", e);
+		}
+	}
+
+	/**
+	 * Write the chunks that were handed over, end the copy and stop the thread.
+	 *
+	 * @param abort true to discard the chunks and cancel the copy
+	 * @throws KettleException if the copy failed
+	 */
+	public void finish(boolean abort) throws KettleException {
+		if (thread!=null) {
+			aborted = abort;
+			try {
+				todo.put(END);
+				thread.join();
+			} catch(InterruptedException e) {
+				throw new KettleException("Interrupted while waiting for the copy to finish", e);
+			}
+			thread = null;
+		}
+		if (exception!=null && !abort) {
+			throw exception;
+		}
+	}
+
+	/**
+	 * @return the problem that stopped the copy or null
+	 */
+	public KettleException getException() {
+		return exception;
+	}
+
+	/**
+	 * @return the number of rows the database reported once the copy ended
+	 */
+	public long getRowsLoaded() {
+		return rowsLoaded;
+	}
+
+	public void run() {
+		try {
+			startCopy();
+		} catch(Exception e) {
+			fail(e);
+		}
+		try {
+			while (true) {
+				Object item = todo.take();
+				if (item==END) {
+					break;
+				}
+				PGCopyBuffer buffer = (PGCopyBuffer)item;
+				if (exception==null && !aborted) {
+					try {
+						writeToCopy.invoke(copyIn, new Object[] { buffer.getBuffer(), Integer.valueOf(0), Integer.valueOf(buffer.getLength()), });
+					} catch(Exception e) {
+						fail(e);
+					}
+				}
+				buffer.reset();
+				free.add(buffer);
+			}
+			if (exception==null) {
+				if (aborted) {
+					cancelCopy.invoke(copyIn, new Object[0]);
+				} else {
+					rowsLoaded = ((Long)endCopy.invoke(copyIn, new Object[0])).longValue();
+				}
+			}
+		} catch(InterruptedException e) {
+			fail(e);
+		} catch(Exception e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Issue the COPY command through the COPY API of the driver.
+	 */
+	private void startCopy() throws Exception {
+		Connection connection = db.getConnection();
+		ClassLoader classLoader = connection.getClass().getClassLoader();
+		Class<?> pgConnectionClass;
+		Class<?> copyManagerClass;
+		Class<?> copyInClass;
+		try {
+			pgConnectionClass = Class.forName("org.postgresql.PGConnection", true, classLoader);
+			copyManagerClass = Class.forName("org.postgresql.copy.CopyManager", true, classLoader);
+			copyInClass = Class.forName("org.postgresql.copy.CopyIn", true, classLoader);
+		} catch(ClassNotFoundException e) {
+			throw new KettleException("The COPY API needs version 8.4 or later of the PostgreSQL JDBC driver", e);
+		}
+		if (!pgConnectionClass.isInstance(connection)) {
+			throw new KettleException("The COPY API needs a connection of the PostgreSQL JDBC driver, not ["+connection.getClass().getName()+"] (connection pooling is not supported)");
+		}
+
+		Object copyManager = pgConnectionClass.getMethod("getCopyAPI", new Class<?>[0]).invoke(connection, new Object[0]);
+		copyIn = copyManagerClass.getMethod("copyIn", new Class<?>[] { String.class, }).invoke(copyManager, new Object[] { copyCommand, });
+
+		writeToCopy = copyInClass.getMethod("writeToCopy", new Class<?>[] { byte[].class, int.class, int.class, });
+		endCopy = copyInClass.getMethod("endCopy", new Class<?>[0]);
+		cancelCopy = copyInClass.getMethod("cancelCopy", new Class<?>[0]);
+	}
+
+	private void fail(Exception e) {
+		Throwable cause = e;
+		if (e instanceof InvocationTargetException && e.getCause()!=null) {
+			cause = e.getCause();
+		}
+		if (exception==null) {
+			exception = cause instanceof KettleException ? (KettleException)cause : new KettleException("Error copying rows into the database with ["+copyCommand+"]", cause);
+		}
+		if (copyIn!=null && cancelCopy!=null) {
+			try {
+				cancelCopy.invoke(copyIn, new Object[0]);
+			} catch(Exception ce) {
+				// The copy is already over, the original problem is reported
+			}
+		}
+		copyIn = null;
+	}
+}
@@ -12,13 +12,18 @@
  */
 package org.pentaho.di.trans.steps.sort;
     /**
-     * Keeps track of which temporary file a row is coming from
+     * Keeps track of which temporary file a row is coming from, with its sort key if there is one
      */
 	public class RowTempFile {
 		public Object[] row;
+		public byte[] key;
 		public int fileNumber;
 		public RowTempFile(Object[] row, int fileNumber) {
+			this(row, null, fileNumber);
+		}
+		public RowTempFile(Object[] row, byte[] key, int fileNumber) {
 			this.row = row;
+			this.key = key;
 			this.fileNumber=fileNumber;
 		}
 	}
\ No newline at end of file
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.sort;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Encodes the key fields of a row into a normalized sort key: a byte array that compares (unsigned, byte by byte)
+ * exactly like the rows compare with RowMetaInterface.compare() on those fields.<br>
+ * <br>
+ * This way the rows are compared once per value when the key is built instead of in every comparison of the sort and the merge.
+ * Only the String, Integer, Number, Date and Boolean data types can be encoded, see isEncodable().
+ *
+ * @author matt
+ */
+public class SortKeyEncoder {
+
+	private ValueMetaInterface[] valueMetas;
+	private int[] fieldnrs;
+
+	private byte[] buffer;
+	private int length;
+
+	/**
+	 * @param rowMeta the metadata of the rows to encode, the ascending/descending and case sensitivity flags are taken into account
+	 * @param fieldnrs the indexes of the key fields
+	 */
+	public SortKeyEncoder(RowMetaInterface rowMeta, int[] fieldnrs) {
+		this.fieldnrs = fieldnrs;
+		valueMetas = new ValueMetaInterface[fieldnrs.length];
+		for (int i=0;i<fieldnrs.length;i++) {
+			valueMetas[i] = rowMeta.getValueMeta(fieldnrs[i]);
+		}
+		buffer = new byte[64];
+	}
+
+	/**
+	 * @param rowMeta the metadata of the rows
+	 * @param fieldnrs the indexes of the key fields
+	 * @return true if all the key fields can be encoded in a sort key
+	 */
+	public static boolean isEncodable(RowMetaInterface rowMeta, int[] fieldnrs) {
+		for (int i=0;i<fieldnrs.length;i++) {
+			switch(rowMeta.getValueMeta(fieldnrs[i]).getType()) {
+			case ValueMetaInterface.TYPE_STRING:
+			case ValueMetaInterface.TYPE_INTEGER:
+			case ValueMetaInterface.TYPE_NUMBER:
+			case ValueMetaInterface.TYPE_DATE:
+			case ValueMetaInterface.TYPE_BOOLEAN:
+				break;
+			default:
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Build the sort key of a row.
+	 *
+	 * @param row the row to encode
+	 * @return a new sort key
+	 * @throws KettleValueException in case a key value can't be converted to its data type
+	 */
+	public byte[] encode(Object[] row) throws KettleValueException {
+		length=0;
+		for (int i=0;i<valueMetas.length;i++) {
+			ValueMetaInterface valueMeta = valueMetas[i];
+			Object data = row[fieldnrs[i]];
+
+			// Null is always smaller, also when sorting descending
+			//
+			if (valueMeta.isNull(data)) {
+				add(0x00);
+				continue;
+			}
+			add(0x01);
+
+			int start = length;
+			switch(valueMeta.getType()) {
+			case ValueMetaInterface.TYPE_STRING:
+				addString(valueMeta.getString(data), valueMeta.isCaseInsensitive());
+				break;
+			case ValueMetaInterface.TYPE_INTEGER:
+				addLong(valueMeta.getInteger(data).longValue());
+				break;
+			case ValueMetaInterface.TYPE_DATE:
+				addLong(valueMeta.getDate(data).getTime());
+				break;
+			case ValueMetaInterface.TYPE_NUMBER:
+				// Same order as Double.compare(): flip the sign bit of positive numbers and all the bits of negative ones
+				//
+				long bits = Double.doubleToLongBits(valueMeta.getNumber(data).doubleValue());
+				addLong(bits ^ ((bits>>63) & Long.MAX_VALUE));
+				break;
+			case ValueMetaInterface.TYPE_BOOLEAN:
+				add(valueMeta.getBoolean(data).booleanValue() ? 0x01 : 0x00);
+				break;
+			default:
+				throw new KettleValueException(valueMeta.toStringMeta()+" : a sort key can't be built for data type : "+valueMeta.getType());
+			}
+
+			if (valueMeta.isSortedDescending()) {
+				for (int b=start;b<length;b++) {
+					buffer[b] = (byte) ~buffer[b];
+				}
+			}
+		}
+
+		byte[] key = new byte[length];
+		System.arraycopy(buffer, 0, key, 0, length);
+		return key;
+	}
+
+	/**
+	 * The characters are written as 2 bytes, a 0 byte is escaped as 0x00 0xFF and the string is terminated with 0x00 0x00.
+	 * That way a string sorts before all the strings it is a prefix of, like in String.compareTo().
+	 */
+	private void addString(String string, boolean caseInsensitive) {
+		for (int i=0;i<string.length();i++) {
+			char c = string.charAt(i);
+			if (caseInsensitive) {
+				// The same conversion as String.compareToIgnoreCase()
+				//
+				c = Character.toLowerCase(Character.toUpperCase(c));
+			}
+			addEscaped((c >>> 8) & 0xFF);
+			addEscaped(c & 0xFF);
+		}
+		add(0x00);
+		add(0x00);
+	}
+
+	private void addEscaped(int b) {
+		add(b);
+		if (b==0x00) {
+			add(0xFF);
+		}
+	}
+
+	private void addLong(long value) {
+		// Big endian with the sign bit flipped: the negative numbers come first
+		//
+		value ^= Long.MIN_VALUE;
+		for (int shift=56;shift>=0;shift-=8) {
+			add((int)(value >>> shift) & 0xFF);
+		}
+	}
+
+	private void add(int b) {
+		if (length==buffer.length) {
+			byte[] larger = new byte[buffer.length*2];
+			System.arraycopy(buffer, 0, larger, 0, length);
+			buffer = larger;
+		}
+		buffer[length++] = (byte) b;
+	}
+
+	/**
+	 * Compares 2 sort keys byte by byte, unsigned.
+	 *
+	 * @return a negative number, 0 or a positive number if the first key sorts before, the same as or after the second key.
+	 */
+	public static int compare(byte[] one, byte[] two) {
+		int length = Math.min(one.length, two.length);
+		for (int i=0;i<length;i++) {
+			int cmp = (one[i] & 0xFF) - (two[i] & 0xFF);
+			if (cmp!=0) {
+				return cmp;
+			}
+		}
+		return one.length - two.length;
+	}
+}
@@ -12,20 +12,21 @@
  
 package org.pentaho.di.trans.steps.sort;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
 import org.apache.commons.vfs.FileObject;
 import org.apache.commons.vfs.FileSystemException;
@@ -37,6 +38,7 @@ import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.MemoryManager;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
@@ -55,6 +57,9 @@ public class SortRows extends BaseStep implements StepInterface
 {
     private static Class<?> PKG = SortRows.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
+    /** Below this number of rows per thread, sorting in parallel doesn't pay off */
+    private static final int MIN_ROWS_PER_SORT_THREAD = 25000;
+
     private SortRowsMeta meta;
 	private SortRowsData data;
 	
@@ -85,6 +90,24 @@ public class SortRows extends BaseStep implements StepInterface
 			// 
 			data.buffer.add( r );     
 		}
+		
+		// With a memory budget we write the rows to disk when the budget is used up or when another step needs the memory.
+		// A buffer that is too small to be worth a file of its own gets the memory anyway: when steps that can't spill hold 
+		// the budget, every reservation fails and we would end up writing a file per row.
+		//
+		boolean memoryFull = false;
+		if (data.memory!=null && r!=null)
+		{
+			long rowSize = MemoryManager.estimateRowSize(rowMeta, r);
+			if (data.buffer.size()<data.minSortSize)
+			{
+				data.memory.allocate(rowSize);
+			}
+			else
+			{
+				memoryFull = !data.memory.reserve(rowSize) || data.memory.isSpillRequested();
+			}
+		}
 		if (data.files.size()==0 && r==null) // No more records: sort buffer
 		{
 			quickSort(data.buffer);
@@ -93,7 +116,7 @@ public class SortRows extends BaseStep implements StepInterface
 		// Check the free memory every 1000 rows...
 		//
 		data.freeCounter++;
-		if (data.sortSize<=0 && data.freeCounter>=1000)
+		if (data.memory==null && data.sortSize<=0 && data.freeCounter>=1000)
 		{
 			data.freeMemoryPct = Const.getPercentageFreeMemory();
 			data.freeCounter=0;
@@ -111,7 +134,14 @@ public class SortRows extends BaseStep implements StepInterface
 		
 		boolean doSort = data.buffer.size()==data.sortSize; // Buffer is full: sort & dump to disk
 		doSort |= data.files.size()>0 && r==null && data.buffer.size()>0; // No more records: join from disk 
-		doSort |= data.freeMemoryPctLimit>0 && data.freeMemoryPct<data.freeMemoryPctLimit && data.buffer.size()>=data.minSortSize;
+		if (data.memory!=null)
+		{
+			doSort |= memoryFull && data.buffer.size()>=data.minSortSize;
+		}
+		else
+		{
+			doSort |= data.freeMemoryPctLimit>0 && data.freeMemoryPct<data.freeMemoryPctLimit && data.buffer.size()>=data.minSortSize;
+		}
 		
 		// time to sort the buffer and write the data to disk...
 		//
@@ -128,54 +158,33 @@ public class SortRows extends BaseStep implements StepInterface
       quickSort(data.buffer);
   
       // Then write them to disk...
-      DataOutputStream dos;
-      GZIPOutputStream gzos;
-      int p;
-      Object[] previousRow = null;
-  
       try {
-        FileObject fileObject = KettleVFS.createTempFile(meta.getPrefix(), ".tmp", environmentSubstitute(meta.getDirectory()), getTransMeta());
-  
+        FileObject fileObject = createTempFile();
         data.files.add(fileObject); // Remember the files!
-        OutputStream outputStream = KettleVFS.getOutputStream(fileObject, false);
-        if (data.compressFiles) {
-          gzos = new GZIPOutputStream(new BufferedOutputStream(outputStream));
-          dos = new DataOutputStream(gzos);
-        } else {
-          dos = new DataOutputStream(new BufferedOutputStream(outputStream, 500000));
-          gzos = null;
-        }
+        data.nrTempFiles++;
+        DataOutputStream dos = openTempFile(fileObject);
   
         // Just write the data, nothing else
-        if (meta.isOnlyPassingUniqueRows()) {
-          int index = 0;
-          while (index < data.buffer.size()) {
-            Object[] row = data.buffer.get(index);
-            if (previousRow != null) {
-              int result = data.outputRowMeta.compare(row, previousRow, data.fieldnrs);
-              if (result == 0) {
-                data.buffer.remove(index); // remove this duplicate element as
-                                           // requested
-                if (log.isRowLevel())
-                  logRowlevel("Duplicate row removed: " + data.outputRowMeta.getString(row));
-              } else {
-                index++;
-              }
-            } else {
-              index++;
-            }
-            previousRow = row;
+        // Duplicate rows are left out if we only pass unique rows
+        //
+        int nrRows = 0;
+        RowTempFile previous = null;
+        for (int p = 0; p < data.buffer.size(); p++) {
+          RowTempFile row = new RowTempFile(data.buffer.get(p), data.bufferKeys==null ? null : data.bufferKeys[p], 0);
+          if (meta.isOnlyPassingUniqueRows() && previous != null && compareRows(row, previous) == 0) {
+            if (log.isRowLevel())
+              logRowlevel("Duplicate row removed: " + data.outputRowMeta.getString(row.row));
+          } else {
+            writeRow(dos, row);
+            nrRows++;
           }
+          previous = row;
         }
   
-        // How many records do we have left?
-        data.bufferSizes.add(data.buffer.size());
-  
-        for (p = 0; p < data.buffer.size(); p++) {
-          data.outputRowMeta.writeData(dos, data.buffer.get(p));
-        }
+        // How many records do we have?
+        data.bufferSizes.add(nrRows);
   
-        if (data.sortSize < 0) {
+        if (data.sortSize < 0 && data.memory == null) {
           if (data.buffer.size() > data.minSortSize) {
             data.minSortSize = data.buffer.size(); // if we did it once, we can do
                                                    // it again.
@@ -190,13 +199,13 @@ public class SortRows extends BaseStep implements StepInterface
   
         // Clear the list
         data.buffer.clear();
+        data.bufferKeys = null;
+        if (data.memory != null) {
+          data.memory.releaseAll();
+        }
   
         // Close temp-file
-        dos.close(); // close data stream
-        if (gzos != null) {
-          gzos.close(); // close gzip stream
-        }
-        outputStream.close(); // close file stream
+        dos.close(); // close data stream, also closes the compression and file streams
   
         // How much memory do we have left?
         //
@@ -214,65 +223,114 @@ public class SortRows extends BaseStep implements StepInterface
       data.getBufferIndex = 0;
     }
 
-  private Object[] getBuffer() throws KettleValueException
+    private FileObject createTempFile() throws KettleFileException {
+      return KettleVFS.createTempFile(meta.getPrefix(), ".tmp", environmentSubstitute(meta.getDirectory()), getTransMeta());
+    }
+
+    /**
+     * Opens a temporary file to write rows to.  
+     * The files are compressed with deflate at its fastest level: the files are only read back once so a better but slower compression doesn't pay off. 
+     */
+    private DataOutputStream openTempFile(FileObject fileObject) throws IOException {
+      OutputStream outputStream = KettleVFS.getOutputStream(fileObject, false);
+      if (data.compressFiles) {
+        DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(outputStream, new Deflater(Deflater.BEST_SPEED), 65536) {
+          public void close() throws IOException {
+            try {
+              super.close();
+            } finally {
+              def.end(); // free the native memory right away
+            }
+          }
+        };
+        return new DataOutputStream(new BufferedOutputStream(deflaterOutputStream, 65536));
+      } else {
+        return new DataOutputStream(new BufferedOutputStream(outputStream, 500000));
+      }
+    }
+
+    /**
+     * Writes a row to a temporary file, preceded by its sort key if there is one.  
+     * This way the keys don't need to be built again to merge the files.
+     */
+    private void writeRow(DataOutputStream dos, RowTempFile row) throws KettleFileException, IOException {
+      if (row.key != null) {
+        dos.writeInt(row.key.length);
+        dos.write(row.key);
+      }
+      data.outputRowMeta.writeData(dos, row.row);
+    }
+
+    /**
+     * If there are more temporary files than we want to have open at the same time, 
+     * merge them in groups into larger files until there are few enough left.
+     */
+    private void mergeTempFiles() throws KettleException {
+      while (data.files.size() > data.maxOpenFiles && !isStopped()) {
+        if (log.isDetailed()) logDetailed("Merging "+data.files.size()+" tmp-files in groups of "+data.maxOpenFiles+"...");
+
+        List<FileObject> files = new ArrayList<FileObject>();
+        List<Integer> bufferSizes = new ArrayList<Integer>();
+        for (int from = 0; from < data.files.size(); from += data.maxOpenFiles) {
+          int to = Math.min(from + data.maxOpenFiles, data.files.size());
+          List<FileObject> groupFiles = data.files.subList(from, to);
+          List<Integer> groupSizes = data.bufferSizes.subList(from, to);
+          if (groupFiles.size() == 1) {
+            files.add(groupFiles.get(0));
+            bufferSizes.add(groupSizes.get(0));
+            continue;
+          }
+
+          SortRunMerger merger = new SortRunMerger(data, groupFiles, groupSizes);
+          try {
+            FileObject fileObject = createTempFile();
+            files.add(fileObject);
+            DataOutputStream dos = openTempFile(fileObject);
+            int nrRows = 0;
+            RowTempFile row = merger.next();
+            while (row != null) {
+              writeRow(dos, row);
+              nrRows++;
+              row = merger.next();
+            }
+            dos.close();
+            bufferSizes.add(nrRows);
+          } catch (IOException e) {
+            throw new KettleException("Error merging tmp-files!", e);
+          } finally {
+            merger.close();
+          }
+
+          for (FileObject fileObject : groupFiles) {
+            deleteTempFile(fileObject);
+          }
+        }
+        data.files = files;
+        data.bufferSizes = bufferSizes;
+      }
+    }
+
+  /**
+   * @return the next row in sort order with its sort key or null if there are no more rows.
+   */
+  private RowTempFile getBuffer() throws KettleException
 	{
-		Object[] retval;
+		RowTempFile retval;
 		
 		// Open all files at once and read one row from each file...
-		if (data.files.size()>0 && ( data.dis.size()==0 || data.fis.size()==0 ))
+		if (data.files.size()>0 && data.merger==null)
 		{
+			mergeTempFiles();
+			
 			if(log.isBasic()) logBasic("Opening "+data.files.size()+" tmp-files...");
-		
-			try
-			{
-				for (int f=0;f<data.files.size() && !isStopped();f++)
-				{
-					FileObject fileObject = (FileObject)data.files.get(f);
-                    String filename = KettleVFS.getFilename(fileObject);
-					if (log.isDetailed()) logDetailed("Opening tmp-file: ["+filename+"]");
-					InputStream fi=KettleVFS.getInputStream(fileObject);
-					DataInputStream di;
-					data.fis.add(fi);
-					if (data.compressFiles)
-					{
-						GZIPInputStream gzfi = new GZIPInputStream(new BufferedInputStream(fi));
-						di =new DataInputStream(gzfi);
-						data.gzis.add(gzfi);
-					}
-                    else
-					{
-						di=new DataInputStream(new BufferedInputStream(fi, 50000));
-					}
-					data.dis.add(di);
-					
-					// How long is the buffer?
-					int buffersize=data.bufferSizes.get(f);
-					
-					if (log.isDetailed()) logDetailed("["+filename+"] expecting "+buffersize+" rows...");
-					
-					if (buffersize>0)
-					{
-						Object[] row = (Object [])data.outputRowMeta.readData(di);
-                        data.rowbuffer.add( row );    // new row from input stream
-                        data.tempRows.add( new RowTempFile(row,f) );
-					}
-				}
-				
-				// Sort the data row buffer
-				Collections.sort(data.tempRows, data.comparator);
-			}
-			catch(Exception e)
-			{
-				logError("Error reading back tmp-files : "+e.toString());
-                logError(Const.getStackTracker(e));
-			}
+			data.merger = new SortRunMerger(data, data.files, data.bufferSizes);
 		}
 		
 		if (data.files.size()==0)
 		{
 			if (data.getBufferIndex<data.buffer.size())
 			{
-				retval=(Object[])data.buffer.get(data.getBufferIndex);
+				retval=new RowTempFile(data.buffer.get(data.getBufferIndex), data.bufferKeys==null ? null : data.bufferKeys[data.getBufferIndex], 0);
 				data.getBufferIndex++;
 			}
 			else
@@ -282,85 +340,9 @@ public class SortRows extends BaseStep implements StepInterface
 		}
 		else
 		{
-			if (data.rowbuffer.size()==0)
-            {
-                retval=null;
-            }
-			else
-			{
-				// We now have "filenr" rows waiting: which one is the smallest?
-				//
-				if (log.isRowLevel())
-				{
-				    for (int i=0;i<data.rowbuffer.size() && !isStopped();i++)
-				    {
-					    Object[] b = (Object[])data.rowbuffer.get(i);
-					    logRowlevel("--BR#"+i+": "+data.outputRowMeta.getString(b));
-				    }
-				}
-				
-				RowTempFile rowTempFile = data.tempRows.remove(0);
-				retval = rowTempFile.row;
-				int smallest = rowTempFile.fileNumber;
-				
-				// now get another Row for position smallest
-				
-				FileObject    file = (FileObject)data.files.get(smallest);
-				DataInputStream di = (DataInputStream)data.dis.get(smallest); 
-				InputStream     fi = (InputStream)data.fis.get(smallest);
-				GZIPInputStream gzfi = (data.compressFiles) ? (GZIPInputStream)data.gzis.get(smallest) : null;
-
-				try
-				{
-					Object[] row2 = (Object [])data.outputRowMeta.readData(di);
-					RowTempFile extra = new RowTempFile(row2, smallest);
-					
-					int index = Collections.binarySearch(data.tempRows, extra, data.comparator);
-					if (index < 0)
-					{
-						data.tempRows.add(index*(-1) - 1, extra);
-					}
-					else
-					{
-						data.tempRows.add(index, extra);
-					}
-				}
-				catch(KettleFileException fe) // empty file or EOF mostly
-				{
-					try
-					{
-						di.close();
-						fi.close();
-						if (gzfi != null) gzfi.close();
-						file.delete();
-					}
-					catch(IOException e)
-					{
-						logError("Unable to close/delete file #"+smallest+" --> "+file.toString());
-						setErrors(1);
-						stopAll();
-						return null;
-					}
-					
-					data.files.remove(smallest);
-					data.dis.remove(smallest);
-					data.fis.remove(smallest);
-
-					if (gzfi != null) data.gzis.remove(smallest);
-					
-					// Also update all file numbers in in data.tempRows if they are larger than smallest.
-					//
-					for (RowTempFile rtf : data.tempRows)
-					{
-						if (rtf.fileNumber>smallest) rtf.fileNumber--;
-					}
-					
-				} 
-				catch (SocketTimeoutException e) 
-				{
-					throw new KettleValueException(e); // should never happen on local files
-				}
-			}
+			// The smallest row of all the files...
+			//
+			retval=data.merger.next();
 		}
 		return retval;
 	}
@@ -390,6 +372,13 @@ public class SortRows extends BaseStep implements StepInterface
             // Metadata
             data.outputRowMeta = getInputRowMeta().clone();
             meta.getFields(data.outputRowMeta, getStepname(), null, null, this);
+            
+            // Compare normalized sort keys instead of the values if the data types allow it
+            //
+            if (SortKeyEncoder.isEncodable(data.outputRowMeta, data.fieldnrs))
+            {
+            	data.keyEncoder = new SortKeyEncoder(data.outputRowMeta, data.fieldnrs);
+            }
 		}
 		
 		err=addBuffer(getInputRowMeta(), r);
@@ -420,36 +409,20 @@ public class SortRows extends BaseStep implements StepInterface
 	private void passBuffer() throws KettleException {
       // Now we can start the output!
 	  //
-      Object[] r=getBuffer();
-      Object[] previousRow = null;
+      RowTempFile r=getBuffer();
+      RowTempFile previous = null;
       while (r!=null  && !isStopped())
       {
-          if (log.isRowLevel()) logRowlevel("Read row: "+getInputRowMeta().getString(r));
+          if (log.isRowLevel()) logRowlevel("Read row: "+getInputRowMeta().getString(r.row));
           
           // Do another verification pass for unique rows...
+          // If this row is the same as the previous one as far as the keys are concerned, we don't put forward this row.
           //
-          if (meta.isOnlyPassingUniqueRows())
-          {
-              if (previousRow!=null)
-              {
-                  // See if this row is the same as the previous one as far as the keys are concerned.
-                  // If so, we don't put forward this row.
-                  int result = data.outputRowMeta.compare(r, previousRow, data.fieldnrs);
-                  if (result!=0)
-                  {
-                      putRow(data.outputRowMeta, r); // copy row to possible alternate rowset(s).
-                  }
-              }
-              else
-              {
-                  putRow(data.outputRowMeta, r); // copy row to possible alternate rowset(s).
-              }
-              previousRow = r;
-          }
-          else
+          if (!meta.isOnlyPassingUniqueRows() || previous==null || compareRows(r, previous)!=0)
           {
-              putRow(data.outputRowMeta, r); // copy row to possible alternate rowset(s).
+              putRow(data.outputRowMeta, r.row); // copy row to possible alternate rowset(s).
           }
+          previous = r;
 
           r=getBuffer();
       }
@@ -461,6 +434,16 @@ public class SortRows extends BaseStep implements StepInterface
       setOutputDone(); // signal receiver we're finished.
   }
 
+  /**
+   * Compare 2 rows on the sort keys, without looking at the file they come from.
+   */
+  private int compareRows(RowTempFile one, RowTempFile two) throws KettleValueException {
+    if (one.key!=null && two.key!=null) {
+      return SortKeyEncoder.compare(one.key, two.key);
+    }
+    return data.outputRowMeta.compare(one.row, two.row, data.fieldnrs);
+  }
+
   public boolean init(StepMetaInterface smi, StepDataInterface sdi)
 	{
 		meta=(SortRowsMeta)smi;
@@ -488,34 +471,48 @@ public class SortRows extends BaseStep implements StepInterface
 
             data.compressFiles = getBooleanValueOfVariable(meta.getCompressFilesVariable(), meta.getCompressFiles());
             
+            // Compare the sort keys if we have them, the rows otherwise.
+            // Equal rows are kept in the order they arrived in: the file or position they came from.
+            //
             data.comparator = new Comparator<RowTempFile>(){
             	public int compare(RowTempFile o1, RowTempFile o2)
             	{
-            		try
+            		int cmp;
+            		if (o1.key!=null && o2.key!=null)
             		{
-            			return data.outputRowMeta.compare(o1.row, o2.row, data.fieldnrs);
+            			cmp = SortKeyEncoder.compare(o1.key, o2.key);
             		}
-            		catch(KettleValueException e)
+            		else
             		{
-            			logError("Error comparing rows: "+e.toString());
-                    	return 0;
+	            		try
+	            		{
+	            			cmp = data.outputRowMeta.compare(o1.row, o2.row, data.fieldnrs);
+	            		}
+	            		catch(KettleValueException e)
+	            		{
+	            			logError("Error comparing rows: "+e.toString());
+	                    	cmp = 0;
+	            		}
             		}
+            		if (cmp==0)
+            		{
+            			cmp = o1.fileNumber - o2.fileNumber;
+            		}
+            		return cmp;
             	}
             };
 
-		    // Add init code here.
+            data.sortThreads = Const.toInt(getVariable(Const.KETTLE_SORT_ROWS_THREADS), Runtime.getRuntime().availableProcessors());
+            data.maxOpenFiles = Math.max(2, Const.toInt(getVariable(Const.KETTLE_SORT_ROWS_MAX_OPEN_FILES), 250));
             
-            if (data.sortSize>0)
-            {
-                data.rowbuffer=new ArrayList<Object[]>(data.sortSize);
-            }
-            else
+            data.minSortSize = 5000;
+            
+            // Let the memory budget of the transformation decide when to write to disk instead of the free memory.
+            //
+            if (getTrans()!=null && getTrans().getMemoryManager()!=null)
             {
-                data.rowbuffer=new ArrayList<Object[]>();
+            	data.memory = getTrans().getMemoryManager().register(toString(), true);
             }
-            data.tempRows  = new ArrayList<RowTempFile>();
-            
-            data.minSortSize = 5000;
             
 		    return true;
 		}
@@ -525,6 +522,14 @@ public class SortRows extends BaseStep implements StepInterface
     @Override
     public void dispose(StepMetaInterface smi, StepDataInterface sdi) {
       clearBuffers();
+      if (data.sortExecutor != null) {
+        data.sortExecutor.shutdown();
+        data.sortExecutor = null;
+      }
+      if (data.memory != null) {
+        data.memory.close();
+        data.memory = null;
+      }
       super.dispose(smi, sdi);
     }
 
@@ -533,60 +538,84 @@ public class SortRows extends BaseStep implements StepInterface
       // Clean out the sort buffer
       //
       data.buffer.clear();
+      data.bufferKeys = null;
       data.getBufferIndex = 0;
-      data.rowbuffer.clear();
-      // close any open DataInputStream objects
-      if ((data.dis != null) && (data.dis.size() > 0)) {
-        for (DataInputStream dis : data.dis) {
-          BaseStep.closeQuietly(dis);
-        }
+      if (data.memory != null) {
+        data.memory.releaseAll();
       }
-      // close any open InputStream objects
-      if ((data.fis != null) && (data.fis.size() > 0)) {
-        for (InputStream is : data.fis) {
-          BaseStep.closeQuietly(is);
-        }
+      // close any open files
+      if (data.merger != null) {
+        data.merger.close();
+        data.merger = null;
       }
       // remove temp files
       for (int f = 0; f < data.files.size(); f++) {
-        FileObject fileToDelete = data.files.get(f);
-        try {
-          if (fileToDelete != null && fileToDelete.exists()) {
-            fileToDelete.delete();
-          }
-        } catch (FileSystemException e) {
-          logError(e.getLocalizedMessage(), e);
-        }
+        deleteTempFile(data.files.get(f));
+      }
+      data.files.clear();
+      data.bufferSizes.clear();
+    }
+
+  private void deleteTempFile(FileObject fileToDelete) {
+    try {
+      if (fileToDelete != null && fileToDelete.exists()) {
+        fileToDelete.delete();
       }
+    } catch (FileSystemException e) {
+      logError(e.getLocalizedMessage(), e);
     }
+  }
 
   /** 
 	 * Sort the entire vector, if it is not empty.
+	 * If the key fields can be encoded, the rows are sorted on their sort keys and the keys are kept in data.bufferKeys.
 	 */
-	public void quickSort(List<Object[]> elements)
+	public void quickSort(List<Object[]> elements) throws KettleException
 	{
 		if (log.isDetailed()) logDetailed("Starting quickSort algorithm..."); 
+		data.bufferKeys = null;
 		if (elements.size()>0)
 		{ 
-            Collections.sort(elements, new Comparator<Object[]>()
-                {
-                    public int compare(Object[] o1, Object[] o2)
-                    {
-                        Object[] r1 = (Object[]) o1;
-                        Object[] r2 = (Object[]) o2;
-                        
-                        try
-                        {
-                            return data.outputRowMeta.compare(r1, r2, data.fieldnrs);
-                        }
-                        catch(KettleValueException e)
-                        {
-                            logError("Error comparing rows: "+e.toString());
-                            return 0;
-                        }
-                    }
-                }
-            );
+			if (data.keyEncoder!=null)
+			{
+				RowTempFile[] rows = new RowTempFile[elements.size()];
+				for (int i=0;i<rows.length;i++)
+				{
+					Object[] row = elements.get(i);
+					rows[i] = new RowTempFile(row, data.keyEncoder.encode(row), i);
+				}
+				
+				sortRows(rows);
+				
+				data.bufferKeys = new byte[rows.length][];
+				for (int i=0;i<rows.length;i++)
+				{
+					elements.set(i, rows[i].row);
+					data.bufferKeys[i] = rows[i].key;
+				}
+			}
+			else
+			{
+	            Collections.sort(elements, new Comparator<Object[]>()
+	                {
+	                    public int compare(Object[] o1, Object[] o2)
+	                    {
+	                        Object[] r1 = (Object[]) o1;
+	                        Object[] r2 = (Object[]) o2;
+	                        
+	                        try
+	                        {
+	                            return data.outputRowMeta.compare(r1, r2, data.fieldnrs);
+	                        }
+	                        catch(KettleValueException e)
+	                        {
+	                            logError("Error comparing rows: "+e.toString());
+	                            return 0;
+	                        }
+	                    }
+	                }
+	            );
+			}
             long nrConversions = 0L;
             for (ValueMetaInterface valueMeta : data.outputRowMeta.getValueMetaList())
             {
@@ -597,6 +626,86 @@ public class SortRows extends BaseStep implements StepInterface
 		}
 		if (log.isDetailed()) logDetailed("QuickSort algorithm has finished.");
 	}
+	
+	/**
+	 * Sort rows with their sort keys.  A large number of rows is split in parts that are sorted in parallel and then merged.
+	 * The file numbers of the rows need to be their position, that keeps the sort stable.
+	 */
+	private void sortRows(final RowTempFile[] rows) throws KettleException
+	{
+		int nrParts = Math.min(data.sortThreads, rows.length/MIN_ROWS_PER_SORT_THREAD);
+		if (nrParts<=1)
+		{
+			Arrays.sort(rows, data.comparator);
+			return;
+		}
+		
+		if (data.sortExecutor==null)
+		{
+			final String threadName = getStepname()+" sort thread";
+			data.sortExecutor = Executors.newFixedThreadPool(data.sortThreads, new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, threadName);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		// Sort the parts...
+		//
+		final int[] bounds = new int[nrParts+1];
+		for (int p=0;p<=nrParts;p++)
+		{
+			bounds[p] = (int)((long)rows.length*p/nrParts);
+		}
+		List<Future<?>> futures = new ArrayList<Future<?>>(nrParts);
+		for (int p=0;p<nrParts;p++)
+		{
+			final int from = bounds[p];
+			final int to = bounds[p+1];
+			futures.add(data.sortExecutor.submit(new Runnable() {
+				public void run() {
+					Arrays.sort(rows, from, to, data.comparator);
+				}
+			}));
+		}
+		try
+		{
+			for (Future<?> future : futures)
+			{
+				future.get();
+			}
+		}
+		catch(Exception e)
+		{
+			throw new KettleException("Error sorting rows in parallel", e);
+		}
+		
+		// Then merge them: take the smallest of the first rows of each part.
+		//
+		int[] next = new int[nrParts];
+		PriorityQueue<RowTempFile> heads = new PriorityQueue<RowTempFile>(nrParts, data.comparator);
+		for (int p=0;p<nrParts;p++)
+		{
+			heads.add(rows[bounds[p]]);
+			next[p] = bounds[p]+1;
+		}
+		RowTempFile[] sorted = new RowTempFile[rows.length];
+		for (int i=0;i<sorted.length;i++)
+		{
+			RowTempFile smallest = heads.poll();
+			sorted[i] = smallest;
+
+			int p=0;
+			while (smallest.fileNumber>=bounds[p+1]) p++;
+			if (next[p]<bounds[p+1])
+			{
+				heads.add(rows[next[p]++]);
+			}
+		}
+		System.arraycopy(sorted, 0, rows, 0, rows.length);
+	}
 	  
 	  /**
 	   * Calling this method will alert the step that we finished passing records to the step.
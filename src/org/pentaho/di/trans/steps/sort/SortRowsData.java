@@ -12,15 +12,14 @@
 
 package org.pentaho.di.trans.steps.sort;
 
-import java.io.DataInputStream;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.commons.vfs.FileObject;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.MemoryConsumer;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
@@ -36,14 +35,21 @@ public class SortRowsData extends BaseStepData implements StepDataInterface
 	public List<Object[]>   buffer;
     public int              getBufferIndex;
 
-	public List<InputStream> fis;
-    public List<GZIPInputStream> gzis;
-    public List<DataInputStream> dis;
-	public List<Object[]> rowbuffer;
+    /** The sort keys of the rows in the buffer once it is sorted, null if the rows are compared field by field */
+    public byte[][] bufferKeys;
+
     public List<Integer> bufferSizes;
 
-    // To store rows and file references
-    public List<RowTempFile> tempRows;
+    /** Merges the temporary files once all rows are written */
+    public SortRunMerger merger;
+
+    /** Builds the sort keys, null if the key fields can't be encoded */
+    public SortKeyEncoder keyEncoder;
+
+    /** Sorts the parts of a large buffer in parallel, null until needed */
+    public ExecutorService sortExecutor;
+    public int sortThreads;
+    public int maxOpenFiles;
 
 	public int     fieldnrs[];      // the corresponding field numbers;
     public FileObject fil;
@@ -60,6 +66,12 @@ public class SortRowsData extends BaseStepData implements StepDataInterface
 	public int freeMemoryPctLimit;
 	public int memoryReporting;
 	
+	/** The memory reserved for the rows in the buffer, null if the transformation has no memory budget */
+	public MemoryConsumer memory;
+	
+	/** The number of temporary files written, merged files not included */
+	public int nrTempFiles;
+	
 	
 	/**
 	 * 
@@ -69,9 +81,6 @@ public class SortRowsData extends BaseStepData implements StepDataInterface
 		super();
 		
 		files= new ArrayList<FileObject>();
-		fis  = new ArrayList<InputStream>();
-        gzis  = new ArrayList<GZIPInputStream>();
-        dis = new ArrayList<DataInputStream>();
         bufferSizes = new ArrayList<Integer>();
 	}
 
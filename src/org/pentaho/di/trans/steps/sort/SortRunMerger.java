@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.sort;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.vfs.FileObject;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.trans.step.BaseStep;
+
+/**
+ * Merges a number of sorted temporary files (runs) of the Sort Rows step into one sorted stream of rows.<br>
+ * <br>
+ * The smallest row of every file is kept in a heap, so finding the next row takes log(number of files) comparisons.
+ * When rows are equal the row from the first file goes first, that way the sort is stable.
+ *
+ * @author matt
+ */
+public class SortRunMerger {
+
+	private SortRowsData data;
+
+	private InputStream[] fis;
+	private DataInputStream[] dis;
+	private int[] remaining;
+
+	private PriorityQueue<RowTempFile> heads;
+
+	/**
+	 * Open the files and read the first row of each one.
+	 *
+	 * @param data the data of the sort step: row metadata, comparator, compression, sort keys
+	 * @param files the temporary files to merge, in the order they were written
+	 * @param sizes the number of rows in each file
+	 * @throws KettleException in case a file can't be opened or read
+	 */
+	public SortRunMerger(SortRowsData data, List<FileObject> files, List<Integer> sizes) throws KettleException {
+		this.data = data;
+
+		fis = new InputStream[files.size()];
+		dis = new DataInputStream[files.size()];
+		remaining = new int[files.size()];
+		heads = new PriorityQueue<RowTempFile>(Math.max(1, files.size()), data.comparator);
+
+		try {
+			for (int f=0;f<files.size();f++) {
+				fis[f] = KettleVFS.getInputStream(files.get(f));
+				if (data.compressFiles) {
+					dis[f] = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new BufferedInputStream(fis[f], 65536)), 65536));
+				} else {
+					dis[f] = new DataInputStream(new BufferedInputStream(fis[f], 50000));
+				}
+				remaining[f] = sizes.get(f);
+				readNext(f);
+			}
+		} catch(Exception e) {
+			close();
+			throw new KettleException("Error reading back tmp-files", e);
+		}
+	}
+
+	private void readNext(int f) throws KettleException, IOException {
+		if (remaining[f]<=0) {
+			BaseStep.closeQuietly(dis[f]);
+			BaseStep.closeQuietly(fis[f]);
+			dis[f] = null;
+			fis[f] = null;
+			return;
+		}
+		remaining[f]--;
+
+		byte[] key = null;
+		if (data.keyEncoder!=null) {
+			key = new byte[dis[f].readInt()];
+			dis[f].readFully(key);
+		}
+		Object[] row = data.outputRowMeta.readData(dis[f]);
+		heads.add(new RowTempFile(row, key, f));
+	}
+
+	/**
+	 * @return the next row in sort order with its sort key or null if all files are read completely.
+	 * @throws KettleException in case a file can't be read
+	 */
+	public RowTempFile next() throws KettleException {
+		RowTempFile smallest = heads.poll();
+		if (smallest!=null) {
+			try {
+				readNext(smallest.fileNumber);
+			} catch(IOException e) {
+				throw new KettleException("Error reading back tmp-file #"+smallest.fileNumber, e);
+			}
+		}
+		return smallest;
+	}
+
+	/**
+	 * Close all the files that are still open.
+	 */
+	public void close() {
+		for (int f=0;f<dis.length;f++) {
+			BaseStep.closeQuietly(dis[f]);
+			BaseStep.closeQuietly(fis[f]);
+			dis[f] = null;
+			fis[f] = null;
+		}
+		heads.clear();
+	}
+}
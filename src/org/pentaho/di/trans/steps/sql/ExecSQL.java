@@ -240,9 +240,7 @@ public class ExecSQL extends BaseStep implements StepInterface
 
 		if (data.db != null && !data.isCanceled)
 		{
-		  synchronized(data.db) {
-		    data.db.cancelQuery();
-		  }
+		  data.db.cancelQuery();
 			data.isCanceled = true;
 		}
 	}
@@ -11,6 +11,8 @@
  
 package org.pentaho.di.trans.steps.streamlookup;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.text.DateFormat;
 import java.util.Collections;
@@ -22,12 +24,14 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.hash.ByteArrayHashIndex;
+import org.pentaho.di.core.hash.OffHeapHashIndex;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMeta;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.MemoryManager;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
@@ -296,8 +300,30 @@ public class StreamLookup extends BaseStep implements StepInterface
         return RowDataUtil.addRowData(row, rowMeta.size(), add);
 	}
 	
-    private void addToCache(RowMetaInterface keyMeta, Object[] keyData, RowMetaInterface valueMeta, Object[] valueData) throws KettleValueException
+    private void addToCache(RowMetaInterface keyMeta, Object[] keyData, RowMetaInterface valueMeta, Object[] valueData) throws KettleException
     {
+        if (data.offHeapIndex!=null)
+        {
+            // Outside of the heap, this memory isn't part of the memory budget of the transformation
+            //
+            try
+            {
+                data.offHeapIndex.put(RowMeta.extractData(keyMeta, keyData), RowMeta.extractData(valueMeta, valueData));
+            }
+            catch(IOException e)
+            {
+                throw new KettleException(BaseMessages.getString(PKG, "StreamLookup.Exception.UnableToStoreLookupData"), e); //$NON-NLS-1$
+            }
+            return;
+        }
+        
+        // The lookup data has to stay in memory: the key and value rows and the entry of the map
+        //
+        if (data.memory!=null)
+        {
+            data.memory.allocate(MemoryManager.estimateRowSize(keyMeta, keyData)+MemoryManager.estimateRowSize(valueMeta, valueData)+48);
+        }
+        
         if (meta.isMemoryPreservationActive())
         {
             if (meta.isUsingSortedList())
@@ -353,6 +379,13 @@ public class StreamLookup extends BaseStep implements StepInterface
     
 	private Object[] getFromCache(RowMetaInterface keyMeta, Object[] keyData) throws KettleValueException
     {
+        if (data.offHeapIndex!=null)
+        {
+            byte[] value = data.offHeapIndex.get(RowMeta.extractData(keyMeta, keyData));
+            if (value==null) return null;
+            return RowMeta.getRow(data.valueMeta, value);
+        }
+        
         if (meta.isMemoryPreservationActive())
         {
             if (meta.isUsingSortedList())
@@ -498,6 +531,19 @@ public class StreamLookup extends BaseStep implements StepInterface
 	    {
 	        data.readLookupValues = true;
 	        
+	        if (meta.isUsingOffHeapStore())
+	        {
+	            // Direct memory unless a directory for memory-mapped files is given
+	            //
+	            String directory = environmentSubstitute(getVariable(Const.KETTLE_STREAM_LOOKUP_OFF_HEAP_DIRECTORY));
+	            data.offHeapIndex = new OffHeapHashIndex(OffHeapHashIndex.DEFAULT_SLAB_SIZE, Const.isEmpty(directory) ? null : new File(directory));
+	        }
+	        
+	        if (getTrans()!=null && getTrans().getMemoryManager()!=null)
+	        {
+	            data.memory = getTrans().getMemoryManager().register(toString(), false);
+	        }
+	        
 	        return true;
 	    }
 	    return false;
@@ -511,6 +557,16 @@ public class StreamLookup extends BaseStep implements StepInterface
 	    data.list = null;
 	    data.hashIndex = null;
 	    data.longIndex = null;
+	    if (data.offHeapIndex!=null)
+	    {
+	        data.offHeapIndex.close();
+	        data.offHeapIndex = null;
+	    }
+	    if (data.memory!=null)
+	    {
+	        data.memory.close();
+	        data.memory = null;
+	    }
 	    
 		super.dispose(smi, sdi);
 	}
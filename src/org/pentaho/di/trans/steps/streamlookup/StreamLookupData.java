@@ -22,7 +22,9 @@ import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.hash.ByteArrayHashIndex;
 import org.pentaho.di.core.hash.LongHashIndex;
+import org.pentaho.di.core.hash.OffHeapHashIndex;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.MemoryConsumer;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.errorhandling.StreamInterface;
@@ -64,6 +66,7 @@ public class StreamLookupData extends BaseStepData implements StepDataInterface
 
     public ByteArrayHashIndex hashIndex;
     public LongHashIndex longIndex;
+    public OffHeapHashIndex offHeapIndex;
 
     public RowMetaInterface lookupMeta;
 
@@ -81,6 +84,9 @@ public class StreamLookupData extends BaseStepData implements StepDataInterface
 
 	public StreamInterface	infoStream;
 	
+	/** The memory reserved for the lookup data, null if the transformation has no memory budget */
+	public MemoryConsumer memory;
+	
 	public StreamLookupData()
 	{
         super();
@@ -86,6 +86,9 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
     /** The content of the key and lookup is a single Integer (long) */
     private boolean usingIntegerPair;          
 
+    /** Keep the serialized keys and values outside of the Java heap */
+    private boolean usingOffHeapStore;
+
 	public StreamLookupMeta()
 	{
 		super(); // allocate BaseStepMeta
@@ -240,6 +243,7 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
             memoryPreservationActive = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "preserve_memory")); //$NON-NLS-1$ //$NON-NLS-2$
             usingSortedList = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "sorted_list")); //$NON-NLS-1$ //$NON-NLS-2$
             usingIntegerPair = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "integer_pair")); //$NON-NLS-1$ //$NON-NLS-2$
+            usingOffHeapStore = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "off_heap")); //$NON-NLS-1$ //$NON-NLS-2$
 			
 			Node lookup = XMLHandler.getSubNode(stepnode, "lookup"); //$NON-NLS-1$
 			nrkeys   = XMLHandler.countNodes(lookup, "key"); //$NON-NLS-1$
@@ -291,6 +295,7 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
         memoryPreservationActive = true;
         usingSortedList = false;
         usingIntegerPair = false;
+        usingOffHeapStore = false;
 		
 		nrkeys   = 0;
 		nrvalues = 0;
@@ -353,6 +358,7 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
         retval.append("    "+XMLHandler.addTagValue("preserve_memory", memoryPreservationActive)); //$NON-NLS-1$ //$NON-NLS-2$
         retval.append("    "+XMLHandler.addTagValue("sorted_list", usingSortedList)); //$NON-NLS-1$ //$NON-NLS-2$
         retval.append("    "+XMLHandler.addTagValue("integer_pair", usingIntegerPair)); //$NON-NLS-1$ //$NON-NLS-2$
+        retval.append("    "+XMLHandler.addTagValue("off_heap", usingOffHeapStore)); //$NON-NLS-1$ //$NON-NLS-2$
 
 		retval.append("    <lookup>"+Const.CR); //$NON-NLS-1$
 		for (int i=0;i<keystream.length;i++)
@@ -389,6 +395,7 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
 			memoryPreservationActive = rep.getStepAttributeBoolean(id_step, "preserve_memory"); // $NON-NLS-1$
             usingSortedList = rep.getStepAttributeBoolean(id_step, "sorted_list"); // $NON-NLS-1$
             usingIntegerPair = rep.getStepAttributeBoolean(id_step, "integer_pair"); // $NON-NLS-1$
+            usingOffHeapStore = rep.getStepAttributeBoolean(id_step, "off_heap"); // $NON-NLS-1$
             
 			int nrkeys   = rep.countNrStepAttributes(id_step, "lookup_key_name"); //$NON-NLS-1$
 			int nrvalues = rep.countNrStepAttributes(id_step, "return_value_name"); //$NON-NLS-1$
@@ -425,6 +432,7 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
             rep.saveStepAttribute(id_transformation, id_step, "preserve_memory", memoryPreservationActive); // $NON-NLS-1$
             rep.saveStepAttribute(id_transformation, id_step, "sorted_list", usingSortedList); // $NON-NLS-1$
             rep.saveStepAttribute(id_transformation, id_step, "integer_pair", usingIntegerPair); // $NON-NLS-1$
+            rep.saveStepAttribute(id_transformation, id_step, "off_heap", usingOffHeapStore); // $NON-NLS-1$
             
             for (int i=0;i<keystream.length;i++)
 			{
@@ -633,6 +641,22 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
     {
         this.usingIntegerPair = usingIntegerPair;
     }
+
+    /**
+     * @return true if the lookup data is kept outside of the Java heap (direct memory or memory-mapped files)
+     */
+    public boolean isUsingOffHeapStore()
+    {
+        return usingOffHeapStore;
+    }
+
+    /**
+     * @param usingOffHeapStore true to keep the lookup data outside of the Java heap
+     */
+    public void setUsingOffHeapStore(boolean usingOffHeapStore)
+    {
+        this.usingOffHeapStore = usingOffHeapStore;
+    }
     
     public boolean excludeFromRowLayoutVerification()
     {
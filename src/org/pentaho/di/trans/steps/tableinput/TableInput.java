@@ -18,7 +18,6 @@ import org.pentaho.di.core.Const;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.database.Database;
-import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
@@ -137,7 +136,7 @@ public class TableInput extends BaseStep implements StepInterface
         {
             if (data.thisrow!=null) // We can expect more rows
             {
-                data.nextrow=data.db.getRow(data.rs, meta.isLazyConversionActive()); 
+                data.nextrow=readRow(); 
                 if (data.nextrow!=null) incrementLinesInput();
             }
         }
@@ -200,13 +199,27 @@ public class TableInput extends BaseStep implements StepInterface
 		return true;
 	}
     
-    private void closePreviousQuery() throws KettleDatabaseException {
+    private Object[] readRow() throws KettleException
+    {
+        if (data.prefetcher!=null)
+        {
+            return data.prefetcher.getRow();
+        }
+        return data.reader.getRow(data.rs);
+    }
+    
+    private void closePreviousQuery() throws KettleException {
+        if (data.prefetcher!=null) {
+        	// Stop reading before the result set is closed
+        	data.prefetcher.stop();
+        	data.prefetcher=null;
+        }
         if(data.db!=null) {
         	data.db.closeQuery(data.rs);
         }
     }
 
-    private boolean doQuery(RowMetaInterface parametersMeta, Object[] parameters) throws KettleDatabaseException
+    private boolean doQuery(RowMetaInterface parametersMeta, Object[] parameters) throws KettleException
     {
         boolean success = true;
 
@@ -240,12 +253,21 @@ public class TableInput extends BaseStep implements StepInterface
             	}
             }
             
+            // The way to read the columns is worked out once for all the rows
+            data.reader = data.db.createResultSetReader(data.rowMeta);
+            if (meta.isPrefetching())
+            {
+                int batchSize = data.db.getFetchSize()>0 ? data.db.getFetchSize() : Const.FETCH_SIZE;
+                data.prefetcher = new TableInputPrefetcher(data.reader, data.rs, batchSize);
+                data.prefetcher.start(getStepname()+" prefetcher", getTransMeta().isUsingVirtualThreads());
+            }
+            
             // Get the first row...
-            data.thisrow = data.db.getRow(data.rs);
+            data.thisrow = readRow();
             if (data.thisrow != null)
             {
                 incrementLinesInput();
-                data.nextrow = data.db.getRow(data.rs);
+                data.nextrow = readRow();
                 if (data.nextrow != null) incrementLinesInput();
             }
         }
@@ -286,9 +308,7 @@ public class TableInput extends BaseStep implements StepInterface
         
         if (data.db!=null && !data.isCanceled)
         {
-          synchronized(data.db) { 
-            data.db.cancelQuery();
-          }
+          data.db.cancelQuery();
         	data.isCanceled=true;
         }
 	}
@@ -323,6 +343,7 @@ public class TableInput extends BaseStep implements StepInterface
 			data.db.shareVariablesWith(this);
 			
 			data.db.setQueryLimit(Const.toInt(environmentSubstitute(meta.getRowLimit()),0));
+			data.db.setFetchSize(Const.toInt(environmentSubstitute(meta.getFetchSize()),0));
 
 			try
 			{
@@ -16,6 +16,7 @@ import java.sql.ResultSet;
 
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.ResultSetReader;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -36,6 +37,8 @@ public class TableInputData extends BaseStepData implements StepDataInterface
 	public RowSet rowSet;
 	public boolean isCanceled;
     public StreamInterface infoStream;
+    public ResultSetReader reader;
+    public TableInputPrefetcher prefetcher;
 	
 	public TableInputData()
 	{
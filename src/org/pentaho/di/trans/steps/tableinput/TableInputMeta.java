@@ -70,6 +70,12 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface
 
     private boolean lazyConversionActive;
 
+    /** The number of rows to fetch in one round trip, empty to use the one of the connection */
+    private String fetchSize;
+
+    /** Read the next rows in a thread of its own while the current ones are passed on */
+    private boolean prefetching;
+
 	public TableInputMeta()
 	{
 		super();
@@ -168,6 +174,8 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface
 			executeEachInputRow       = "Y".equals(XMLHandler.getTagValue(stepnode, "execute_each_row"));
             variableReplacementActive = "Y".equals(XMLHandler.getTagValue(stepnode, "variables_active"));
             lazyConversionActive      = "Y".equals(XMLHandler.getTagValue(stepnode, "lazy_conversion_active"));
+            fetchSize                 = XMLHandler.getTagValue(stepnode, "fetch_size");
+            prefetching               = "Y".equals(XMLHandler.getTagValue(stepnode, "prefetch"));
 		}
 		catch(Exception e)
 		{
@@ -180,6 +188,8 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface
 		databaseMeta = null;
 		sql        = "SELECT <values> FROM <table name> WHERE <conditions>";
 		rowLimit   = "0";
+		fetchSize  = null;
+		prefetching = false;
 	}
 
     public void getFields(RowMetaInterface row, String origin, RowMetaInterface[] info, StepMeta nextStep, VariableSpace space) throws KettleStepException 
@@ -266,6 +276,8 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface
         retval.append("    "+XMLHandler.addTagValue("execute_each_row",   executeEachInputRow));
         retval.append("    "+XMLHandler.addTagValue("variables_active",   variableReplacementActive));
         retval.append("    "+XMLHandler.addTagValue("lazy_conversion_active",   lazyConversionActive));
+        retval.append("    "+XMLHandler.addTagValue("fetch_size",   fetchSize));
+        retval.append("    "+XMLHandler.addTagValue("prefetch",   prefetching));
         
 		return retval.toString();
 	}
@@ -289,6 +301,8 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface
             executeEachInputRow       =      rep.getStepAttributeBoolean(id_step, "execute_each_row");
             variableReplacementActive =      rep.getStepAttributeBoolean(id_step, "variables_active");
             lazyConversionActive      =      rep.getStepAttributeBoolean(id_step, "lazy_conversion_active");
+            fetchSize                 =      rep.getStepAttributeString (id_step, "fetch_size");
+            prefetching               =      rep.getStepAttributeBoolean(id_step, "prefetch");
 		}
 		catch(Exception e)
 		{
@@ -308,6 +322,8 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface
             rep.saveStepAttribute(id_transformation, id_step, "execute_each_row", executeEachInputRow);
             rep.saveStepAttribute(id_transformation, id_step, "variables_active", variableReplacementActive);
             rep.saveStepAttribute(id_transformation, id_step, "lazy_conversion_active", lazyConversionActive);
+            rep.saveStepAttribute(id_transformation, id_step, "fetch_size", fetchSize);
+            rep.saveStepAttribute(id_transformation, id_step, "prefetch", prefetching);
 			
 			// Also, save the step-database relationship!
 			if (databaseMeta!=null) rep.insertStepDatabase(id_transformation, id_step, databaseMeta.getObjectId());
@@ -527,6 +543,34 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface
 	public void setLazyConversionActive(boolean lazyConversionActive) {
 		this.lazyConversionActive = lazyConversionActive;
 	}
+
+	/**
+	 * @return the number of rows to fetch in one round trip, empty to use the one of the connection
+	 */
+	public String getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * @param fetchSize the number of rows to fetch in one round trip, empty to use the one of the connection
+	 */
+	public void setFetchSize(String fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * @return true if the next rows are read in a thread of their own while the current ones are passed on
+	 */
+	public boolean isPrefetching() {
+		return prefetching;
+	}
+
+	/**
+	 * @param prefetching true to read the next rows in a thread of their own while the current ones are passed on
+	 */
+	public void setPrefetching(boolean prefetching) {
+		this.prefetching = prefetching;
+	}
 	
 	/**
      * Returns the Input/Output metadata for this step.
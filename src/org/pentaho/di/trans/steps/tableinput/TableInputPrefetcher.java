@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.tableinput;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.pentaho.di.core.database.ResultSetReader;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.util.ThreadUtil;
+
+/**
+ * Reads the rows of a query in a thread of its own, a batch ahead of the step that passes them on.<br>
+ * <br>
+ * Once the prefetcher is started, the result set is only used by its thread until it's stopped.
+ * A query can still be canceled from another thread.
+ *
+ * @author matt
+ */
+public class TableInputPrefetcher implements Runnable
+{
+	/** The number of batches that are read ahead */
+	private static final int QUEUE_SIZE = 2;
+
+	private static final List<Object[]> END = new ArrayList<Object[]>(0);
+
+	private ResultSetReader reader;
+	private ResultSet       rs;
+	private int             batchSize;
+
+	private BlockingQueue<List<Object[]>> batches;
+	private Thread thread;
+	private volatile boolean stopped;
+	private volatile KettleDatabaseException exception;
+
+	/** The batch that is passed on by the step and the position in it, only used by the thread of the step */
+	private List<Object[]> batch;
+	private int            index;
+	private boolean        finished;
+
+	/**
+	 * @param reader the reader of the rows
+	 * @param rs the result set of the query
+	 * @param batchSize the number of rows to read in one go
+	 */
+	public TableInputPrefetcher(ResultSetReader reader, ResultSet rs, int batchSize)
+	{
+		this.reader = reader;
+		this.rs = rs;
+		this.batchSize = Math.max(1, batchSize);
+
+		batches = new ArrayBlockingQueue<List<Object[]>>(QUEUE_SIZE);
+	}
+
+	/**
+	 * Start the thread that reads the rows.
+	 *
+	 * @param threadName the name of the thread
+	 * @param virtual true to read in a virtual thread if the JVM supports it
+	 */
+	public void start(String threadName, boolean virtual)
+	{
+		thread = ThreadUtil.newThread(this, virtual);
+		thread.setName(threadName);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return the next row of the query or null if all rows were read
+	 * @throws KettleException if the rows couldn't be read
+	 */
+	public Object[] getRow() throws KettleException
+	{
+		while (batch==null || index>=batch.size())
+		{
+			if (finished)
+			{
+				return null;
+			}
+			try
+			{
+				batch = batches.take();
+			}
+			catch(InterruptedException e)
+			{
+				throw new KettleException("Interrupted while waiting for the next rows of the query", e);
+			}
+			index = 0;
+			if (batch==END)
+			{
+				finished = true;
+				batch = null;
+				if (exception!=null)
+				{
+					throw exception;
+				}
+			}
+		}
+		return batch.get(index++);
+	}
+
+	/**
+	 * Stop reading and wait for the thread to finish, the result set can be closed afterwards.
+	 */
+	public void stop() throws KettleException
+	{
+		if (thread==null)
+		{
+			return;
+		}
+		stopped = true;
+		batches.clear();
+		try
+		{
+			thread.join();
+		}
+		catch(InterruptedException e)
+		{
+			throw new KettleException("Interrupted while waiting for the query to stop", e);
+		}
+		thread = null;
+	}
+
+	public void run()
+	{
+		try
+		{
+			while (!stopped)
+			{
+				List<Object[]> rows = reader.getRows(rs, batchSize);
+				if (!rows.isEmpty() && !hand(rows))
+				{
+					break;
+				}
+				if (rows.size()<batchSize)
+				{
+					break; // end of the result set, don't call next() on it again
+				}
+			}
+		}
+		catch(KettleDatabaseException e)
+		{
+			exception = e;
+		}
+		catch(InterruptedException e)
+		{
+			// Stop
+		}
+		catch(Throwable e)
+		{
+			exception = new KettleDatabaseException("Unexpected error reading the rows of the query", e);
+		}
+		finally
+		{
+			try
+			{
+				hand(END);
+			}
+			catch(InterruptedException e)
+			{
+				// Stop
+			}
+		}
+	}
+
+	/**
+	 * Hand over a batch to the step, without waiting forever if the step stopped taking them.
+	 *
+	 * @return false if the prefetcher was stopped
+	 */
+	private boolean hand(List<Object[]> rows) throws InterruptedException
+	{
+		while (!stopped)
+		{
+			if (batches.offer(rows, 100, TimeUnit.MILLISECONDS))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
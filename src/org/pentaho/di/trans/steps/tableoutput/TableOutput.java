@@ -17,7 +17,9 @@ import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.RowMetaAndData;
@@ -38,6 +40,7 @@ import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.tableoutput.TableOutputBatchWriter.Batch;
 
 /**
  * Writes rows to a database table.
@@ -49,6 +52,9 @@ public class TableOutput extends BaseStep implements StepInterface
 {
 	private static Class<?> PKG = TableOutputMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
+	/** The number of batches that are inserted in the background at the same time: one that executes, one that waits */
+	private static final int MAX_BATCHES_IN_FLIGHT = 2;
+
 	private TableOutputMeta meta;
 	private TableOutputData data;
 		
@@ -65,6 +71,21 @@ public class TableOutput extends BaseStep implements StepInterface
 		Object[] r=getRow();    // this also waits for a previous step to be finished.
 		if (r==null)  // no more input to be expected...
 		{
+			if (data.asyncBatchCommit)
+			{
+				// Insert the last batches and pass on their rows
+				//
+				try
+				{
+					flushBatches();
+				}
+				catch(KettleException e)
+				{
+					logError("Because of an error, this step can't continue: ", e);
+					setErrors(1);
+					stopAll();
+				}
+			}
 			return false;
 		}
         
@@ -109,6 +130,23 @@ public class TableOutput extends BaseStep implements StepInterface
         			}
         	    }            	
             }
+            
+            data.insertBinder = data.db.createStatementBinder(data.insertRowMeta);
+            
+            // Route the rows with the same values of the routing fields to the same writer
+            //
+            if (data.asyncBatchCommit && data.batchWriters.length>1 && meta.getRoutingFields().length>0)
+            {
+            	data.routingFieldnrs = new int[meta.getRoutingFields().length];
+            	for (int i=0;i<meta.getRoutingFields().length;i++)
+            	{
+            		data.routingFieldnrs[i]=getInputRowMeta().indexOfValue(meta.getRoutingFields()[i]);
+            		if (data.routingFieldnrs[i]<0)
+            		{
+            			throw new KettleStepException(BaseMessages.getString(PKG, "TableOutput.Exception.RoutingFieldNotFound", meta.getRoutingFields()[i])); //$NON-NLS-1$
+            		}
+            	}
+            }
         }
         
 		try
@@ -176,6 +214,7 @@ public class TableOutput extends BaseStep implements StepInterface
                 if (!meta.isTableNameInTable() && !meta.specifyFields())
                 {
                     data.insertRowMeta.removeValueMeta(data.indexOfTableNameField);
+                    data.insertBinder = data.db.createStatementBinder(data.insertRowMeta);
                 }
             }
             tableName = rowMeta.getString(r, data.indexOfTableNameField);
@@ -247,6 +286,14 @@ public class TableOutput extends BaseStep implements StepInterface
             throw new KettleStepException("The tablename is not defined (empty)");
         }
         
+        if (data.asyncBatchCommit)
+        {
+        	// The batch is inserted in the background, the rows are passed on once they are inserted
+        	//
+        	addToBatch(tableName, insertRowData, outputRowData);
+        	return null;
+        }
+        
         
         insertStatement = (PreparedStatement) data.preparedStatements.get(tableName);
         if (insertStatement==null)
@@ -268,7 +315,7 @@ public class TableOutput extends BaseStep implements StepInterface
 			if (data.specialErrorHandling) {
 				data.savepoint = data.db.setSavepoint();
 			}
-			data.db.setValues(data.insertRowMeta, insertRowData, insertStatement);
+			data.db.setValues(data.insertBinder, insertRowData, insertStatement);
 			data.db.insertRow(insertStatement, data.batchMode, false); //false: no commit, it is handled in this step different
 			if (log.isRowLevel()) {
 				logRowlevel("Written row: "+data.insertRowMeta.getString(insertRowData));
@@ -381,15 +428,7 @@ public class TableOutput extends BaseStep implements StepInterface
             {
     			data.db.clearBatch(insertStatement);
     		    data.db.rollback();
-    		    StringBuffer msg = new StringBuffer("Error batch inserting rows into table ["+tableName+"].");
-    		    msg.append(Const.CR);
-    		    msg.append("Errors encountered (first 10):").append(Const.CR);
-    		    for (int x = 0 ; x < be.getExceptionsList().size() && x < 10 ; x++)
-    		    {
-    		    	Exception exception = be.getExceptionsList().get(x);
-    		    	if (exception.getMessage()!=null) msg.append(exception.getMessage()).append(Const.CR);
-    		    }
-    		    throw new KettleException(msg.toString(), be);
+    		    throw new KettleException(getBatchErrorMessage(tableName, be), be);
             }
 		}
 		catch(KettleDatabaseException dbe)
@@ -415,16 +454,7 @@ public class TableOutput extends BaseStep implements StepInterface
             {
     		    if (meta.ignoreErrors())
     		    {
-    		        if (data.warnings<20)
-    		        {
-    		            if(log.isBasic()) logBasic("WARNING: Couldn't insert row into table: "+rowMeta.getString(r)+Const.CR+dbe.getMessage());
-    		        }
-    		        else
-    		        if (data.warnings==20)
-    		        {
-    		        	if(log.isBasic()) logBasic("FINAL WARNING (no more then 20 displayed): Couldn't insert row into table: "+rowMeta.getString(r)+Const.CR+dbe.getMessage());
-    		        }
-    		        data.warnings++;
+    		        logInsertWarning(rowMeta, r, dbe);
     		    }
     		    else
     		    {
@@ -489,7 +519,232 @@ public class TableOutput extends BaseStep implements StepInterface
 		return outputRowData;
 	}
 	
+	private String getBatchErrorMessage(String tableName, KettleDatabaseBatchException be)
+	{
+	    StringBuffer msg = new StringBuffer("Error batch inserting rows into table ["+tableName+"].");
+	    msg.append(Const.CR);
+	    msg.append("Errors encountered (first 10):").append(Const.CR);
+	    for (int x = 0 ; x < be.getExceptionsList().size() && x < 10 ; x++)
+	    {
+	    	Exception exception = be.getExceptionsList().get(x);
+	    	if (exception.getMessage()!=null) msg.append(exception.getMessage()).append(Const.CR);
+	    }
+	    return msg.toString();
+	}
+	
+	private void logInsertWarning(RowMetaInterface rowMeta, Object[] r, KettleDatabaseException dbe) throws KettleException
+	{
+        if (data.warnings<20)
+        {
+            if(log.isBasic()) logBasic("WARNING: Couldn't insert row into table: "+rowMeta.getString(r)+Const.CR+dbe.getMessage());
+        }
+        else
+        if (data.warnings==20)
+        {
+        	if(log.isBasic()) logBasic("FINAL WARNING (no more then 20 displayed): Couldn't insert row into table: "+rowMeta.getString(r)+Const.CR+dbe.getMessage());
+        }
+        data.warnings++;
+	}
+	
+	/**
+	 * Add a row to the batch of its table, a full batch is handed over to a batch writer.
+	 */
+	private void addToBatch(String tableName, Object[] insertRowData, Object[] outputRowData) throws KettleException
+	{
+		int writerNr = getWriterNr(outputRowData);
+		Map<String, Batch> batches = data.asyncBatches.get(Math.max(0, writerNr));
+		Batch batch = batches.get(tableName);
+		if (batch==null)
+		{
+			batch = new Batch(tableName);
+			batches.put(tableName, batch);
+		}
+		batch.addRow(insertRowData, outputRowData);
+		if (log.isRowLevel()) {
+			logRowlevel("Added row to batch: "+data.insertRowMeta.getString(insertRowData));
+		}
+		
+		if (batch.size()>=data.commitSize)
+		{
+			batches.remove(tableName);
+			submitBatch(writerNr, batch);
+		}
+		
+		// Pass on the rows of the batches that were inserted in the mean time
+		//
+		for (TableOutputBatchWriter batchWriter : data.batchWriters)
+		{
+			if (batchWriter!=null)
+			{
+				Batch inserted;
+				while ((inserted = batchWriter.poll())!=null)
+				{
+					processBatch(inserted);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the writer of the row, -1 if the batches are handed over to the writers in turn
+	 */
+	private int getWriterNr(Object[] r) throws KettleException
+	{
+		if (data.routingFieldnrs==null)
+		{
+			return -1;
+		}
+		
+		int hash = 0;
+		for (int i=0;i<data.routingFieldnrs.length;i++)
+		{
+			ValueMetaInterface valueMeta = getInputRowMeta().getValueMeta(data.routingFieldnrs[i]);
+			hash = hash*31 + valueMeta.hashCode(r[data.routingFieldnrs[i]]);
+		}
+		hash ^= hash>>>16;
+		return (hash & 0x7FFFFFFF) % data.batchWriters.length;
+	}
+	
+	private void submitBatch(int writerNr, Batch batch) throws KettleException
+	{
+		if (writerNr<0)
+		{
+			writerNr = data.nextWriter;
+			data.nextWriter = (data.nextWriter+1) % data.batchWriters.length;
+		}
+		
+		TableOutputBatchWriter batchWriter = data.batchWriters[writerNr];
+		if (batchWriter==null)
+		{
+			// From now on the connection is used by the batch writer only.
+			// With more than one writer the connections are committed together at the end.
+			//
+			batchWriter = new TableOutputBatchWriter(data.writerDatabases[writerNr], environmentSubstitute(meta.getSchemaName()), data.insertRowMeta, 
+					getStepMeta().isDoingErrorHandling() || meta.ignoreErrors(), getStepMeta().isDoingErrorHandling(), data.batchWriters.length==1);
+			batchWriter.start(getStepname()+" batch writer "+writerNr, getTransMeta().isUsingVirtualThreads());
+			data.batchWriters[writerNr] = batchWriter;
+		}
+		
+		// Wait for the oldest batch of the writer if there are too many in flight
+		//
+		while (batchWriter.getInFlight()>=MAX_BATCHES_IN_FLIGHT)
+		{
+			processBatch(batchWriter.take());
+		}
+		if (log.isDetailed()) logDetailed("Inserting a batch of "+batch.size()+" rows into table ["+batch.getTableName()+"] with writer "+writerNr);
+		batchWriter.submit(batch);
+	}
+	
+	/**
+	 * Insert the batches that are not full yet and wait for all the batches to be inserted.
+	 */
+	private void flushBatches() throws KettleException
+	{
+		for (int i=0;i<data.asyncBatches.size();i++)
+		{
+			Map<String, Batch> batches = data.asyncBatches.get(i);
+			for (Batch batch : batches.values())
+			{
+				submitBatch(data.routingFieldnrs==null ? -1 : i, batch);
+			}
+			batches.clear();
+		}
+		
+		for (TableOutputBatchWriter batchWriter : data.batchWriters)
+		{
+			if (batchWriter!=null)
+			{
+				Batch inserted;
+				while ((inserted = batchWriter.take())!=null)
+				{
+					processBatch(inserted);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Stop the batch writers, the connections are no longer used by them afterwards.
+	 */
+	private void finishBatchWriters() throws KettleException
+	{
+		KettleException exception = null;
+		for (int i=0;i<data.batchWriters.length;i++)
+		{
+			if (data.batchWriters[i]!=null)
+			{
+				try
+				{
+					data.batchWriters[i].finish();
+				}
+				catch(KettleException e)
+				{
+					exception = e;
+				}
+				data.batchWriters[i] = null;
+			}
+		}
+		if (exception!=null)
+		{
+			throw exception;
+		}
+	}
+	
+	/**
+	 * Pass on the rows of a batch that was inserted or send them to error handling.
+	 */
+	private void processBatch(Batch batch) throws KettleException
+	{
+		// The rows that couldn't be added to the batch
+		//
+		for (int i=0;i<batch.getErrorRows().size();i++)
+		{
+			Object[] row = batch.getErrorRows().get(i);
+			KettleDatabaseException dbe = batch.getErrors().get(i);
+			if (getStepMeta().isDoingErrorHandling())
+			{
+				putError(getInputRowMeta(), row, 1L, dbe.toString(), null, "TOP001");
+			}
+			else
+			{
+				logInsertWarning(getInputRowMeta(), row, dbe);
+			}
+		}
+		
+		if (batch.getException()!=null)
+		{
+			setErrors(getErrors()+1);
+			throw new KettleException("Error inserting rows into table ["+batch.getTableName()+"]", batch.getException());
+		}
+		
+		KettleDatabaseBatchException be = batch.getBatchException();
+		if (be!=null)
+		{
+			if (getStepMeta().isDoingErrorHandling())
+			{
+				processBatchException(be.toString(), be.getUpdateCounts(), be.getExceptionsList(), batch.getBatchedRows());
+			}
+			else
+			{
+				throw new KettleException(getBatchErrorMessage(batch.getTableName(), be), be);
+			}
+		}
+		else
+		{
+			for (Object[] row : batch.getBatchedRows())
+			{
+				putRow(data.outputRowMeta, row);
+				incrementLinesOutput();
+			}
+		}
+	}
+	
 	private void processBatchException(String errorMessage, int[] updateCounts, List<Exception> exceptionsList) throws KettleException
+	{
+		processBatchException(errorMessage, updateCounts, exceptionsList, data.batchBuffer);
+	}
+	
+	private void processBatchException(String errorMessage, int[] updateCounts, List<Exception> exceptionsList, List<Object[]> batchBuffer) throws KettleException
     {
         // There was an error with the commit
         // We should put all the failing rows out there...
@@ -499,7 +754,7 @@ public class TableOutput extends BaseStep implements StepInterface
             int errNr = 0;
             for (int i=0;i<updateCounts.length;i++)
             {
-                Object[] row = (Object[]) data.batchBuffer.get(i);
+                Object[] row = (Object[]) batchBuffer.get(i);
                 if (updateCounts[i]>0)
                 {
                     // send the error foward
@@ -524,15 +779,15 @@ public class TableOutput extends BaseStep implements StepInterface
             // If we don't have update counts, it probably means the DB doesn't support it.
             // In this case we don't have a choice but to consider all inserted rows to be error rows.
             // 
-            for (int i=0;i<data.batchBuffer.size();i++)
+            for (int i=0;i<batchBuffer.size();i++)
             {
-                Object[] row = (Object[]) data.batchBuffer.get(i);
+                Object[] row = (Object[]) batchBuffer.get(i);
                 putError(data.outputRowMeta, row, 1L, errorMessage, null, "TOP0003");
             }
         }
         
         // Clear the buffer afterwards...
-        data.batchBuffer.clear();
+        batchBuffer.clear();
     }
 
     public boolean init(StepMetaInterface smi, StepDataInterface sdi)
@@ -569,6 +824,30 @@ public class TableOutput extends BaseStep implements StepInterface
                 	if(log.isBasic()) logBasic(BaseMessages.getString(PKG, "TableOutput.Log.BatchModeDisabled"));
                 }
                 
+                // The batches can only be inserted in the background in batch mode
+                //
+                data.asyncBatchCommit = meta.isAsyncBatchCommit() && data.batchMode;
+                if (meta.isAsyncBatchCommit() && !data.batchMode)
+                {
+                	if(log.isBasic()) logBasic(BaseMessages.getString(PKG, "TableOutput.Log.AsyncBatchCommitDisabled"));
+                }
+                
+                // More than one connection inserts the batches in the background, in batch mode only
+                //
+                int nrWriters = Math.max(1, meta.getNrWriterConnections());
+                if (nrWriters>1)
+                {
+                	if (data.batchMode)
+                	{
+                		data.asyncBatchCommit = true;
+                	}
+                	else
+                	{
+                		nrWriters = 1;
+                		if(log.isBasic()) logBasic(BaseMessages.getString(PKG, "TableOutput.Log.WriterConnectionsDisabled"));
+                	}
+                }
+                
                 if (meta.getDatabaseMeta()==null) {
                   throw new KettleException(BaseMessages.getString(PKG, "TableOutput.Exception.DatabaseNeedsToBeSelected"));
                 }
@@ -596,6 +875,25 @@ public class TableOutput extends BaseStep implements StepInterface
                   data.commitSize = Integer.MAX_VALUE;
                 }
                 data.db.setCommit(data.commitSize); 
+                
+                if (data.asyncBatchCommit)
+                {
+                	data.batchWriters = new TableOutputBatchWriter[nrWriters];
+                	data.writerDatabases = new Database[nrWriters];
+                	data.writerDatabases[0] = data.db;
+                	for (int i=0;i<nrWriters;i++)
+                	{
+                		if (i>0)
+                		{
+                			data.writerDatabases[i] = new Database(this, meta.getDatabaseMeta());
+                			data.writerDatabases[i].shareVariablesWith(this);
+                			data.writerDatabases[i].connect(getPartitionID());
+                			data.writerDatabases[i].setCommit(data.commitSize);
+                		}
+                		data.asyncBatches.add(new HashMap<String, Batch>());
+                	}
+                	if (nrWriters>1 && log.isBasic()) logBasic(BaseMessages.getString(PKG, "TableOutput.Log.WriterConnections", Integer.toString(nrWriters)));
+                }
 				
                 if (!meta.isPartitioningEnabled() && !meta.isTableNameInField())
                 {    
@@ -606,6 +904,13 @@ public class TableOutput extends BaseStep implements StepInterface
                     if (meta.truncateTable() && ( ( getCopy()==0 && getUniqueStepNrAcrossSlaves()==0 ) || !Const.isEmpty(getPartitionID())) )
     				{                	
     					data.db.truncateTable(environmentSubstitute(meta.getSchemaName()), environmentSubstitute(meta.getTablename()));
+    					
+    					// The other writer connections would wait for the lock of the truncate until the end
+    					//
+    					if (data.writerDatabases!=null && data.writerDatabases.length>1)
+    					{
+    						data.db.commit();
+    					}
     				}
                 }
                                 
@@ -629,6 +934,34 @@ public class TableOutput extends BaseStep implements StepInterface
 	    if(data.db!=null) {
 			try
 			{
+				if (data.asyncBatchCommit)
+				{
+					// Insert the batches that are left, unless we stop because of an error.
+					// After that the connection is no longer used by the batch writer.
+					//
+					try
+					{
+						if (getErrors()==0)
+						{
+							flushBatches();
+						}
+					}
+					finally
+					{
+						finishBatchWriters();
+					}
+					
+					// The writers don't commit if there are more than one: commit all the connections now
+					//
+					if (data.writerDatabases.length>1 && getErrors()==0)
+					{
+						for (Database writerDatabase : data.writerDatabases)
+						{
+							writerDatabase.commit(true);
+						}
+					}
+				}
+				
 	            for (String schemaTable : data.preparedStatements.keySet())
 	            {
 	            	// Get a commit counter per prepared statement to keep track of separate tables, etc. 
@@ -699,6 +1032,31 @@ public class TableOutput extends BaseStep implements StepInterface
 	            }
 	            
 			    data.db.disconnect();
+			    
+			    // The other writer connections
+			    //
+			    if (data.writerDatabases!=null)
+			    {
+			    	for (int i=1;i<data.writerDatabases.length;i++)
+			    	{
+			    		Database writerDatabase = data.writerDatabases[i];
+			    		if (writerDatabase!=null)
+			    		{
+			    			if (getErrors()>0)
+			    			{
+			    				try
+			    				{
+			    					writerDatabase.rollback();
+			    				}
+			    				catch(KettleDatabaseException e)
+			    				{
+			    					logError("Unexpected error rolling back a writer connection.", e);
+			    				}
+			    			}
+			    			writerDatabase.disconnect();
+			    		}
+			    	}
+			    }
 	        }
             super.dispose(smi, sdi);
         }        
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.tableoutput;
+
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.StatementBinder;
+import org.pentaho.di.core.exception.KettleDatabaseBatchException;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.util.ThreadUtil;
+
+/**
+ * Inserts the batches of Table Output and commits them in a thread of its own, so the step can fill the next batch in the mean time.<br>
+ * <br>
+ * Once the writer is started, the database connection is only used by its thread: a JDBC connection can't be used by 2 threads at the same time.
+ * The batches come back in the order they were submitted, with the problems that occurred, so the step can pass on the rows or send them to error handling.
+ * After an error that isn't handled, the remaining batches are not inserted.<br>
+ * <br>
+ * When a number of writers insert in parallel, the batches are not committed: the step commits all the connections at the end.
+ *
+ * @author matt
+ */
+public class TableOutputBatchWriter implements Runnable {
+
+	/**
+	 * The rows to insert into a table with a single commit.
+	 */
+	public static class Batch {
+		private String tableName;
+		private List<Object[]> insertRows;
+		private List<Object[]> outputRows;
+
+		/** The output rows of the rows that were added to the JDBC batch, in the order of the update counts */
+		private List<Object[]> batchedRows;
+
+		/** The rows that couldn't be added to the batch and the problems */
+		private List<Object[]> errorRows;
+		private List<KettleDatabaseException> errors;
+
+		private KettleDatabaseBatchException batchException;
+		private KettleException exception;
+
+		public Batch(String tableName) {
+			this.tableName = tableName;
+			insertRows = new ArrayList<Object[]>();
+			outputRows = new ArrayList<Object[]>();
+			batchedRows = new ArrayList<Object[]>();
+			errorRows = new ArrayList<Object[]>();
+			errors = new ArrayList<KettleDatabaseException>();
+		}
+
+		/**
+		 * @param insertRow the values to insert
+		 * @param outputRow the row to pass on once it's committed
+		 */
+		public void addRow(Object[] insertRow, Object[] outputRow) {
+			insertRows.add(insertRow);
+			outputRows.add(outputRow);
+		}
+
+		public int size() {
+			return insertRows.size();
+		}
+
+		public String getTableName() {
+			return tableName;
+		}
+
+		/**
+		 * @return the output rows of the rows that were added to the JDBC batch
+		 */
+		public List<Object[]> getBatchedRows() {
+			return batchedRows;
+		}
+
+		/**
+		 * @return the output rows of the rows that couldn't be added to the JDBC batch
+		 */
+		public List<Object[]> getErrorRows() {
+			return errorRows;
+		}
+
+		/**
+		 * @return the problems of the rows that couldn't be added to the JDBC batch
+		 */
+		public List<KettleDatabaseException> getErrors() {
+			return errors;
+		}
+
+		/**
+		 * @return the problem executing the batch with the update counts or null if the batch was committed
+		 */
+		public KettleDatabaseBatchException getBatchException() {
+			return batchException;
+		}
+
+		/**
+		 * @return the problem that made the writer stop or null
+		 */
+		public KettleException getException() {
+			return exception;
+		}
+	}
+
+	private static final Batch END = new Batch(null);
+
+	private Database db;
+	private String schemaName;
+	private RowMetaInterface insertRowMeta;
+	private StatementBinder insertBinder;
+	private boolean skipFailedRows;
+	private boolean commitGoodRows;
+	private boolean commitBatches;
+
+	private BlockingQueue<Batch> todo;
+	private BlockingQueue<Batch> done;
+	private Map<String, PreparedStatement> preparedStatements;
+	private Thread thread;
+	private boolean failed;
+
+	/** The number of batches submitted and not taken back yet, only used by the thread of the step */
+	private int inFlight;
+
+	/**
+	 * @param db the connection to insert with, it's no longer used by the step
+	 * @param schemaName the schema of the tables
+	 * @param insertRowMeta the metadata of the rows to insert
+	 * @param skipFailedRows true to keep on adding rows to the batch after a row failed
+	 * @param commitGoodRows true to commit the good rows and keep on inserting after executing a batch failed (error handling)
+	 * @param commitBatches true to commit every batch, false to leave the commit to the step
+	 */
+	public TableOutputBatchWriter(Database db, String schemaName, RowMetaInterface insertRowMeta, boolean skipFailedRows, boolean commitGoodRows, boolean commitBatches) {
+		this.db = db;
+		this.schemaName = schemaName;
+		this.insertRowMeta = insertRowMeta;
+		this.insertBinder = db.createStatementBinder(insertRowMeta);
+		this.skipFailedRows = skipFailedRows;
+		this.commitGoodRows = commitGoodRows;
+		this.commitBatches = commitBatches;
+
+		todo = new LinkedBlockingQueue<Batch>();
+		done = new LinkedBlockingQueue<Batch>();
+		preparedStatements = new HashMap<String, PreparedStatement>();
+	}
+
+	/**
+	 * Start the thread that inserts the batches.
+	 *
+	 * @param threadName the name of the thread
+	 * @param virtual true to insert in a virtual thread if the JVM supports it
+	 */
+	public void start(String threadName, boolean virtual) {
+		thread = ThreadUtil.newThread(this, virtual);
+		thread.setName(threadName);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Hand over a batch to insert.
+	 */
+	public void submit(Batch batch) {
+		todo.add(batch);
+		inFlight++;
+	}
+
+	/**
+	 * @return the number of batches submitted that weren't taken back
+	 */
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * @return the next batch that was inserted or null if it isn't finished yet
+	 */
+	public Batch poll() {
+		Batch batch = done.poll();
+		if (batch!=null) {
+			inFlight--;
+		}
+		return batch;
+	}
+
+	/**
+	 * Wait for the next batch to be inserted.
+	 *
+	 * @return the next batch that was inserted or null if none are in flight
+	 */
+	public Batch take() throws KettleException {
+		if (inFlight==0) {
+			return null;
+		}
+		try {
+			Batch batch = done.take();
+			inFlight--;
+			return batch;
+		} catch(InterruptedException e) {
+			throw new KettleException("Interrupted while waiting for a batch to be inserted", e);
+		}
+	}
+
+	/**
+	 * Insert the batches that were handed over and stop the thread.  The connection can be used again by the step afterwards.
+	 */
+	public void finish() throws KettleException {
+		if (thread==null) {
+			return;
+		}
+		todo.add(END);
+		try {
+			thread.join();
+		} catch(InterruptedException e) {
+			throw new KettleException("Interrupted while waiting for the batches to be inserted", e);
+		}
+		thread = null;
+	}
+
+	public void run() {
+		try {
+			while (true) {
+				Batch batch = todo.take();
+				if (batch==END) {
+					break;
+				}
+				try {
+					if (failed) {
+						batch.exception = new KettleException("The rows were not inserted into table ["+batch.tableName+"] because of a previous error");
+					} else {
+						insert(batch);
+					}
+				} finally {
+					done.add(batch); // the step waits for every batch it submitted
+				}
+			}
+		} catch(InterruptedException e) {
+			// Stop
+		} finally {
+			for (PreparedStatement preparedStatement : preparedStatements.values()) {
+				try {
+					preparedStatement.close();
+				} catch(SQLException e) {
+					// Ignore, the connection is closed next
+				}
+			}
+			preparedStatements.clear();
+		}
+	}
+
+	private void insert(Batch batch) {
+		PreparedStatement insertStatement = null;
+		try {
+			insertStatement = preparedStatements.get(batch.tableName);
+			if (insertStatement==null) {
+				String sql = db.getInsertStatement(schemaName, batch.tableName, insertRowMeta);
+				insertStatement = db.prepareSQL(sql);
+				preparedStatements.put(batch.tableName, insertStatement);
+			}
+
+			for (int i=0;i<batch.insertRows.size();i++) {
+				try {
+					db.setValues(insertBinder, batch.insertRows.get(i), insertStatement);
+					db.insertRow(insertStatement, true, false); // false: no commit, done for the whole batch
+					batch.batchedRows.add(batch.outputRows.get(i));
+				} catch(KettleDatabaseException e) {
+					if (!skipFailedRows) {
+						throw e;
+					}
+					batch.errorRows.add(batch.outputRows.get(i));
+					batch.errors.add(e);
+				}
+			}
+			executeBatch(insertStatement);
+		} catch(KettleDatabaseBatchException be) {
+			batch.batchException = be;
+			try {
+				db.clearBatch(insertStatement);
+				if (commitGoodRows) {
+					if (commitBatches) {
+						db.commit(true);
+					}
+				} else {
+					db.rollback();
+					failed = true;
+				}
+			} catch(KettleException e) {
+				batch.exception = e;
+				failed = true;
+			}
+		} catch(KettleException e) {
+			batch.exception = e;
+			failed = true;
+			rollback(insertStatement);
+		} catch(Throwable e) {
+			batch.exception = new KettleException("Unexpected error inserting the rows into table ["+batch.tableName+"]", e);
+			failed = true;
+			rollback(insertStatement);
+		}
+	}
+
+	private void rollback(PreparedStatement insertStatement) {
+		try {
+			if (insertStatement!=null) {
+				db.clearBatch(insertStatement);
+			}
+			db.rollback();
+		} catch(Throwable e) {
+			// The original problem is reported
+		}
+	}
+
+	private void executeBatch(PreparedStatement insertStatement) throws KettleException {
+		try {
+			insertStatement.executeBatch();
+			if (commitBatches) {
+				db.commit();
+			}
+			insertStatement.clearBatch();
+		} catch(BatchUpdateException ex) {
+			KettleDatabaseBatchException kdbe = new KettleDatabaseBatchException("Error updating batch", ex);
+			kdbe.setUpdateCounts(ex.getUpdateCounts());
+			List<Exception> exceptions = new ArrayList<Exception>();
+
+			// 'seed' the loop with the root exception
+			SQLException nextException = ex;
+			do {
+				exceptions.add(nextException);
+				// while current exception has next exception, add to list
+			} while ((nextException = nextException.getNextException())!=null);
+			kdbe.setExceptionsList(exceptions);
+			throw kdbe;
+		} catch(SQLException ex) {
+			throw new KettleDatabaseException("Error inserting row", ex);
+		}
+	}
+}
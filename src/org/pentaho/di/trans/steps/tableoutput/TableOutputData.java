@@ -22,6 +22,7 @@ import java.util.Map;
 
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.StatementBinder;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -58,6 +59,7 @@ public class TableOutputData extends BaseStepData implements StepDataInterface
     public boolean sendToErrorRow;
     public RowMetaInterface outputRowMeta;
     public RowMetaInterface insertRowMeta;
+    public StatementBinder insertBinder;
 	public boolean specialErrorHandling;
 	public Savepoint savepoint;
 	public boolean releaseSavepoint;
@@ -68,6 +70,20 @@ public class TableOutputData extends BaseStepData implements StepDataInterface
     
 	public int commitSize;
 	
+	/** Insert and commit the batches in the background */
+	public boolean asyncBatchCommit;
+	
+	/** The writers that insert the batches, each with a connection of its own.  The first one uses db. */
+	public TableOutputBatchWriter[] batchWriters;
+	public Database[] writerDatabases;
+	
+	/** The batches that are being filled per writer by table name */
+	public List<Map<String, TableOutputBatchWriter.Batch>> asyncBatches;
+	
+	/** The indexes of the fields that route the rows to the writers or null to hand over the batches to the writers in turn */
+	public int[] routingFieldnrs;
+	public int nextWriter;
+	
 	public TableOutputData()
 	{
 		super();
@@ -83,6 +99,7 @@ public class TableOutputData extends BaseStepData implements StepDataInterface
         
         batchBuffer = new ArrayList<Object[]>();
         commitCounterMap = new HashMap<String, Integer>();
+        asyncBatches = new ArrayList<Map<String, TableOutputBatchWriter.Batch>>();
         
         releaseSavepoint = true;
 	}
@@ -61,6 +61,13 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 	private boolean      truncateTable;
 	private boolean      ignoreErrors;
 	private boolean      useBatchUpdate;
+	private boolean      asyncBatchCommit;
+	
+	/** The number of connections that insert the batches in parallel */
+	private int          nrWriterConnections;
+	
+	/** The fields to route the rows to the connections with, the rows with the same values are inserted in order */
+	private String[]     routingFields;
     
     private boolean      partitioningEnabled;
     private String       partitioningField;
@@ -233,6 +240,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 		
 		fieldStream   = new String[0];
 		fieldDatabase = new String[0];
+		
+		nrWriterConnections = 1;
+		routingFields = new String[0];
 	}
     
 	public void allocate(int nrRows)
@@ -266,6 +276,8 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 		{
 			retval.fieldDatabase[i] = fieldDatabase[i];
 		}	
+		
+		retval.routingFields = routingFields.clone();
 		
 		return retval;
 	}
@@ -390,6 +402,54 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
         return useBatchUpdate;
     }
     
+    /**
+     * @return true if the batches are executed and committed in the background while the next batch is filled
+     */
+    public boolean isAsyncBatchCommit()
+    {
+        return asyncBatchCommit;
+    }
+    
+    /**
+     * @param asyncBatchCommit true to execute and commit the batches in the background while the next batch is filled
+     */
+    public void setAsyncBatchCommit(boolean asyncBatchCommit)
+    {
+        this.asyncBatchCommit = asyncBatchCommit;
+    }
+    
+    /**
+     * @return the number of connections that insert the batches in parallel
+     */
+    public int getNrWriterConnections()
+    {
+        return nrWriterConnections;
+    }
+    
+    /**
+     * @param nrWriterConnections the number of connections that insert the batches in parallel
+     */
+    public void setNrWriterConnections(int nrWriterConnections)
+    {
+        this.nrWriterConnections = nrWriterConnections;
+    }
+    
+    /**
+     * @return the fields to route the rows to the writer connections with or an empty array to spread the batches evenly
+     */
+    public String[] getRoutingFields()
+    {
+        return routingFields;
+    }
+    
+    /**
+     * @param routingFields the fields to route the rows to the writer connections with
+     */
+    public void setRoutingFields(String[] routingFields)
+    {
+        this.routingFields = routingFields;
+    }
+    
     
 	private void readData(Node stepnode, List<? extends SharedObjectInterface> databases) throws KettleXMLException
 	{
@@ -403,6 +463,7 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 			truncateTable  = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "truncate"));
 			ignoreErrors   = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "ignore_errors"));
 			useBatchUpdate = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "use_batch"));
+			asyncBatchCommit = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "async_batch_commit"));
 			
 			// If not present it will be false to be compatible with pre-v3.2
 			specifyFields  = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "specify_fields"));
@@ -431,6 +492,17 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 				fieldDatabase   [i] = XMLHandler.getTagValue(knode, "column_name");  //$NON-NLS-1$
 				fieldStream     [i] = XMLHandler.getTagValue(knode, "stream_name"); //$NON-NLS-1$
 			}
+			
+			nrWriterConnections = Math.max(1, Const.toInt(XMLHandler.getTagValue(stepnode, "writer_connections"), 1));
+			
+			Node routing = XMLHandler.getSubNode(stepnode, "routing_fields");   //$NON-NLS-1$
+			int nrRouting = XMLHandler.countNodes(routing, "field");            //$NON-NLS-1$
+			routingFields = new String[nrRouting];
+			for (int i=0;i<nrRouting;i++)
+			{
+				Node knode = XMLHandler.getSubNodeByNr(routing, "field", i);     //$NON-NLS-1$
+				routingFields[i] = XMLHandler.getTagValue(knode, "name");         //$NON-NLS-1$
+			}
         }
 		catch(Exception e)
 		{
@@ -452,6 +524,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
         
         // To be compatible with pre-v3.2 (SB)
         specifyFields       = false;        
+        
+        nrWriterConnections = 1;
+        routingFields       = new String[0];
 	}
 
 	public String getXML()
@@ -465,6 +540,7 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 		retval.append("    "+XMLHandler.addTagValue("truncate",       truncateTable));
 		retval.append("    "+XMLHandler.addTagValue("ignore_errors",  ignoreErrors));
 		retval.append("    "+XMLHandler.addTagValue("use_batch",      useBatchUpdate));
+		retval.append("    "+XMLHandler.addTagValue("async_batch_commit", asyncBatchCommit));
 		retval.append("    "+XMLHandler.addTagValue("specify_fields", specifyFields));
 
         retval.append("    "+XMLHandler.addTagValue("partitioning_enabled",   partitioningEnabled));
@@ -489,6 +565,16 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 			retval.append("        </field>").append(Const.CR); //$NON-NLS-1$
 		}
 		retval.append("    </fields>").append(Const.CR); //$NON-NLS-1$
+		
+		retval.append("    "+XMLHandler.addTagValue("writer_connections", nrWriterConnections));
+		retval.append("    <routing_fields>").append(Const.CR); //$NON-NLS-1$
+		for (int i=0;i<routingFields.length;i++)
+		{
+			retval.append("        <field>").append(Const.CR); //$NON-NLS-1$
+			retval.append("          ").append(XMLHandler.addTagValue("name", routingFields[i])); //$NON-NLS-1$ //$NON-NLS-2$
+			retval.append("        </field>").append(Const.CR); //$NON-NLS-1$
+		}
+		retval.append("    </routing_fields>").append(Const.CR); //$NON-NLS-1$
 
 		return retval.toString();
 	}
@@ -508,6 +594,7 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 			truncateTable    =      rep.getStepAttributeBoolean(id_step, "truncate"); 
 			ignoreErrors     =      rep.getStepAttributeBoolean(id_step, "ignore_errors"); 
 			useBatchUpdate   =      rep.getStepAttributeBoolean(id_step, "use_batch"); 
+			asyncBatchCommit =      rep.getStepAttributeBoolean(id_step, "async_batch_commit"); 
 			specifyFields    =      rep.getStepAttributeBoolean(id_step, "specify_fields");
             
             partitioningEnabled   = rep.getStepAttributeBoolean(id_step, "partitioning_enabled"); 
@@ -535,6 +622,14 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 				fieldStream[idx]   = Const.NVL(rep.getStepAttributeString(id_step, 
 						                                                  idx, "stream_name"), ""); //$NON-NLS-1$ //$NON-NLS-2$
 			}
+			
+			nrWriterConnections = Math.max(1, (int)rep.getStepAttributeInteger(id_step, "writer_connections"));
+			int nrRouting = rep.countNrStepAttributes(id_step, "routing_field_name"); //$NON-NLS-1$
+			routingFields = new String[nrRouting];
+			for (int idx=0; idx < nrRouting; idx++)
+			{
+				routingFields[idx] = rep.getStepAttributeString(id_step, idx, "routing_field_name"); //$NON-NLS-1$
+			}
 		}
 		catch(Exception e)
 		{
@@ -553,6 +648,7 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 			rep.saveStepAttribute(id_transformation, id_step, "truncate",        truncateTable);
 			rep.saveStepAttribute(id_transformation, id_step, "ignore_errors",   ignoreErrors);
 			rep.saveStepAttribute(id_transformation, id_step, "use_batch",       useBatchUpdate);
+			rep.saveStepAttribute(id_transformation, id_step, "async_batch_commit", asyncBatchCommit);
 			rep.saveStepAttribute(id_transformation, id_step, "specify_fields",  specifyFields);
 			
             rep.saveStepAttribute(id_transformation, id_step, "partitioning_enabled", partitioningEnabled);
@@ -575,6 +671,12 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 				String streamName = (idx < fieldStream.length   ? fieldStream[idx] : "");
 				rep.saveStepAttribute(id_transformation, id_step, idx, "column_name", columnName); //$NON-NLS-1$
 				rep.saveStepAttribute(id_transformation, id_step, idx, "stream_name", streamName); //$NON-NLS-1$
+			}
+			
+			rep.saveStepAttribute(id_transformation, id_step, "writer_connections", nrWriterConnections);
+			for (int idx=0; idx < routingFields.length; idx++)
+			{
+				rep.saveStepAttribute(id_transformation, id_step, idx, "routing_field_name", routingFields[idx]); //$NON-NLS-1$
 			}
             
 			// Also, save the step-database relationship!
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.textfileinput;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the lines of a file that start in a range of bytes: the part of a file one copy of the step reads in parallel with the others.<br>
+ * <br>
+ * A line belongs to the range its first byte is in.  The stream skips the partial line at the start of the range
+ * and reads past the end of the range to complete the last line.  That way every line is read by exactly one copy,
+ * whatever the file format: a line starts after a LF, or after a CR that isn't followed by a LF.<br>
+ * <br>
+ * This only works for encodings that never use the CR and LF bytes inside other characters (single byte encodings, UTF-8).
+ *
+ * @author matt
+ */
+public class LineRangeInputStream extends InputStream {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final int CR = '\r';
+	private static final int LF = '\n';
+
+	private InputStream inputStream;
+	private long start;
+	private long end;
+
+	private byte[] buffer;
+	private int bufferPosition;
+	private int bufferLength;
+
+	/** The position in the file of the next byte */
+	private long position;
+	private int previous;
+	private boolean started;
+	private boolean done;
+
+	/**
+	 * @param inputStream the stream of the complete file, positioned at the start of the file
+	 * @param start the position of the first byte of the range
+	 * @param end the position after the last byte of the range
+	 */
+	public LineRangeInputStream(InputStream inputStream, long start, long end) {
+		this.inputStream = inputStream;
+		this.start = start;
+		this.end = end;
+		buffer = new byte[BUFFER_SIZE];
+		previous = LF; // the start of the file is the start of a line
+	}
+
+	public int read() throws IOException {
+		byte[] one = new byte[1];
+		int n = read(one, 0, 1);
+		return n<=0 ? -1 : one[0] & 0xFF;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (!started) {
+			skipToFirstLine();
+			started = true;
+		}
+		if (done) {
+			return -1;
+		}
+		if (len==0) {
+			return 0;
+		}
+
+		int n = 0;
+		while (n<len) {
+			if (bufferPosition==bufferLength) {
+				if (n>0) break; // don't block for more than we have
+				if (!fill()) {
+					done = true;
+					break;
+				}
+			}
+			int c = buffer[bufferPosition] & 0xFF;
+			if (position>=end && isLineStart(previous, c)) {
+				// The first line after the range is read by another copy
+				//
+				done = true;
+				break;
+			}
+			b[off+n++] = (byte)c;
+			previous = c;
+			bufferPosition++;
+			position++;
+		}
+		return n==0 ? -1 : n;
+	}
+
+	/**
+	 * Skip the bytes before the range and the rest of the line the range starts in, the previous copy reads that line.
+	 */
+	private void skipToFirstLine() throws IOException {
+		if (start<=0) {
+			return;
+		}
+		long toSkip = start-1;
+		while (toSkip>0) {
+			long skipped = inputStream.skip(toSkip);
+			if (skipped<=0) {
+				if (inputStream.read()<0) {
+					done = true;
+					return;
+				}
+				skipped = 1;
+			}
+			toSkip-=skipped;
+		}
+		position = start-1;
+
+		while (true) {
+			if (bufferPosition==bufferLength && !fill()) {
+				done = true;
+				return;
+			}
+			int c = buffer[bufferPosition] & 0xFF;
+			if (position>=start && isLineStart(previous, c)) {
+				return;
+			}
+			previous = c;
+			bufferPosition++;
+			position++;
+		}
+	}
+
+	private boolean fill() throws IOException {
+		int n = inputStream.read(buffer, 0, buffer.length);
+		while (n==0) {
+			n = inputStream.read(buffer, 0, buffer.length);
+		}
+		if (n<0) {
+			bufferPosition = 0;
+			bufferLength = 0;
+			return false;
+		}
+		bufferPosition = 0;
+		bufferLength = n;
+		return true;
+	}
+
+	/**
+	 * Find where a number of lines at the start of a file end, for example the header lines.
+	 *
+	 * @param inputStream the stream of the complete file, positioned at the start of the file
+	 * @param nrLines the number of lines
+	 * @return the position of the first byte after the lines, the size of the file if it has fewer lines
+	 */
+	public static long getLinesSize(InputStream inputStream, int nrLines) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long position = 0L;
+		int previous = -1;
+		int n;
+		while (nrLines>0 && (n = inputStream.read(buffer, 0, buffer.length))>=0) {
+			for (int i=0;i<n;i++) {
+				int c = buffer[i] & 0xFF;
+				if (previous>=0 && isLineStart(previous, c) && --nrLines==0) {
+					return position;
+				}
+				previous = c;
+				position++;
+			}
+		}
+		return position;
+	}
+
+	private static boolean isLineStart(int previous, int c) {
+		return previous==LF || (previous==CR && c!=LF);
+	}
+
+	public int available() throws IOException {
+		return done ? 0 : bufferLength-bufferPosition;
+	}
+
+	public void close() throws IOException {
+		inputStream.close();
+	}
+}
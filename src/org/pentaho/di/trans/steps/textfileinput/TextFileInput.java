@@ -12,7 +12,10 @@
 package org.pentaho.di.trans.steps.textfileinput;
 
 import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -674,7 +677,18 @@ public class TextFileInput extends BaseStep implements StepInterface
                     String pol = strings[fieldnr];
                     try
                     {
-                        value = valueMeta.convertDataFromString(pol, convertMeta, nullif, ifnull, trim_type);
+                        if (valueMeta.isStorageBinaryString())
+                        {
+                            // Lazy conversion: handle the null values and the trimming, keep the String as bytes.
+                            // The conversion to the data type happens when a step needs the value.
+                            //
+                            ValueMetaInterface storageMeta = valueMeta.getStorageMetadata();
+                            value = storageMeta.convertNormalStorageTypeToBinaryString(storageMeta.convertDataFromString(pol, storageMeta, nullif, ifnull, trim_type));
+                        }
+                        else
+                        {
+                            value = valueMeta.convertDataFromString(pol, convertMeta, nullif, ifnull, trim_type);
+                        }
                     }
                     catch (Exception e)
                     {                               	
@@ -920,6 +934,13 @@ public class TextFileInput extends BaseStep implements StepInterface
             
             handleMissingFiles();
             
+            // Divide the files over the copies of the step...
+            //
+            if (data.parallel)
+            {
+                distributeFiles();
+            }
+            
 			// Open the first file & read the required rows in the buffer, stop
 			// if it fails...
 			if (!openNextFile())
@@ -1221,6 +1242,172 @@ public class TextFileInput extends BaseStep implements StepInterface
 		return filterOK;
 	}
 
+	/**
+	 * Keep the files, or the parts of the files, this copy of the step reads.  The other copies read the rest.
+	 */
+	private void distributeFiles() throws KettleException
+	{
+		List<FileObject> files = data.files.getFiles();
+		long[] sizes = new long[files.size()];
+		try
+		{
+			for (int i = 0; i < sizes.length; i++)
+			{
+				sizes[i] = files.get(i).getContent().getSize();
+			}
+		}
+		catch (Exception e)
+		{
+			throw new KettleException(BaseMessages.getString(PKG, "TextFileInput.Exception.UnableToGetFileSize"), e);
+		}
+
+		boolean splitting = isSplittingFiles();
+		if (!splitting && log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "TextFileInput.Log.NotSplittingFiles"));
+
+		long[][] ranges = calculateFileRanges(sizes, splitting, data.stepNumber, data.totalNumberOfSteps);
+
+		List<FileObject> ownFiles = new ArrayList<FileObject>();
+		List<long[]> ownRanges = new ArrayList<long[]>();
+		for (int i = 0; i < ranges.length; i++)
+		{
+			if (ranges[i] != null)
+			{
+				ownFiles.add(files.get(i));
+				ownRanges.add(ranges[i]);
+			}
+		}
+
+		// The header lines are read by the copy that reads the start of the file, the other ranges start after them
+		//
+		if (meta.hasHeader() && meta.getNrHeaderLines() > 0)
+		{
+			for (int i = ownRanges.size() - 1; i >= 0; i--)
+			{
+				if (ownRanges.get(i)[0] < 0) continue;
+
+				long headerSize = getHeaderSize(ownFiles.get(i));
+				long[] range = skipHeader(ownRanges.get(i), headerSize);
+				if (range == null)
+				{
+					ownFiles.remove(i);
+					ownRanges.remove(i);
+				}
+				else
+				{
+					ownRanges.set(i, range);
+				}
+			}
+		}
+		files.clear();
+		files.addAll(ownFiles);
+
+		data.rangeStart = new long[ownRanges.size()];
+		data.rangeEnd = new long[ownRanges.size()];
+		for (int i = 0; i < ownRanges.size(); i++)
+		{
+			data.rangeStart[i] = ownRanges.get(i)[0];
+			data.rangeEnd[i] = ownRanges.get(i)[1];
+		}
+	}
+
+	private long getHeaderSize(FileObject file) throws KettleException
+	{
+		InputStream inputStream = null;
+		try
+		{
+			inputStream = KettleVFS.getInputStream(file);
+			return LineRangeInputStream.getLinesSize(new BufferedInputStream(inputStream, BUFFER_SIZE_INPUT_STREAM), meta.getNrHeaderLines());
+		}
+		catch (Exception e)
+		{
+			throw new KettleException(BaseMessages.getString(PKG, "TextFileInput.Exception.UnableToReadHeader", file.getName().getURI()), e);
+		}
+		finally
+		{
+			if (inputStream != null)
+			{
+				try { inputStream.close(); } catch (IOException e) { }
+			}
+		}
+	}
+
+	/**
+	 * The header lines can be longer than the first range of a file: the first range is extended to the end of the header,
+	 * the other ranges start after it.
+	 *
+	 * @param range the range of bytes of the file
+	 * @param headerSize the number of bytes of the header lines
+	 * @return the range without the header bytes, or null if nothing is left of it
+	 */
+	public static long[] skipHeader(long[] range, long headerSize)
+	{
+		if (range[0] == 0)
+		{
+			return new long[] { 0L, Math.max(range[1], headerSize) };
+		}
+		long start = Math.max(range[0], headerSize);
+		long end = Math.max(range[1], headerSize);
+		return start < end ? new long[] { start, end } : null;
+	}
+
+	/**
+	 * A file can only be split in ranges of lines if we can find the start of a line anywhere in the file:
+	 * the file isn't compressed, lines don't belong together (pages, wrapped lines, footers), there are no line breaks in enclosures
+	 * and the encoding never uses the CR and LF bytes inside other characters.
+	 */
+	private boolean isSplittingFiles()
+	{
+		String compression = meta.getFileCompression();
+		if (compression != null && !compression.equals("None")) return false;
+		if (meta.isLayoutPaged() || meta.isLineWrapped() || meta.hasFooter() || meta.isBreakInEnclosureAllowed()) return false;
+
+		String encoding = Const.isEmpty(meta.getEncoding()) ? Charset.defaultCharset().name() : meta.getEncoding();
+		return EncodingType.guessEncodingType(encoding) == EncodingType.SINGLE;
+	}
+
+	/**
+	 * Divide the bytes of the files evenly over the copies of the step.  Each copy gets a block of the files as if they were concatenated.
+	 * A file that is larger than a block is split: every copy reads the lines that start in its block.  The other files are read completely
+	 * by the copy whose block they start in, that way a lot of small files are handed out by size.
+	 * 
+	 * @param sizes the sizes of the files in bytes
+	 * @param splitting true if the files can be split in ranges of lines
+	 * @param stepNr the number of this copy of the step
+	 * @param nrSteps the number of copies of the step
+	 * @return for every file the range of bytes this copy reads, {-1, -1} to read the complete file or null if another copy reads the file.
+	 */
+	public static long[][] calculateFileRanges(long[] sizes, boolean splitting, int stepNr, int nrSteps)
+	{
+		long total = 0L;
+		for (long size : sizes) total += size;
+
+		long blockSize = total / nrSteps;
+		long blockStart = total * stepNr / nrSteps;
+		long blockEnd = stepNr == nrSteps - 1 ? Long.MAX_VALUE : total * (stepNr + 1) / nrSteps;
+
+		long[][] ranges = new long[sizes.length][];
+		long offset = 0L;
+		for (int i = 0; i < sizes.length; i++)
+		{
+			long size = sizes[i];
+			if (splitting && size > blockSize)
+			{
+				long start = Math.max(offset, blockStart) - offset;
+				long end = Math.min(offset + size, blockEnd) - offset;
+				if (start < end)
+				{
+					ranges[i] = new long[] { start, end };
+				}
+			}
+			else if (offset >= blockStart && offset < blockEnd)
+			{
+				ranges[i] = new long[] { -1L, -1L };
+			}
+			offset += size;
+		}
+		return ranges;
+	}
+
 	private void handleMissingFiles() throws KettleException
 	{
 		List<FileObject> nonExistantFiles = data.files.getNonExistantFiles();
@@ -1368,6 +1555,16 @@ public class TextFileInput extends BaseStep implements StepInterface
 			data.fr = KettleVFS.getInputStream(data.file);
 			data.dataErrorLineHandler.handleFile(data.file);
 
+			// Only the copy that reads the start of the file skips the header lines
+			//
+			boolean hasHeader = meta.hasHeader();
+			if (data.parallel && data.rangeStart[data.filenr] >= 0)
+			{
+				if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "TextFileInput.Log.ReadingFileRange", data.filename, Long.toString(data.rangeStart[data.filenr]), Long.toString(data.rangeEnd[data.filenr])));
+				data.fr = new LineRangeInputStream(data.fr, data.rangeStart[data.filenr], data.rangeEnd[data.filenr]);
+				hasHeader = hasHeader && data.rangeStart[data.filenr] == 0;
+			}
+
             String sFileCompression = meta.getFileCompression();
 			if (sFileCompression != null && sFileCompression.equals("Zip"))
 			{
@@ -1429,7 +1626,7 @@ public class TextFileInput extends BaseStep implements StepInterface
 			   The footer rows
 			 */
 			int bufferSize = 1; 
-			bufferSize += meta.hasHeader() ? meta.getNrHeaderLines() : 0;
+			bufferSize += hasHeader ? meta.getNrHeaderLines() : 0;
 			bufferSize += meta.isLayoutPaged() ? meta.getNrLinesPerPage() * (Math.max(0, meta.getNrWraps()) + 1) : 0;
 			bufferSize += meta.hasFooter() ? meta.getNrFooterLines() : 0;
 
@@ -1451,7 +1648,7 @@ public class TextFileInput extends BaseStep implements StepInterface
 				if (line != null)
 				{
 					// when there is no header, check the filter for the first line
-					if (!meta.hasHeader() || i >= meta.getNrHeaderLines())
+					if (!hasHeader || i >= meta.getNrHeaderLines())
 					{
 						// Filter row?
 						boolean isFilterLastLine = false;
@@ -1486,7 +1683,7 @@ public class TextFileInput extends BaseStep implements StepInterface
 			data.pageLinesRead = 0;
 
 			// Set a flags
-			data.doneWithHeader = !meta.hasHeader();
+			data.doneWithHeader = !hasHeader;
 		}
 		catch (Exception e)
 		{
@@ -1536,6 +1733,15 @@ public class TextFileInput extends BaseStep implements StepInterface
             // }
             // String null_cmp = Const.rightPad(new StringBuilder(null_value), pol.length());
 
+            // Divide the files over the copies of the step?  Files from previous steps are divided by the hop already.
+            //
+            if (meta.isRunningInParallel() && !meta.isAcceptingFilenames())
+            {
+                data.stepNumber = getUniqueStepNrAcrossSlaves();
+                data.totalNumberOfSteps = getUniqueStepCountAcrossSlaves();
+                data.parallel = data.totalNumberOfSteps > 1;
+            }
+
             // calculate the file format type in advance so we can use a switch
             data.fileFormatType = meta.getFileFormatTypeNr();
 
@@ -63,6 +63,18 @@ public class TextFileInputData extends BaseStepData implements
 
 	public int filenr;
 
+	/** Dividing the files over the copies of the step */
+	public boolean parallel;
+
+	public int stepNumber;
+
+	public int totalNumberOfSteps;
+
+	/** The range of bytes of every file this copy reads, a start of -1 means the complete file */
+	public long[] rangeStart;
+
+	public long[] rangeEnd;
+
 	public InputStream fr;
 
 	public ZipInputStream zi;
@@ -230,6 +230,12 @@ public class TextFileInputMeta extends BaseStepMeta implements StepMetaInterface
 	
     /** The add filenames to result filenames flag */
     private boolean isaddresult;
+
+    /** Divide the files over the copies of the step: split large uncompressed files in ranges of lines, hand out the small ones by size */
+    private boolean runningInParallel;
+
+    /** Keep the fields as binary strings (the bytes read), only convert them to their data type when a step needs the value */
+    private boolean lazyConversionActive;
     
     /** Additional fields  **/
     private String shortFileFieldName;
@@ -825,6 +831,8 @@ public class TextFileInputMeta extends BaseStepMeta implements StepMetaInterface
 		lineNumberFilesExtension = "line";
 		dateFormatLenient = true;
 		rowNumberByFile = false;
+		runningInParallel = false;
+		lazyConversionActive = false;
 
 		int nrfiles = 0;
 		int nrfields = 0;
@@ -893,6 +901,20 @@ public class TextFileInputMeta extends BaseStepMeta implements StepMetaInterface
             v.setDateFormatLocale(dateFormatLocale);
             v.setTrimType(field.getTrimType());
             
+            // With lazy conversion the step keeps the bytes it read, the data type conversion happens when the value is used.
+            // When we handle the conversion errors in the step, only the Strings can be lazy: they are never in error.
+            //
+            if (lazyConversionActive && (!errorIgnored || type == ValueMetaInterface.TYPE_STRING))
+            {
+                v.setStringEncoding(space==null ? encoding : space.environmentSubstitute(encoding));
+                v.setStorageType(ValueMetaInterface.STORAGE_TYPE_BINARY_STRING);
+
+                ValueMetaInterface storageMetadata = v.clone();
+                storageMetadata.setType(ValueMetaInterface.TYPE_STRING);
+                storageMetadata.setStorageType(ValueMetaInterface.STORAGE_TYPE_NORMAL);
+                v.setStorageMetadata(storageMetadata);
+            }
+            
 			row.addValueMeta(v);
 		}
 		if (errorIgnored)
@@ -1109,6 +1131,8 @@ public class TextFileInputMeta extends BaseStepMeta implements StepMetaInterface
 		retval.append("    ").append(XMLHandler.addTagValue("rootUriNameFieldName", rootUriNameFieldName));
 		retval.append("    ").append(XMLHandler.addTagValue("extensionFieldName", extensionFieldName));
 		retval.append("    ").append(XMLHandler.addTagValue("sizeFieldName", sizeFieldName));
+		retval.append("    ").append(XMLHandler.addTagValue("parallel", runningInParallel));
+		retval.append("    ").append(XMLHandler.addTagValue("lazy_conversion", lazyConversionActive));
 		
 		return retval.toString();
 	}
@@ -1276,6 +1300,8 @@ public class TextFileInputMeta extends BaseStepMeta implements StepMetaInterface
 			rootUriNameFieldName = XMLHandler.getTagValue(stepnode, "rootUriNameFieldName");
 			extensionFieldName = XMLHandler.getTagValue(stepnode, "extensionFieldName");
 			sizeFieldName = XMLHandler.getTagValue(stepnode, "sizeFieldName");
+			runningInParallel = YES.equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "parallel"));
+			lazyConversionActive = YES.equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "lazy_conversion"));
 		}
 		catch (Exception e)
 		{
@@ -1436,6 +1462,8 @@ public class TextFileInputMeta extends BaseStepMeta implements StepMetaInterface
 			rootUriNameFieldName = rep.getStepAttributeString(id_step, "rootUriNameFieldName");
 			extensionFieldName = rep.getStepAttributeString(id_step, "extensionFieldName");
 			sizeFieldName = rep.getStepAttributeString(id_step, "sizeFieldName");
+			runningInParallel = rep.getStepAttributeBoolean(id_step, "parallel");
+			lazyConversionActive = rep.getStepAttributeBoolean(id_step, "lazy_conversion");
 		}
 		catch (Exception e)
 		{
@@ -1541,6 +1569,8 @@ public class TextFileInputMeta extends BaseStepMeta implements StepMetaInterface
 			rep.saveStepAttribute(id_transformation, id_step, "uriNameFieldName", uriNameFieldName);
 			rep.saveStepAttribute(id_transformation, id_step, "rootUriNameFieldName", rootUriNameFieldName);
 			rep.saveStepAttribute(id_transformation, id_step, "extensionFieldName", extensionFieldName);
+			rep.saveStepAttribute(id_transformation, id_step, "parallel", runningInParallel);
+			rep.saveStepAttribute(id_transformation, id_step, "lazy_conversion", lazyConversionActive);
 		}
 		catch (Exception e)
 		{
@@ -1879,6 +1909,38 @@ public class TextFileInputMeta extends BaseStepMeta implements StepMetaInterface
     {
         return isaddresult;
     }
+
+	/**
+	 * @return true if the copies of the step divide the files among each other
+	 */
+	public boolean isRunningInParallel()
+	{
+		return runningInParallel;
+	}
+
+	/**
+	 * @param runningInParallel true if the copies of the step should divide the files among each other
+	 */
+	public void setRunningInParallel(boolean runningInParallel)
+	{
+		this.runningInParallel = runningInParallel;
+	}
+
+	/**
+	 * @return true if lazy conversion is turned on: conversions are delayed as long as possible, perhaps to never occur at all.
+	 */
+	public boolean isLazyConversionActive()
+	{
+		return lazyConversionActive;
+	}
+
+	/**
+	 * @param lazyConversionActive true if lazy conversion is to be turned on: conversions are delayed as long as possible, perhaps to never occur at all.
+	 */
+	public void setLazyConversionActive(boolean lazyConversionActive)
+	{
+		this.lazyConversionActive = lazyConversionActive;
+	}
 	
 	public boolean isErrorLineSkipped()
 	{
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.uniquerowsbyhashset;
+
+import java.io.DataOutputStream;
+
+import org.apache.commons.vfs.FileObject;
+
+/**
+ * The fingerprints of the keys seen by the Unique Rows (HashSet) step, split in partitions on the first bits of the fingerprint.<br>
+ * <br>
+ * When the memory budget is used up, the fingerprints of a partition are written to a temporary file.
+ * The rows of that partition are written to the file as well from then on, they are checked at the end of the input
+ * with partitions on the next bits of the fingerprint (level) in case they don't fit in memory either.
+ *
+ * @author matt
+ */
+public class FingerprintPartitions {
+
+	public static final int NR_PARTITIONS = 16;
+
+	/** Every level uses the next 4 bits of the fingerprint, the last level doesn't spill anymore */
+	public static final int MAX_LEVEL = 7;
+
+	public int level;
+
+	/** The fingerprints of the partitions in memory, null for the partitions written to disk */
+	public FingerprintSet[] sets;
+
+	/** The memory reserved for the sets */
+	public long[] sizes;
+
+	public FileObject[] files;
+	public DataOutputStream[] outputs;
+	public long[] nrRecords;
+
+	public FingerprintPartitions(int level) {
+		this.level = level;
+
+		sets = new FingerprintSet[NR_PARTITIONS];
+		for (int p=0;p<NR_PARTITIONS;p++) {
+			sets[p] = new FingerprintSet(64);
+		}
+		sizes = new long[NR_PARTITIONS];
+		files = new FileObject[NR_PARTITIONS];
+		outputs = new DataOutputStream[NR_PARTITIONS];
+		nrRecords = new long[NR_PARTITIONS];
+	}
+
+	/**
+	 * @param high the high part of the fingerprint
+	 * @return the partition of the fingerprint on this level
+	 */
+	public int getPartition(long high) {
+		return (int)(high>>>(60-4*level)) & (NR_PARTITIONS-1);
+	}
+
+	public boolean isSpilled(int partition) {
+		return files[partition]!=null;
+	}
+
+	/**
+	 * @return true if partitions can still be written to disk on this level
+	 */
+	public boolean canSpill() {
+		return level<MAX_LEVEL;
+	}
+}
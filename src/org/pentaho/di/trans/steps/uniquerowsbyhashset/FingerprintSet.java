@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.uniquerowsbyhashset;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * A set of 128-bit key fingerprints in 2 primitive arrays (open addressing, linear probing).<br>
+ * <br>
+ * A key takes 16 bytes per slot instead of a key object, a hash set entry and the values.
+ * With 128 bits the chance that 2 different keys get the same fingerprint is negligible, even for billions of keys.
+ *
+ * @author matt
+ */
+public class FingerprintSet {
+
+	private static final float LOAD_FACTOR = 0.7f;
+
+	/** The largest number of slots of the arrays, a power of 2 */
+	private static final int MAX_CAPACITY = 1<<30;
+
+	private long[] highs;
+	private long[] lows;
+	private int size;
+	private int resizeThreshold;
+
+	/**
+	 * @param capacity the initial number of slots, a power of 2
+	 */
+	public FingerprintSet(int capacity) {
+		highs = new long[capacity];
+		lows = new long[capacity];
+		resizeThreshold = (int)(capacity*LOAD_FACTOR);
+	}
+
+	/**
+	 * @return true if the fingerprint wasn't in the set yet
+	 * @throws KettleException if the fingerprint is new but the set is full, see isFull()
+	 */
+	public boolean add(long high, long low) throws KettleException {
+		if (high==0L && low==0L) {
+			low = 1L; // 0,0 is an empty slot
+		}
+		int mask = highs.length-1;
+		int index = (int)low & mask;
+		while (highs[index]!=0L || lows[index]!=0L) {
+			if (highs[index]==high && lows[index]==low) {
+				return false;
+			}
+			index = (index+1) & mask;
+		}
+		if (isFull()) {
+			// Filling up the free slots would make the probing above slower and slower until it never ends
+			//
+			throw new KettleException("The set of key fingerprints is full with "+size+" keys, it can't grow any further");
+		}
+		highs[index] = high;
+		lows[index] = low;
+		size++;
+
+		if (size>=resizeThreshold && highs.length<MAX_CAPACITY) {
+			resize();
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the set is at its largest size and can't take new fingerprints anymore
+	 */
+	public boolean isFull() {
+		return size>=resizeThreshold && highs.length>=MAX_CAPACITY;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of slots, use isFree(), getHigh() and getLow() to go over the fingerprints
+	 */
+	public int getCapacity() {
+		return highs.length;
+	}
+
+	public boolean isFree(int slot) {
+		return highs[slot]==0L && lows[slot]==0L;
+	}
+
+	public long getHigh(int slot) {
+		return highs[slot];
+	}
+
+	public long getLow(int slot) {
+		return lows[slot];
+	}
+
+	/**
+	 * @return the number of bytes of the arrays
+	 */
+	public long getMemorySize() {
+		return 16L*highs.length+32;
+	}
+
+	private void resize() {
+		long[] oldHighs = highs;
+		long[] oldLows = lows;
+		highs = new long[oldHighs.length*2];
+		lows = new long[oldLows.length*2];
+		resizeThreshold = (int)(highs.length*LOAD_FACTOR);
+
+		int mask = highs.length-1;
+		for (int i=0;i<oldHighs.length;i++) {
+			if (oldHighs[i]!=0L || oldLows[i]!=0L) {
+				int index = (int)oldLows[i] & mask;
+				while (highs[index]!=0L || lows[index]!=0L) {
+					index = (index+1) & mask;
+				}
+				highs[index] = oldHighs[i];
+				lows[index] = oldLows[i];
+			}
+		}
+	}
+
+	/**
+	 * Calculate the fingerprint of the key fields of a row: 2 independent 64-bit hash codes of the values in normal storage.
+	 *
+	 * @param rowMeta the metadata of the row
+	 * @param row the row data
+	 * @param fieldnrs the indexes of the key fields, an empty array for the complete row
+	 * @param fingerprint the array of 2 longs to store the fingerprint in
+	 * @throws KettleValueException in case a value can't be converted to normal storage
+	 */
+	public static void calculate(RowMetaInterface rowMeta, Object[] row, int[] fieldnrs, long[] fingerprint) throws KettleValueException {
+		long high = 0x9E3779B97F4A7C15L;
+		long low = 0xC2B2AE3D27D4EB4FL;
+		int nrFields = fieldnrs.length==0 ? rowMeta.size() : fieldnrs.length;
+		for (int i=0;i<nrFields;i++) {
+			int index = fieldnrs.length==0 ? i : fieldnrs[i];
+			ValueMetaInterface valueMeta = rowMeta.getValueMeta(index);
+			Object value = valueMeta.isNull(row[index]) ? null : valueMeta.convertToNormalStorageType(row[index]);
+
+			long hash1;
+			long hash2;
+			if (value==null) {
+				hash1 = 0x2545F4914F6CDD1DL;
+				hash2 = 0x5851F42D4C957F2DL;
+			} else if (value instanceof String || value instanceof BigDecimal || value instanceof byte[]) {
+				// Two different hash functions over the characters or bytes
+				//
+				hash1 = 0xCBF29CE484222325L;
+				hash2 = 0x84222325CBF29CE4L;
+				if (value instanceof byte[]) {
+					byte[] bytes = (byte[])value;
+					for (int b=0;b<bytes.length;b++) {
+						hash1 = (hash1 ^ (bytes[b] & 0xFF)) * 0x100000001B3L;
+						hash2 = (hash2 + (bytes[b] & 0xFF)) * 0xC6A4A7935BD1E995L;
+						hash2 ^= hash2>>>47;
+					}
+					hash2+=bytes.length;
+				} else {
+					String string = value.toString();
+					for (int c=0;c<string.length();c++) {
+						hash1 = (hash1 ^ string.charAt(c)) * 0x100000001B3L;
+						hash2 = (hash2 + string.charAt(c)) * 0xC6A4A7935BD1E995L;
+						hash2 ^= hash2>>>47;
+					}
+					hash2+=string.length();
+				}
+			} else {
+				// The value fits in a long: both hash codes are a 1 to 1 mix of it
+				//
+				long bits;
+				if (value instanceof Double) {
+					bits = Double.doubleToLongBits(((Double)value).doubleValue());
+				} else if (value instanceof Date) {
+					bits = ((Date)value).getTime();
+				} else if (value instanceof Boolean) {
+					bits = ((Boolean)value).booleanValue() ? 1L : 0L;
+				} else if (value instanceof Number) {
+					bits = ((Number)value).longValue();
+				} else {
+					bits = value.toString().hashCode();
+				}
+				hash1 = bits;
+				hash2 = Long.reverse(bits);
+			}
+
+			high = mix(high*31 + hash1);
+			low = mix(low*37 + hash2);
+		}
+		fingerprint[0] = high;
+		fingerprint[1] = low;
+	}
+
+	/**
+	 * The finalizer of MurmurHash3: every bit of the input affects all the bits of the output.
+	 */
+	private static long mix(long hash) {
+		hash ^= hash>>>33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash>>>33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash>>>33;
+		return hash;
+	}
+}
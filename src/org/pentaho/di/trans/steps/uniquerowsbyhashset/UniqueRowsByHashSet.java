@@ -11,9 +11,20 @@
  
 package org.pentaho.di.trans.steps.uniquerowsbyhashset;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.vfs.FileObject;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.sketch.BloomFilter;
+import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.MemoryManager;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
@@ -26,6 +37,16 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface
 {
 	private static Class<?> PKG = UniqueRowsByHashSetMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
+	private static final int UNIQUE    = 0;
+	private static final int DUPLICATE = 1;
+	/** The row was written to disk, it is checked at the end of the input */
+	private static final int DEFERRED  = 2;
+
+	/** A fingerprint of a key seen before the partition was written to disk */
+	private static final byte RECORD_SEEN = 0;
+	/** A fingerprint followed by the row to check */
+	private static final byte RECORD_ROW  = 1;
+
 	private UniqueRowsByHashSetMeta meta;
 	private UniqueRowsByHashSetData data;
 	
@@ -39,9 +60,301 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface
 	
    private boolean isUniqueRow(Object[] row)
     {
-        return data.seen.add(new RowKey(row, data));
+        boolean unique = data.seen.add(new RowKey(row, data));
+        if (unique && data.memory!=null)
+        {
+            data.memory.allocate(estimateKeySize(row));
+        }
+        return unique;
+    }
+   
+    /**
+     * @return the estimated size of a key in the set: the key object, the entry of the set and the stored values if any.
+     */
+    private long estimateKeySize(Object[] row)
+    {
+        long size = 80;
+        if (data.storeValues)
+        {
+            if (data.fieldnrs.length==0)
+            {
+                size+=MemoryManager.estimateRowSize(data.inputRowMeta, row);
+            }
+            else
+            {
+                size+=16+8*data.fieldnrs.length;
+                for (int i=0;i<data.fieldnrs.length;i++)
+                {
+                    size+=MemoryManager.estimateValueSize(data.inputRowMeta.getValueMeta(data.fieldnrs[i]), row[data.fieldnrs[i]]);
+                }
+            }
+        }
+        return size;
     }
 
+	/**
+	 * Add the fingerprint of a key to the partitions in memory or write it to disk if its partition was spilled.
+	 *
+	 * @param row the row to check or null if the fingerprint is only a key that was seen before
+	 * @return UNIQUE, DUPLICATE or DEFERRED
+	 */
+	private int addFingerprint(FingerprintPartitions partitions, long high, long low, Object[] row) throws KettleException
+	{
+		int p = partitions.getPartition(high);
+		if (!partitions.isSpilled(p) && partitions.sets[p].isFull() && partitions.canSpill())
+		{
+			// The set of the partition can't grow any further: its keys are checked at the end, from disk
+			//
+			spillPartition(partitions, p);
+		}
+		if (partitions.isSpilled(p))
+		{
+			writeRecord(partitions, p, row==null ? RECORD_SEEN : RECORD_ROW, high, low, row);
+			return DEFERRED;
+		}
+		if (!partitions.sets[p].add(high, low))
+		{
+			return DUPLICATE;
+		}
+		reserveMemory(partitions, p);
+		return UNIQUE;
+	}
+
+	/**
+	 * Account for the growth of the set of a partition.  If the memory isn't granted or other steps need room,
+	 * the largest partitions are written to disk.
+	 */
+	private void reserveMemory(FingerprintPartitions partitions, int p) throws KettleException
+	{
+		if (data.memory==null)
+		{
+			return;
+		}
+		long grown = partitions.sets[p].getMemorySize()-partitions.sizes[p];
+		if (grown<=0)
+		{
+			return;
+		}
+		partitions.sizes[p]+=grown;
+		if (!partitions.canSpill())
+		{
+			data.memory.allocate(grown);
+			return;
+		}
+
+		if (data.memory.reserve(grown))
+		{
+			if (data.memory.isSpillRequested())
+			{
+				long target = data.memory.getUsed()/2;
+				while (data.memory.getUsed()>target && spillLargestPartition(partitions));
+				data.memory.clearSpillRequest();
+			}
+		}
+		else
+		{
+			// The set of this partition is there already, count it so it can be the one that goes to disk
+			//
+			data.memory.allocate(grown);
+			spillLargestPartition(partitions);
+		}
+	}
+
+	/**
+	 * Write the fingerprints of the largest partition in memory to a temporary file and give back its memory.
+	 *
+	 * @return false if there was nothing left to spill
+	 */
+	private boolean spillLargestPartition(FingerprintPartitions partitions) throws KettleException
+	{
+		int largest = -1;
+		for (int p=0;p<FingerprintPartitions.NR_PARTITIONS;p++)
+		{
+			if (!partitions.isSpilled(p) && partitions.sets[p].size()>0 && (largest<0 || partitions.sizes[p]>partitions.sizes[largest]))
+			{
+				largest = p;
+			}
+		}
+		if (largest<0)
+		{
+			return false;
+		}
+		spillPartition(partitions, largest);
+		return true;
+	}
+
+	/**
+	 * Write the fingerprints of a partition in memory to a temporary file and give back its memory.
+	 */
+	private void spillPartition(FingerprintPartitions partitions, int p) throws KettleException
+	{
+		FingerprintSet set = partitions.sets[p];
+		if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "UniqueRowsByHashSet.Log.SpillingPartition", Integer.toString(p), Integer.toString(partitions.level), Integer.toString(set.size()))); //$NON-NLS-1$
+		try
+		{
+			FileObject file = KettleVFS.createTempFile("uniquerows", ".tmp", environmentSubstitute("%%java.io.tmpdir%%"), getTransMeta()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			partitions.files[p] = file;
+			partitions.outputs[p] = new DataOutputStream(new BufferedOutputStream(KettleVFS.getOutputStream(file, false), 50000));
+		}
+		catch(Exception e)
+		{
+			throw new KettleException(BaseMessages.getString(PKG, "UniqueRowsByHashSet.Exception.UnableToCreateTempFile"), e); //$NON-NLS-1$
+		}
+		for (int slot=0;slot<set.getCapacity();slot++)
+		{
+			if (!set.isFree(slot))
+			{
+				writeRecord(partitions, p, RECORD_SEEN, set.getHigh(slot), set.getLow(slot), null);
+			}
+		}
+		partitions.sets[p] = null;
+		if (data.memory!=null)
+		{
+			data.memory.release(partitions.sizes[p]);
+		}
+		partitions.sizes[p] = 0L;
+	}
+
+	private void writeRecord(FingerprintPartitions partitions, int p, byte type, long high, long low, Object[] row) throws KettleException
+	{
+		try
+		{
+			DataOutputStream output = partitions.outputs[p];
+			output.writeByte(type);
+			output.writeLong(high);
+			output.writeLong(low);
+			if (type==RECORD_ROW)
+			{
+				data.inputRowMeta.writeData(output, row);
+			}
+			partitions.nrRecords[p]++;
+		}
+		catch(IOException e)
+		{
+			throw new KettleException(BaseMessages.getString(PKG, "UniqueRowsByHashSet.Exception.UnableToWriteTempFile"), e); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * All the input is read: check the rows that were written to disk.  The fingerprints of a spilled partition are read back
+	 * into partitions of the next level, so the rows come out unique as long as the fingerprints of one of those fit in memory.
+	 */
+	private void checkSpilledPartitions(FingerprintPartitions partitions) throws KettleException
+	{
+		// The partitions in memory are complete, their rows were handled already
+		//
+		for (int p=0;p<FingerprintPartitions.NR_PARTITIONS;p++)
+		{
+			partitions.sets[p] = null;
+			if (data.memory!=null)
+			{
+				data.memory.release(partitions.sizes[p]);
+			}
+			partitions.sizes[p] = 0L;
+		}
+
+		for (int p=0;p<FingerprintPartitions.NR_PARTITIONS && !isStopped();p++)
+		{
+			if (!partitions.isSpilled(p))
+			{
+				continue;
+			}
+			FingerprintPartitions next = new FingerprintPartitions(partitions.level+1);
+			try
+			{
+				readPartition(partitions, p, next);
+				checkSpilledPartitions(next);
+			}
+			finally
+			{
+				removeTempFiles(next);
+			}
+		}
+	}
+
+	private void readPartition(FingerprintPartitions partitions, int p, FingerprintPartitions next) throws KettleException
+	{
+		InputStream inputStream = null;
+		DataInputStream input = null;
+		try
+		{
+			partitions.outputs[p].close();
+			partitions.outputs[p] = null;
+
+			inputStream = KettleVFS.getInputStream(partitions.files[p]);
+			input = new DataInputStream(new BufferedInputStream(inputStream, 50000));
+			for (long n=0;n<partitions.nrRecords[p] && !isStopped();n++)
+			{
+				byte type = input.readByte();
+				long high = input.readLong();
+				long low = input.readLong();
+				if (type==RECORD_ROW)
+				{
+					Object[] row = data.inputRowMeta.readData(input);
+					handleRow(row, addFingerprint(next, high, low, row));
+				}
+				else
+				{
+					addFingerprint(next, high, low, null);
+				}
+			}
+		}
+		catch(Exception e)
+		{
+			throw new KettleException(BaseMessages.getString(PKG, "UniqueRowsByHashSet.Exception.UnableToReadTempFile"), e); //$NON-NLS-1$
+		}
+		finally
+		{
+			BaseStep.closeQuietly(input);
+			BaseStep.closeQuietly(inputStream);
+			removeTempFile(partitions, p);
+		}
+	}
+
+	private void removeTempFiles(FingerprintPartitions partitions)
+	{
+		if (partitions==null)
+		{
+			return;
+		}
+		for (int p=0;p<FingerprintPartitions.NR_PARTITIONS;p++)
+		{
+			removeTempFile(partitions, p);
+		}
+	}
+
+	private void removeTempFile(FingerprintPartitions partitions, int p)
+	{
+		BaseStep.closeQuietly(partitions.outputs[p]);
+		partitions.outputs[p] = null;
+		if (partitions.files[p]!=null)
+		{
+			try
+			{
+				partitions.files[p].delete();
+			}
+			catch(Exception e)
+			{
+				logError(BaseMessages.getString(PKG, "UniqueRowsByHashSet.Log.UnableToRemoveTempFile", partitions.files[p].toString()), e); //$NON-NLS-1$
+			}
+			partitions.files[p] = null;
+		}
+	}
+
+	private void handleRow(Object[] row, int result) throws KettleException
+	{
+		if (result==UNIQUE)
+			putRow(data.outputRowMeta, row);
+		else if (result==DUPLICATE)
+		{
+			 incrementLinesRejected();
+		    if(data.sendDuplicateRows) {
+			   // Simply add this row to the error row
+			   putError(getInputRowMeta(), row, 1, data.realErrorDescription,data.compareFields==""?null:data.compareFields, "UNRH001");
+		    }
+		}
+	}
+
 	public boolean processRow(StepMetaInterface smi, StepDataInterface sdi) throws KettleException
 	{
 		meta=(UniqueRowsByHashSetMeta)smi;
@@ -50,7 +363,24 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface
 		Object[] r=getRow();    // get row!
 		if (r==null)  // no more input to be expected...
 		{
+		    if (data.partitions!=null)
+		    {
+		        try
+		        {
+		            checkSpilledPartitions(data.partitions);
+		        }
+		        finally
+		        {
+		            removeTempFiles(data.partitions);
+		            data.partitions=null;
+		        }
+		    }
+		    data.bloomFilter=null;
 		    data.clearHashSet();
+		    if (data.memory!=null)
+		    {
+		        data.memory.releaseAll();
+		    }
 			setOutputDone();
 			return false;
 		}
@@ -64,6 +394,10 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface
             meta.getFields(data.outputRowMeta, getStepname(), null, null, this);
             
             data.storeValues = meta.getStoreValues();
+            if (!data.storeValues && !meta.isUsingBloomFilter())
+            {
+                data.partitions = new FingerprintPartitions(0);
+            }
             
 			// Cache lookup of fields
 			data.fieldnrs=new int[meta.getCompareFields().length];
@@ -87,15 +421,19 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface
 				data.realErrorDescription=environmentSubstitute(meta.getErrorDescription());
 		}
 		
-		if (isUniqueRow(r))
-			putRow(data.outputRowMeta, r);
+		if (data.bloomFilter!=null)
+		{
+			FingerprintSet.calculate(data.inputRowMeta, r, data.fieldnrs, data.fingerprint);
+			handleRow(r, data.bloomFilter.put(data.fingerprint[0], data.fingerprint[1]) ? UNIQUE : DUPLICATE);
+		}
+		else if (data.partitions!=null)
+		{
+			FingerprintSet.calculate(data.inputRowMeta, r, data.fieldnrs, data.fingerprint);
+			handleRow(r, addFingerprint(data.partitions, data.fingerprint[0], data.fingerprint[1], r));
+		}
 		else
 		{
-			 incrementLinesRejected();
-		    if(data.sendDuplicateRows) {
-			   // Simply add this row to the error row
-			   putError(getInputRowMeta(), r, 1, data.realErrorDescription,data.compareFields==""?null:data.compareFields, "UNRH001");
-		    }
+			handleRow(r, isUniqueRow(r) ? UNIQUE : DUPLICATE);
 		}
 		
 		
@@ -116,9 +454,51 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface
 		{
 		    // Add init code here.
 			data.sendDuplicateRows=getStepMeta().getStepErrorMeta()!=null &&  meta.supportsErrorHandling();
+			if (getTrans()!=null && getTrans().getMemoryManager()!=null)
+			{
+				// Only the fingerprints can be written to disk, the stored values and the Bloom filter stay in memory
+				//
+				data.memory = getTrans().getMemoryManager().register(toString(), !meta.getStoreValues() && !meta.isUsingBloomFilter());
+			}
+			if (meta.isUsingBloomFilter())
+			{
+				long expectedRows = Const.toLong(environmentSubstitute(meta.getBloomFilterExpectedRows()), -1L);
+				double falsePositiveRate = Const.toDouble(environmentSubstitute(meta.getBloomFilterFalsePositiveRate()), -1.0);
+				if (expectedRows<=0)
+				{
+					logError(BaseMessages.getString(PKG, "UniqueRowsByHashSet.Log.InvalidExpectedRows", environmentSubstitute(meta.getBloomFilterExpectedRows()))); //$NON-NLS-1$
+					return false;
+				}
+				if (falsePositiveRate<=0.0 || falsePositiveRate>=1.0)
+				{
+					logError(BaseMessages.getString(PKG, "UniqueRowsByHashSet.Log.InvalidFalsePositiveRate", environmentSubstitute(meta.getBloomFilterFalsePositiveRate()))); //$NON-NLS-1$
+					return false;
+				}
+				data.bloomFilter = new BloomFilter(expectedRows, falsePositiveRate);
+				if (data.memory!=null)
+				{
+					data.memory.allocate(data.bloomFilter.getMemorySize());
+				}
+				if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "UniqueRowsByHashSet.Log.BloomFilterSize", Long.toString(data.bloomFilter.getMemorySize()/(1024*1024)), Integer.toString(data.bloomFilter.getNrHashFunctions()))); //$NON-NLS-1$
+			}
 		    return true;
 		}
 		return false;
 	}
+	
+	public void dispose(StepMetaInterface smi, StepDataInterface sdi)
+	{
+		data=(UniqueRowsByHashSetData)sdi;
+		
+		removeTempFiles(data.partitions);
+		data.partitions=null;
+		data.bloomFilter=null;
+		if (data.memory!=null)
+		{
+			data.memory.close();
+			data.memory=null;
+		}
+		super.dispose(smi, sdi);
+	}
 
 }
\ No newline at end of file
@@ -14,6 +14,8 @@ package org.pentaho.di.trans.steps.uniquerowsbyhashset;
 import java.util.HashSet;
 
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.sketch.BloomFilter;
+import org.pentaho.di.trans.MemoryConsumer;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
@@ -31,6 +33,18 @@ public class UniqueRowsByHashSetData extends BaseStepData implements StepDataInt
 	
 	public HashSet<RowKey> seen = new HashSet<RowKey>();
 	
+	/** The fingerprints of the keys when the values aren't stored, null otherwise */
+	public FingerprintPartitions partitions;
+	
+	/** The keys that were probably seen in the Bloom filter mode, null otherwise */
+	public BloomFilter bloomFilter;
+	
+	/** The fingerprint of the current row */
+	public long[] fingerprint = new long[2];
+	
+	/** The memory reserved for the keys in the set, null if the transformation has no memory budget */
+	public MemoryConsumer memory;
+	
 	public UniqueRowsByHashSetData()
 	{
 		super();
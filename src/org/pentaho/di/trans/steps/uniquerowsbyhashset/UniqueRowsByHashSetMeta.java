@@ -48,6 +48,15 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
     private boolean rejectDuplicateRow;
     private String errorDescription;
 
+    /** Whether to remember the keys in a Bloom filter: fixed memory, but a small fraction of the unique rows is taken for a duplicate */
+    private boolean usingBloomFilter;
+
+    /** The number of distinct keys the Bloom filter is sized for */
+    private String bloomFilterExpectedRows;
+
+    /** The probability that a unique row is taken for a duplicate once the expected number of keys is seen, for example 0.01 */
+    private String bloomFilterFalsePositiveRate;
+
 	public UniqueRowsByHashSetMeta()
 	{
 		super(); // allocate BaseStepMeta
@@ -114,6 +123,45 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
 	{
 	    return errorDescription;
 	}
+
+	/**
+	 * @return true if the keys are remembered in a Bloom filter instead of a set
+	 */
+	public boolean isUsingBloomFilter()
+	{
+		return usingBloomFilter;
+	}
+
+	public void setUsingBloomFilter(boolean usingBloomFilter)
+	{
+		this.usingBloomFilter = usingBloomFilter;
+	}
+
+	/**
+	 * @return the number of distinct keys the Bloom filter is sized for, can contain variables
+	 */
+	public String getBloomFilterExpectedRows()
+	{
+		return bloomFilterExpectedRows;
+	}
+
+	public void setBloomFilterExpectedRows(String bloomFilterExpectedRows)
+	{
+		this.bloomFilterExpectedRows = bloomFilterExpectedRows;
+	}
+
+	/**
+	 * @return the false positive rate of the Bloom filter, can contain variables
+	 */
+	public String getBloomFilterFalsePositiveRate()
+	{
+		return bloomFilterFalsePositiveRate;
+	}
+
+	public void setBloomFilterFalsePositiveRate(String bloomFilterFalsePositiveRate)
+	{
+		this.bloomFilterFalsePositiveRate = bloomFilterFalsePositiveRate;
+	}
 	public void loadXML(Node stepnode, List<DatabaseMeta> databases, Map<String, Counter> counters)
 		throws KettleXMLException
 	{
@@ -144,6 +192,9 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
 		    storeValues = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "store_values")); //$NON-NLS-1$ //$NON-NLS-2$
 			rejectDuplicateRow = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "reject_duplicate_row"));
 			errorDescription = XMLHandler.getTagValue(stepnode, "error_description"); //$NON-NLS-1$
+			usingBloomFilter = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "bloom_filter")); //$NON-NLS-1$ //$NON-NLS-2$
+			bloomFilterExpectedRows = XMLHandler.getTagValue(stepnode, "bloom_expected_rows"); //$NON-NLS-1$
+			bloomFilterFalsePositiveRate = XMLHandler.getTagValue(stepnode, "bloom_false_positive_rate"); //$NON-NLS-1$
 			
 		    Node fields = XMLHandler.getSubNode(stepnode, "fields"); //$NON-NLS-1$
 		    int nrfields   = XMLHandler.countNodes(fields, "field"); //$NON-NLS-1$
@@ -168,6 +219,9 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
 	{
 		rejectDuplicateRow=false;
 		errorDescription=null;
+		usingBloomFilter=false;
+		bloomFilterExpectedRows="100000000"; //$NON-NLS-1$
+		bloomFilterFalsePositiveRate="0.01"; //$NON-NLS-1$
 		int nrfields = 0;
 		
 		allocate(nrfields);		
@@ -189,6 +243,9 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
         retval.append("      "+XMLHandler.addTagValue("store_values",  storeValues)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("      "+XMLHandler.addTagValue("reject_duplicate_row",  rejectDuplicateRow));
 		retval.append("      "+XMLHandler.addTagValue("error_description", errorDescription));
+		retval.append("      "+XMLHandler.addTagValue("bloom_filter", usingBloomFilter)); //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("      "+XMLHandler.addTagValue("bloom_expected_rows", bloomFilterExpectedRows)); //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("      "+XMLHandler.addTagValue("bloom_false_positive_rate", bloomFilterFalsePositiveRate)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("    <fields>"); //$NON-NLS-1$
 		for (int i=0;i<compareFields.length;i++)
 		{
@@ -209,6 +266,9 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
             storeValues  = rep.getStepAttributeBoolean(id_step, "store_values"); //$NON-NLS-1$
 			rejectDuplicateRow  = rep.getStepAttributeBoolean(id_step, "reject_duplicate_row");
 			errorDescription = rep.getStepAttributeString (id_step, "error_description"); //$NON-NLS-1$
+			usingBloomFilter = rep.getStepAttributeBoolean(id_step, "bloom_filter"); //$NON-NLS-1$
+			bloomFilterExpectedRows = rep.getStepAttributeString (id_step, "bloom_expected_rows"); //$NON-NLS-1$
+			bloomFilterFalsePositiveRate = rep.getStepAttributeString (id_step, "bloom_false_positive_rate"); //$NON-NLS-1$
 			int nrfields = rep.countNrStepAttributes(id_step, "field_name"); //$NON-NLS-1$
 			
 			allocate(nrfields);
@@ -229,8 +289,12 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
 	{
 		try
 		{
+			rep.saveStepAttribute(id_transformation, id_step, "store_values",    storeValues); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "reject_duplicate_row",    rejectDuplicateRow);
 			rep.saveStepAttribute(id_transformation, id_step, "error_description",  errorDescription);
+			rep.saveStepAttribute(id_transformation, id_step, "bloom_filter",  usingBloomFilter); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "bloom_expected_rows",  bloomFilterExpectedRows); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "bloom_false_positive_rate",  bloomFilterFalsePositiveRate); //$NON-NLS-1$
 			for (int i=0;i<compareFields.length;i++)
 			{
 				rep.saveStepAttribute(id_transformation, id_step, i, "field_name", compareFields[i]); //$NON-NLS-1$
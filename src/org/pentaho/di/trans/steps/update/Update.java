@@ -87,7 +87,7 @@ public class Update extends BaseStep implements StepInterface
 		RowMetaInterface returnRowMeta=null;;
 		if(!meta.isSkipLookup())
 		{
-			data.db.setValues(data.lookupParameterRowMeta, lookupRow, data.prepStatementLookup);
+			data.db.setValues(data.lookupBinder, lookupRow, data.prepStatementLookup);
 			if (log.isDebug()) logDebug(BaseMessages.getString(PKG, "Update.Log.ValuesSetForLookup", data.lookupParameterRowMeta.getString(lookupRow), rowMeta.getString(row))); //$NON-NLS-1$ //$NON-NLS-2$
 			add = data.db.getLookup(data.prepStatementLookup);
 			returnRowMeta = data.db.getReturnRowMeta();
@@ -180,7 +180,7 @@ public class Update extends BaseStep implements StepInterface
                 }
                 
 				if (log.isRowLevel()) logRowlevel(BaseMessages.getString(PKG, "Update.Log.UpdateRow")+data.lookupParameterRowMeta.getString(lookupRow)); //$NON-NLS-1$
-				data.db.setValues(data.updateParameterRowMeta, updateRow, data.prepStatementUpdate);
+				data.db.setValues(data.updateBinder, updateRow, data.prepStatementUpdate);
 				data.db.insertRow(data.prepStatementUpdate, meta.useBatchUpdate(), true);
 				incrementLinesUpdated();
 			}
@@ -414,6 +414,7 @@ public class Update extends BaseStep implements StepInterface
         {
             if(log.isDetailed()) logDetailed("Setting preparedStatement to [" + sql + "]");
             data.prepStatementLookup = data.db.getConnection().prepareStatement(databaseMeta.stripCR(sql));
+            data.lookupBinder = data.db.createStatementBinder(data.lookupParameterRowMeta);
         }
         catch (SQLException ex)
         {
@@ -484,6 +485,7 @@ public class Update extends BaseStep implements StepInterface
         {            
         	if(log.isDetailed()) logDetailed("Setting update preparedStatement to ["+sql+"]");
             data.prepStatementUpdate=data.db.getConnection().prepareStatement(databaseMeta.stripCR(sql));
+            data.updateBinder = data.db.createStatementBinder(data.updateParameterRowMeta);
         }
         catch(SQLException ex) 
         {
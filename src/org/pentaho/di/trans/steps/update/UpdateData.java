@@ -15,6 +15,7 @@ package org.pentaho.di.trans.steps.update;
 import java.sql.PreparedStatement;
 
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.StatementBinder;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -49,6 +50,10 @@ public class UpdateData extends BaseStepData implements StepDataInterface
     public RowMetaInterface lookupParameterRowMeta;
     public RowMetaInterface lookupReturnRowMeta;
     public RowMetaInterface updateParameterRowMeta;
+    
+    /** How to set the parameters of the statements, worked out once */
+    public StatementBinder  lookupBinder;
+    public StatementBinder  updateBinder;
 	
 	/**
 	 * 
@@ -27,7 +27,7 @@ import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathFactory;
 
-import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleXMLException;
 import org.pentaho.di.core.row.RowDataUtil;
@@ -254,13 +254,13 @@ public class XMLJoin extends BaseStep implements StepInterface
             // 
 			for (int i=0;i<getInputRowSets().size();i++)
 			{
-			    BlockingRowSet rs = (BlockingRowSet) getInputRowSets().get(i);
+			    RowSet rs = getInputRowSets().get(i);
 			    if (rs.getOriginStepName().equalsIgnoreCase(meta.getTargetXMLstep()))
 			    {
 			        // swap this one and position 0...
                    // That means, the main stream is always stream 0 --> easy!
                    //
-			        BlockingRowSet zero = (BlockingRowSet)getInputRowSets().get(0);
+			        RowSet zero = getInputRowSets().get(0);
 			        getInputRowSets().set(0, rs);
 			        getInputRowSets().set(i, zero);
 			    }
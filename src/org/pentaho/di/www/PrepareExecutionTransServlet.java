@@ -102,6 +102,7 @@ public class PrepareExecutionTransServlet extends BaseHttpServlet implements Car
         trans.getTransMeta().setArguments(executionConfiguration.getArgumentStrings());
         trans.setReplayDate(executionConfiguration.getReplayDate());
         trans.setSafeModeEnabled(executionConfiguration.isSafeModeEnabled());
+        trans.setTransformationType(executionConfiguration.getTransformationType());
         trans.injectVariables(executionConfiguration.getVariables());
 
         try {
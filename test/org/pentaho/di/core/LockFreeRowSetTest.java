@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+
+/**
+ * Test class for the lock-free single writer, single reader RowSet.
+ *
+ * @author matt
+ */
+public class LockFreeRowSetTest extends TestCase
+{
+	private RowMetaInterface createRowMetaInterface()
+	{
+		RowMetaInterface rm = new RowMeta();
+		rm.addValueMeta(new ValueMeta("ROWNR", ValueMeta.TYPE_INTEGER));
+		return rm;
+	}
+
+	/**
+	 * Put and get rows one by one, wrapping around the end of the buffer.
+	 */
+	public void testFunctionality()
+	{
+		RowSet set = new LockFreeRowSet(3);
+		RowMetaInterface rm = createRowMetaInterface();
+
+		assertEquals(0, set.size());
+		assertNull(set.getRowImmediate());
+
+		long next = 1L;
+		for (int round=0;round<5;round++) {
+			// State: 1 2 3
+			//
+			for (int i=0;i<3;i++) {
+				assertTrue(set.putRow(rm, new Object[] { new Long(next+i) }));
+			}
+			assertEquals(3, set.size());
+
+			// The rowset is full
+			//
+			assertFalse(set.putRowWait(rm, new Object[] { new Long(0L) }, 1, TimeUnit.MILLISECONDS));
+			assertEquals(3, set.size());
+
+			for (int i=0;i<3;i++) {
+				Object[] r = set.getRow();
+				assertEquals(next+i, ((Long)r[0]).longValue());
+			}
+			assertEquals(0, set.size());
+			next+=3;
+		}
+		assertSame(rm, set.getRowMeta());
+	}
+
+	/**
+	 * Handing over blocks of rows.
+	 */
+	public void testBlocks()
+	{
+		RowSet set = new LockFreeRowSet(3);
+		RowMetaInterface rm = createRowMetaInterface();
+
+		Object[][] rows = new Object[5][];
+		for (int i=0;i<rows.length;i++) {
+			rows[i] = new Object[] { new Long(i+1) };
+		}
+
+		assertEquals(3, set.putRows(rm, rows, 0, 5));
+		assertEquals(3, set.size());
+
+		Object[][] block = new Object[5][];
+		assertEquals(2, set.getRows(block, 2));
+		assertEquals(1L, ((Long)block[0][0]).longValue());
+		assertEquals(2L, ((Long)block[1][0]).longValue());
+
+		assertEquals(2, set.putRows(rm, rows, 3, 2));
+		assertEquals(3, set.getRows(block, 5));
+		assertEquals(3L, ((Long)block[0][0]).longValue());
+		assertEquals(4L, ((Long)block[1][0]).longValue());
+		assertEquals(5L, ((Long)block[2][0]).longValue());
+
+		assertEquals(0, set.getRowsWait(block, 5, 1, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * A writer and a reader thread, with and without spinning: all rows arrive in order.
+	 */
+	public void testWriterAndReader() throws Exception
+	{
+		for (int spinCount : new int[] { 0, LockFreeRowSet.DEFAULT_SPIN_COUNT }) {
+			final RowSet set = new LockFreeRowSet(7, spinCount);
+			final RowMetaInterface rm = createRowMetaInterface();
+			final int nrRows = 100000;
+
+			Thread writer = new Thread(new Runnable() {
+				public void run() {
+					for (int i=0;i<nrRows;i++) {
+						Object[] row = new Object[] { new Long(i) };
+						while (!set.putRowWait(rm, row, 100, TimeUnit.MILLISECONDS));
+					}
+					set.setDone();
+				}
+			});
+			writer.start();
+
+			long expected = 0L;
+			while (true) {
+				Object[] r = set.getRowWait(100, TimeUnit.MILLISECONDS);
+				if (r==null) {
+					if (set.isDone() && set.size()==0) {
+						break;
+					}
+					continue;
+				}
+				assertEquals(expected++, ((Long)r[0]).longValue());
+			}
+			writer.join();
+
+			assertEquals(nrRows, expected);
+		}
+	}
+}
@@ -15,6 +15,10 @@
  
 package org.pentaho.di.core;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import junit.framework.TestCase;
 
 import org.pentaho.di.core.row.RowMeta;
@@ -176,6 +180,112 @@ public class RowSetTest extends TestCase
         **********************************************************************/        
 	}
 
+	/**
+	 * Handing over blocks of rows.
+	 */
+	public void testBlocks()
+	{
+		RowSet set = new BlockingRowSet(3);
+		RowMetaInterface rm = createRowMetaInterface();
+		
+		Object[][] rows = new Object[5][];
+		for (int i=0;i<rows.length;i++) {
+			rows[i] = new Object[] { new Long(i+1) };
+		}
+		
+		// Only 3 rows fit in the buffer
+		//
+		assertEquals(3, set.putRows(rm, rows, 0, 5));
+		assertEquals(3, set.size());
+		assertEquals(0, set.putRows(rm, rows, 3, 2));
+		
+		// Take 2 rows in one go. State: 3
+		//
+		Object[][] block = new Object[5][];
+		assertEquals(2, set.getRows(block, 2));
+		assertEquals(1L, ((Long)block[0][0]).longValue());
+		assertEquals(2L, ((Long)block[1][0]).longValue());
+		assertEquals(1, set.size());
+		
+		// Add the remaining rows. State: 3 4 5
+		//
+		assertEquals(2, set.putRows(rm, rows, 3, 2));
+		assertEquals(3, set.size());
+		
+		// Take everything, the order is kept. State:
+		//
+		assertEquals(3, set.getRows(block, 5));
+		assertEquals(3L, ((Long)block[0][0]).longValue());
+		assertEquals(4L, ((Long)block[1][0]).longValue());
+		assertEquals(5L, ((Long)block[2][0]).longValue());
+		assertEquals(0, set.size());
+		
+		// Nothing left to take
+		//
+		assertEquals(0, set.getRowsWait(block, 5, 1, TimeUnit.MILLISECONDS));
+		assertNull(set.getRowImmediate());
+	}
+
+	/**
+	 * The signal wakes up a reader that waits for several row sets at once.
+	 */
+	public void testSignal() throws Exception
+	{
+		final RowSet one = new BlockingRowSet(3);
+		final RowSet two = new LockFreeRowSet(3);
+		final RowMetaInterface rm = createRowMetaInterface();
+		
+		List<RowSet> rowSets = new ArrayList<RowSet>();
+		rowSets.add(one);
+		rowSets.add(two);
+		
+		RowSetSignal signal = new RowSetSignal();
+		
+		// Nothing there: we wait until the time is up
+		//
+		assertFalse(signal.waitForInput(rowSets, 1, TimeUnit.MILLISECONDS));
+		
+		// A row in the second row set: no waiting at all
+		//
+		two.putRow(rm, new Object[] { new Long(1L) });
+		assertTrue(signal.waitForInput(rowSets, 10, TimeUnit.SECONDS));
+		two.getRow();
+		
+		// The row arrives while we wait
+		//
+		Thread writer = new Thread(new Runnable() {
+			public void run() {
+				try { Thread.sleep(50); } catch(InterruptedException e) { }
+				one.putRow(rm, new Object[] { new Long(2L) });
+			}
+		});
+		long start = System.currentTimeMillis();
+		writer.start();
+		assertTrue(signal.waitForInput(rowSets, 10, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis()-start < 5000);
+		writer.join();
+		one.getRow();
+		
+		// Being done counts as input as well
+		//
+		two.setDone();
+		assertTrue(signal.waitForInput(rowSets, 10, TimeUnit.SECONDS));
+		
+		// A reader waiting on a blocking row set sees the end right away instead of waiting for the timeout
+		//
+		Thread finisher = new Thread(new Runnable() {
+			public void run() {
+				try { Thread.sleep(50); } catch(InterruptedException e) { }
+				one.setDone();
+			}
+		});
+		start = System.currentTimeMillis();
+		finisher.start();
+		assertNull(one.getRowWait(10, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis()-start < 5000);
+		finisher.join();
+	}
+
 	/**
 	 * Names test. Just for completeness.
 	 */
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core.database;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * Reads rows with all the data types from a result set with a result set reader.
+ *
+ * @author matt
+ */
+public class ResultSetReaderTest extends TestCase
+{
+	private static final String databaseXML =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+		"<connection>" +
+			"<name>db</name>" +
+			"<server>127.0.0.1</server>" +
+			"<type>H2</type>" +
+			"<access>Native</access>" +
+			"<database>mem:db</database>" +
+			"<port></port>" +
+			"<username>sa</username>" +
+			"<password></password>" +
+		"</connection>";
+
+	private Database db;
+
+	protected void setUp() throws Exception
+	{
+		KettleEnvironment.init();
+
+		DatabaseMeta databaseMeta = new DatabaseMeta(databaseXML);
+		db = new Database(null, databaseMeta);
+		db.connect();
+		db.execStatement("CREATE TABLE reader_test (ID BIGINT, NUM DOUBLE, STR VARCHAR(20), DT TIMESTAMP, BOOL BOOLEAN, BIG DECIMAL(20,5))");
+		db.execStatement("INSERT INTO reader_test VALUES (1, 1.5, 'one', TIMESTAMP '2009-02-13 23:31:30', TRUE, 123.45)");
+		db.execStatement("INSERT INTO reader_test VALUES (2, NULL, NULL, NULL, NULL, NULL)");
+		db.execStatement("INSERT INTO reader_test VALUES (3, 0, '', NULL, FALSE, 0)");
+	}
+
+	protected void tearDown() throws Exception
+	{
+		db.execStatement("DROP TABLE reader_test");
+		db.disconnect();
+	}
+
+	public void testGetRow() throws Exception
+	{
+		ResultSet rs = db.openQuery("SELECT ID, NUM, STR, DT, BOOL, BIG FROM reader_test ORDER BY ID");
+		RowMetaInterface rowMeta = db.getReturnRowMeta();
+		ResultSetReader reader = db.createResultSetReader(rowMeta);
+		assertSame(rowMeta, reader.getRowMeta());
+		assertEquals(6, reader.getColumnCount());
+
+		Object[] row = reader.getRow(rs);
+		assertEquals(Long.valueOf(1L), row[0]);
+		assertEquals(1.5, ((Number)row[1]).doubleValue(), 0.0);
+		assertEquals("one", row[2]);
+		assertTrue(row[3] instanceof Date);
+		assertEquals(Boolean.TRUE, row[4]);
+		assertEquals(0, new BigDecimal("123.45").compareTo((BigDecimal)row[5]));
+
+		// The nulls of primitive types are not read as 0 or false
+		//
+		row = reader.getRow(rs);
+		assertEquals(Long.valueOf(2L), row[0]);
+		for (int i=1;i<rowMeta.size();i++)
+		{
+			assertNull("value #"+i+" should be null", row[i]);
+		}
+
+		row = reader.getRow(rs);
+		assertEquals(0.0, ((Number)row[1]).doubleValue(), 0.0);
+		assertEquals(Boolean.FALSE, row[4]);
+
+		assertNull(reader.getRow(rs));
+		db.closeQuery(rs);
+	}
+
+	public void testGetRows() throws Exception
+	{
+		ResultSet rs = db.openQuery("SELECT ID FROM reader_test ORDER BY ID");
+		ResultSetReader reader = db.createResultSetReader(db.getReturnRowMeta());
+
+		List<Object[]> rows = reader.getRows(rs, 2);
+		assertEquals(2, rows.size());
+		assertEquals(Long.valueOf(1L), rows.get(0)[0]);
+		assertEquals(Long.valueOf(2L), rows.get(1)[0]);
+
+		rows = reader.getRows(rs, 2);
+		assertEquals(1, rows.size());
+		assertEquals(Long.valueOf(3L), rows.get(0)[0]);
+		db.closeQuery(rs);
+	}
+
+	public void testFetchSize() throws Exception
+	{
+		// H2 leaves it to the driver, PostgreSQL and Oracle have a default
+		//
+		assertEquals(0, db.getDatabaseMeta().getFetchSize());
+		assertEquals(Const.FETCH_SIZE, new PostgreSQLDatabaseMeta().getFetchSize());
+		assertEquals(1000, new OracleDatabaseMeta().getFetchSize());
+
+		// Set on the connection, then overruled for the queries of one Database object
+		//
+		db.getDatabaseMeta().setFetchSize(100);
+		assertEquals(100, db.getDatabaseMeta().getFetchSize());
+		assertEquals(100, db.getFetchSize());
+		db.setFetchSize(10);
+		assertEquals(10, db.getFetchSize());
+
+		ResultSet rs = db.openQuery("SELECT ID FROM reader_test");
+		assertEquals(10, rs.getStatement().getFetchSize());
+		db.closeQuery(rs);
+
+		DatabaseMeta copy = new DatabaseMeta(db.getDatabaseMeta().getXML());
+		assertEquals(100, copy.getFetchSize());
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core.database;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Sets rows with all the data and storage types on a prepared statement with a statement binder.
+ *
+ * @author matt
+ */
+public class StatementBinderTest extends TestCase
+{
+	private static final String databaseXML = 
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+		"<connection>" +
+			"<name>db</name>" +
+			"<server>127.0.0.1</server>" +
+			"<type>H2</type>" +
+			"<access>Native</access>" + 
+			"<database>mem:db</database>" +
+			"<port></port>" +
+			"<username>sa</username>" +
+			"<password></password>" +
+		"</connection>";
+
+	private Database db;
+
+	protected void setUp() throws Exception
+	{
+		KettleEnvironment.init();
+
+		DatabaseMeta databaseMeta = new DatabaseMeta(databaseXML);
+		db = new Database(null, databaseMeta);
+		db.connect();
+		db.execStatement("CREATE TABLE binder_test (ID BIGINT, NUM DOUBLE, STR VARCHAR(20), DT TIMESTAMP, BOOL BOOLEAN, BIG DECIMAL(20,5), LAZY_ID BIGINT, CODE VARCHAR(10))");
+	}
+
+	protected void tearDown() throws Exception
+	{
+		db.execStatement("DROP TABLE binder_test");
+		db.disconnect();
+	}
+
+	private RowMetaInterface createRowMeta()
+	{
+		RowMetaInterface rowMeta = new RowMeta();
+		rowMeta.addValueMeta(new ValueMeta("ID", ValueMetaInterface.TYPE_INTEGER));
+		rowMeta.addValueMeta(new ValueMeta("NUM", ValueMetaInterface.TYPE_NUMBER));
+		rowMeta.addValueMeta(new ValueMeta("STR", ValueMetaInterface.TYPE_STRING));
+		rowMeta.addValueMeta(new ValueMeta("DT", ValueMetaInterface.TYPE_DATE));
+		rowMeta.addValueMeta(new ValueMeta("BOOL", ValueMetaInterface.TYPE_BOOLEAN));
+		rowMeta.addValueMeta(new ValueMeta("BIG", ValueMetaInterface.TYPE_BIGNUMBER));
+
+		// An integer read lazily from a file: the storage is the bytes of the string
+		//
+		ValueMetaInterface lazyId = new ValueMeta("LAZY_ID", ValueMetaInterface.TYPE_INTEGER);
+		lazyId.setStorageType(ValueMetaInterface.STORAGE_TYPE_BINARY_STRING);
+		lazyId.setStorageMetadata(new ValueMeta("LAZY_ID", ValueMetaInterface.TYPE_STRING));
+		rowMeta.addValueMeta(lazyId);
+
+		// A string stored as an index
+		//
+		ValueMetaInterface code = new ValueMeta("CODE", ValueMetaInterface.TYPE_STRING);
+		code.setStorageType(ValueMetaInterface.STORAGE_TYPE_INDEXED);
+		code.setIndex(new Object[] { "A", "B", });
+		rowMeta.addValueMeta(code);
+
+		return rowMeta;
+	}
+
+	public void testSetValues() throws Exception
+	{
+		RowMetaInterface rowMeta = createRowMeta();
+		StatementBinder binder = db.createStatementBinder(rowMeta);
+		assertSame(rowMeta, binder.getRowMeta());
+
+		Date date = new Date(1234567890000L);
+		Object[] row = new Object[] { Long.valueOf(1L), Double.valueOf(1.5), "one", date, Boolean.TRUE, new BigDecimal("123.45"), "42".getBytes(), Integer.valueOf(1), };
+		Object[] nullRow = new Object[] { Long.valueOf(2L), null, null, null, null, null, new byte[0], null, };
+
+		PreparedStatement ps = db.prepareSQL("INSERT INTO binder_test VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+		binder.setValues(ps, row);
+		ps.executeUpdate();
+		binder.setValues(ps, nullRow);
+		ps.executeUpdate();
+		ps.close();
+
+		List<Object[]> rows = db.getRows("SELECT ID, NUM, STR, DT, BOOL, BIG, LAZY_ID, CODE FROM binder_test ORDER BY ID", 0);
+		assertEquals(2, rows.size());
+
+		Object[] result = rows.get(0);
+		assertEquals(Long.valueOf(1L), result[0]);
+		assertEquals(1.5, ((Number)result[1]).doubleValue(), 0.0);
+		assertEquals("one", result[2]);
+		assertEquals(date.getTime(), ((Date)result[3]).getTime());
+		assertEquals(Boolean.TRUE, result[4]);
+		assertEquals(0, new BigDecimal("123.45").compareTo((BigDecimal)result[5]));
+		assertEquals(Long.valueOf(42L), result[6]);
+		assertEquals("B", result[7]);
+
+		result = rows.get(1);
+		for (int i=1;i<result.length;i++)
+		{
+			assertNull("value #"+i+" should be null", result[i]);
+		}
+	}
+
+	public void testIgnoreValue() throws Exception
+	{
+		RowMetaInterface rowMeta = new RowMeta();
+		rowMeta.addValueMeta(new ValueMeta("ID", ValueMetaInterface.TYPE_INTEGER));
+		rowMeta.addValueMeta(new ValueMeta("SKIPPED", ValueMetaInterface.TYPE_STRING));
+		rowMeta.addValueMeta(new ValueMeta("STR", ValueMetaInterface.TYPE_STRING));
+		StatementBinder binder = db.createStatementBinder(rowMeta);
+
+		PreparedStatement ps = db.prepareSQL("INSERT INTO binder_test (ID, STR) VALUES (?, ?)");
+		binder.setValues(ps, new Object[] { Long.valueOf(3L), "skipped", "three", }, 1);
+		ps.executeUpdate();
+		ps.close();
+
+		List<Object[]> rows = db.getRows("SELECT ID, STR FROM binder_test", 0);
+		assertEquals(1, rows.size());
+		assertEquals(Long.valueOf(3L), rows.get(0)[0]);
+		assertEquals("three", rows.get(0)[1]);
+	}
+
+	public void testWrongValue() throws Exception
+	{
+		RowMetaInterface rowMeta = new RowMeta();
+		rowMeta.addValueMeta(new ValueMeta("ID", ValueMetaInterface.TYPE_INTEGER));
+		StatementBinder binder = db.createStatementBinder(rowMeta);
+
+		PreparedStatement ps = db.prepareSQL("INSERT INTO binder_test (ID) VALUES (?)");
+		try
+		{
+			binder.setValues(ps, new Object[] { "not a number", });
+			fail("A string can't be set as an integer");
+		}
+		catch(KettleDatabaseException e)
+		{
+			// expected
+		}
+		finally
+		{
+			ps.close();
+		}
+	}
+}
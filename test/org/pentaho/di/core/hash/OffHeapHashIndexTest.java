@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core.hash;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+/**
+ * Stores keys and values in the off-heap hash index, in direct memory and in memory-mapped files.
+ *
+ * @author matt
+ */
+public class OffHeapHashIndexTest extends TestCase
+{
+	private static byte[] key(int i)
+	{
+		return ("key-"+i).getBytes();
+	}
+
+	private static byte[] value(int i)
+	{
+		return ("value-"+i+"-"+(i*31)).getBytes();
+	}
+
+	private void putAndGet(OffHeapHashIndex index, int count) throws Exception
+	{
+		for (int i=0;i<count;i++)
+		{
+			index.put(key(i), value(i));
+		}
+		assertEquals(count, index.size());
+
+		for (int i=0;i<count;i++)
+		{
+			byte[] value = index.get(key(i));
+			assertNotNull("key "+i+" not found", value);
+			assertEquals(new String(value(i)), new String(value));
+		}
+		assertNull(index.get(key(count)));
+		assertNull(index.get(new byte[0]));
+	}
+
+	public void testDirectMemory() throws Exception
+	{
+		// Small slabs: the entries are spread over a lot of them
+		//
+		OffHeapHashIndex index = new OffHeapHashIndex(4096, null);
+		putAndGet(index, 100000);
+		assertTrue(index.getDataSize()>=100000*8);
+
+		index.close();
+		assertTrue(index.isEmpty());
+		assertNull(index.get(key(1)));
+	}
+
+	public void testMemoryMappedFiles() throws Exception
+	{
+		File directory = new File(System.getProperty("java.io.tmpdir"));
+		OffHeapHashIndex index = new OffHeapHashIndex(65536, directory);
+		putAndGet(index, 20000);
+		index.close();
+	}
+
+	public void testReplaceValue() throws Exception
+	{
+		OffHeapHashIndex index = new OffHeapHashIndex(4096, null);
+		index.put(key(1), "abc".getBytes());
+		index.put(key(1), "xyz".getBytes());      // same length: in place
+		assertEquals("xyz", new String(index.get(key(1))));
+		index.put(key(1), "longer".getBytes());   // appended
+		assertEquals("longer", new String(index.get(key(1))));
+		assertEquals(1, index.size());
+
+		// An entry larger than a slab gets a slab of its own
+		//
+		byte[] large = new byte[10000];
+		large[9999] = 42;
+		index.put(key(2), large);
+		assertEquals(42, index.get(key(2))[9999]);
+		assertEquals("longer", new String(index.get(key(1))));
+	}
+}
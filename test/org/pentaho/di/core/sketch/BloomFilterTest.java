@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core.sketch;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for the Bloom filter.
+ *
+ * @author matt
+ */
+public class BloomFilterTest extends TestCase
+{
+	private static long hash1(long key)
+	{
+		return HyperLogLog.hash(new Long(key));
+	}
+
+	private static long hash2(long key)
+	{
+		return HyperLogLog.hash("key-"+key);
+	}
+
+	/**
+	 * A key that was added is always found again.
+	 */
+	public void testNoFalseNegatives() throws Exception
+	{
+		BloomFilter filter = new BloomFilter(100000, 0.01);
+		for (long i=0;i<100000;i++)
+		{
+			filter.put(hash1(i), hash2(i));
+		}
+		for (long i=0;i<100000;i++)
+		{
+			assertTrue(filter.mightContain(hash1(i), hash2(i)));
+			assertFalse(filter.put(hash1(i), hash2(i)));
+		}
+	}
+
+	public void testFalsePositiveRate() throws Exception
+	{
+		BloomFilter filter = new BloomFilter(100000, 0.01);
+		for (long i=0;i<100000;i++)
+		{
+			filter.put(hash1(i), hash2(i));
+		}
+		int falsePositives = 0;
+		for (long i=100000;i<200000;i++)
+		{
+			if (filter.mightContain(hash1(i), hash2(i))) falsePositives++;
+		}
+		assertTrue("false positives: "+falsePositives, falsePositives<100000*0.02);
+		assertEquals(7, filter.getNrHashFunctions());
+	}
+}
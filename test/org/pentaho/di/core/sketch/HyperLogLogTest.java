@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core.sketch;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Test class for the HyperLogLog distinct count sketch.
+ *
+ * @author matt
+ */
+public class HyperLogLogTest extends TestCase
+{
+	public void testSmallCardinalityIsExact() throws Exception
+	{
+		ValueMetaInterface valueMeta = new ValueMeta("name", ValueMetaInterface.TYPE_STRING);
+		HyperLogLog sketch = new HyperLogLog();
+		for (int i=0;i<3000;i++)
+		{
+			sketch.addValue(valueMeta, "value-"+(i%500));
+		}
+		sketch.addValue(valueMeta, null);
+		assertEquals(500L, sketch.cardinality());
+	}
+
+	public void testLargeCardinality() throws Exception
+	{
+		HyperLogLog sketch = new HyperLogLog();
+		for (long i=0;i<1000000;i++)
+		{
+			sketch.addHash(HyperLogLog.hash(new Long(i)));
+		}
+		assertEquals(1000000.0, sketch.cardinality(), 1000000*0.03);
+	}
+
+	/**
+	 * The merge of the sketches of 2 overlapping sets estimates the union, also after serialization.
+	 */
+	public void testMergeSerialized() throws Exception
+	{
+		HyperLogLog one = new HyperLogLog();
+		HyperLogLog two = new HyperLogLog();
+		for (long i=0;i<200000;i++)
+		{
+			one.addHash(HyperLogLog.hash(new Long(i)));
+			two.addHash(HyperLogLog.hash(new Long(i+100000)));
+		}
+		HyperLogLog small = new HyperLogLog();
+		small.addHash(HyperLogLog.hash(new Long(-1)));
+
+		ValueMetaInterface binaryMeta = new ValueMeta("sketch", ValueMetaInterface.TYPE_BINARY);
+		HyperLogLog union = new HyperLogLog();
+		union.addValue(binaryMeta, one.toByteArray());
+		union.addValue(binaryMeta, two.toByteArray());
+		union.addValue(binaryMeta, small.toByteArray());
+
+		assertEquals(300001.0, union.cardinality(), 300001*0.03);
+		assertEquals(1L, HyperLogLog.fromByteArray(small.toByteArray()).cardinality());
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core.sketch;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Test class for the t-digest percentile sketch.
+ *
+ * @author matt
+ */
+public class TDigestTest extends TestCase
+{
+	public void testFewValuesAreExact() throws Exception
+	{
+		TDigest digest = new TDigest();
+		assertTrue(Double.isNaN(digest.quantile(0.5)));
+
+		ValueMetaInterface valueMeta = new ValueMeta("value", ValueMetaInterface.TYPE_INTEGER);
+		for (long i=1;i<=4;i++)
+		{
+			digest.addValue(valueMeta, new Long(i*10));
+		}
+		digest.addValue(valueMeta, null);
+		assertEquals(4L, digest.size());
+		assertEquals(25.0, digest.quantile(0.5), 0.0001);
+		assertEquals(10.0, digest.quantile(0.0), 0.0001);
+		assertEquals(40.0, digest.quantile(1.0), 0.0001);
+	}
+
+	public void testUniformPercentiles() throws Exception
+	{
+		TDigest digest = new TDigest();
+		Random random = new Random(42);
+		for (int i=0;i<1000000;i++)
+		{
+			digest.add(random.nextDouble()*1000);
+		}
+		assertEquals(500.0, digest.quantile(0.5), 5.0);
+		assertEquals(990.0, digest.quantile(0.99), 1.0);
+		assertEquals(1.0, digest.quantile(0.001), 0.5);
+		assertTrue(digest.toByteArray().length<16*200);
+	}
+
+	/**
+	 * The merge of the serialized digests of 2 halves gives the percentiles of the whole.
+	 */
+	public void testMergeSerialized() throws Exception
+	{
+		TDigest one = new TDigest();
+		TDigest two = new TDigest();
+		for (int i=0;i<100000;i++)
+		{
+			one.add(i);
+			two.add(100000+i);
+		}
+
+		ValueMetaInterface binaryMeta = new ValueMeta("digest", ValueMetaInterface.TYPE_BINARY);
+		TDigest merged = new TDigest();
+		merged.addValue(binaryMeta, one.toByteArray());
+		merged.addValue(binaryMeta, two.toByteArray());
+
+		assertEquals(200000L, merged.size());
+		assertEquals(100000.0, merged.quantile(0.5), 200000*0.01);
+		assertEquals(190000.0, merged.quantile(0.95), 200000*0.005);
+		assertEquals(199999.0, merged.quantile(1.0), 0.0001);
+	}
+}
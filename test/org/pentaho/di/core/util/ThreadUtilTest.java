@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.core.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for the creation of platform and virtual threads.
+ *
+ * @author matt
+ */
+public class ThreadUtilTest extends TestCase
+{
+	/**
+	 * Both kinds of threads run their code, virtual threads are only used when the JVM supports them.
+	 */
+	public void testNewThread() throws Exception
+	{
+		final AtomicInteger counter = new AtomicInteger(0);
+		Runnable runnable = new Runnable() {
+			public void run() {
+				counter.incrementAndGet();
+			}
+		};
+
+		Thread platform = ThreadUtil.newThread(runnable, false);
+		platform.setName("platform");
+		platform.start();
+		platform.join();
+		assertEquals(1, counter.get());
+		assertFalse(isVirtual(platform));
+
+		Thread virtual = ThreadUtil.newThread(runnable, true);
+		virtual.setName("virtual");
+		virtual.start();
+		virtual.join();
+		assertEquals(2, counter.get());
+		assertEquals("virtual", virtual.getName());
+		assertEquals(ThreadUtil.isVirtualThreadSupported(), isVirtual(virtual));
+	}
+
+	private boolean isVirtual(Thread thread) throws Exception
+	{
+		if (!ThreadUtil.isVirtualThreadSupported()) {
+			return false;
+		}
+		return ((Boolean)Thread.class.getMethod("isVirtual").invoke(thread)).booleanValue();
+	}
+}
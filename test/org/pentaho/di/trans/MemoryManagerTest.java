@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.logging.LogChannel;
+
+/**
+ * Reserves memory with a few consumers of the memory manager of a transformation.
+ *
+ * @author matt
+ */
+public class MemoryManagerTest extends TestCase
+{
+	private static final long MB = 1024*1024;
+
+	private MemoryManager createManager(long budget)
+	{
+		return new MemoryManager(budget, new LogChannel("MemoryManagerTest"));
+	}
+
+	public void testReserveAndRelease() throws Exception
+	{
+		MemoryManager manager = createManager(10*MB);
+		MemoryConsumer consumer = manager.register("sort", true);
+
+		assertTrue(consumer.reserve(1000));
+		assertEquals(1000, consumer.getUsed());
+		assertTrue(manager.getUsed()>=1000);
+
+		consumer.releaseAll();
+		assertEquals(0, manager.getUsed());
+
+		consumer.allocate(2000);
+		consumer.close();
+		assertEquals(0, manager.getUsed());
+	}
+
+	/**
+	 * A spillable consumer that holds the most memory doesn't get more once the budget is used up.
+	 */
+	public void testSpillWhenBudgetUsedUp() throws Exception
+	{
+		MemoryManager manager = createManager(1*MB);
+		MemoryConsumer consumer = manager.register("sort", true);
+
+		int nrRows = 0;
+		while (consumer.reserve(100))
+		{
+			nrRows++;
+			assertTrue("the budget isn't respected", nrRows<100000);
+		}
+		assertTrue(nrRows>=9000);
+		assertTrue(manager.getUsed()<=manager.getBudget());
+
+		// After writing the rows to disk we can start over
+		//
+		consumer.releaseAll();
+		assertTrue(consumer.reserve(100));
+	}
+
+	/**
+	 * A consumer that can't spill always gets the memory, a larger spillable consumer is asked to make room.
+	 */
+	public void testSpillRequested() throws Exception
+	{
+		MemoryManager manager = createManager(1*MB);
+		MemoryConsumer sort = manager.register("sort", true);
+		MemoryConsumer lookup = manager.register("lookup", false);
+
+		for (int i=0;i<9000;i++)
+		{
+			assertTrue(sort.reserve(100));
+		}
+		assertFalse(sort.isSpillRequested());
+
+		lookup.allocate(500*1024);
+		assertEquals(500*1024, lookup.getUsed());
+		assertTrue(sort.isSpillRequested());
+
+		sort.releaseAll();
+		assertFalse(sort.isSpillRequested());
+		assertTrue(manager.getUsed()<=manager.getBudget());
+
+		// Nobody left to spill: the lookup goes over budget
+		//
+		lookup.allocate(1*MB);
+		assertTrue(manager.getUsed()>manager.getBudget());
+	}
+
+	public void testParseBudget() throws Exception
+	{
+		assertEquals(-1L, MemoryManager.parseBudget(null));
+		assertEquals(-1L, MemoryManager.parseBudget(""));
+		assertEquals(-1L, MemoryManager.parseBudget("abc"));
+		assertEquals(-1L, MemoryManager.parseBudget("0"));
+		assertEquals(512*MB, MemoryManager.parseBudget("512"));
+		assertEquals(Runtime.getRuntime().maxMemory()/100*25, MemoryManager.parseBudget(" 25% "));
+	}
+}
@@ -5,6 +5,7 @@ import java.util.concurrent.TimeUnit;
 import junit.framework.TestCase;
 
 import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.RowSetSignal;
 import org.pentaho.di.core.row.RowMetaInterface;
 
 /**
@@ -81,6 +82,10 @@ public class RowProducerTest extends TestCase {
       return false;
     }
 
+    public int putRows(RowMetaInterface rowMeta, Object[][] rows, int offset, int nrRows) {
+      throw new UnsupportedOperationException();
+    }
+
     public Object[] getRow() {
       throw new UnsupportedOperationException();
     }
@@ -93,6 +98,14 @@ public class RowProducerTest extends TestCase {
       throw new UnsupportedOperationException();
     }
 
+    public int getRows(Object[][] rows, int maxRows) {
+      throw new UnsupportedOperationException();
+    }
+
+    public int getRowsWait(Object[][] rows, int maxRows, long timeout, TimeUnit tu) {
+      throw new UnsupportedOperationException();
+    }
+
     public void setDone() {
       throw new UnsupportedOperationException();
     }
@@ -148,5 +161,9 @@ public class RowProducerTest extends TestCase {
     public boolean isBlocking() {
       return true;
     }
+
+    public void setSignal(RowSetSignal signal) {
+      throw new UnsupportedOperationException();
+    }
   }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.TransMeta.TransformationType;
+import org.pentaho.di.trans.step.RowAdapter;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.rowgenerator.RowGeneratorMeta;
+
+/**
+ * Runs a complete transformation with the single threaded engine.
+ *
+ * @author matt
+ */
+public class SingleThreadedTransExecutorTest extends TestCase
+{
+	private StepMeta addStep(TransMeta transMeta, String name, StepMetaInterface meta)
+	{
+		String pid = PluginRegistry.getInstance().getPluginId(StepPluginType.class, meta);
+		StepMeta stepMeta = new StepMeta(pid, name, meta);
+		transMeta.addStep(stepMeta);
+		return stepMeta;
+	}
+
+	public void testExecute() throws Exception
+	{
+		KettleEnvironment.init();
+
+		TransMeta transMeta = new TransMeta();
+		transMeta.setName("singlethreadedtest");
+		transMeta.setSizeRowset(100);
+
+		// Rows are handed over in blocks by the multi-threaded engine only, the single threaded engine overrules it
+		//
+		transMeta.setVariable(Const.KETTLE_TRANS_ROWSET_BLOCK_SIZE, "50");
+
+		// generator --> dummy (2 copies) --> dummy
+		//
+		RowGeneratorMeta generatorMeta = new RowGeneratorMeta();
+		generatorMeta.allocate(0);
+		generatorMeta.setRowLimit("10000");
+		StepMeta generatorStep = addStep(transMeta, "generator", generatorMeta);
+
+		StepMeta dummyStep1 = addStep(transMeta, "dummy 1", new DummyTransMeta());
+		dummyStep1.setCopies(2);
+		transMeta.addTransHop(new TransHopMeta(generatorStep, dummyStep1));
+
+		StepMeta dummyStep2 = addStep(transMeta, "dummy 2", new DummyTransMeta());
+		transMeta.addTransHop(new TransHopMeta(dummyStep1, dummyStep2));
+
+		// The transformation itself is a normal one, we only run it differently.
+		//
+		Trans trans = new Trans(transMeta);
+		trans.setTransformationType(TransformationType.SingleThreaded);
+		trans.prepareExecution(null);
+
+		final Set<String> threadNames = Collections.synchronizedSet(new HashSet<String>());
+		StepInterface last = trans.getStepInterface("dummy 2", 0);
+		last.addRowListener(new RowAdapter() {
+			public void rowReadEvent(RowMetaInterface rowMeta, Object[] row) {
+				threadNames.add(Thread.currentThread().getName());
+			}
+		});
+
+		trans.startThreads();
+		trans.waitUntilFinished();
+
+		assertEquals(0, trans.getErrors());
+		assertTrue(trans.isFinished());
+		assertEquals(10000L, last.getLinesRead());
+		assertEquals(1, threadNames.size());
+		for (StepInterface step : new StepInterface[] { trans.getStepInterface("generator", 0), trans.getStepInterface("dummy 1", 0), trans.getStepInterface("dummy 1", 1), last }) {
+			assertFalse(step.getStepname(), step.isRunning());
+		}
+	}
+}
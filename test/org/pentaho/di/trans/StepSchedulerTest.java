@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.step.RowAdapter;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.rowgenerator.RowGeneratorMeta;
+
+/**
+ * Runs a transformation with the steps taking turns on a single worker thread.
+ *
+ * @author matt
+ */
+public class StepSchedulerTest extends TestCase
+{
+	private StepMeta addStep(TransMeta transMeta, String name, StepMetaInterface meta)
+	{
+		String pid = PluginRegistry.getInstance().getPluginId(StepPluginType.class, meta);
+		StepMeta stepMeta = new StepMeta(pid, name, meta);
+		transMeta.addStep(stepMeta);
+		return stepMeta;
+	}
+
+	public void testSingleWorker() throws Exception
+	{
+		KettleEnvironment.init();
+
+		TransMeta transMeta = new TransMeta();
+		transMeta.setName("stepschedulertest");
+		transMeta.setSizeRowset(10);
+		transMeta.setVariable(Const.KETTLE_TRANS_WORKER_POOL_SIZE, "1");
+
+		// generator --> dummy (2 copies) --> dummy
+		//
+		RowGeneratorMeta generatorMeta = new RowGeneratorMeta();
+		generatorMeta.allocate(0);
+		generatorMeta.setRowLimit("10000");
+		StepMeta generatorStep = addStep(transMeta, "generator", generatorMeta);
+
+		StepMeta dummyStep1 = addStep(transMeta, "dummy 1", new DummyTransMeta());
+		dummyStep1.setCopies(2);
+		transMeta.addTransHop(new TransHopMeta(generatorStep, dummyStep1));
+
+		StepMeta dummyStep2 = addStep(transMeta, "dummy 2", new DummyTransMeta());
+		transMeta.addTransHop(new TransHopMeta(dummyStep1, dummyStep2));
+
+		Trans trans = new Trans(transMeta);
+		trans.prepareExecution(null);
+
+		final Set<String> threadNames = Collections.synchronizedSet(new HashSet<String>());
+		StepInterface last = trans.getStepInterface("dummy 2", 0);
+		last.addRowListener(new RowAdapter() {
+			public void rowReadEvent(RowMetaInterface rowMeta, Object[] row) {
+				threadNames.add(Thread.currentThread().getName());
+			}
+		});
+
+		trans.startThreads();
+		trans.waitUntilFinished();
+
+		assertEquals(0, trans.getErrors());
+		assertEquals(10000L, last.getLinesRead());
+		for (String threadName : threadNames) {
+			assertTrue(threadName, threadName.startsWith("Step worker"));
+		}
+	}
+}
@@ -23,6 +23,7 @@ import java.util.List;
 
 import junit.framework.TestCase;
 
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.KettleEnvironment;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.exception.KettleValueException;
@@ -373,4 +374,62 @@ public class BlockingStepTest extends TestCase
         List<RowMetaAndData> resultRows3 = dummyRc2.getRowsWritten();
         checkRows(resultRows3, inputList);
     }    
+
+	/**
+	 * Test case for blocking step with a memory budget held by a step that can't spill.
+	 * The rows are written to disk in files of a reasonable size, not a file per row.
+	 */
+    public void testBlockingStepWithMemoryBudgetHeldByOthers() throws Exception
+    {
+        KettleEnvironment.init();
+
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("blockingsteptest");
+        transMeta.setVariable(Const.KETTLE_TRANS_MEMORY_BUDGET, "2");
+    	
+        PluginRegistry registry = PluginRegistry.getInstance();            
+
+        InjectorMeta im = new InjectorMeta();
+        StepMeta injectorStep = new StepMeta(registry.getPluginId(StepPluginType.class, im), "injector step", (StepMetaInterface)im);
+        transMeta.addStep(injectorStep);
+
+        BlockingStepMeta bm = new BlockingStepMeta();
+        bm.setDefault();
+        bm.setPassAllRows(true);
+        bm.setCacheSize(1000000);
+        bm.setPrefix("BlockingStepTest");
+        bm.setDirectory(".");
+        StepMeta blockingStep = new StepMeta(registry.getPluginId(StepPluginType.class, bm), "blocking step", (StepMetaInterface)bm);
+        transMeta.addStep(blockingStep);            
+        transMeta.addTransHop(new TransHopMeta(injectorStep, blockingStep));        
+        
+        Trans trans = new Trans(transMeta);
+        trans.prepareExecution(null);
+        trans.getMemoryManager().register("lookup", false).allocate(2*1024*1024);
+                
+        RowStepCollector blockingRc = new RowStepCollector();
+        trans.getStepInterface("blocking step", 0).addRowListener(blockingRc);
+        
+        RowProducer rp = trans.addRowProducer("injector step", 0);
+        trans.startThreads();
+        
+        int count = 20000;
+        List<RowMetaAndData> inputList = new ArrayList<RowMetaAndData>();
+        for (int i=0;i<count;i++)
+        {
+        	RowMetaAndData rm = createData().get(i%3);
+        	rm.getData()[1] = new Long(i);
+        	inputList.add(rm);
+        	rp.putRow(rm.getRowMeta(), rm.getData());
+        }   
+        rp.finished();
+
+        trans.waitUntilFinished();   
+        assertEquals(0, trans.getErrors());
+        
+        checkRows(blockingRc.getRowsWritten(), inputList);
+        
+        BlockingStepData data = (BlockingStepData)trans.getStepDataInterface("blocking step", 0);
+        assertTrue("too many temp files: "+data.nrTempFiles, data.nrTempFiles<=count/BlockingStepMeta.CACHE_SIZE);
+    }
 }
\ No newline at end of file
@@ -188,6 +188,17 @@ public class CsvInput2Test extends TestCase {
 	 *             Upon any exception
 	 */
 	public void testCSVInput1() throws Exception {
+		runCsvInput(false);
+	}
+
+	/**
+	 * The same file read with the memory-mapped scanner gives the same rows.
+	 */
+	public void testCSVInputMemoryMapped() throws Exception {
+		runCsvInput(true);
+	}
+
+	private void runCsvInput(boolean memoryMapped) throws Exception {
         KettleEnvironment.init();
 
 		//
@@ -270,6 +281,7 @@ public class CsvInput2Test extends TestCase {
 		cim.setIncludingFilename(true);
 		cim.setRowNumField("");
 		cim.setRunningInParallel(false);
+		cim.setMemoryMapped(memoryMapped);
 		cim.setInputFields(fields);
 		
 		TransHopMeta hi = new TransHopMeta(injectorStep, csvInputStep);
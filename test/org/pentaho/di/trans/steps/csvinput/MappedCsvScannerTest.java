@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.csvinput;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for the memory-mapped CSV scanner, with small windows so lines cross the end of a window.
+ *
+ * @author matt
+ */
+public class MappedCsvScannerTest extends TestCase
+{
+	private List<String[]> scan(String content, int maxFields, int windowSize) throws Exception
+	{
+		File file = File.createTempFile("mappedcsv", ".csv");
+		file.deleteOnExit();
+		FileOutputStream outputStream = new FileOutputStream(file);
+		outputStream.write(content.getBytes("ISO-8859-1"));
+		outputStream.close();
+
+		List<String[]> lines = new ArrayList<String[]>();
+		FileInputStream inputStream = new FileInputStream(file);
+		try
+		{
+			MappedCsvScanner scanner = new MappedCsvScanner(inputStream.getChannel(), (byte)';', new byte[] { '"' }, maxFields, windowSize);
+			int nrFields;
+			while ((nrFields=scanner.readLine())>=0)
+			{
+				String[] fields = new String[nrFields];
+				for (int i=0;i<nrFields;i++)
+				{
+					fields[i] = new String(scanner.getField(i), "ISO-8859-1");
+					assertEquals(fields[i].length(), scanner.getFieldLength(i));
+				}
+				lines.add(fields);
+			}
+			assertEquals(file.length(), scanner.getPosition());
+		}
+		finally
+		{
+			inputStream.close();
+			file.delete();
+		}
+		return lines;
+	}
+
+	private void assertLine(String[] expected, String[] actual)
+	{
+		assertEquals(expected.length, actual.length);
+		for (int i=0;i<expected.length;i++)
+		{
+			assertEquals("field "+i, expected[i], actual[i]);
+		}
+	}
+
+	public void testFieldsAndLineEnds() throws Exception
+	{
+		String content = "a;bb;ccc\r\n1;22;333\n;;\r\nlast;line";
+		for (int windowSize=4;windowSize<=64;windowSize*=2)
+		{
+			List<String[]> lines = scan(content, 3, windowSize);
+			assertEquals(4, lines.size());
+			assertLine(new String[] { "a", "bb", "ccc" }, lines.get(0));
+			assertLine(new String[] { "1", "22", "333" }, lines.get(1));
+			assertLine(new String[] { "", "", "" }, lines.get(2));
+			assertLine(new String[] { "last", "line" }, lines.get(3));
+		}
+	}
+
+	/**
+	 * Delimiters and line ends between enclosures are part of the field, doubled enclosures are escaped ones.
+	 */
+	public void testEnclosures() throws Exception
+	{
+		String content = "\"a;b\";\"say \"\"hi\"\"\";\"x\ny\"\n\"\";plain\n";
+		for (int windowSize=4;windowSize<=64;windowSize*=2)
+		{
+			List<String[]> lines = scan(content, 3, windowSize);
+			assertEquals(2, lines.size());
+			assertLine(new String[] { "a;b", "say \"hi\"", "x\ny" }, lines.get(0));
+			assertLine(new String[] { "", "plain" }, lines.get(1));
+		}
+	}
+
+	/**
+	 * Only the offsets of the first fields are kept, the rest of the line is skipped.
+	 */
+	public void testMoreFieldsThanNeeded() throws Exception
+	{
+		StringBuffer content = new StringBuffer();
+		for (int i=0;i<1000;i++)
+		{
+			content.append(i).append(";value ").append(i).append(";skipped;\"also; skipped\"\n");
+		}
+		List<String[]> lines = scan(content.toString(), 2, 256);
+		assertEquals(1000, lines.size());
+		for (int i=0;i<1000;i++)
+		{
+			assertLine(new String[] { Integer.toString(i), "value "+i }, lines.get(i));
+		}
+	}
+}
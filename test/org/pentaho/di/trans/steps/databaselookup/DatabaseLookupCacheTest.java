@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.databaselookup;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Evicts and expires the keys of the Database Lookup cache.
+ *
+ * @author matt
+ */
+public class DatabaseLookupCacheTest extends TestCase
+{
+	private RowMetaInterface keyMeta;
+
+	protected void setUp() throws Exception
+	{
+		keyMeta = new RowMeta();
+		keyMeta.addValueMeta(new ValueMeta("id", ValueMetaInterface.TYPE_INTEGER));
+	}
+
+	private RowMetaAndData key(long id)
+	{
+		return new RowMetaAndData(keyMeta, new Object[] { Long.valueOf(id), });
+	}
+
+	private static Object[] row(String code)
+	{
+		return new Object[] { code, };
+	}
+
+	public void testLookup() throws Exception
+	{
+		DatabaseLookupCache cache = new DatabaseLookupCache(0, 0L, 1);
+
+		cache.put(key(1), row("one"));
+		cache.put(key(2), DatabaseLookupCache.NOT_FOUND);
+
+		assertEquals("one", cache.get(key(1))[0]);
+		assertSame(DatabaseLookupCache.NOT_FOUND, cache.get(key(2)));
+		assertNull(cache.get(key(3)));
+
+		assertEquals(2L, cache.getHits());
+		assertEquals(1L, cache.getMisses());
+		assertEquals(2, cache.size());
+		assertEquals(2, cache.getKeys().size());
+
+		// Peeking is not counted
+		//
+		assertEquals("one", cache.peek(key(1))[0]);
+		assertEquals(2L, cache.getHits());
+	}
+
+	public void testKeyOrderWithoutLimit() throws Exception
+	{
+		DatabaseLookupCache cache = new DatabaseLookupCache(0, 0L, 1);
+
+		for (int i=0;i<5;i++)
+		{
+			cache.put(key(i), row("key-"+i));
+		}
+		assertNotNull(cache.get(key(3)));
+		assertNotNull(cache.get(key(0)));
+
+		// Lookups don't move the keys around if nothing is ever evicted
+		//
+		List<RowMetaAndData> keys = cache.getKeys();
+		assertEquals(5, keys.size());
+		for (int i=0;i<5;i++)
+		{
+			assertEquals(Long.valueOf(i), keys.get(i).getData()[0]);
+		}
+	}
+
+	public void testEvictLeastRecentlyUsed() throws Exception
+	{
+		DatabaseLookupCache cache = new DatabaseLookupCache(10, 0L, 1);
+
+		// Keys 0 to 4 are used again, they are protected from a scan over many other keys
+		//
+		for (int i=0;i<5;i++)
+		{
+			cache.put(key(i), row("key-"+i));
+			assertNotNull(cache.get(key(i)));
+		}
+		for (int i=100;i<200;i++)
+		{
+			cache.put(key(i), row("key-"+i));
+		}
+
+		assertEquals(10, cache.size());
+		assertEquals(95L, cache.getEvictions());
+		for (int i=0;i<5;i++)
+		{
+			assertEquals("key-"+i, cache.get(key(i))[0]);
+		}
+		for (int i=195;i<200;i++)
+		{
+			assertNotNull(cache.get(key(i)));
+		}
+		assertNull(cache.get(key(150)));
+	}
+
+	public void testTimeToLive() throws Exception
+	{
+		DatabaseLookupCache cache = new DatabaseLookupCache(0, 50L, 1);
+
+		cache.put(key(1), row("one"));
+		assertNotNull(cache.get(key(1)));
+
+		Thread.sleep(100);
+
+		assertNull(cache.peek(key(1)));
+		assertNull(cache.get(key(1)));
+		assertEquals(1L, cache.getExpirations());
+		assertEquals(0, cache.size());
+
+		// Stored again after the lookup in the database
+		//
+		cache.put(key(1), row("uno"));
+		assertEquals("uno", cache.get(key(1))[0]);
+	}
+
+	public void testSharedCache() throws Exception
+	{
+		final DatabaseLookupCache cache = new DatabaseLookupCache(1000, 0L, 16);
+		cache.open();
+		cache.open();
+
+		Thread[] threads = new Thread[4];
+		for (int t=0;t<threads.length;t++)
+		{
+			threads[t] = new Thread()
+			{
+				public void run()
+				{
+					for (int i=0;i<10000;i++)
+					{
+						RowMetaAndData key = key(i%2000);
+						if (cache.get(key)==null)
+						{
+							cache.put(key, row("key-"+(i%2000)));
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+
+		assertTrue(cache.size()<=1000);
+		assertEquals(40000L, cache.getHits()+cache.getMisses());
+
+		assertFalse(cache.close());
+		assertTrue(cache.close());
+	}
+}
@@ -15,6 +15,7 @@
 
 package org.pentaho.di.trans.steps.databaselookup;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
@@ -43,9 +44,11 @@ import org.pentaho.di.trans.RowStepCollector;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransHopMeta;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepErrorMeta;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
 import org.pentaho.di.trans.steps.injector.InjectorMeta;
 
 
@@ -424,6 +427,207 @@ public class DatabaseLookupTest
         finally {}    
     }
     
+	/**
+	 * Basic Test case for database lookup, the keys of the rows are looked up in batches.
+	 */
+    @Test
+    public void batchedDatabaseLookup() throws Exception
+    {
+        KettleEnvironment.init();
+
+        try
+        {
+            //
+            // Create a new transformation...
+            //
+            TransMeta transMeta = new TransMeta();
+            transMeta.setName("transname");
+
+            // Add the database connections
+            for (int i=0;i<databasesXML.length;i++)
+            {
+                DatabaseMeta databaseMeta = new DatabaseMeta(databasesXML[i]);
+                transMeta.addDatabase(databaseMeta);
+            }
+
+            DatabaseMeta dbInfo = transMeta.findDatabase("db");
+            PluginRegistry registry = PluginRegistry.getInstance();            
+
+            // 
+            // create an injector step...
+            //
+            String injectorStepname = "injector step";
+            InjectorMeta im = new InjectorMeta();
+            
+            // Set the information of the injector.
+                    
+            String injectorPid = registry.getPluginId(StepPluginType.class, im);
+            StepMeta injectorStep = new StepMeta(injectorPid, injectorStepname, (StepMetaInterface)im);
+            transMeta.addStep(injectorStep);            
+            
+            // 
+            // create the lookup step...
+            //
+            String lookupName = "look up from [" + lookup_table + "]";
+            DatabaseLookupMeta dbl = new DatabaseLookupMeta();
+            dbl.setDatabaseMeta(transMeta.findDatabase("db"));
+            dbl.setTablename(lookup_table);
+            dbl.setCached(false);
+            dbl.setEatingRowOnLookupFailure(false);
+            dbl.setFailingOnMultipleResults(false);
+            dbl.setOrderByClause("");
+            dbl.setLookupBatchSize(3);
+            
+            dbl.setTableKeyField(new String[] {"ID"});
+            dbl.setKeyCondition(new String[] {"="});
+            dbl.setStreamKeyField1(new String[] {"int_field"});
+            dbl.setStreamKeyField2(new String[] {""});
+            
+            dbl.setReturnValueField(new String[] {"CODE", "STRING"});
+            dbl.setReturnValueDefaultType( new int[] {ValueMeta.TYPE_INTEGER, ValueMeta.TYPE_STRING});      
+            dbl.setReturnValueDefault(new String[] {"-1", "UNDEF"});
+            dbl.setReturnValueNewName(new String[] {"RET_CODE", "RET_STRING"});
+            
+            String lookupId = registry.getPluginId(StepPluginType.class, dbl);
+            StepMeta lookupStep = new StepMeta(lookupId, lookupName, (StepMetaInterface) dbl);
+            lookupStep.setDescription("Reads information from table [" + lookup_table + "] on database [" + dbInfo + "]");
+            transMeta.addStep(lookupStep);
+            
+            TransHopMeta hi = new TransHopMeta(injectorStep, lookupStep);
+            transMeta.addTransHop(hi);
+
+            // Now execute the transformation...
+            Trans trans = new Trans(transMeta);
+
+            trans.prepareExecution(null);
+                    
+            StepInterface si = trans.getStepInterface(lookupName, 0);
+            RowStepCollector rc = new RowStepCollector();
+            si.addRowListener(rc);
+            
+            RowProducer rp = trans.addRowProducer(injectorStepname, 0);
+            trans.startThreads();
+            
+            // add rows
+            List<RowMetaAndData> inputList = createDataRows();
+            for (RowMetaAndData rm : inputList )
+            {
+            	rp.putRow(rm.getRowMeta(), rm.getData());
+            }   
+            rp.finished();
+
+            trans.waitUntilFinished();   
+
+            List<RowMetaAndData> resultRows = rc.getRowsWritten();
+            List<RowMetaAndData> goldRows = createResultDataRows();
+            checkRows(goldRows, resultRows);
+        }    	
+        finally {}    
+    }
+    
+	/**
+	 * The keys of the rows are looked up in batches with a cache that is too small to keep them.
+	 * A key that is in the cache when the batch is queried is evicted by the keys before it and still has to be found.
+	 */
+    @Test
+    public void batchedCachedDatabaseLookup() throws Exception
+    {
+        KettleEnvironment.init();
+
+        try
+        {
+            //
+            // Create a new transformation...
+            //
+            TransMeta transMeta = new TransMeta();
+            transMeta.setName("transname");
+
+            // Add the database connections
+            for (int i=0;i<databasesXML.length;i++)
+            {
+                DatabaseMeta databaseMeta = new DatabaseMeta(databasesXML[i]);
+                transMeta.addDatabase(databaseMeta);
+            }
+
+            DatabaseMeta dbInfo = transMeta.findDatabase("db");
+            PluginRegistry registry = PluginRegistry.getInstance();            
+
+            // 
+            // create an injector step...
+            //
+            String injectorStepname = "injector step";
+            InjectorMeta im = new InjectorMeta();
+            
+            // Set the information of the injector.
+                    
+            String injectorPid = registry.getPluginId(StepPluginType.class, im);
+            StepMeta injectorStep = new StepMeta(injectorPid, injectorStepname, (StepMetaInterface)im);
+            transMeta.addStep(injectorStep);            
+            
+            // 
+            // create the lookup step...
+            //
+            String lookupName = "look up from [" + lookup_table + "]";
+            DatabaseLookupMeta dbl = new DatabaseLookupMeta();
+            dbl.setDatabaseMeta(transMeta.findDatabase("db"));
+            dbl.setTablename(lookup_table);
+            dbl.setCached(true);
+            dbl.setCacheSize(1);
+            dbl.setCachingNotFound(false);
+            dbl.setEatingRowOnLookupFailure(false);
+            dbl.setFailingOnMultipleResults(false);
+            dbl.setOrderByClause("");
+            dbl.setLookupBatchSize(3);
+            
+            dbl.setTableKeyField(new String[] {"ID"});
+            dbl.setKeyCondition(new String[] {"="});
+            dbl.setStreamKeyField1(new String[] {"int_field"});
+            dbl.setStreamKeyField2(new String[] {""});
+            
+            dbl.setReturnValueField(new String[] {"CODE", "STRING"});
+            dbl.setReturnValueDefaultType( new int[] {ValueMeta.TYPE_INTEGER, ValueMeta.TYPE_STRING});      
+            dbl.setReturnValueDefault(new String[] {"-1", "UNDEF"});
+            dbl.setReturnValueNewName(new String[] {"RET_CODE", "RET_STRING"});
+            
+            String lookupId = registry.getPluginId(StepPluginType.class, dbl);
+            StepMeta lookupStep = new StepMeta(lookupId, lookupName, (StepMetaInterface) dbl);
+            lookupStep.setDescription("Reads information from table [" + lookup_table + "] on database [" + dbInfo + "]");
+            transMeta.addStep(lookupStep);
+            
+            TransHopMeta hi = new TransHopMeta(injectorStep, lookupStep);
+            transMeta.addTransHop(hi);
+
+            // Now execute the transformation...
+            Trans trans = new Trans(transMeta);
+
+            trans.prepareExecution(null);
+                    
+            StepInterface si = trans.getStepInterface(lookupName, 0);
+            RowStepCollector rc = new RowStepCollector();
+            si.addRowListener(rc);
+            
+            RowProducer rp = trans.addRowProducer(injectorStepname, 0);
+            trans.startThreads();
+            
+            // add rows
+            List<RowMetaAndData> inputList = createDataRows();
+            inputList.addAll(createDataRows());
+            for (RowMetaAndData rm : inputList )
+            {
+            	rp.putRow(rm.getRowMeta(), rm.getData());
+            }   
+            rp.finished();
+
+            trans.waitUntilFinished();   
+
+            List<RowMetaAndData> resultRows = rc.getRowsWritten();
+            List<RowMetaAndData> goldRows = createResultDataRows();
+            goldRows.addAll(createResultDataRows());
+            checkRows(goldRows, resultRows);
+        }    	
+        finally {}    
+    }
+    
 	/**
 	 * Test "Load All Rows" version of BasicDatabaseLookup test.
 	 */
@@ -623,4 +827,85 @@ public class DatabaseLookupTest
         finally {}    
     }    
     
+
+	/**
+	 * A key that is out of range for the database makes the query of the whole batch fail.
+	 * With error handling the rows are looked up one by one, only the bad row goes to the error handling.
+	 */
+    @Test
+    public void batchedDatabaseLookupWithErrorHandling() throws Exception
+    {
+        KettleEnvironment.init();
+
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("transname");
+        for (int i=0;i<databasesXML.length;i++)
+        {
+            transMeta.addDatabase(new DatabaseMeta(databasesXML[i]));
+        }
+        PluginRegistry registry = PluginRegistry.getInstance();            
+
+        InjectorMeta im = new InjectorMeta();
+        StepMeta injectorStep = new StepMeta(registry.getPluginId(StepPluginType.class, im), "injector step", (StepMetaInterface)im);
+        transMeta.addStep(injectorStep);            
+        
+        String lookupName = "look up from [" + lookup_table + "]";
+        DatabaseLookupMeta dbl = new DatabaseLookupMeta();
+        dbl.setDatabaseMeta(transMeta.findDatabase("db"));
+        dbl.setTablename(lookup_table);
+        dbl.setCached(false);
+        dbl.setEatingRowOnLookupFailure(false);
+        dbl.setFailingOnMultipleResults(false);
+        dbl.setOrderByClause("");
+        dbl.setLookupBatchSize(3);
+        
+        dbl.setTableKeyField(new String[] {"ID"});
+        dbl.setKeyCondition(new String[] {"="});
+        dbl.setStreamKeyField1(new String[] {"int_field"});
+        dbl.setStreamKeyField2(new String[] {""});
+        
+        dbl.setReturnValueField(new String[] {"CODE", "STRING"});
+        dbl.setReturnValueDefaultType( new int[] {ValueMeta.TYPE_INTEGER, ValueMeta.TYPE_STRING});      
+        dbl.setReturnValueDefault(new String[] {"-1", "UNDEF"});
+        dbl.setReturnValueNewName(new String[] {"RET_CODE", "RET_STRING"});
+        
+        StepMeta lookupStep = new StepMeta(registry.getPluginId(StepPluginType.class, dbl), lookupName, (StepMetaInterface) dbl);
+        transMeta.addStep(lookupStep);
+        transMeta.addTransHop(new TransHopMeta(injectorStep, lookupStep));
+
+        DummyTransMeta dm = new DummyTransMeta();
+        StepMeta errorStep = new StepMeta(registry.getPluginId(StepPluginType.class, dm), "errors", (StepMetaInterface) dm);
+        transMeta.addStep(errorStep);
+        transMeta.addTransHop(new TransHopMeta(lookupStep, errorStep));
+        StepErrorMeta errorMeta = new StepErrorMeta(transMeta, lookupStep, errorStep);
+        errorMeta.setEnabled(true);
+        lookupStep.setStepErrorMeta(errorMeta);
+
+        Trans trans = new Trans(transMeta);
+        trans.prepareExecution(null);
+                
+        RowStepCollector rc = new RowStepCollector();
+        trans.getStepInterface(lookupName, 0).addRowListener(rc);
+        
+        RowProducer rp = trans.addRowProducer("injector step", 0);
+        trans.startThreads();
+        
+        RowMetaInterface rm = createRowMetaInterface();
+        rp.putRow(rm, new Object[] { new Long(5L), });
+        rp.putRow(rm, new Object[] { new Long(99999999999L), }); // not an INT
+        rp.putRow(rm, new Object[] { new Long(9L), });
+        rp.finished();
+
+        trans.waitUntilFinished();   
+        assertEquals(0, trans.getErrors());
+
+        List<RowMetaAndData> resultRows = rc.getRowsWritten();
+        assertEquals(2, resultRows.size());
+        assertEquals(Long.valueOf(101L), resultRows.get(0).getData()[1]);
+        assertEquals(Long.valueOf(102L), resultRows.get(1).getData()[1]);
+
+        List<RowMetaAndData> errorRows = rc.getRowsError();
+        assertEquals(1, errorRows.size());
+        assertEquals(new Long(99999999999L), errorRows.get(0).getData()[0]);
+    }
 }
\ No newline at end of file
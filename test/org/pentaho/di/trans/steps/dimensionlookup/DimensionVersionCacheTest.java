@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.dimensionlookup;
+
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Looks up the versions of dimension entries by date in the versions cache.
+ *
+ * @author matt
+ */
+public class DimensionVersionCacheTest extends TestCase
+{
+	private static final long DAY = 24L*60*60*1000;
+
+	private RowMetaInterface keyRowMeta;
+	private RowMetaInterface valueRowMeta;
+
+	protected void setUp() throws Exception
+	{
+		keyRowMeta = new RowMeta();
+		keyRowMeta.addValueMeta(new ValueMeta("customer", ValueMetaInterface.TYPE_STRING));
+
+		valueRowMeta = new RowMeta();
+		valueRowMeta.addValueMeta(new ValueMeta("tk", ValueMetaInterface.TYPE_INTEGER));
+		valueRowMeta.addValueMeta(new ValueMeta("version", ValueMetaInterface.TYPE_INTEGER));
+		valueRowMeta.addValueMeta(new ValueMeta("city", ValueMetaInterface.TYPE_STRING));
+		valueRowMeta.addValueMeta(new ValueMeta("date_from", ValueMetaInterface.TYPE_DATE));
+		valueRowMeta.addValueMeta(new ValueMeta("date_to", ValueMetaInterface.TYPE_DATE));
+	}
+
+	private static Object[] key(String customer)
+	{
+		return new Object[] { customer, };
+	}
+
+	private static Object[] version(long tk, long version, String city, long fromDay, long toDay)
+	{
+		return new Object[] { Long.valueOf(tk), Long.valueOf(version), city, new Date(fromDay*DAY), new Date(toDay*DAY), };
+	}
+
+	private static Date day(long day)
+	{
+		return new Date(day*DAY);
+	}
+
+	public void testLookupVersions() throws Exception
+	{
+		DimensionVersionCache cache = new DimensionVersionCache(keyRowMeta, valueRowMeta);
+
+		// Added in a different order than the date ranges
+		//
+		cache.put(key("A"), version(3, 3, "Ghent", 20, 1000));
+		cache.put(key("A"), version(1, 1, "Antwerp", 0, 10));
+		cache.put(key("A"), version(2, 2, "Brussels", 10, 20));
+		cache.put(key("B"), version(4, 1, "Paris", 0, 1000));
+
+		assertEquals(2, cache.getNrKeys());
+		assertEquals(4L, cache.getNrVersions());
+
+		assertEquals("Antwerp", cache.lookup(key("A"), day(0))[2]);
+		assertEquals("Antwerp", cache.lookup(key("A"), day(9))[2]);
+		assertEquals("Brussels", cache.lookup(key("A"), day(10))[2]);
+		assertEquals("Ghent", cache.lookup(key("A"), day(999))[2]);
+		assertEquals("Paris", cache.lookup(key("B"), day(5))[2]);
+
+		Object[] row = cache.lookup(key("A"), day(15));
+		assertEquals(Long.valueOf(2L), row[0]);
+		assertEquals(day(10), row[3]);
+		assertEquals(day(20), row[4]);
+
+		// Outside of all the date ranges or an unknown key
+		//
+		assertNull(cache.lookup(key("A"), day(1000)));
+		assertNull(cache.lookup(key("A"), day(-1)));
+		assertNull(cache.lookup(key("C"), day(5)));
+
+		cache.close();
+	}
+
+	public void testNewVersion() throws Exception
+	{
+		DimensionVersionCache cache = new DimensionVersionCache(keyRowMeta, valueRowMeta);
+		cache.put(key("A"), version(1, 1, "Antwerp", 0, 1000));
+
+		// A new version ends the date range of the previous one
+		//
+		cache.setVersionDateTo(key("A"), 1L, day(50));
+		cache.put(key("A"), version(2, 2, "Brussels", 50, 1000));
+
+		assertEquals("Antwerp", cache.lookup(key("A"), day(49))[2]);
+		assertEquals(day(50), cache.lookup(key("A"), day(49))[4]);
+		assertEquals("Brussels", cache.lookup(key("A"), day(50))[2]);
+
+		// An update of a version replaces it
+		//
+		cache.put(key("A"), version(2, 2, "Bruges", 50, 1000));
+		assertEquals(2L, cache.getNrVersions());
+		assertEquals("Bruges", cache.lookup(key("A"), day(60))[2]);
+
+		// Punch through: all the versions change
+		//
+		cache.updateAllVersions(key("A"), new int[] { 2, }, new Object[] { "Leuven", });
+		assertEquals("Leuven", cache.lookup(key("A"), day(10))[2]);
+		assertEquals("Leuven", cache.lookup(key("A"), day(60))[2]);
+
+		cache.close();
+	}
+
+	public void testNullDates() throws Exception
+	{
+		DimensionVersionCache cache = new DimensionVersionCache(keyRowMeta, valueRowMeta);
+
+		// No start date is the start of time, no end date never matches (like in the database)
+		//
+		cache.put(key("A"), new Object[] { Long.valueOf(1L), Long.valueOf(1L), "Antwerp", null, day(10), });
+		cache.put(key("B"), new Object[] { Long.valueOf(2L), Long.valueOf(1L), "Brussels", day(0), null, });
+
+		Object[] row = cache.lookup(key("A"), new Date(Long.MIN_VALUE+1));
+		assertEquals("Antwerp", row[2]);
+		assertNull(row[3]);
+		assertNull(cache.lookup(key("B"), day(5)));
+
+		cache.close();
+	}
+
+	public void testManyVersions() throws Exception
+	{
+		DimensionVersionCache cache = new DimensionVersionCache(keyRowMeta, valueRowMeta);
+
+		// Add the versions of the keys interleaved, that moves the versions around in the arrays
+		//
+		int nrKeys = 2000;
+		int nrVersions = 12;
+		long tk = 1;
+		for (int v=0;v<nrVersions;v++)
+		{
+			for (int k=0;k<nrKeys;k++)
+			{
+				if (v<(k%nrVersions)+1)
+				{
+					cache.put(key("key-"+k), version(tk++, v+1, "city-"+k+"-"+v, v*10, (v+1)*10));
+				}
+			}
+		}
+		assertEquals(nrKeys, cache.getNrKeys());
+		assertEquals(tk-1, cache.getNrVersions());
+
+		for (int k=0;k<nrKeys;k++)
+		{
+			int keyVersions = (k%nrVersions)+1;
+			for (int v=0;v<nrVersions;v++)
+			{
+				Object[] row = cache.lookup(key("key-"+k), day(v*10+5));
+				if (v<keyVersions)
+				{
+					assertNotNull(row);
+					assertEquals("city-"+k+"-"+v, row[2]);
+					assertEquals(Long.valueOf(v+1), row[1]);
+				}
+				else
+				{
+					assertNull(row);
+				}
+			}
+		}
+
+		cache.close();
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.memgroupby;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.RowProducer;
+import org.pentaho.di.trans.RowStepCollector;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.injector.InjectorMeta;
+
+/**
+ * Aggregates rows with the Memory Group By step, in memory and with a memory budget that makes it write partitions to disk,
+ * in one copy and in copies that merge their groups.
+ *
+ * @author matt
+ */
+public class MemoryGroupByTest extends TestCase
+{
+	private static final int NR_GROUPS = 50000;
+	private static final int NR_ROWS_PER_GROUP = 4;
+
+	private MemoryGroupByMeta createMeta()
+	{
+		MemoryGroupByMeta meta = new MemoryGroupByMeta();
+		meta.allocate(1, 11);
+		meta.setGroupField(new String[] { "key" });
+		meta.setSubjectField(new String[] { "value", "value", "value", "value", "value", "value", "value", "value", "modulo", "value", "value" });
+		meta.setAggregateField(new String[] { "sum", "count", "min", "max", "first", "last", "average", "concat", "distinct", "distinct_approx", "median_approx" });
+		meta.setAggregateType(new int[] { 
+				MemoryGroupByMeta.TYPE_GROUP_SUM, MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL, MemoryGroupByMeta.TYPE_GROUP_MIN, 
+				MemoryGroupByMeta.TYPE_GROUP_MAX, MemoryGroupByMeta.TYPE_GROUP_FIRST, MemoryGroupByMeta.TYPE_GROUP_LAST, 
+				MemoryGroupByMeta.TYPE_GROUP_AVERAGE, MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA, MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT, 
+				MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX, MemoryGroupByMeta.TYPE_GROUP_MEDIAN_APPROX, 
+			});
+		meta.setValueField(new String[11]);
+		return meta;
+	}
+
+	/**
+	 * Runs an injector, the Memory Group By step and a dummy step.
+	 * 
+	 * @return the rows written by the dummy step
+	 */
+	private List<RowMetaAndData> groupRows(MemoryGroupByMeta meta, String memoryBudget, int copies) throws Exception
+	{
+		KettleEnvironment.init();
+
+		TransMeta transMeta = new TransMeta();
+		transMeta.setName("memorygroupbytest");
+		transMeta.setVariable(Const.KETTLE_TRANS_MEMORY_BUDGET, memoryBudget);
+
+		PluginRegistry registry = PluginRegistry.getInstance();
+
+		InjectorMeta im = new InjectorMeta();
+		StepMeta injectorStep = new StepMeta(registry.getPluginId(StepPluginType.class, im), "injector step", (StepMetaInterface)im);
+		transMeta.addStep(injectorStep);
+
+		StepMeta groupByStep = new StepMeta(registry.getPluginId(StepPluginType.class, meta), "group by step", (StepMetaInterface)meta);
+		groupByStep.setCopies(copies);
+		transMeta.addStep(groupByStep);
+		transMeta.addTransHop(new TransHopMeta(injectorStep, groupByStep));
+
+		DummyTransMeta dm = new DummyTransMeta();
+		StepMeta dummyStep = new StepMeta(registry.getPluginId(StepPluginType.class, dm), "dummy step", (StepMetaInterface)dm);
+		transMeta.addStep(dummyStep);
+		transMeta.addTransHop(new TransHopMeta(groupByStep, dummyStep));
+
+		Trans trans = new Trans(transMeta);
+		trans.prepareExecution(null);
+
+		StepInterface si = trans.getStepInterface("dummy step", 0);
+		RowStepCollector dummyRc = new RowStepCollector();
+		si.addRowListener(dummyRc);
+
+		RowProducer rp = trans.addRowProducer("injector step", 0);
+		trans.startThreads();
+
+		RowMetaInterface rowMeta = new RowMeta();
+		rowMeta.addValueMeta(new ValueMeta("key", ValueMetaInterface.TYPE_STRING));
+		rowMeta.addValueMeta(new ValueMeta("value", ValueMetaInterface.TYPE_INTEGER));
+		rowMeta.addValueMeta(new ValueMeta("modulo", ValueMetaInterface.TYPE_INTEGER));
+
+		// The rows of a group are spread over the whole input
+		//
+		for (long i=0;i<NR_GROUPS*NR_ROWS_PER_GROUP;i++)
+		{
+			rp.putRow(rowMeta, new Object[] { "key-"+(i%NR_GROUPS), new Long(i), new Long(i%3), });
+		}
+		rp.finished();
+
+		trans.waitUntilFinished();
+		assertEquals(0, trans.getErrors());
+
+		return dummyRc.getRowsWritten();
+	}
+
+	private void checkGroups(List<RowMetaAndData> rows) throws Exception
+	{
+		checkGroups(rows, true);
+	}
+
+	private void checkGroups(List<RowMetaAndData> rows, boolean checkOrder) throws Exception
+	{
+		assertEquals(NR_GROUPS, rows.size());
+
+		boolean[] seen = new boolean[NR_GROUPS];
+		for (RowMetaAndData row : rows)
+		{
+			String key = row.getString("key", null);
+			int k = Integer.parseInt(key.substring(4));
+			assertFalse("group "+key+" found twice", seen[k]);
+			seen[k] = true;
+
+			long first = k;
+			long last = k + (NR_ROWS_PER_GROUP-1)*(long)NR_GROUPS;
+			StringBuffer concat = new StringBuffer();
+			double sum = 0;
+			for (long v=first;v<=last;v+=NR_GROUPS)
+			{
+				if (concat.length()>0) concat.append(", ");
+				concat.append(v);
+				sum+=v;
+			}
+
+			assertEquals(key, sum, row.getNumber("sum", -1), 0.001);
+			assertEquals(key, NR_ROWS_PER_GROUP, row.getInteger("count", -1));
+			assertEquals(key, first, row.getInteger("min", -1));
+			assertEquals(key, last, row.getInteger("max", -1));
+			assertEquals(key, sum/NR_ROWS_PER_GROUP, row.getNumber("average", -1), 0.001);
+			assertEquals(key, 3, row.getInteger("distinct", -1));
+			assertEquals(key, NR_ROWS_PER_GROUP, row.getInteger("distinct_approx", -1));
+			assertEquals(key, sum/NR_ROWS_PER_GROUP, row.getNumber("median_approx", -1), 0.001);
+			if (checkOrder)
+			{
+				assertEquals(key, first, row.getInteger("first", -1));
+				assertEquals(key, last, row.getInteger("last", -1));
+				assertEquals(key, concat.toString(), row.getString("concat", null));
+			}
+		}
+	}
+
+	public void testGroupInMemory() throws Exception
+	{
+		checkGroups(groupRows(createMeta(), "", 1));
+	}
+
+	/**
+	 * With a budget of 1MB the partitions are written to disk, and the partitions of the partitions.
+	 */
+	public void testGroupWithMemoryBudget() throws Exception
+	{
+		checkGroups(groupRows(createMeta(), "1", 1));
+	}
+
+	/**
+	 * The rows are distributed over the copies, every group needs to come out once.
+	 * The first and last values depend on the copy a row ends up in, so they aren't checked.
+	 */
+	public void testMergeCopies() throws Exception
+	{
+		MemoryGroupByMeta meta = createMeta();
+		meta.setMergingCopies(true);
+		checkGroups(groupRows(meta, "", 4), false);
+	}
+
+	public void testMergeCopiesWithMemoryBudget() throws Exception
+	{
+		MemoryGroupByMeta meta = createMeta();
+		meta.setMergingCopies(true);
+		checkGroups(groupRows(meta, "1", 3), false);
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.pgbulkloader;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Formats rows in the CSV format of the COPY command, no database is needed.
+ *
+ * @author matt
+ */
+public class PGCopyBufferTest extends TestCase
+{
+	private RowMetaInterface createRowMeta()
+	{
+		RowMetaInterface rowMeta = new RowMeta();
+		rowMeta.addValueMeta(new ValueMeta("id", ValueMetaInterface.TYPE_INTEGER));
+		rowMeta.addValueMeta(new ValueMeta("name", ValueMetaInterface.TYPE_STRING));
+		rowMeta.addValueMeta(new ValueMeta("amount", ValueMetaInterface.TYPE_BIGNUMBER));
+		rowMeta.addValueMeta(new ValueMeta("flag", ValueMetaInterface.TYPE_BOOLEAN));
+		rowMeta.addValueMeta(new ValueMeta("day", ValueMetaInterface.TYPE_DATE));
+		rowMeta.addValueMeta(new ValueMeta("data", ValueMetaInterface.TYPE_BINARY));
+		return rowMeta;
+	}
+
+	private PGBulkLoaderData createData(int[] keynrs)
+	{
+		PGBulkLoaderData data = new PGBulkLoaderData();
+		data.keynrs = keynrs;
+		data.dateFormatChoices = new int[keynrs.length];
+		for (int i=0;i<keynrs.length;i++)
+		{
+			data.dateFormatChoices[i] = PGBulkLoaderMeta.NR_DATE_MASK_DATE;
+		}
+		data.separator = ";".getBytes();
+		data.quote = "\"".getBytes();
+		return data;
+	}
+
+	private String toString(PGCopyBuffer buffer) throws Exception
+	{
+		return new String(buffer.getBuffer(), 0, buffer.getLength(), "UTF-8");
+	}
+
+	public void testAddRow() throws Exception
+	{
+		PGCopyBuffer buffer = new PGCopyBuffer(createRowMeta(), createData(new int[] { 0, 1, 2, 3, 4, 5, }), 0);
+
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(2010, Calendar.MARCH, 1);
+
+		buffer.addRow(new Object[] { Long.valueOf(1L), "say \"h\u00e9\"", new BigDecimal("12.50"), Boolean.TRUE, calendar.getTime(), new byte[] { 0x01, (byte)0xAB, }, });
+		buffer.addRow(new Object[] { Long.valueOf(2L), "", null, Boolean.FALSE, null, null, }); // an empty string is null
+
+		assertEquals(2, buffer.getRowCount());
+		assertEquals("1;\"say \"\"h\u00e9\"\"\";12.50;t;2010/03/01;\\x01ab\n2;;;f;;\n", toString(buffer));
+	}
+
+	public void testFieldOrderAndReset() throws Exception
+	{
+		// Only the mapped fields are written, in the order of the mapping
+		//
+		PGCopyBuffer buffer = new PGCopyBuffer(createRowMeta(), createData(new int[] { 1, 0, }), 0);
+		buffer.addRow(new Object[] { Long.valueOf(7L), "seven", null, null, null, null, });
+		assertEquals("\"seven\";7\n", toString(buffer));
+
+		buffer.reset();
+		assertEquals(0, buffer.getLength());
+		assertEquals(0, buffer.getRowCount());
+
+		// The buffer grows beyond its initial size
+		//
+		StringBuffer expected = new StringBuffer();
+		for (int i=0;i<1000;i++)
+		{
+			buffer.addRow(new Object[] { Long.valueOf(i), "row", null, null, null, null, });
+			expected.append("\"row\";").append(i).append('\n');
+		}
+		assertEquals(1000, buffer.getRowCount());
+		assertEquals(expected.toString(), toString(buffer));
+	}
+
+	public void testLazyConversion() throws Exception
+	{
+		RowMetaInterface rowMeta = new RowMeta();
+		for (String name : new String[] { "id", "day", "read", })
+		{
+			ValueMetaInterface valueMeta = new ValueMeta(name, name.equals("id") ? ValueMetaInterface.TYPE_INTEGER : ValueMetaInterface.TYPE_DATE);
+			if (valueMeta.isDate())
+			{
+				valueMeta.setConversionMask("dd-MM-yyyy");
+			}
+			ValueMetaInterface storageMeta = valueMeta.clone();
+			storageMeta.setType(ValueMetaInterface.TYPE_STRING);
+			valueMeta.setStorageType(ValueMetaInterface.STORAGE_TYPE_BINARY_STRING);
+			valueMeta.setStorageMetadata(storageMeta);
+			rowMeta.addValueMeta(valueMeta);
+		}
+
+		// The dates are formatted with the date mask, only the date without a mask is passed along as it was read
+		//
+		PGBulkLoaderData data = createData(new int[] { 0, 1, 2, });
+		data.dateFormatChoices[2] = PGBulkLoaderMeta.NR_DATE_MASK_PASS_THROUGH;
+		PGCopyBuffer buffer = new PGCopyBuffer(rowMeta, data, 0);
+		buffer.addRow(new Object[] { "12".getBytes(), "01-03-2010".getBytes(), "02-03-2010".getBytes(), });
+		assertEquals("12;2010/03/01;02-03-2010\n", toString(buffer));
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.sort;
+
+import java.util.Date;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Test class for the sort keys: they need to sort exactly like the rows do.
+ *
+ * @author matt
+ */
+public class SortKeyEncoderTest extends TestCase
+{
+	private static final String[] STRINGS = new String[] { null, "", "a", "A", "ab", "aB", "b", "a\u0000", "a\u0000b", "\u00e9", "\u0100", "zzz" };
+	private static final double[] NUMBERS = new double[] { -1E10, -1.5, -0.0, 0.0, 1E-10, 1.5, 1E10, Double.NaN, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY };
+
+	private RowMetaInterface createRowMeta(boolean descending, boolean caseInsensitive)
+	{
+		RowMetaInterface rowMeta = new RowMeta();
+		rowMeta.addValueMeta(new ValueMeta("string", ValueMetaInterface.TYPE_STRING));
+		rowMeta.addValueMeta(new ValueMeta("integer", ValueMetaInterface.TYPE_INTEGER));
+		rowMeta.addValueMeta(new ValueMeta("number", ValueMetaInterface.TYPE_NUMBER));
+		rowMeta.addValueMeta(new ValueMeta("date", ValueMetaInterface.TYPE_DATE));
+		rowMeta.addValueMeta(new ValueMeta("boolean", ValueMetaInterface.TYPE_BOOLEAN));
+		for (ValueMetaInterface valueMeta : rowMeta.getValueMetaList())
+		{
+			valueMeta.setSortedDescending(descending);
+			valueMeta.setCaseInsensitive(caseInsensitive);
+		}
+		return rowMeta;
+	}
+
+	private Object[] createRow(Random random)
+	{
+		return new Object[] {
+				STRINGS[random.nextInt(STRINGS.length)],
+				random.nextInt(10)==0 ? null : Long.valueOf(random.nextInt(7)-3),
+				random.nextInt(10)==0 ? null : Double.valueOf(NUMBERS[random.nextInt(NUMBERS.length)]),
+				random.nextInt(10)==0 ? null : new Date(random.nextInt(5)*86400000L-172800000L),
+				random.nextInt(10)==0 ? null : Boolean.valueOf(random.nextBoolean())
+			};
+	}
+
+	private void checkOrder(boolean descending, boolean caseInsensitive) throws Exception
+	{
+		RowMetaInterface rowMeta = createRowMeta(descending, caseInsensitive);
+		Random random = new Random(123);
+
+		for (int[] fieldnrs : new int[][] { { 0 }, { 1 }, { 2 }, { 3 }, { 4 }, { 0, 1, 2, 3, 4 }, { 4, 2, 0 } })
+		{
+			assertTrue(SortKeyEncoder.isEncodable(rowMeta, fieldnrs));
+			SortKeyEncoder encoder = new SortKeyEncoder(rowMeta, fieldnrs);
+
+			for (int i=0;i<5000;i++)
+			{
+				Object[] one = createRow(random);
+				Object[] two = createRow(random);
+
+				int expected = rowMeta.compare(one, two, fieldnrs);
+				int actual = SortKeyEncoder.compare(encoder.encode(one), encoder.encode(two));
+				assertEquals(rowMeta.getString(one)+" <> "+rowMeta.getString(two), Integer.signum(expected), Integer.signum(actual));
+			}
+		}
+	}
+
+	public void testAscending() throws Exception
+	{
+		checkOrder(false, false);
+	}
+
+	public void testDescending() throws Exception
+	{
+		checkOrder(true, false);
+	}
+
+	public void testCaseInsensitive() throws Exception
+	{
+		checkOrder(false, true);
+		checkOrder(true, true);
+	}
+
+	public void testNotEncodable() throws Exception
+	{
+		RowMetaInterface rowMeta = new RowMeta();
+		rowMeta.addValueMeta(new ValueMeta("string", ValueMetaInterface.TYPE_STRING));
+		rowMeta.addValueMeta(new ValueMeta("bignumber", ValueMetaInterface.TYPE_BIGNUMBER));
+		assertTrue(SortKeyEncoder.isEncodable(rowMeta, new int[] { 0 }));
+		assertFalse(SortKeyEncoder.isEncodable(rowMeta, new int[] { 0, 1 }));
+	}
+}
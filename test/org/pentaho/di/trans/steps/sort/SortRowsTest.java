@@ -21,6 +21,7 @@ import java.util.Random;
 
 import junit.framework.TestCase;
 
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.KettleEnvironment;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.plugins.PluginRegistry;
@@ -51,6 +52,9 @@ import org.pentaho.di.trans.steps.injector.InjectorMeta;
 public class SortRowsTest extends TestCase
 {
 	public static int MAX_COUNT = 1000;
+	
+	/** The data of the sort step after the last transformation ran */
+	private SortRowsData sortRowsData;
 	 
 	public RowMetaInterface createRowMetaInterface()
 	{
@@ -70,6 +74,11 @@ public class SortRowsTest extends TestCase
 	}
 	
 	public List<RowMetaAndData> createIntegerData()
+	{
+		return createIntegerData(MAX_COUNT);
+	}
+	
+	public List<RowMetaAndData> createIntegerData(int count)
 	{
 		// Create 
 		List<RowMetaAndData> list = new ArrayList<RowMetaAndData>();
@@ -78,7 +87,7 @@ public class SortRowsTest extends TestCase
 		RowMetaInterface rm = createRowMetaInterface();		
 		
 		Random rand = new Random();		
-		for ( int idx = 0; idx < MAX_COUNT; idx++ )
+		for ( int idx = 0; idx < count; idx++ )
 		{
 			int key1 = Math.abs(rand.nextInt() % 1000000);
 			int key2 = Math.abs(rand.nextInt() % 1000000);
@@ -102,6 +111,14 @@ public class SortRowsTest extends TestCase
 	 *  Check the list, the list has to be sorted. 
 	 */
 	public void checkRows(List<RowMetaAndData> rows, boolean ascending) throws Exception
+	{
+		checkRows(rows, ascending, MAX_COUNT);
+	}
+	
+	/**
+	 *  Check the list, the list has to be sorted and contain the expected number of rows. 
+	 */
+	public void checkRows(List<RowMetaAndData> rows, boolean ascending, int count) throws Exception
 	{
 		String prev_key1 = null, prev_key2 = null;
 		int idx = 0;
@@ -149,7 +166,7 @@ public class SortRowsTest extends TestCase
 
 		   idx++;
   	    }
-  	    if (idx != MAX_COUNT)
+  	    if (idx != count)
 	    {
 	       fail("less rows returned than expected: " + idx);
 	    }
@@ -329,4 +346,164 @@ public class SortRowsTest extends TestCase
         List<RowMetaAndData> resultRows = dummyRc.getRowsWritten();
         checkRows(resultRows, false);
     }        
+
+	/**
+	 * Sorts the rows with a sort rows step between an injector and a dummy step.
+	 * 
+	 * @return the rows written by the dummy step
+	 */
+	private List<RowMetaAndData> sortRows(SortRowsMeta srm, List<RowMetaAndData> inputList, String[] variables) throws Exception
+	{
+		return sortRows(srm, inputList, variables, 0L);
+	}
+
+	/**
+	 * Sorts the rows with a sort rows step between an injector and a dummy step.
+	 * 
+	 * @param nonSpillableBytes the part of the memory budget that is held by a step that can't spill
+	 * @return the rows written by the dummy step
+	 */
+	private List<RowMetaAndData> sortRows(SortRowsMeta srm, List<RowMetaAndData> inputList, String[] variables, long nonSpillableBytes) throws Exception
+	{
+        KettleEnvironment.init();
+
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("sortrowstest");
+        for (int i=0;i<variables.length;i+=2)
+        {
+        	transMeta.setVariable(variables[i], variables[i+1]);
+        }
+    	
+        PluginRegistry registry = PluginRegistry.getInstance();            
+
+        InjectorMeta im = new InjectorMeta();
+        StepMeta injectorStep = new StepMeta(registry.getPluginId(StepPluginType.class, im), "injector step", (StepMetaInterface)im);
+        transMeta.addStep(injectorStep);
+
+        StepMeta sortRowsStep = new StepMeta(registry.getPluginId(StepPluginType.class, srm), "sort rows step", (StepMetaInterface)srm);
+        transMeta.addStep(sortRowsStep);            
+        transMeta.addTransHop(new TransHopMeta(injectorStep, sortRowsStep));        
+        
+        DummyTransMeta dm = new DummyTransMeta();
+        StepMeta dummyStep = new StepMeta(registry.getPluginId(StepPluginType.class, dm), "dummy step", (StepMetaInterface)dm);
+        transMeta.addStep(dummyStep);                              
+        transMeta.addTransHop(new TransHopMeta(sortRowsStep, dummyStep));        
+        
+        Trans trans = new Trans(transMeta);
+        trans.prepareExecution(null);
+        if (nonSpillableBytes>0)
+        {
+        	trans.getMemoryManager().register("lookup", false).allocate(nonSpillableBytes);
+        }
+                
+        StepInterface si = trans.getStepInterface("dummy step", 0);
+        RowStepCollector dummyRc = new RowStepCollector();
+        si.addRowListener(dummyRc);
+        
+        RowProducer rp = trans.addRowProducer("injector step", 0);
+        trans.startThreads();
+        
+        for ( RowMetaAndData rm : inputList )
+        {
+        	rp.putRow(rm.getRowMeta(), rm.getData());
+        }   
+        rp.finished();
+ 
+        trans.waitUntilFinished();   
+        assertEquals(0, trans.getErrors());
+        sortRowsData = (SortRowsData)trans.getStepDataInterface("sort rows step", 0);
+        
+        return dummyRc.getRowsWritten();
+	}
+	
+	/**
+	 * Test case for sorting step .. compressed temporary files, more files than can be merged at once.
+	 */
+    public void testSortRowsMergeInGroups() throws Exception
+    {
+        SortRowsMeta srm = new SortRowsMeta();
+        srm.setSortSize(Integer.toString(MAX_COUNT/10));
+        srm.setFieldName(new String[] { "KEY1", "KEY2" });
+        srm.setAscending(new boolean[] { true, false });
+        srm.setCaseSensitive(new boolean[] { true, true });
+        srm.setPrefix("SortRowsTest");
+        srm.setDirectory(".");
+        srm.setCompressFiles(true);
+
+        List<RowMetaAndData> resultRows = sortRows(srm, createIntegerData(), new String[] { Const.KETTLE_SORT_ROWS_MAX_OPEN_FILES, "3" });
+        assertEquals(MAX_COUNT, resultRows.size());
+        
+        String prev_key1 = null, prev_key2 = null;
+        for ( RowMetaAndData rm : resultRows ) {
+		    String key1 = rm.getString("KEY1", "");
+		    String key2 = rm.getString("KEY2", "");
+		    if (prev_key1!=null) 
+		    {
+		    	assertTrue("error in sort", prev_key1.compareTo(key1)<0 || (prev_key1.compareTo(key1)==0 && prev_key2.compareTo(key2)>=0));
+		    }
+		    prev_key1 = key1;
+		    prev_key2 = key2;
+        }
+    }
+    
+	/**
+	 * Test case for sorting step .. a buffer large enough to be sorted in parallel, in memory.
+	 */
+    public void testSortRowsInParallel() throws Exception
+    {
+        int count = 100000;
+        
+        SortRowsMeta srm = new SortRowsMeta();
+        srm.setSortSize(Integer.toString(count));
+        srm.setFieldName(new String[] { "KEY1", "KEY2" });
+        srm.setAscending(new boolean[] { true, true });
+        srm.setCaseSensitive(new boolean[] { true, true });
+        srm.setPrefix("SortRowsTest");
+        srm.setDirectory(".");
+
+        List<RowMetaAndData> resultRows = sortRows(srm, createIntegerData(count), new String[] { Const.KETTLE_SORT_ROWS_THREADS, "4" });
+        checkRows(resultRows, true, count);
+    }
+    
+	/**
+	 * Test case for sorting step .. the rows are written to disk when the memory budget of the transformation is used up.
+	 */
+    public void testSortRowsWithMemoryBudget() throws Exception
+    {
+        int count = 100000;
+        
+        SortRowsMeta srm = new SortRowsMeta();
+        srm.setSortSize(null);
+        srm.setFreeMemoryLimit(null);
+        srm.setFieldName(new String[] { "KEY1", "KEY2" });
+        srm.setAscending(new boolean[] { true, true });
+        srm.setCaseSensitive(new boolean[] { true, true });
+        srm.setPrefix("SortRowsTest");
+        srm.setDirectory(".");
+
+        List<RowMetaAndData> resultRows = sortRows(srm, createIntegerData(count), new String[] { Const.KETTLE_TRANS_MEMORY_BUDGET, "2" });
+        checkRows(resultRows, true, count);
+    }
+    
+	/**
+	 * Test case for sorting step .. the memory budget is held by a step that can't spill: 
+	 * the rows are still written to disk in files of a reasonable size, not a file per row.
+	 */
+    public void testSortRowsWithMemoryBudgetHeldByOthers() throws Exception
+    {
+        int count = 20000;
+        
+        SortRowsMeta srm = new SortRowsMeta();
+        srm.setSortSize(null);
+        srm.setFreeMemoryLimit(null);
+        srm.setFieldName(new String[] { "KEY1", "KEY2" });
+        srm.setAscending(new boolean[] { true, true });
+        srm.setCaseSensitive(new boolean[] { true, true });
+        srm.setPrefix("SortRowsTest");
+        srm.setDirectory(".");
+
+        List<RowMetaAndData> resultRows = sortRows(srm, createIntegerData(count), new String[] { Const.KETTLE_TRANS_MEMORY_BUDGET, "2" }, 2*1024*1024);
+        checkRows(resultRows, true, count);
+        assertTrue("too many temp files: "+sortRowsData.nrTempFiles, sortRowsData.nrTempFiles<=count/5000);
+    }
 }
\ No newline at end of file
@@ -15,6 +15,7 @@
 
 package org.pentaho.di.trans.steps.tableinput;
 
+import java.sql.ResultSet;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -26,6 +27,8 @@ import org.pentaho.di.core.KettleEnvironment;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.ResultSetReader;
+import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.plugins.PluginRegistry;
@@ -289,9 +292,24 @@ public class TableInputTest extends TestCase
 	 * by values read from an input hop.
 	 */
     public void testTableInputWithParam() throws Exception
+    {
+        runTableInputWithParam(false, null);
+    }
+
+	/**
+	 * The same query, with the rows read in batches of 2 by a separate thread.
+	 * Some codes have a multiple of 2 rows, others don't.
+	 */
+    public void testTableInputPrefetch() throws Exception
+    {
+        runTableInputWithParam(true, "2");
+    }
+
+    private void runTableInputWithParam(boolean prefetching, String fetchSize) throws Exception
     {
         KettleEnvironment.init();
 
+        Database database = null;
         try
         {
             //
@@ -310,7 +328,7 @@ public class TableInputTest extends TestCase
             DatabaseMeta dbInfo = transMeta.findDatabase("db");
 
             // Execute our setup SQLs in the database.
-            Database database = new Database(transMeta, dbInfo);
+            database = new Database(transMeta, dbInfo);
             database.connect();
             createTables(database);
             createData(database);
@@ -337,6 +355,8 @@ public class TableInputTest extends TestCase
             tii.setDatabaseMeta(transMeta.findDatabase("db"));
             tii.setLookupFromStep(injectorStep);
             tii.setExecuteEachInputRow(true);
+            tii.setPrefetching(prefetching);
+            tii.setFetchSize(fetchSize);
             String selectSQL = "SELECT "+Const.CR;
             selectSQL+="ID, CODE ";
             selectSQL+="FROM " + source_table + " WHERE CODE = ? ORDER BY ID, CODE;";
@@ -376,6 +396,43 @@ public class TableInputTest extends TestCase
             List<RowMetaAndData> goldRows = createResultDataRows();
             checkRows(goldRows, resultRows);
         }    	
-        finally {}    
+        finally
+        {
+            if (database!=null)
+            {
+                database.execStatement("DROP TABLE " + source_table);
+                database.disconnect();
+            }
+        }
     }    
+
+    /**
+     * A problem that isn't a database problem is still passed on to the step by the prefetcher.
+     */
+    public void testTableInputPrefetchUnexpectedError() throws Exception
+    {
+        KettleEnvironment.init();
+
+        ResultSetReader reader = new ResultSetReader(new DatabaseMeta(databasesXML[0]), new RowMeta()) {
+            public List<Object[]> getRows(ResultSet rs, int maxRows) throws KettleDatabaseException
+            {
+                throw new IllegalStateException("not a database problem");
+            }
+        };
+        TableInputPrefetcher prefetcher = new TableInputPrefetcher(reader, null, 2);
+        prefetcher.start("prefetcher test", false);
+        try
+        {
+            prefetcher.getRow();
+            fail("the problem of the prefetcher was not passed on");
+        }
+        catch(KettleDatabaseException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        finally
+        {
+            prefetcher.stop();
+        }
+    }
 }
\ No newline at end of file
@@ -18,6 +18,8 @@ package org.pentaho.di.trans.steps.tableoutput;
 import java.sql.ResultSet;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
@@ -67,12 +69,27 @@ public class TableOutputTest extends TestCase
             "<username>sa</username>" +
             "<password></password>" +
           "</connection>",
+        // Without MVCC, H2 locks the whole table for the other writer connections until the commit
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<connection>" +
+            "<name>db_mvcc</name>" +
+            "<server>127.0.0.1</server>" +
+            "<type>H2</type>" +
+            "<access>Native</access>" +
+            "<database>mem:db_mvcc;MVCC=TRUE</database>" +
+            "<port></port>" +
+            "<username>sa</username>" +
+            "<password></password>" +
+          "</connection>",
     };
 
     private static String target_table  = "table";
     private static String target_table1 = "table1";
     private static String target_table2 = "table2";
     private static String target_table3 = "table3";
+    private static String target_table4 = "table4";
+    private static String target_table5 = "table5";
+    private static String target_table6 = "table6";
 
 	/**
 	 * Create table for the normal case.
@@ -264,9 +281,14 @@ public class TableOutputTest extends TestCase
 	 * @param db database to use.
 	 */
 	public void checkResultsNormal(Database db) throws Exception
+	{
+		checkResultsNormal(db, target_table);
+	}
+	
+	public void checkResultsNormal(Database db, String tableName) throws Exception
 	{
 		String query = "SELECT ID, CODE FROM " +
-		               target_table + " ORDER BY ID";
+		               tableName + " ORDER BY ID";
 
 		String correctResults[] =  {
 		    "100|1000",
@@ -463,6 +485,238 @@ public class TableOutputTest extends TestCase
         finally {}    
     }
     
+	/**
+	 * Test case for table output with the batches committed in the background.
+	 */
+    public void testTableOutputAsyncBatchCommit() throws Exception
+    {
+        KettleEnvironment.init();
+
+        try
+        {
+            //
+            // Create a new transformation...
+            //
+            TransMeta transMeta = new TransMeta();
+            transMeta.setName("table output async batch commit test");
+
+            // Add the database connections
+            for (int i=0;i<databasesXML.length;i++)
+            {
+                DatabaseMeta databaseMeta = new DatabaseMeta(databasesXML[i]);
+                transMeta.addDatabase(databaseMeta);
+            }
+
+            DatabaseMeta dbInfo = transMeta.findDatabase("db");
+
+            // Execute our setup SQLs in the database.
+            Database database = new Database(transMeta, dbInfo);
+            database.connect();
+            createTable(database, target_table4, createSourceRowMetaInterface1());
+
+            PluginRegistry registry = PluginRegistry.getInstance();            
+
+            // 
+            // create an injector step...
+            //
+            String injectorStepname = "injector step";
+            InjectorMeta im = new InjectorMeta();
+            
+            // Set the information of the injector.                   
+            String injectorPid = registry.getPluginId(StepPluginType.class, im);
+            StepMeta injectorStep = new StepMeta(injectorPid, injectorStepname, (StepMetaInterface)im);
+            transMeta.addStep(injectorStep);            
+            
+            // 
+            // create the source step...
+            //
+            String outputname = "output to [" + target_table4 + "]";
+            TableOutputMeta tom = new TableOutputMeta();
+            tom.setDatabaseMeta(transMeta.findDatabase("db"));
+            tom.setTablename(target_table4);
+            tom.setUseBatchUpdate(true);
+            tom.setAsyncBatchCommit(true);
+            tom.setCommitSize(3);
+
+            String fromid = registry.getPluginId(StepPluginType.class, tom);
+            StepMeta fromstep = new StepMeta(fromid, outputname, (StepMetaInterface)tom);
+            fromstep.setDescription("write data to table [" + target_table4 + "] on database [" + dbInfo + "]");
+            transMeta.addStep(fromstep);
+            
+            TransHopMeta hi = new TransHopMeta(injectorStep, fromstep);
+            transMeta.addTransHop(hi);
+
+            // Now execute the transformation...
+            Trans trans = new Trans(transMeta);
+
+            trans.prepareExecution(null);
+                    
+            StepInterface si = trans.getStepInterface(outputname, 0);
+            RowStepCollector rc = new RowStepCollector();
+            si.addRowListener(rc);
+            
+            RowProducer rp = trans.addRowProducer(injectorStepname, 0);
+            trans.startThreads();
+            
+            // add rows
+            List<RowMetaAndData> inputList = createNormalDataRows();
+            for (RowMetaAndData rm : inputList )
+            {
+            	rp.putRow(rm.getRowMeta(), rm.getData());
+            }   
+            rp.finished();
+
+            trans.waitUntilFinished();   
+
+            List<RowMetaAndData> resultRows = rc.getRowsWritten();
+            List<RowMetaAndData> goldRows = createNormalDataRows();
+            checkRows(goldRows, resultRows);
+            checkResultsNormal(database, target_table4);
+        }    	
+        finally {}    
+    }
+    
+    
+    public void testTableOutputWriterConnections() throws Exception
+    {
+        KettleEnvironment.init();
+
+        try
+        {
+            //
+            // Create a new transformation...
+            //
+            TransMeta transMeta = new TransMeta();
+            transMeta.setName("table output writer connections test");
+
+            // Add the database connections
+            for (int i=0;i<databasesXML.length;i++)
+            {
+                DatabaseMeta databaseMeta = new DatabaseMeta(databasesXML[i]);
+                transMeta.addDatabase(databaseMeta);
+            }
+
+            DatabaseMeta dbInfo = transMeta.findDatabase("db_mvcc");
+
+            // Execute our setup SQLs in the database.
+            Database database = new Database(transMeta, dbInfo);
+            database.connect();
+            createTable(database, target_table5, createSourceRowMetaInterface1());
+
+            PluginRegistry registry = PluginRegistry.getInstance();            
+
+            // 
+            // create an injector step...
+            //
+            String injectorStepname = "injector step";
+            InjectorMeta im = new InjectorMeta();
+            
+            // Set the information of the injector.                   
+            String injectorPid = registry.getPluginId(StepPluginType.class, im);
+            StepMeta injectorStep = new StepMeta(injectorPid, injectorStepname, (StepMetaInterface)im);
+            transMeta.addStep(injectorStep);            
+            
+            // 
+            // create the source step...
+            //
+            String outputname = "output to [" + target_table5 + "]";
+            TableOutputMeta tom = new TableOutputMeta();
+            tom.setDatabaseMeta(transMeta.findDatabase("db_mvcc"));
+            tom.setTablename(target_table5);
+            tom.setUseBatchUpdate(true);
+            tom.setCommitSize(2);
+            tom.setNrWriterConnections(2);
+            tom.setRoutingFields(new String[] { "ID", });
+
+            String fromid = registry.getPluginId(StepPluginType.class, tom);
+            StepMeta fromstep = new StepMeta(fromid, outputname, (StepMetaInterface)tom);
+            fromstep.setDescription("write data to table [" + target_table5 + "] on database [" + dbInfo + "]");
+            transMeta.addStep(fromstep);
+            
+            TransHopMeta hi = new TransHopMeta(injectorStep, fromstep);
+            transMeta.addTransHop(hi);
+
+            // Now execute the transformation...
+            Trans trans = new Trans(transMeta);
+
+            trans.prepareExecution(null);
+                    
+            StepInterface si = trans.getStepInterface(outputname, 0);
+            RowStepCollector rc = new RowStepCollector();
+            si.addRowListener(rc);
+            
+            RowProducer rp = trans.addRowProducer(injectorStepname, 0);
+            trans.startThreads();
+            
+            // add rows
+            List<RowMetaAndData> inputList = createNormalDataRows();
+            for (RowMetaAndData rm : inputList )
+            {
+            	rp.putRow(rm.getRowMeta(), rm.getData());
+            }   
+            rp.finished();
+
+            trans.waitUntilFinished();   
+
+            // The rows of the writers are passed on in the order they are inserted: sort them on ID
+            //
+            List<RowMetaAndData> resultRows = new ArrayList<RowMetaAndData>(rc.getRowsWritten());
+            Collections.sort(resultRows, new Comparator<RowMetaAndData>() {
+				public int compare(RowMetaAndData one, RowMetaAndData two) {
+					return ((Long)one.getData()[0]).compareTo((Long)two.getData()[0]);
+				}
+			});
+            List<RowMetaAndData> goldRows = createNormalDataRows();
+            checkRows(goldRows, resultRows);
+            checkResultsNormal(database, target_table5);
+        }    	
+        finally {}    
+    }
+
+    /**
+     * A row that can't be bound doesn't stop the batch writer without handing back the batch.
+     */
+    public void testTableOutputBatchWriterUnexpectedError() throws Exception
+    {
+        KettleEnvironment.init();
+
+        TransMeta transMeta = new TransMeta();
+        DatabaseMeta dbInfo = new DatabaseMeta(databasesXML[0]);
+        transMeta.addDatabase(dbInfo);
+
+        Database database = new Database(transMeta, dbInfo);
+        database.connect();
+        try
+        {
+            RowMetaInterface rm = createSourceRowMetaInterface1();
+            createTable(database, target_table6, rm);
+
+            TableOutputBatchWriter batchWriter = new TableOutputBatchWriter(database, null, rm, false, false, true);
+            batchWriter.start("batch writer test", false);
+
+            TableOutputBatchWriter.Batch batch = new TableOutputBatchWriter.Batch(target_table6);
+            Object[] row = new Object[] { new Long(100L), }; // too short, not a database problem
+            batch.addRow(row, row);
+            batchWriter.submit(batch);
+
+            TableOutputBatchWriter.Batch next = new TableOutputBatchWriter.Batch(target_table6);
+            row = new Object[] { new Long(100L), new Long(1000L), };
+            next.addRow(row, row);
+            batchWriter.submit(next);
+
+            assertSame(batch, batchWriter.take());
+            assertNotNull(batch.getException());
+            assertSame(next, batchWriter.take());
+            assertNotNull(next.getException());
+            assertNull(batchWriter.take());
+            batchWriter.finish();
+        }
+        finally
+        {
+            database.disconnect();
+        }
+    }
+    
     
 	/**
 	 * Test case for normal table output where the table is included in the instream, but the tablename
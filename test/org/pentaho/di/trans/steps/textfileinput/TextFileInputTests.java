@@ -1,6 +1,9 @@
 package org.pentaho.di.trans.steps.textfileinput;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
@@ -340,4 +343,202 @@ public class TextFileInputTests extends TestCase {
     CSVTokenizer csvt = new CSVTokenizer(line, ",", "\""); //$NON-NLS-1$ //$NON-NLS-2$
     assertEquals(4, csvt.countTokens());
   }
+
+  /**
+   * Cut a file with all kinds of line endings at every possible position: the ranges always contain every line exactly once.
+   */
+  public void testLineRangeInputStream() throws Exception {
+    byte[] content = "a;1\r\nbb;2\ncc;3\rd;4\r\n\r\ne;5\n\nfff;6".getBytes("UTF-8"); //$NON-NLS-1$ //$NON-NLS-2$
+    for (int cut1 = 0; cut1 <= content.length; cut1++) {
+      for (int cut2 = cut1; cut2 <= content.length; cut2++) {
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        readRange(content, 0, cut1, all);
+        readRange(content, cut1, cut2, all);
+        readRange(content, cut2, content.length, all);
+        assertEquals("cut at "+cut1+" and "+cut2, new String(content, "UTF-8"), all.toString("UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+      }
+    }
+  }
+
+  private void readRange(byte[] content, long start, long end, ByteArrayOutputStream out) throws IOException {
+    InputStream in = new LineRangeInputStream(new ByteArrayInputStream(content), start, end);
+    byte[] buffer = new byte[3];
+    int n;
+    while ((n = in.read(buffer, 0, buffer.length)) >= 0) {
+      out.write(buffer, 0, n);
+    }
+    in.close();
+  }
+
+  /**
+   * Every byte of the files is read by exactly one copy, small files are read completely by a single copy.
+   */
+  public void testCalculateFileRanges() throws Exception {
+    long[] sizes = new long[] { 1000L, 10L, 20L, 30L, 0L, 40L };
+    int nrSteps = 3;
+    long[] covered = new long[sizes.length];
+    int[] owners = new int[sizes.length];
+    for (int stepNr = 0; stepNr < nrSteps; stepNr++) {
+      long[][] ranges = TextFileInput.calculateFileRanges(sizes, true, stepNr, nrSteps);
+      for (int i = 0; i < sizes.length; i++) {
+        if (ranges[i] != null) {
+          owners[i]++;
+          covered[i] += ranges[i][0] < 0 ? sizes[i] : ranges[i][1] - ranges[i][0];
+        }
+      }
+    }
+    assertEquals(3, owners[0]);
+    for (int i = 0; i < sizes.length; i++) {
+      if (i > 0) assertEquals(1, owners[i]);
+      assertEquals(sizes[i], covered[i]);
+    }
+
+    // Compressed files are never split
+    //
+    long[][] ranges = TextFileInput.calculateFileRanges(sizes, false, 0, nrSteps);
+    assertEquals(-1L, ranges[0][0]);
+    assertNull(ranges[1]);
+  }
+
+  /**
+   * Read a file with 3 copies of the step: all lines are read once, the header only by the first copy.
+   */
+  public void testTextFileInputParallel() throws Exception {
+    KettleEnvironment.init();
+
+    File tempFile = File.createTempFile("PDI_tmp", ".tmp"); //$NON-NLS-1$ //$NON-NLS-2$
+    tempFile.deleteOnExit();
+    FileWriter fout = new FileWriter(tempFile);
+    fout.write("A;B;C;D;E\n"); //$NON-NLS-1$
+    int nrLines = 1000;
+    for (int i = 1; i <= nrLines; i++) {
+      fout.write(i + ";b" + i + ";c;d;e" + (i % 7 == 0 ? "\r\n" : "\n")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    }
+    fout.close();
+
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName("testTextFileInputParallel"); //$NON-NLS-1$
+    PluginRegistry registry = PluginRegistry.getInstance();
+
+    String testFileInputName = "text file input step"; //$NON-NLS-1$
+    StepMeta textFileInputStep = createTextFileInputStep(testFileInputName, tempFile.getAbsolutePath(), registry);
+    TextFileInputMeta textFileInputMeta = (TextFileInputMeta) textFileInputStep.getStepMetaInterface();
+    textFileInputMeta.setFileFormat("mixed"); //$NON-NLS-1$
+    textFileInputMeta.setRunningInParallel(true);
+    textFileInputStep.setCopies(3);
+
+    List<RowMetaAndData> resultRows = executeTextFileInput(transMeta, textFileInputStep, registry);
+    assertEquals(nrLines, resultRows.size());
+    boolean[] seen = new boolean[nrLines + 1];
+    for (RowMetaAndData row : resultRows) {
+      int a = (int) row.getInteger(0, -1L);
+      assertFalse(seen[a]);
+      seen[a] = true;
+      assertEquals("b" + a, row.getString(1, null)); //$NON-NLS-1$
+    }
+  }
+
+  /**
+   * Read a file with a header of several long lines with many copies of the step: the header is longer than the first range,
+   * the copies whose ranges start in the header skip it.
+   */
+  public void testTextFileInputParallelMultiLineHeader() throws Exception {
+    KettleEnvironment.init();
+
+    File tempFile = File.createTempFile("PDI_tmp", ".tmp"); //$NON-NLS-1$ //$NON-NLS-2$
+    tempFile.deleteOnExit();
+    FileWriter fout = new FileWriter(tempFile);
+    int nrHeaderLines = 4;
+    for (int h = 0; h < nrHeaderLines; h++) {
+      fout.write("Header line " + h + " of a description of the file that is a lot longer than a few data lines\r\n"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+    int nrLines = 200;
+    for (int i = 1; i <= nrLines; i++) {
+      fout.write(i + ";b" + i + ";c;d;e\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+    fout.close();
+
+    InputStream in = new FileInputStream(tempFile);
+    assertEquals(nrHeaderLines * 87L, LineRangeInputStream.getLinesSize(in, nrHeaderLines));
+    in.close();
+
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName("testTextFileInputParallelMultiLineHeader"); //$NON-NLS-1$
+    PluginRegistry registry = PluginRegistry.getInstance();
+
+    StepMeta textFileInputStep = createTextFileInputStep("text file input step", tempFile.getAbsolutePath(), registry); //$NON-NLS-1$
+    TextFileInputMeta textFileInputMeta = (TextFileInputMeta) textFileInputStep.getStepMetaInterface();
+    textFileInputMeta.setFileFormat("mixed"); //$NON-NLS-1$
+    textFileInputMeta.setNrHeaderLines(nrHeaderLines);
+    textFileInputMeta.setRunningInParallel(true);
+    textFileInputStep.setCopies(40);
+
+    List<RowMetaAndData> resultRows = executeTextFileInput(transMeta, textFileInputStep, registry);
+    assertEquals(nrLines, resultRows.size());
+    boolean[] seen = new boolean[nrLines + 1];
+    for (RowMetaAndData row : resultRows) {
+      int a = (int) row.getInteger(0, -1L);
+      assertFalse(seen[a]);
+      seen[a] = true;
+    }
+  }
+
+  /**
+   * With lazy conversion the fields are passed on as binary strings, converting them gives the same values.
+   */
+  public void testTextFileInputLazyConversion() throws Exception {
+    KettleEnvironment.init();
+
+    String fileName = writeInputFile();
+    PluginRegistry registry = PluginRegistry.getInstance();
+
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName("testTextFileInputLazyConversion"); //$NON-NLS-1$
+    StepMeta textFileInputStep = createTextFileInputStep("text file input step", fileName, registry); //$NON-NLS-1$
+    TextFileInputMeta textFileInputMeta = (TextFileInputMeta) textFileInputStep.getStepMetaInterface();
+    textFileInputMeta.setLazyConversionActive(true);
+    textFileInputMeta.setIncludeFilename(false);
+
+    List<RowMetaAndData> resultRows = executeTextFileInput(transMeta, textFileInputStep, registry);
+    assertEquals(3, resultRows.size());
+    for (int i = 0; i < resultRows.size(); i++) {
+      RowMetaAndData row = resultRows.get(i);
+      assertTrue(row.getRowMeta().getValueMeta(0).isStorageBinaryString());
+      assertTrue(row.getRowMeta().getValueMeta(1).isStorageBinaryString());
+      assertEquals(i + 1, row.getInteger(0, -1L));
+      assertEquals("b" + (i + 1), row.getString(1, null)); //$NON-NLS-1$
+    }
+
+    // When the conversion errors are handled by the step, only the Strings stay lazy
+    //
+    transMeta = new TransMeta();
+    transMeta.setName("testTextFileInputLazyConversion"); //$NON-NLS-1$
+    textFileInputMeta.setErrorIgnored(true);
+    resultRows = executeTextFileInput(transMeta, textFileInputStep, registry);
+    assertEquals(3, resultRows.size());
+    RowMetaAndData row = resultRows.get(0);
+    assertFalse(row.getRowMeta().getValueMeta(0).isStorageBinaryString());
+    assertTrue(row.getRowMeta().getValueMeta(1).isStorageBinaryString());
+    assertEquals(Long.valueOf(1L), row.getData()[0]);
+    assertEquals("b1", row.getString(1, null)); //$NON-NLS-1$
+  }
+
+  private List<RowMetaAndData> executeTextFileInput(TransMeta transMeta, StepMeta textFileInputStep, PluginRegistry registry) throws Exception {
+    transMeta.addStep(textFileInputStep);
+
+    String dummyStepName = "dummy step"; //$NON-NLS-1$
+    StepMeta dummyStep = TestUtilities.createDummyStep(dummyStepName, registry);
+    transMeta.addStep(dummyStep);
+    transMeta.addTransHop(new TransHopMeta(textFileInputStep, dummyStep));
+
+    Trans trans = new Trans(transMeta);
+    trans.prepareExecution(null);
+    RowStepCollector dummyRowCollector = new RowStepCollector();
+    trans.getStepInterface(dummyStepName, 0).addRowListener(dummyRowCollector);
+    trans.startThreads();
+    trans.waitUntilFinished();
+    assertEquals(0, trans.getErrors());
+
+    return dummyRowCollector.getRowsWritten();
+  }
 }
\ No newline at end of file
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2010 Pentaho Corporation.  All rights reserved.
+ * This software was developed by Pentaho Corporation and is provided under the terms
+ * of the GNU Lesser General Public License, Version 2.1. You may not use
+ * this file except in compliance with the license. If you need a copy of the license,
+ * please go to http://www.gnu.org/licenses/lgpl-2.1.txt. The Original Code is Pentaho
+ * Data Integration.  The Initial Developer is Pentaho Corporation.
+ *
+ * Software distributed under the GNU Lesser Public License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or  implied. Please refer to
+ * the license for the specific language governing your rights and limitations.
+ */
+package org.pentaho.di.trans.steps.uniquerowsbyhashset;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.RowProducer;
+import org.pentaho.di.trans.RowStepCollector;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.injector.InjectorMeta;
+
+/**
+ * Removes duplicate rows with the Unique Rows (HashSet) step: with the fingerprints in memory, with a memory budget
+ * that makes it write partitions to disk, with the stored values and with a Bloom filter.
+ *
+ * @author matt
+ */
+public class UniqueRowsByHashSetTest extends TestCase
+{
+	private static final int NR_KEYS = 100000;
+	private static final int NR_ROWS_PER_KEY = 3;
+
+	private UniqueRowsByHashSetMeta createMeta()
+	{
+		UniqueRowsByHashSetMeta meta = new UniqueRowsByHashSetMeta();
+		meta.setDefault();
+		meta.setCompareFields(new String[] { "key", "number" });
+		return meta;
+	}
+
+	/**
+	 * Runs an injector, the Unique Rows (HashSet) step and a dummy step.
+	 * 
+	 * @return the rows written by the dummy step
+	 */
+	private List<RowMetaAndData> uniqueRows(UniqueRowsByHashSetMeta meta, String memoryBudget) throws Exception
+	{
+		KettleEnvironment.init();
+
+		TransMeta transMeta = new TransMeta();
+		transMeta.setName("uniquerowsbyhashsettest");
+		transMeta.setVariable(Const.KETTLE_TRANS_MEMORY_BUDGET, memoryBudget);
+
+		PluginRegistry registry = PluginRegistry.getInstance();
+
+		InjectorMeta im = new InjectorMeta();
+		StepMeta injectorStep = new StepMeta(registry.getPluginId(StepPluginType.class, im), "injector step", (StepMetaInterface)im);
+		transMeta.addStep(injectorStep);
+
+		StepMeta uniqueStep = new StepMeta(registry.getPluginId(StepPluginType.class, meta), "unique step", (StepMetaInterface)meta);
+		transMeta.addStep(uniqueStep);
+		transMeta.addTransHop(new TransHopMeta(injectorStep, uniqueStep));
+
+		DummyTransMeta dm = new DummyTransMeta();
+		StepMeta dummyStep = new StepMeta(registry.getPluginId(StepPluginType.class, dm), "dummy step", (StepMetaInterface)dm);
+		transMeta.addStep(dummyStep);
+		transMeta.addTransHop(new TransHopMeta(uniqueStep, dummyStep));
+
+		Trans trans = new Trans(transMeta);
+		trans.prepareExecution(null);
+
+		StepInterface si = trans.getStepInterface("dummy step", 0);
+		RowStepCollector dummyRc = new RowStepCollector();
+		si.addRowListener(dummyRc);
+
+		RowProducer rp = trans.addRowProducer("injector step", 0);
+		trans.startThreads();
+
+		RowMetaInterface rowMeta = new RowMeta();
+		rowMeta.addValueMeta(new ValueMeta("key", ValueMetaInterface.TYPE_STRING));
+		rowMeta.addValueMeta(new ValueMeta("number", ValueMetaInterface.TYPE_INTEGER));
+		rowMeta.addValueMeta(new ValueMeta("value", ValueMetaInterface.TYPE_INTEGER));
+
+		// The duplicates of a key are spread over the whole input
+		//
+		for (long i=0;i<NR_KEYS*NR_ROWS_PER_KEY;i++)
+		{
+			long k = i%NR_KEYS;
+			rp.putRow(rowMeta, new Object[] { "key-"+k, new Long(k%7), new Long(i), });
+		}
+		rp.finished();
+
+		trans.waitUntilFinished();
+		assertEquals(0, trans.getErrors());
+
+		return dummyRc.getRowsWritten();
+	}
+
+	/**
+	 * Every key comes out once, with the value of its first row.
+	 */
+	private void checkUnique(List<RowMetaAndData> rows, int minimumNrRows) throws Exception
+	{
+		assertTrue("only "+rows.size()+" rows", rows.size()>=minimumNrRows && rows.size()<=NR_KEYS);
+
+		boolean[] seen = new boolean[NR_KEYS];
+		for (RowMetaAndData row : rows)
+		{
+			String key = row.getString("key", null);
+			int k = Integer.parseInt(key.substring(4));
+			assertFalse("key "+key+" found twice", seen[k]);
+			seen[k] = true;
+			assertEquals(key, k, row.getInteger("value", -1));
+		}
+	}
+
+	public void testFingerprintsInMemory() throws Exception
+	{
+		checkUnique(uniqueRows(createMeta(), ""), NR_KEYS);
+	}
+
+	/**
+	 * With a budget of 1MB the fingerprints of partitions are written to disk and the rows of those partitions are checked at the end.
+	 */
+	public void testFingerprintsWithMemoryBudget() throws Exception
+	{
+		checkUnique(uniqueRows(createMeta(), "1"), NR_KEYS);
+	}
+
+	public void testStoredValues() throws Exception
+	{
+		UniqueRowsByHashSetMeta meta = createMeta();
+		meta.setStoreValues(true);
+		checkUnique(uniqueRows(meta, ""), NR_KEYS);
+	}
+
+	/**
+	 * The Bloom filter takes a small fraction of the unique rows for duplicates, never the other way around.
+	 */
+	public void testBloomFilter() throws Exception
+	{
+		UniqueRowsByHashSetMeta meta = createMeta();
+		meta.setUsingBloomFilter(true);
+		meta.setBloomFilterExpectedRows(Integer.toString(NR_KEYS));
+		meta.setBloomFilterFalsePositiveRate("0.01");
+		checkUnique(uniqueRows(meta, ""), (int)(NR_KEYS*0.98));
+	}
+}